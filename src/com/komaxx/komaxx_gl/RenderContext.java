@@ -58,6 +58,12 @@ public class RenderContext extends SceneGraphContext {
 	public int surfaceId = -1;
 	
 	
+	/**
+	 * All time values handed to shaders are relative to this to keep them in float range.
+	 */
+	private static final long SHADER_TIME_BASE_NS = System.nanoTime();
+	
+	
 	public RenderContext(ARenderProgramStore renderProgramStore) {
 		this.renderProgramStore = renderProgramStore;
 	}
@@ -111,6 +117,19 @@ public class RenderContext extends SceneGraphContext {
 		currentRenderProgramIndex = renderProgramIndex;
 		currentRenderProgram = renderProgramStore.getRenderProgram(renderProgramIndex);
 		mvpMatrixInShader = false;
+		
+		// programs are re-activated in each frame, so this is always up to date
+		if (currentRenderProgram.uTime != -1){
+			GLES20.glUniform1f(currentRenderProgram.uTime, toShaderTime(frameNanoTime));
+		}
+	}
+	
+	/**
+	 * Converts a System.nanoTime() value to the time scale used in shaders (seconds,
+	 * relative to the start of the app). Precision is still ~1ms after a few hours.
+	 */
+	public static float toShaderTime(long nanoTime){
+		return (float)((nanoTime - SHADER_TIME_BASE_NS) / 1000000000d);
 	}
 
 	@Override
@@ -147,6 +166,8 @@ public class RenderContext extends SceneGraphContext {
 	}
 	
 	public final void bindTexture(int textureHandle){
+		// queued updates must be in the texture before it is drawn
+		if (textureStore.hasQueuedUploads()) textureStore.commitUploads(this, textureHandle);
 		if (textureHandle != boundTexture){
 //			GLES20.glActiveTexture(GLES20.GL_TEXTURE0);		// only necessary once!
 			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle);
@@ -26,16 +26,32 @@ public abstract class RenderProgram {
 	
 	public int vertexUvModFactorHandle = -1;
 	
+	public int vertexAlphaAnimationHandle = -1;
+	public int vertexTargetXyzHandle = -1;
+	public int vertexTransitionTimeHandle = -1;
+	
 	public int uPulseIntensity = -1;
 	public int uPulsePhase = -1;
 	
 	public int uColor = -1;
 	public int uAlpha = -1;
 	
+	// procedural fills, see ProceduralFill
+	public int uColor2 = -1;
+	public int uFillMode = -1;
+	public int uFillParams = -1;
+	public int uFillSize = -1;
+	
 	public int matrixMVPHandle = -1;
 	
 	public int uUvModificator = -1;
 	
+	/**
+	 * Frame time in seconds, see RenderContext.toShaderTime. Set automatically
+	 * when the program is activated.
+	 */
+	public int uTime = -1;
+	
 	public int texture0Handle = -1;
 	public int texture1Handle = -1;
 	public int texture2Handle = -1;
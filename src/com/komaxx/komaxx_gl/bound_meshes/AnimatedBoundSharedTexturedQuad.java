@@ -42,7 +42,7 @@ public class AnimatedBoundSharedTexturedQuad extends ABoundMesh {
     private static final float[] tmpVector = new float[4];
 	
     public AnimatedBoundSharedTexturedQuad(){
-    	createIndexBuffer();
+    	indexBuffer = createIndexBuffer();
     }
     
 	public GlCube getCurrentPosition() {
@@ -1,5 +1,7 @@
 package com.komaxx.komaxx_gl.bound_meshes;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
 
@@ -8,7 +10,15 @@ import android.opengl.GLES20;
 import com.komaxx.komaxx_gl.RenderContext;
 import com.komaxx.komaxx_gl.math.Vector;
 import com.komaxx.komaxx_gl.primitives.TexturedVertex;
-
+import com.komaxx.komaxx_gl.primitives.VertexLayout;
+
+/**
+ * A strip of triangles along a path that fades out to one side, e.g., for trails.
+ * Strips with more than LargeMesh.MAX_SHORT_INDEXED_VERTICES vertices take no space in
+ * the Vbo but draw themselves with an internal LargeMesh while the node renders its Vbo.
+ * 
+ * @author Matthias Schicker
+ */
 public class Bound2DPathStrip extends ABoundMesh {
 	protected final int vertexCount;
 	protected final int indexCount;
@@ -20,6 +30,10 @@ public class Bound2DPathStrip extends ABoundMesh {
 	protected boolean alphaDirty = true;
 
 	protected final FloatBuffer vertexBuffer;
+	/**
+	 * Only for strips beyond the short index range, null otherwise.
+	 */
+	private final LargeMesh largeMesh;
 
 	public Bound2DPathStrip(float[][] verticesPath, float[] stripSideVector, float distance){
 		this.vertexCount = verticesPath.length * 2;
@@ -28,32 +42,36 @@ public class Bound2DPathStrip extends ABoundMesh {
 		vertices = new TexturedVertex[vertexCount];
 		for (int i = 0; i < vertexCount; i++) vertices[i] = new TexturedVertex();
 
-		vertexBuffer = TexturedVertex.allocate(vertexCount);
-		indexBuffer = new short[indexCount];
+		ByteBuffer vertexBytes = ByteBuffer.allocateDirect(
+				vertexCount * TexturedVertex.STRIDE_BYTES).order(ByteOrder.nativeOrder());
+		vertexBuffer = vertexBytes.asFloatBuffer();
 		
-		buildStrip(verticesPath, stripSideVector, distance);
-	}
-
-	private void buildStrip(float[][] verticesPath, float[] stripSideVector, float distance) {
 		setPathVertices(verticesPath);
-		
 		setNonPathVertices(verticesPath, stripSideVector, distance);
-
-		setIndices(verticesPath);
+		
+		int[] indices = new int[indexCount];
+		setIndices(indices, verticesPath.length);
+		if (vertexCount > LargeMesh.MAX_SHORT_INDEXED_VERTICES){
+			largeMesh = new LargeMesh(VertexLayout.TEXTURED, vertexBytes, indices);
+			indexBuffer = new short[0];
+		} else {
+			largeMesh = null;
+			indexBuffer = new short[indexCount];
+			for (int i = 0; i < indexCount; i++) indexBuffer[i] = (short) indices[i];
+		}
 	}
 
-	private void setIndices(float[][] verticesPath) {
+	private static void setIndices(int[] indices, int pathLength) {
 		int indexIndex = 0;
-		int pathLength = verticesPath.length;
 		int l = pathLength -1;
 		for (int i = 0; i < l; i++){
-			indexBuffer[indexIndex + 0] = (short) i;
-			indexBuffer[indexIndex + 1] = (short)(i + 1);
-			indexBuffer[indexIndex + 2] = (short)(pathLength + i);
+			indices[indexIndex + 0] = i;
+			indices[indexIndex + 1] = i + 1;
+			indices[indexIndex + 2] = pathLength + i;
 
-			indexBuffer[indexIndex + 3] = (short)(i + 1);
-			indexBuffer[indexIndex + 4] = (short)(pathLength + i + 1);
-			indexBuffer[indexIndex + 5] = (short)(pathLength + i);
+			indices[indexIndex + 3] = i + 1;
+			indices[indexIndex + 4] = pathLength + i + 1;
+			indices[indexIndex + 5] = pathLength + i;
 			
 			indexIndex += 6;
 		}
@@ -148,6 +166,12 @@ public class Bound2DPathStrip extends ABoundMesh {
 			vboDirty = true;
 		}
 
+		if (largeMesh != null){
+			if (vboDirty) largeMesh.setVerticesDirty();
+			largeMesh.renderEmbedded(rc);
+			return 0;
+		}
+
 		if (vboDirty){
 			vertexBuffer.position(0);
 			GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 
@@ -162,14 +186,32 @@ public class Bound2DPathStrip extends ABoundMesh {
 		return indexCount;
 	}
 
+	/**
+	 * Also frees the buffers of a strip that draws itself with a LargeMesh, so call it in
+	 * the GL thread when the strip is dropped or replaced. Binding it again rebuilds them.
+	 */
+	@Override
+	public void unbind() {
+		if (largeMesh != null) largeMesh.delete();
+		if (boundVbo != null) super.unbind();
+	}
+
 	@Override
 	public int getMaxVertexCount() {
-		return vertexCount;
+		// large strips bring their own buffers
+		return (largeMesh != null) ? 0 : vertexCount;
 	}
 
 	@Override
 	public int getMaxIndexCount() {
-		return indexCount;
+		return indexBuffer.length;
+	}
+
+	/**
+	 * true when the strip is too long for short indices and draws itself with a LargeMesh.
+	 */
+	public boolean isLarge(){
+		return largeMesh != null;
 	}
 
 	public void setAlpha(int index, float nuAlpha) {
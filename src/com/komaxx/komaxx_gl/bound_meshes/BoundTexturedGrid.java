@@ -1,32 +1,64 @@
 package com.komaxx.komaxx_gl.bound_meshes;
 
-import java.nio.FloatBuffer;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
 import java.nio.ShortBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
 
 import android.graphics.RectF;
 import android.opengl.GLES20;
 
 import com.komaxx.komaxx_gl.RenderContext;
 import com.komaxx.komaxx_gl.math.GlRect;
-import com.komaxx.komaxx_gl.primitives.Vertex;
+import com.komaxx.komaxx_gl.primitives.VertexLayout;
 
+/**
+ * A grid of vCols x vRows textured vertices, e.g., for deformable surfaces. Besides
+ * positioning the whole grid, single vertices can be moved with the per-vertex write
+ * methods. Only rows that changed since the last frame are uploaded.</br>
+ * Index arrays are shared between all grids of the same size and VBO offset.</br>
+ * Grids with more than LargeMesh.MAX_SHORT_INDEXED_VERTICES vertices do not fit into 
+ * short indices. They take no space in the Vbo but draw themselves with an internal
+ * LargeMesh (32 bit indices or sharded) while the node renders its Vbo.</br>
+ * The vertices are stored in a VertexLayout, VertexLayout.TEXTURED by default. Flat grids
+ * may use VertexLayout.PACKED_TEXTURED_2D (16 instead of 28 bytes per vertex), which drops
+ * z and clamps uv coords to [0|1]. The Vbo must have the layout's stride.
+ * 
+ * @author Matthias Schicker
+ */
 public class BoundTexturedGrid extends ABoundMesh {
 	private final int vCols;
 	private final int vRows;
 	private final int verticesCount;
 	
 	private GlRect position = new GlRect();
-	private boolean positionDirty = true;
-
 	private RectF uvBounds = new RectF(0,0,1,1);
-	private boolean uvBoundsDirty = true;
 	
-	private FloatBuffer vertexBuffer;
+	private final VertexLayout layout;
+	private final ByteBuffer vertexBuffer;
+	/**
+	 * Only for grids beyond the short index range, null otherwise.
+	 */
+	private final LargeMesh largeMesh;
+	
+	/**
+	 * Rows that need to be uploaded with the next render call.
+	 */
+	private final boolean[] dirtyRows;
+	private boolean anyRowDirty = false;
 	
 	// tiles: (r-1)*(c-1)
 	// triangles: 2*tiles = 2* (r-1)*(c-1)
 	// indices : 3*triangles = 6 * (r-1)*(c-1)
 
+	/**
+	 * Weak, so arrays of grids that are gone can be collected. The grids themselves keep
+	 * their array alive.
+	 */
+	private static final HashMap<IndicesKey, WeakReference<short[]>> sharedIndices = 
+			new HashMap<IndicesKey, WeakReference<short[]>>();
+	
 	// /////////////////////////////////////////////
 	// caches, short use stuff
 	private final float[] tmpX;
@@ -34,114 +66,239 @@ public class BoundTexturedGrid extends ABoundMesh {
 	
 	
 	public BoundTexturedGrid(int vCols, int vRows){
+		this(vCols, vRows, VertexLayout.TEXTURED);
+	}
+	
+	public BoundTexturedGrid(int vCols, int vRows, VertexLayout layout){
 		this.vCols = vCols;
 		this.vRows = vRows;
 		this.verticesCount = vCols * vRows;
 		
 		tmpX = new float[vCols];
 		tmpY = new float[vRows];
+		dirtyRows = new boolean[vRows];
+		
+		this.layout = layout;
+		bytesPerVertex = layout.getStrideBytes();
+		vertexBuffer = layout.allocate(verticesCount);
 		
-		vertexBuffer = Vertex.allocateColorVertices(vRows * vCols);
+		if (verticesCount > LargeMesh.MAX_SHORT_INDEXED_VERTICES){
+			largeMesh = new LargeMesh(layout, vertexBuffer, 
+					LargeMesh.createGridIndices(vCols, vRows));
+			indexBuffer = new short[0];
+		} else {
+			largeMesh = null;
+			indexBuffer = getSharedIndices(vCols, vRows, 0);
+		}
 		
-		createIndices();
+		applyPosition();
+		applyUvBounds();
 	}
 	
-	private void createIndices() {
-		indexBuffer = new short[6 * (vRows-1) * (vCols-1)];
-		setIndices();
+	/**
+	 * The index array is shared, so it must not be modified in place. Instead,
+	 * the shared array for the new offset is used.
+	 */
+	@Override
+	protected void offsetIndexBuffer() {
+		if (largeMesh != null) return;
+		indexBuffer = getSharedIndices(vCols, vRows, firstVertexIndex);
+	}
+	
+	private static synchronized short[] getSharedIndices(int vCols, int vRows, int vertexOffset){
+		IndicesKey key = new IndicesKey(vCols, vRows, vertexOffset);
+		WeakReference<short[]> ref = sharedIndices.get(key);
+		short[] ret = (ref == null) ? null : ref.get();
+		if (ret == null){
+			purgeSharedIndices();
+			ret = new short[getIndexCount(vCols, vRows)];
+			setIndices(ret, vCols, vRows, vertexOffset);
+			sharedIndices.put(key, new WeakReference<short[]>(ret));
+		}
+		return ret;
+	}
+	
+	/**
+	 * Removes the entries whose arrays were collected.
+	 */
+	private static void purgeSharedIndices(){
+		Iterator<WeakReference<short[]>> it = sharedIndices.values().iterator();
+		while (it.hasNext()){
+			if (it.next().get() == null) it.remove();
+		}
 	}
 
 	public static final int getIndexCount(int vColumns, int vRows){
 		return 6 * (vRows-1) * (vColumns-1);
 	}
 	
-	private void setIndices() {
+	private static void setIndices(short[] indexBuffer, int vCols, int vRows, int o) {
 		int index = 0;
 		for (short r = 0; r < (vRows-1); r++){
 			for (short c = 0; c < (vCols-1); c++){
 				// first triangle
-				indexBuffer[index++] = (short)( (r*vCols) + c);
-				indexBuffer[index++] = (short)( ((r+1)*vCols) + c);
-				indexBuffer[index++] = (short)( (r*vCols) + c + 1);
+				indexBuffer[index++] = (short)( o + (r*vCols) + c);
+				indexBuffer[index++] = (short)( o + ((r+1)*vCols) + c);
+				indexBuffer[index++] = (short)( o + (r*vCols) + c + 1);
 				// second triangle
-				indexBuffer[index++] = (short)( (r*vCols) + c + 1);
-				indexBuffer[index++] = (short)( ((r+1)*vCols) + c);
-				indexBuffer[index++] = (short)( ((r+1)*vCols) + c + 1);
+				indexBuffer[index++] = (short)( o + (r*vCols) + c + 1);
+				indexBuffer[index++] = (short)( o + ((r+1)*vCols) + c);
+				indexBuffer[index++] = (short)( o + ((r+1)*vCols) + c + 1);
 			}
 		}
 	}
 	
+	/**
+	 * <b>NOTE:</b> Shared between all grids with the same size and VBO offset. Do not modify!
+	 * Empty when the grid is drawn with a LargeMesh.
+	 */
 	public short[] getIndices() {
 		return indexBuffer;
 	}
 
+	/**
+	 * true when the grid is too large for short indices and draws itself with a LargeMesh.
+	 */
+	public boolean isLarge(){
+		return largeMesh != null;
+	}
+
 	public int getVboVertexIndex(){
 		return firstVertexIndex;
 	}
 	
+	public int getColumnCount() {
+		return vCols;
+	}
+	
+	public int getRowCount() {
+		return vRows;
+	}
+	
+	public VertexLayout getLayout() {
+		return layout;
+	}
+	
 	public void positionXY(float left, float top, float right, float bottom) {
 		position.set(left, top, right, bottom);
-		positionDirty = true;
+		applyPosition();
 	}
 	
 	public void setUvBounds(RectF nuUvBounds){
 		uvBounds.set(nuUvBounds);
-		uvBoundsDirty = true;
+		applyUvBounds();
 	}
 	
 	public void setUvBounds(float ulU, float ulV, float lrU, float lrV){
 		uvBounds.set(ulU, ulV, lrU, lrV);
-		uvBoundsDirty = true;
+		applyUvBounds();
+	}
+	
+	/**
+	 * Moves a single vertex. Only the vertex' row will be uploaded.
+	 * Overwritten when the whole grid is positioned again with <code>positionXY</code>.
+	 */
+	public void setVertexPosition(int col, int row, float x, float y, float z){
+		layout.putPosition(vertexBuffer, row*vCols + col, x, y, z);
+		setRowDirty(row);
+	}
+	
+	/**
+	 * Changes only the z coordinate of a single vertex, e.g., for height fields or ripples.
+	 */
+	public void setVertexZ(int col, int row, float z){
+		layout.put(vertexBuffer, row*vCols + col, VertexLayout.POSITION, 2, z);
+		setRowDirty(row);
+	}
+	
+	public void setVertexUv(int col, int row, float u, float v){
+		layout.putUv(vertexBuffer, row*vCols + col, u, v);
+		setRowDirty(row);
+	}
+	
+	public float getVertexX(int col, int row){
+		return layout.get(vertexBuffer, row*vCols + col, VertexLayout.POSITION, 0);
+	}
+	
+	public float getVertexY(int col, int row){
+		return layout.get(vertexBuffer, row*vCols + col, VertexLayout.POSITION, 1);
+	}
+	
+	public float getVertexZ(int col, int row){
+		return layout.get(vertexBuffer, row*vCols + col, VertexLayout.POSITION, 2);
+	}
+	
+	private void setRowDirty(int row) {
+		dirtyRows[row] = true;
+		anyRowDirty = true;
+	}
+	
+	private void setAllRowsDirty() {
+		for (int i = 0; i < vRows; i++) dirtyRows[i] = true;
+		anyRowDirty = true;
 	}
 
 	@Override
 	public int render(RenderContext rc, ShortBuffer frameIndexBuffer){
 		if (!visible) return 0;
 		
-		boolean vboDirty = false;
-		
-		if (positionDirty){
-			applyPosition();
-			positionDirty = false;
-			vboDirty = true;
+		if (largeMesh != null){
+			if (anyRowDirty) largeMesh.setVerticesDirty();
+			anyRowDirty = false;
+			largeMesh.renderEmbedded(rc);
+			return 0;
 		}
 		
-		if (uvBoundsDirty){
-			applyUvBounds();
-			uvBoundsDirty = false;
-			vboDirty = true;
+		if (anyRowDirty){
+			uploadDirtyRows();
+			anyRowDirty = false;
 		}
 		
-		if (vboDirty){
-			vertexBuffer.position(0);
+		frameIndexBuffer.put(indexBuffer);
+		return indexBuffer.length;
+	}
+
+	/**
+	 * Uploads runs of consecutive dirty rows with one call each.
+	 */
+	private void uploadDirtyRows() {
+		int rowBytes = vCols * layout.getStrideBytes();
+		int row = 0;
+		while (row < vRows){
+			if (!dirtyRows[row]){
+				row++;
+				continue;
+			}
+			int firstRow = row;
+			while (row < vRows && dirtyRows[row]){
+				dirtyRows[row] = false;
+				row++;
+			}
+			
+			vertexBuffer.position(firstRow * rowBytes);
 			GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 
-					firstByteIndex, 
-					vertexBuffer.capacity()*4, 
+					firstByteIndex + firstRow * rowBytes, 
+					(row - firstRow) * rowBytes, 
 					vertexBuffer);
-
-			vboDirty = false;
 		}
-		
-		frameIndexBuffer.put(indexBuffer);
-		return indexBuffer.length;
+		vertexBuffer.position(0);
 	}
 
 	private void applyUvBounds() {
-		int offset = Vertex.TEXTURED_VERTEX_DATA_UV_OFFSET;
-		float[] tmpUvCoords = new float[]{ uvBounds.left, uvBounds.top };
+		int vertex = 0;
 		float uDelta = uvBounds.width() / vCols;
 		float vDelta = uvBounds.height() / vRows;
+		float v = uvBounds.top;
 		for (int y = 0; y < vRows; y++){
-			tmpUvCoords[0] = uvBounds.left;
+			float u = uvBounds.left;
 			for (int x = 0; x < vCols; x++){
-				vertexBuffer.position(offset);
-				vertexBuffer.put(tmpUvCoords);
-				offset += Vertex.TEXTURED_VERTEX_DATA_STRIDE_FLOATS;
+				layout.putUv(vertexBuffer, vertex++, u, v);
 				
-				tmpUvCoords[0] += uDelta;
+				u += uDelta;
 			}
-			tmpUvCoords[1] += vDelta;
+			v += vDelta;
 		}
+		setAllRowsDirty();
 	}
 
 	private void applyPosition() {
@@ -169,29 +326,64 @@ public class BoundTexturedGrid extends ABoundMesh {
 		tmpY[tiles] = position.bottom;
 
 		// and assign to the vertexBuffer
-		int offset = 0;
+		int vertex = 0;
 		for (int y = 0; y < vRows; y++){
 			for (int x = 0; x < vCols; x++){
-				vertexBuffer.position(offset);
-				vertexBuffer.put(tmpX[x]);
-				vertexBuffer.put(tmpY[y]);
-				vertexBuffer.put(0);
-				offset += Vertex.COLOR_VERTEX_DATA_STRIDE_FLOATS;
+				layout.putPosition(vertexBuffer, vertex++, tmpX[x], tmpY[y], 0);
 			}
 		}
+		setAllRowsDirty();
 	}
 
 	public boolean contains(float x, float y) {
 		return position.contains(x, y);
 	}
 
+	/**
+	 * Also frees the buffers of a grid that draws itself with a LargeMesh, so call it in
+	 * the GL thread when the grid is dropped or replaced. Binding it again rebuilds them.
+	 */
+	@Override
+	public void unbind() {
+		if (largeMesh != null) largeMesh.delete();
+		if (boundVbo != null) super.unbind();
+	}
+
 	@Override
 	public int getMaxVertexCount() {
-		return verticesCount;
+		// large grids bring their own buffers
+		return (largeMesh != null) ? 0 : verticesCount;
 	}
 
 	@Override
 	public int getMaxIndexCount() {
 		return indexBuffer.length;
 	}
+
+	/**
+	 * Identifies a shared index array: Grid dimensions and VBO offset.
+	 */
+	private static class IndicesKey {
+		private final int vCols;
+		private final int vRows;
+		private final int vertexOffset;
+		
+		IndicesKey(int vCols, int vRows, int vertexOffset){
+			this.vCols = vCols;
+			this.vRows = vRows;
+			this.vertexOffset = vertexOffset;
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof IndicesKey)) return false;
+			IndicesKey k = (IndicesKey) o;
+			return k.vCols == vCols && k.vRows == vRows && k.vertexOffset == vertexOffset;
+		}
+		
+		@Override
+		public int hashCode() {
+			return (vCols * 31 + vRows) * 31 + vertexOffset;
+		}
+	}
 }
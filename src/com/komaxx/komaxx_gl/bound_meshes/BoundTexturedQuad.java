@@ -27,12 +27,25 @@ public class BoundTexturedQuad extends ABoundMesh {
     
 	protected boolean alphaDirty = true;
 
-	protected final FloatBuffer vertexBuffer = TexturedQuad.allocateQuads(1);
+	/**
+	 * The quad's vertices in the default float layout. null in subclasses that write
+	 * another layout, see <code>BoundTexturedQuad(boolean)</code>.
+	 */
+	protected final FloatBuffer vertexBuffer;
 	protected final Rect texCoordsPx = new Rect();
 
 
 	public BoundTexturedQuad(){
+		this(true);
+	}
+	
+	/**
+	 * @param allocateVertexBuffer	false for subclasses that override <code>render</code>
+	 * and keep their vertices in their own buffer: Saves the float buffer.
+	 */
+	protected BoundTexturedQuad(boolean allocateVertexBuffer){
 		indexBuffer = createIndexBuffer();
+		vertexBuffer = allocateVertexBuffer ? TexturedQuad.allocateQuads(1) : null;
 	}
 	
     public void setTexCoordsUv(RectF uvCoords) {
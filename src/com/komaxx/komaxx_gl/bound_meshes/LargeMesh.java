@@ -0,0 +1,323 @@
+package com.komaxx.komaxx_gl.bound_meshes;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import android.opengl.GLES20;
+
+import com.komaxx.komaxx_gl.RenderConfig;
+import com.komaxx.komaxx_gl.RenderContext;
+import com.komaxx.komaxx_gl.RenderProgram;
+import com.komaxx.komaxx_gl.primitives.VertexLayout;
+import com.komaxx.komaxx_gl.util.KoLog;
+import com.komaxx.komaxx_gl.util.RenderUtil;
+
+/**
+ * A mesh that may have more vertices than a Vbo with short indices can address
+ * (65536). The mesh owns its buffers:
+ * <ul>
+ * <li>When the GL supports <code>GL_OES_element_index_uint</code>, all vertices go
+ * into one buffer which is drawn with 32 bit indices.</li>
+ * <li>Otherwise, the primitives are automatically sharded into chunks of at most
+ * 65536 vertices. Vertices used by primitives in several chunks are duplicated.
+ * Each chunk is drawn with one draw call.</li>
+ * </ul>
+ * Meshes that fit into short indices are not split at all. Vertex data is defined
+ * in a VertexLayout, indices are plain ints into the vertex data.</br>
+ * BoundTexturedGrid and Bound2DPathStrip switch to an internal LargeMesh by themselves
+ * when they get too large for their Vbo (see <code>renderEmbedded</code>).</br>
+ * <b>NOTE:</b> <code>create</code> must be called in the GL thread before rendering,
+ * and again after the surface was lost.
+ *
+ * @author Matthias Schicker
+ */
+public class LargeMesh {
+	public static final int MAX_SHORT_INDEXED_VERTICES = 65536;
+	private static final String UINT_INDEX_EXTENSION = "GL_OES_element_index_uint";
+
+	private final VertexLayout layout;
+	private final ByteBuffer vertexData;
+	private final int vertexCount;
+	private final int[] indices;
+	private final int drawMode;
+	private final int verticesPerPrimitive;
+
+	private boolean use32BitIndices = false;
+	private Chunk[] chunks = null;
+	private boolean verticesDirty = true;
+	private int surfaceId = -1;
+
+	private static int[] tmpHandles = new int[1];
+	private static byte[] tmpVertex;
+
+
+	/**
+	 * @param vertexData	The vertex data in the given layout. Keep the reference, changes
+	 * become visible after <code>setVerticesDirty</code>.
+	 * @param indices		Indices of the triangles (three per triangle).
+	 */
+	public LargeMesh(VertexLayout layout, ByteBuffer vertexData, int[] indices){
+		this(layout, vertexData, indices, GLES20.GL_TRIANGLES);
+	}
+
+	/**
+	 * @param drawMode	GL_TRIANGLES or GL_LINES. Strips and fans can not be sharded.
+	 */
+	public LargeMesh(VertexLayout layout, ByteBuffer vertexData, int[] indices, int drawMode){
+		if (drawMode != GLES20.GL_TRIANGLES && drawMode != GLES20.GL_LINES){
+			throw new RuntimeException("LargeMesh only supports GL_TRIANGLES and GL_LINES");
+		}
+		this.layout = layout;
+		this.vertexData = vertexData;
+		this.vertexCount = vertexData.capacity() / layout.getStrideBytes();
+		this.indices = indices;
+		this.drawMode = drawMode;
+		this.verticesPerPrimitive = (drawMode == GLES20.GL_TRIANGLES) ? 3 : 2;
+	}
+
+	/**
+	 * Builds the buffers. Must be called in the GL thread. Buffers of the same surface
+	 * are freed first, those of a lost surface are just dropped (they died with it).
+	 */
+	public void create(RenderContext rc){
+		if (chunks != null){
+			if (surfaceId == rc.surfaceId) delete();
+			else chunks = null;
+		}
+
+		use32BitIndices = vertexCount > MAX_SHORT_INDEXED_VERTICES
+				&& RenderUtil.isExtensionSupported(UINT_INDEX_EXTENSION);
+
+		if (vertexCount <= MAX_SHORT_INDEXED_VERTICES || use32BitIndices){
+			Chunk c = new Chunk();
+			c.vertexCount = vertexCount;
+			c.indexCount = indices.length;
+			chunks = new Chunk[]{ c };
+		} else {
+			chunks = shard();
+			KoLog.i(this, "Sharded " + vertexCount + " vertices into " + chunks.length + " chunks");
+		}
+
+		for (Chunk c : chunks) createBuffers(c);
+
+		// unbind, otherwise non-vbo-stuff will not be drawn
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+		rc.boundVboId = -1;
+		verticesDirty = true;
+		surfaceId = rc.surfaceId;
+	}
+
+	private void createBuffers(Chunk c) {
+		GLES20.glGenBuffers(1, tmpHandles, 0);
+		c.vboHandle = tmpHandles[0];
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, c.vboHandle);
+		GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER,
+				c.vertexCount * layout.getStrideBytes(), null, GLES20.GL_STATIC_DRAW);
+
+		GLES20.glGenBuffers(1, tmpHandles, 0);
+		c.iboHandle = tmpHandles[0];
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, c.iboHandle);
+		if (use32BitIndices){
+			IntBuffer ib = ByteBuffer.allocateDirect(c.indexCount * 4)
+					.order(ByteOrder.nativeOrder()).asIntBuffer();
+			ib.put(indices).position(0);
+			GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, c.indexCount * 4, ib, GLES20.GL_STATIC_DRAW);
+		} else {
+			ShortBuffer sb = ByteBuffer.allocateDirect(c.indexCount * RenderUtil.SHORT_SIZE_BYTES)
+					.order(ByteOrder.nativeOrder()).asShortBuffer();
+			int[] src = (c.localIndices != null) ? c.localIndices : indices;
+			for (int i = 0; i < c.indexCount; i++) sb.put((short)src[i]);
+			sb.position(0);
+			GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER,
+					c.indexCount * RenderUtil.SHORT_SIZE_BYTES, sb, GLES20.GL_STATIC_DRAW);
+			c.localIndices = null;		// not needed anymore
+		}
+		if (RenderConfig.GL_DEBUG) RenderUtil.checkGlError("building LargeMesh buffers");
+	}
+
+	/**
+	 * Distributes the primitives greedily over chunks with at most MAX_SHORT_INDEXED_VERTICES
+	 * vertices each.
+	 */
+	private Chunk[] shard() {
+		ArrayList<Chunk> ret = new ArrayList<Chunk>();
+		int[] localIndex = new int[vertexCount];
+		int[] chunkStamp = new int[vertexCount];		// chunk number + 1 a vertex was last added to
+
+		Chunk c = null;
+		int stamp = 0;
+		int l = indices.length;
+		for (int p = 0; p < l; p += verticesPerPrimitive){
+			int newVertices = 0;
+			if (c != null){
+				for (int i = 0; i < verticesPerPrimitive; i++){
+					if (chunkStamp[indices[p+i]] != stamp) newVertices++;
+				}
+			}
+			if (c == null || c.vertexCount + newVertices > MAX_SHORT_INDEXED_VERTICES){
+				if (c != null) ret.add(c.trim());
+				c = new Chunk();
+				c.globalVertices = new int[Math.min(vertexCount, MAX_SHORT_INDEXED_VERTICES)];
+				c.localIndices = new int[Math.min(l, 3 * MAX_SHORT_INDEXED_VERTICES)];
+				stamp++;
+			}
+
+			for (int i = 0; i < verticesPerPrimitive; i++){
+				int global = indices[p+i];
+				if (chunkStamp[global] != stamp){
+					chunkStamp[global] = stamp;
+					localIndex[global] = c.vertexCount;
+					c.globalVertices[c.vertexCount++] = global;
+				}
+				if (c.indexCount == c.localIndices.length){
+					c.localIndices = Arrays.copyOf(c.localIndices, c.localIndices.length * 2);
+				}
+				c.localIndices[c.indexCount++] = localIndex[global];
+			}
+		}
+		if (c != null) ret.add(c.trim());
+
+		return ret.toArray(new Chunk[ret.size()]);
+	}
+
+	/**
+	 * Call after changing the vertex data. The data is uploaded when rendering the next time.
+	 */
+	public void setVerticesDirty(){
+		verticesDirty = true;
+	}
+
+	/**
+	 * Draws the mesh with the currently active RenderProgram, one draw call per chunk.
+	 */
+	public void render(RenderContext rc){
+		if (chunks == null) return;
+
+		RenderProgram rp = rc.currentRenderProgram;
+		int indexType = use32BitIndices ? GLES20.GL_UNSIGNED_INT : GLES20.GL_UNSIGNED_SHORT;
+		for (Chunk c : chunks){
+			rc.bindVBO(c.vboHandle);
+			if (verticesDirty) upload(c);
+			layout.bindAttributes(rp, 0);
+
+			GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, c.iboHandle);
+			GLES20.glDrawElements(drawMode, c.indexCount, indexType, 0);
+		}
+		// all other meshes use client side indices
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+		verticesDirty = false;
+	}
+
+	/**
+	 * For bound meshes that delegate to a LargeMesh: Draws it in the middle of rendering
+	 * a node's Vbo. The buffers are (re)built when the surface changed, and the previously
+	 * bound VBO is bound again afterwards, so the node's own meshes are drawn as usual.
+	 */
+	public void renderEmbedded(RenderContext rc){
+		int previousVbo = rc.boundVboId;
+		if (chunks == null || surfaceId != rc.surfaceId) create(rc);
+		render(rc);
+		if (previousVbo != -1){
+			rc.bindVBO(previousVbo);
+		} else {
+			// nothing was bound before, so none is bound afterwards
+			GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+			rc.boundVboId = -1;
+		}
+	}
+
+	private void upload(Chunk c) {
+		int stride = layout.getStrideBytes();
+		if (c.globalVertices == null){
+			vertexData.position(0);
+			GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, c.vertexCount * stride, vertexData);
+			return;
+		}
+
+		// gather the vertices of the chunk
+		if (c.staging == null) c.staging = ByteBuffer.allocateDirect(c.vertexCount * stride).order(ByteOrder.nativeOrder());
+		if (tmpVertex == null || tmpVertex.length != stride) tmpVertex = new byte[stride];
+		c.staging.position(0);
+		for (int i = 0; i < c.vertexCount; i++){
+			vertexData.position(c.globalVertices[i] * stride);
+			vertexData.get(tmpVertex);
+			c.staging.put(tmpVertex);
+		}
+		vertexData.position(0);
+		c.staging.position(0);
+		GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, c.vertexCount * stride, c.staging);
+	}
+
+	/**
+	 * Frees all GL buffers. Call in the GL thread, before the surface is lost. Rendering
+	 * again builds new buffers.
+	 */
+	public void delete(){
+		if (chunks == null) return;
+		for (Chunk c : chunks){
+			tmpHandles[0] = c.vboHandle;
+			GLES20.glDeleteBuffers(1, tmpHandles, 0);
+			tmpHandles[0] = c.iboHandle;
+			GLES20.glDeleteBuffers(1, tmpHandles, 0);
+		}
+		chunks = null;
+	}
+
+	public int getChunkCount(){
+		return (chunks == null) ? 0 : chunks.length;
+	}
+
+	public boolean isUsing32BitIndices() {
+		return use32BitIndices;
+	}
+
+	/**
+	 * Creates the triangle indices for a grid of vCols x vRows vertices,
+	 * same order as BoundTexturedGrid, but without the vertex count limit.
+	 */
+	public static int[] createGridIndices(int vCols, int vRows){
+		int[] ret = new int[BoundTexturedGrid.getIndexCount(vCols, vRows)];
+		int index = 0;
+		for (int r = 0; r < (vRows-1); r++){
+			for (int c = 0; c < (vCols-1); c++){
+				ret[index++] = (r*vCols) + c;
+				ret[index++] = ((r+1)*vCols) + c;
+				ret[index++] = (r*vCols) + c + 1;
+
+				ret[index++] = (r*vCols) + c + 1;
+				ret[index++] = ((r+1)*vCols) + c;
+				ret[index++] = ((r+1)*vCols) + c + 1;
+			}
+		}
+		return ret;
+	}
+
+	private static class Chunk {
+		int vboHandle = -1;
+		int iboHandle = -1;
+
+		int vertexCount;
+		int indexCount;
+
+		/**
+		 * local vertex index -> vertex index in the mesh. null when not sharded.
+		 */
+		int[] globalVertices;
+		/**
+		 * Only used while building.
+		 */
+		int[] localIndices;
+
+		ByteBuffer staging;
+
+		Chunk trim(){
+			globalVertices = Arrays.copyOf(globalVertices, vertexCount);
+			return this;
+		}
+	}
+}
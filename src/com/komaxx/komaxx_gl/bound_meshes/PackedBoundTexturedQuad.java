@@ -0,0 +1,75 @@
+package com.komaxx.komaxx_gl.bound_meshes;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+import android.opengl.GLES20;
+
+import com.komaxx.komaxx_gl.RenderContext;
+import com.komaxx.komaxx_gl.primitives.TexturedQuad;
+import com.komaxx.komaxx_gl.primitives.VertexLayout;
+
+/**
+ * A BoundTexturedQuad for 2D geometry in VertexLayout.PACKED_TEXTURED_2D: 16 instead
+ * of 28 bytes per vertex, in the Vbo as well as in each upload.</br>
+ * The z coordinate is dropped and uv coords are clamped to [0|1], so no texture
+ * repeating with this quad!</br>
+ * Must be bound to a Vbo with <code>LAYOUT.getStrideBytes()</code> bytes per vertex and
+ * rendered with <code>Vertex.renderTriangles(rp, PackedBoundTexturedQuad.LAYOUT, ...)</code>.
+ *
+ * @author Matthias Schicker
+ */
+public class PackedBoundTexturedQuad extends BoundTexturedQuad {
+	public static final VertexLayout LAYOUT = VertexLayout.PACKED_TEXTURED_2D;
+
+	private final ByteBuffer layoutBuffer = TexturedQuad.allocateQuads(LAYOUT, 1);
+
+
+	public PackedBoundTexturedQuad(){
+		// all vertices go to the layoutBuffer, no float buffer needed
+		super(false);
+		bytesPerVertex = LAYOUT.getStrideBytes();
+	}
+
+	@Override
+	public int render(RenderContext rc, ShortBuffer frameIndexBuffer){
+		if (!visible) return 0;
+
+		boolean vboDirty = false;
+
+		if (alphaDirty){
+			float nowAlpha = alpha.get(rc.frameNanoTime);
+			TexturedQuad.setAlpha(LAYOUT, layoutBuffer, 0, nowAlpha);
+			alphaDirty = !alpha.isDone(rc.frameNanoTime);
+			vboDirty = true;
+		}
+
+		if (alpha.getLast() < 0.05f) return 0;
+
+		if (positionDirty){
+			TexturedQuad.position(LAYOUT, layoutBuffer, 0, position);
+			positionDirty = false;
+			vboDirty = true;
+		}
+
+		if (texCoordsDirty){
+			if (rotateTexCoords)
+				TexturedQuad.setUVMappingRotated(LAYOUT, layoutBuffer, 0, texCoordsUv);
+			else
+				TexturedQuad.setUVMapping(LAYOUT, layoutBuffer, 0, texCoordsUv);
+			texCoordsDirty = false;
+			vboDirty = true;
+		}
+
+		if (vboDirty){
+			layoutBuffer.position(0);
+			GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER,
+					firstByteIndex,
+					layoutBuffer.capacity(),
+					layoutBuffer);
+		}
+
+		frameIndexBuffer.put(indexBuffer);
+		return TexturedQuad.INDICES_COUNT;
+	}
+}
@@ -0,0 +1,86 @@
+package com.komaxx.komaxx_gl.bound_meshes;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+import android.opengl.GLES20;
+
+import com.komaxx.komaxx_gl.RenderContext;
+import com.komaxx.komaxx_gl.primitives.TexturedQuad;
+import com.komaxx.komaxx_gl.primitives.VertexLayout;
+
+/**
+ * A BoundTexturedQuad whose alpha fades are evaluated in the shader: When a new
+ * alpha is set, start and target alpha as well as start and end time are uploaded
+ * once, the rest of the fade costs no upload at all. The alpha is still tracked
+ * on the CPU, so <code>getAlpha</code> and culling of invisible quads keep working.</br>
+ * Must be bound to a Vbo with VertexLayout.ALPHA_ANIMATED_TEXTURED vertices and
+ * rendered with ARenderProgramStore.ANIMATED_ALPHA_TEXTURED, e.g., with
+ * <code>Vertex.renderTriangles(rp, VertexLayout.ALPHA_ANIMATED_TEXTURED, ...)</code>.
+ *
+ * @author Matthias Schicker
+ */
+public class ShaderAlphaBoundTexturedQuad extends BoundTexturedQuad {
+	public static final VertexLayout LAYOUT = VertexLayout.ALPHA_ANIMATED_TEXTURED;
+
+	private final ByteBuffer layoutBuffer = TexturedQuad.allocateQuads(LAYOUT, 1);
+
+
+	public ShaderAlphaBoundTexturedQuad(){
+		// all vertices go to the layoutBuffer, no float buffer needed
+		super(false);
+		bytesPerVertex = LAYOUT.getStrideBytes();
+	}
+
+	@Override
+	public int render(RenderContext rc, ShortBuffer frameIndexBuffer){
+		if (!visible) return 0;
+
+		boolean vboDirty = false;
+
+		if (alphaDirty){
+			// builds the CPU side interpolator, starting now. The shader does the same.
+			float startAlpha = alpha.get(rc.frameNanoTime);
+			float startTime = RenderContext.toShaderTime(rc.frameNanoTime);
+			float endTime = startTime;
+			if (!alpha.isDone(rc.frameNanoTime)){
+				endTime = RenderContext.toShaderTime(rc.frameNanoTime + alpha.getDuration());
+			}
+			TexturedQuad.setAlphaAnimation(LAYOUT, layoutBuffer, 0,
+					startAlpha, alpha.getTarget(), startTime, endTime);
+			alphaDirty = false;
+			vboDirty = true;
+		} else {
+			// only CPU bookkeeping, no upload
+			alpha.get(rc.frameNanoTime);
+		}
+
+		if (alpha.getLast() < 0.05f && alpha.getTarget() < 0.05f) return 0;
+
+		if (positionDirty){
+			TexturedQuad.position(LAYOUT, layoutBuffer, 0, position);
+			positionDirty = false;
+			vboDirty = true;
+		}
+
+		if (texCoordsDirty){
+			if (rotateTexCoords)
+				TexturedQuad.setUVMappingRotated(LAYOUT, layoutBuffer, 0, texCoordsUv);
+			else
+				TexturedQuad.setUVMapping(LAYOUT, layoutBuffer, 0, texCoordsUv);
+			texCoordsDirty = false;
+			vboDirty = true;
+		}
+
+		if (vboDirty){
+			layoutBuffer.position(0);
+			GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER,
+					firstByteIndex,
+					layoutBuffer.capacity(),
+					layoutBuffer);
+		}
+
+		frameIndexBuffer.put(indexBuffer);
+		return TexturedQuad.INDICES_COUNT;
+	}
+}
@@ -0,0 +1,86 @@
+package com.komaxx.komaxx_gl.bound_meshes;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+import android.opengl.GLES20;
+
+import com.komaxx.komaxx_gl.RenderContext;
+import com.komaxx.komaxx_gl.primitives.TexturedQuad;
+import com.komaxx.komaxx_gl.primitives.VertexLayout;
+
+/**
+ * An AnimatedBoundSharedTexturedQuad whose position transitions are evaluated in
+ * the shader, so a transition costs one upload at its start instead of one per frame.
+ * The transition is still tracked on the CPU, so <code>getCurrentPosition</code> and
+ * <code>contains</code> keep working.</br>
+ * Must be bound to a Vbo with VertexLayout.POSITION_ANIMATED_TEXTURED vertices and
+ * rendered with ARenderProgramStore.ANIMATED_POSITION_TEXTURED.
+ *
+ * @author Matthias Schicker
+ */
+public class ShaderAnimatedBoundSharedTexturedQuad extends AnimatedBoundSharedTexturedQuad {
+	public static final VertexLayout LAYOUT = VertexLayout.POSITION_ANIMATED_TEXTURED;
+
+	protected static ByteBuffer layoutBuffer = TexturedQuad.allocateQuads(LAYOUT, 1);
+
+	private long transitionStartNs;
+	private long transitionEndNs;
+
+
+	public ShaderAnimatedBoundSharedTexturedQuad(){
+		bytesPerVertex = LAYOUT.getStrideBytes();
+	}
+
+	@Override
+	public int render(RenderContext rc, ShortBuffer frameIndexBuffer){
+		if (!visible) return 0;
+
+		if (dirty){
+			if (posTransition.getLast() == 0){
+				// a new transition starts in this frame
+				transitionStartNs = rc.frameNanoTime;
+				transitionEndNs = rc.frameNanoTime + posTransition.getDuration();
+			}
+			posTransition.get(rc.frameNanoTime);
+			if (posTransition.isDone(rc.frameNanoTime)){
+				float now = RenderContext.toShaderTime(rc.frameNanoTime);
+				TexturedQuad.positionTransition(LAYOUT, layoutBuffer, 0, targetPosition, targetPosition, now, now);
+			} else {
+				TexturedQuad.positionTransition(LAYOUT, layoutBuffer, 0, startPosition, targetPosition, 
+						RenderContext.toShaderTime(transitionStartNs), RenderContext.toShaderTime(transitionEndNs));
+			}
+
+			float nowAlpha = alpha.get(rc.frameNanoTime);
+			TexturedQuad.setAlpha(LAYOUT, layoutBuffer, 0, nowAlpha);
+			// position transitions need no further uploads, only alpha fades
+			dirty = !alpha.isDone(rc.frameNanoTime);
+
+			if (alpha.getLast() < 0.05f) return 0;
+
+			if (rotateTexCoords)
+				TexturedQuad.setUVMappingRotated(LAYOUT, layoutBuffer, 0, texCoordsUv);
+			else
+				TexturedQuad.setUVMapping(LAYOUT, layoutBuffer, 0, texCoordsUv);
+
+			layoutBuffer.position(0);
+			GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER,
+					firstByteIndex,
+					layoutBuffer.capacity(),
+					layoutBuffer);
+		} else {
+			// only CPU bookkeeping, no upload
+			posTransition.get(rc.frameNanoTime);
+		}
+
+		frameIndexBuffer.put(indexBuffer);
+		return TexturedQuad.INDICES_COUNT;
+	}
+
+	@Override
+	public void shortcut() {
+		super.shortcut();
+		// the shader still runs the old transition otherwise
+		dirty = true;
+	}
+}
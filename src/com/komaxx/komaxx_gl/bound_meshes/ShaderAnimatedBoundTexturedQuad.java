@@ -0,0 +1,99 @@
+package com.komaxx.komaxx_gl.bound_meshes;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+import android.opengl.GLES20;
+
+import com.komaxx.komaxx_gl.RenderContext;
+import com.komaxx.komaxx_gl.primitives.TexturedQuad;
+import com.komaxx.komaxx_gl.primitives.VertexLayout;
+
+/**
+ * An AnimatedBoundTexturedQuad whose position transitions are evaluated in the
+ * shader: Start and target position as well as start and end time are uploaded
+ * once per transition, the frames in between cost no upload. The transition is
+ * still tracked on the CPU, so <code>getPosition</code> and <code>contains</code>
+ * keep working.</br>
+ * Must be bound to a Vbo with VertexLayout.POSITION_ANIMATED_TEXTURED vertices and
+ * rendered with ARenderProgramStore.ANIMATED_POSITION_TEXTURED.
+ *
+ * @author Matthias Schicker
+ */
+public class ShaderAnimatedBoundTexturedQuad extends AnimatedBoundTexturedQuad {
+	public static final VertexLayout LAYOUT = VertexLayout.POSITION_ANIMATED_TEXTURED;
+
+	private final ByteBuffer layoutBuffer = TexturedQuad.allocateQuads(LAYOUT, 1);
+
+	private long transitionStartNs;
+	private long transitionEndNs;
+
+
+	public ShaderAnimatedBoundTexturedQuad(){
+		bytesPerVertex = LAYOUT.getStrideBytes();
+	}
+
+	@Override
+	public int render(RenderContext rc, ShortBuffer frameIndexBuffer){
+		if (!visible) return 0;
+
+		boolean vboDirty = false;
+
+		if (positionDirty){
+			if (posTransition.getLast() == 0){
+				// a new transition starts in this frame
+				transitionStartNs = rc.frameNanoTime;
+				transitionEndNs = rc.frameNanoTime + posTransition.getDuration();
+			}
+			posTransition.get(rc.frameNanoTime);
+			if (posTransition.isDone(rc.frameNanoTime)){
+				float now = RenderContext.toShaderTime(rc.frameNanoTime);
+				TexturedQuad.positionTransition(LAYOUT, layoutBuffer, 0, targetPosition, targetPosition, now, now);
+			} else {
+				TexturedQuad.positionTransition(LAYOUT, layoutBuffer, 0, startPosition, targetPosition, 
+						RenderContext.toShaderTime(transitionStartNs), RenderContext.toShaderTime(transitionEndNs));
+			}
+			positionDirty = false;
+			vboDirty = true;
+		} else {
+			// only CPU bookkeeping, no upload
+			posTransition.get(rc.frameNanoTime);
+		}
+
+		if (alphaDirty){
+			float nowAlpha = alpha.get(rc.frameNanoTime);
+			TexturedQuad.setAlpha(LAYOUT, layoutBuffer, 0, nowAlpha);
+			alphaDirty = !alpha.isDone(rc.frameNanoTime);
+			vboDirty = true;
+		}
+
+		if (alpha.getLast() < 0.1f) return 0;
+
+		if (texCoordsDirty){
+			if (rotateTexCoords)
+				TexturedQuad.setUVMappingRotated(LAYOUT, layoutBuffer, 0, texCoordsUv);
+			else
+				TexturedQuad.setUVMapping(LAYOUT, layoutBuffer, 0, texCoordsUv);
+			texCoordsDirty = false;
+			vboDirty = true;
+		}
+
+		if (vboDirty){
+			layoutBuffer.position(0);
+			GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER,
+					firstByteIndex,
+					layoutBuffer.capacity(),
+					layoutBuffer);
+		}
+
+		frameIndexBuffer.put(indexBuffer);
+		return TexturedQuad.INDICES_COUNT;
+	}
+
+	@Override
+	public void shortcut() {
+		super.shortcut();
+		// the shader still runs the old transition otherwise
+		positionDirty = true;
+	}
+}
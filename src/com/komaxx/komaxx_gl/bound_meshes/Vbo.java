@@ -6,6 +6,7 @@ import android.opengl.GLES20;
 
 import com.komaxx.komaxx_gl.RenderConfig;
 import com.komaxx.komaxx_gl.primitives.Vertex;
+import com.komaxx.komaxx_gl.util.KoLog;
 import com.komaxx.komaxx_gl.util.RenderUtil;
 
 public class Vbo {
@@ -21,6 +22,10 @@ public class Vbo {
 
 
 	public Vbo(int vertexCount, int bytesPerVertex){
+		if (vertexCount > LargeMesh.MAX_SHORT_INDEXED_VERTICES){
+			KoLog.w(this, "Vertices beyond " + LargeMesh.MAX_SHORT_INDEXED_VERTICES 
+					+ " can not be addressed with short indices. Use a LargeMesh!");
+		}
 		this.bytesPerVertex = bytesPerVertex;
 		this.vertexCount = vertexCount;
 	}
@@ -293,4 +293,58 @@ public class ColorQuad {
 		data.put(offset + COLOR_LOWER_LEFT_XYZ_OFFSET + 1, bottom);
 		data.put(offset + COLOR_LOWER_RIGHT_XYZ_OFFSET + 1, bottom);
 	}
+
+
+	/**
+	 * Allocates vertex data for quads in the given (possibly packed) layout. Use the
+	 * layout based writers of this class to fill it.
+	 */
+	public static ByteBuffer allocateColorQuads(VertexLayout layout, int quadsCount) {
+		return layout.allocate(quadsCount * VERTEX_COUNT);
+	}
+
+	// vertex order in the data is ul, ll, lr, ur - the same as in the float based writers
+	public static void positionXY(VertexLayout layout, ByteBuffer data, int firstVertex, GlRect b) {
+		layout.putPositionXY(data, firstVertex, b.left, b.top);
+		layout.putPositionXY(data, firstVertex + 1, b.left, b.bottom);
+		layout.putPositionXY(data, firstVertex + 2, b.right, b.bottom);
+		layout.putPositionXY(data, firstVertex + 3, b.right, b.top);
+	}
+
+	public static void position(VertexLayout layout, ByteBuffer data, int firstVertex, 
+			float ulX, float ulY, float ulZ, float lrX, float lrY, float lrZ){
+		layout.putPosition(data, firstVertex, ulX, ulY, ulZ);
+		layout.putPosition(data, firstVertex + 1, ulX, lrY, ulZ);
+		layout.putPosition(data, firstVertex + 2, lrX, lrY, ulZ);
+		layout.putPosition(data, firstVertex + 3, lrX, ulY, lrZ);
+	}
+
+	/**
+	 * Assigns to all vertices the same color
+	 */
+	public static void color(VertexLayout layout, ByteBuffer data, int firstVertex, float r, float g, float b, float a){
+		for (int i = 0; i < VERTEX_COUNT; i++) layout.putColor(data, firstVertex + i, r, g, b, a);
+	}
+
+	/**
+	 * only changes the alpha of all vertices.
+	 */
+	public static void alpha(VertexLayout layout, ByteBuffer data, int firstVertex, float alpha) {
+		for (int i = 0; i < VERTEX_COUNT; i++) layout.put(data, firstVertex + i, VertexLayout.COLOR, 3, alpha);
+	}
+
+	/**
+	 * Like <code>renderColored</code>, but for client side vertex data in the given layout.
+	 * The indices address the vertices of <code>quadsData</code> from its start,
+	 * <code>firstQuad</code> selects where to start in the index buffer.
+	 */
+	public static boolean renderColored(RenderProgram rp, VertexLayout layout,
+			int firstQuad, int quadsCount, ByteBuffer quadsData, ShortBuffer quadsIndices) {
+		layout.bindAttributes(rp, quadsData, 0);
+
+		quadsIndices.position(firstQuad * INDICES_COUNT);
+		GLES20.glDrawElements(GLES20.GL_TRIANGLES, quadsCount * INDICES_COUNT, GLES20.GL_UNSIGNED_SHORT, quadsIndices);
+		
+		return true;
+	}
 }
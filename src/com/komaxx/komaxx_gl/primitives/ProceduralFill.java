@@ -0,0 +1,145 @@
+package com.komaxx.komaxx_gl.primitives;
+
+import android.graphics.Color;
+import android.opengl.GLES20;
+
+import com.komaxx.komaxx_gl.RenderProgram;
+
+/**
+ * Describes a fill that is computed in the fragment shader (see ProceduralFillRenderProgram)
+ * instead of being sampled from a texture: A solid color, a linear or radial gradient,
+ * or a simple two-color pattern. Takes no texture memory and needs no upload.</br>
+ * Gradient coordinates are relative to the filled quad: (0,0) is the upper left, (1,1)
+ * the lower right corner. Pattern sizes are in the units of the size given to <code>apply</code>:
+ * pixels for FillBackgroundNode, scene units for FillQuadNode.
+ *
+ * @author Matthias Schicker
+ */
+public class ProceduralFill {
+	public static final int MODE_SOLID = 0;
+	public static final int MODE_LINEAR_GRADIENT = 1;
+	public static final int MODE_RADIAL_GRADIENT = 2;
+	public static final int MODE_CHECKERBOARD = 3;
+	public static final int MODE_STRIPES = 4;
+
+	private int mode = MODE_SOLID;
+	private final float[] color = new float[]{ 0, 0, 0, 1 };
+	private final float[] color2 = new float[]{ 0, 0, 0, 1 };
+	private final float[] params = new float[4];
+
+
+	public static ProceduralFill solid(int color){
+		return new ProceduralFill().setSolid(color);
+	}
+
+	/**
+	 * @param fromX,fromY	Where <code>fromColor</code> is fully reached, in quad coordinates.
+	 * @param toX,toY		Where <code>toColor</code> is fully reached, in quad coordinates.
+	 * When equal to <code>from</code>, there is no gradient direction: the whole quad
+	 * gets <code>fromColor</code>.
+	 */
+	public static ProceduralFill linearGradient(int fromColor, int toColor,
+			float fromX, float fromY, float toX, float toY){
+		return new ProceduralFill().setLinearGradient(fromColor, toColor, fromX, fromY, toX, toY);
+	}
+
+	/**
+	 * @param radiusX,radiusY	Where <code>outerColor</code> is reached, in quad coordinates.
+	 */
+	public static ProceduralFill radialGradient(int innerColor, int outerColor,
+			float centerX, float centerY, float radiusX, float radiusY){
+		return new ProceduralFill().setRadialGradient(innerColor, outerColor, centerX, centerY, radiusX, radiusY);
+	}
+
+	public static ProceduralFill checkerboard(int color, int color2, float cellSizePx){
+		return new ProceduralFill().setCheckerboard(color, color2, cellSizePx);
+	}
+
+	/**
+	 * @param angleDegrees	0 for vertical stripes, 90 for horizontal ones.
+	 */
+	public static ProceduralFill stripes(int color, int color2, float stripeWidthPx, float angleDegrees){
+		return new ProceduralFill().setStripes(color, color2, stripeWidthPx, angleDegrees);
+	}
+
+	public ProceduralFill setSolid(int color){
+		mode = MODE_SOLID;
+		toFloats(color, this.color);
+		return this;
+	}
+
+	public ProceduralFill setLinearGradient(int fromColor, int toColor,
+			float fromX, float fromY, float toX, float toY){
+		mode = MODE_LINEAR_GRADIENT;
+		toFloats(fromColor, color);
+		toFloats(toColor, color2);
+		params[0] = fromX;
+		params[1] = fromY;
+		params[2] = toX - fromX;
+		params[3] = toY - fromY;
+		return this;
+	}
+
+	public ProceduralFill setRadialGradient(int innerColor, int outerColor,
+			float centerX, float centerY, float radiusX, float radiusY){
+		mode = MODE_RADIAL_GRADIENT;
+		toFloats(innerColor, color);
+		toFloats(outerColor, color2);
+		params[0] = centerX;
+		params[1] = centerY;
+		params[2] = Math.max(radiusX, 0.0001f);
+		params[3] = Math.max(radiusY, 0.0001f);
+		return this;
+	}
+
+	public ProceduralFill setCheckerboard(int color, int color2, float cellSizePx){
+		mode = MODE_CHECKERBOARD;
+		toFloats(color, this.color);
+		toFloats(color2, this.color2);
+		params[0] = Math.max(1, cellSizePx);
+		return this;
+	}
+
+	public ProceduralFill setStripes(int color, int color2, float stripeWidthPx, float angleDegrees){
+		mode = MODE_STRIPES;
+		toFloats(color, this.color);
+		toFloats(color2, this.color2);
+		params[0] = Math.max(1, stripeWidthPx);
+		double rad = Math.toRadians(angleDegrees);
+		params[1] = (float) Math.cos(rad);
+		params[2] = (float) Math.sin(rad);
+		return this;
+	}
+
+	/**
+	 * true when the fill is not completely opaque, i.e., needs blending.
+	 */
+	public boolean isTranslucent(){
+		return color[3] < 1 || (mode != MODE_SOLID && color2[3] < 1);
+	}
+
+	public int getMode() {
+		return mode;
+	}
+
+	/**
+	 * Sets the uniforms of the currently active ProceduralFillRenderProgram.
+	 *
+	 * @param widthPx,heightPx	Size of the filled quad, for patterns. Pattern sizes are
+	 * in the same units.
+	 */
+	public void apply(RenderProgram rp, float widthPx, float heightPx){
+		GLES20.glUniform1f(rp.uFillMode, mode);
+		GLES20.glUniform4fv(rp.uColor, 1, color, 0);
+		GLES20.glUniform4fv(rp.uColor2, 1, color2, 0);
+		GLES20.glUniform4fv(rp.uFillParams, 1, params, 0);
+		GLES20.glUniform2f(rp.uFillSize, widthPx, heightPx);
+	}
+
+	private static void toFloats(int color, float[] target){
+		target[0] = Color.red(color) / 255f;
+		target[1] = Color.green(color) / 255f;
+		target[2] = Color.blue(color) / 255f;
+		target[3] = Color.alpha(color) / 255f;
+	}
+}
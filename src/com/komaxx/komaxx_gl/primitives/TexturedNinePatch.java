@@ -288,4 +288,80 @@ public class TexturedNinePatch {
 		
 		return true;
 	}
+
+
+	/**
+	 * Allocates vertex data for nine-patches in the given (possibly packed) layout. Use 
+	 * the layout based writers of this class to fill it.
+	 */
+	public static ByteBuffer allocateNinePatches(VertexLayout layout, int count) {
+		return layout.allocate(count * VERTEX_COUNT);
+	}
+
+	public static void position(VertexLayout layout, ByteBuffer data, int firstVertex, 
+			float ulX, float ulY, 
+			float lrX, float lrY, float z,
+			float leftPatchWidth, float topPatchHeight, float rightPatchWidth, float bottomPatchHeight){
+		tmpX[0] = ulX;
+		tmpX[1] = ulX + leftPatchWidth; 
+		tmpX[2] = lrX - rightPatchWidth; 
+		tmpX[3] = lrX;
+		
+		tmpY[0] = ulY; 
+		tmpY[1] = ulY - topPatchHeight; 
+		tmpY[2] = lrY + bottomPatchHeight; 
+		tmpY[3] = lrY;
+		
+		for (int y = 0; y < 4; y++){
+			for (int x = 0; x < 4; x++){
+				layout.putPosition(data, firstVertex++, tmpX[x], tmpY[y], z);
+			}
+		}
+	}
+
+	public static void positionXY(VertexLayout layout, ByteBuffer data, int firstVertex, GlRect position, float patchWidth) {
+		position(layout, data, firstVertex, position.left, position.top, position.right, position.bottom, 0,
+				patchWidth, patchWidth, patchWidth, patchWidth);
+	}
+
+	/**
+	 * Simple mapping method that expects that the patches go exactly to the center of the map.
+	 */
+	public static void setUVMapping(VertexLayout layout, ByteBuffer data, int firstVertex, 
+			float ulU, float ulV, float lrU, float lrV){
+		float halfWidth = ulU + (lrU-ulU)/2;
+		float halfHeight = ulV + (lrV-ulV)/2;
+		tmpU[0] = ulU; tmpU[1] = halfWidth; tmpU[2] = halfWidth; tmpU[3] = lrU;
+		tmpV[0] = ulV; tmpV[1] = halfHeight; tmpV[2] = halfHeight; tmpV[3] = lrV;
+		
+		for (int y = 0; y < 4; y++){
+			for (int x = 0; x < 4; x++){
+				layout.putUv(data, firstVertex++, tmpU[x], tmpV[y]);
+			}
+		}
+	}
+
+	public static void setAlpha(VertexLayout layout, ByteBuffer data, int firstVertex, float alpha){
+		for (int i = 0; i < VERTEX_COUNT; i++) layout.putAlpha(data, firstVertex + i, alpha);
+	}
+
+	public static void setPulsatingIntensity(VertexLayout layout, ByteBuffer data, int firstVertex, float intensity) {
+		for (int i = 0; i < VERTEX_COUNT; i++) layout.putPulseIntensity(data, firstVertex + i, intensity);
+	}
+
+	/**
+	 * Like <code>renderTextured</code>, but for client side vertex data in the given layout.
+	 * The indices address the vertices of <code>patchData</code> from its start,
+	 * <code>firstPatch</code> selects where to start in the index buffer.
+	 */
+	public static boolean renderTextured(RenderProgram rp, VertexLayout layout,
+			int firstPatch, int patchCount, ByteBuffer patchData, ShortBuffer patchIndices) {
+		layout.bindAttributes(rp, patchData, 0);
+
+		patchIndices.position(firstPatch * INDICES_COUNT);
+		GLES20.glDrawElements(GLES20.GL_TRIANGLES, patchCount * INDICES_COUNT,
+				GLES20.GL_UNSIGNED_SHORT, patchIndices);
+		
+		return true;
+	}
 }
@@ -497,6 +497,121 @@ public class TexturedQuad {
 		ret.put((short) (offset + 2));
 	}
 	
+	// vertex indices of the corners, used by the layout based writers
+	private static final int UL_VERTEX = 0;
+	private static final int LL_VERTEX = 1;
+	private static final int LR_VERTEX = 2;
+	private static final int UR_VERTEX = 3;
+
+	/**
+	 * Allocates vertex data for quads in the given (possibly packed) layout. Use the
+	 * layout based writers of this class to fill it.
+	 */
+	public static ByteBuffer allocateQuads(VertexLayout layout, int quadsCount) {
+		return layout.allocate(quadsCount * VERTEX_COUNT);
+	}
+
+	public static void position(VertexLayout layout, ByteBuffer data, int firstVertex, 
+			float ulX, float ulY, float ulZ, float lrX, float lrY, float lrZ){
+		layout.putPosition(data, firstVertex + UL_VERTEX, ulX, ulY, ulZ);
+		layout.putPosition(data, firstVertex + LL_VERTEX, ulX, lrY, ulZ);
+		layout.putPosition(data, firstVertex + LR_VERTEX, lrX, lrY, ulZ);
+		layout.putPosition(data, firstVertex + UR_VERTEX, lrX, ulY, lrZ);
+	}
+
+	public static void position(VertexLayout layout, ByteBuffer data, int firstVertex, GlCube pos){
+		putCorners(layout, data, firstVertex, VertexLayout.POSITION, pos);
+	}
+
+	/**
+	 * Writes a shader evaluated position transition, see VertexLayout.POSITION_ANIMATED_TEXTURED.
+	 * Times are shader times, see RenderContext.toShaderTime.
+	 */
+	public static void positionTransition(VertexLayout layout, ByteBuffer data, int firstVertex, 
+			GlCube start, GlCube target, float startTime, float endTime){
+		putCorners(layout, data, firstVertex, VertexLayout.POSITION, start);
+		putCorners(layout, data, firstVertex, VertexLayout.TARGET_POSITION, target);
+		for (int i = 0; i < VERTEX_COUNT; i++) layout.putTransitionTime(data, firstVertex + i, startTime, endTime);
+	}
+
+	private static void putCorners(VertexLayout layout, ByteBuffer data, int firstVertex, int usage, GlCube pos){
+		putCorner(layout, data, firstVertex + UL_VERTEX, usage, pos.ulf[0], pos.ulf[1], pos.ulf[2]);
+		putCorner(layout, data, firstVertex + LL_VERTEX, usage, pos.ulf[0], pos.lrb[1], pos.ulf[2]);
+		putCorner(layout, data, firstVertex + LR_VERTEX, usage, pos.lrb[0], pos.lrb[1], pos.lrb[2]);
+		putCorner(layout, data, firstVertex + UR_VERTEX, usage, pos.lrb[0], pos.ulf[1], pos.lrb[2]);
+	}
+
+	private static void putCorner(VertexLayout layout, ByteBuffer data, int vertex, int usage, float x, float y, float z){
+		layout.put(data, vertex, usage, 0, x);
+		layout.put(data, vertex, usage, 1, y);
+		layout.put(data, vertex, usage, 2, z);
+	}
+
+	public static void positionXY(VertexLayout layout, ByteBuffer data, int firstVertex, GlRect b) {
+		layout.putPositionXY(data, firstVertex + UL_VERTEX, b.left, b.top);
+		layout.putPositionXY(data, firstVertex + LL_VERTEX, b.left, b.bottom);
+		layout.putPositionXY(data, firstVertex + LR_VERTEX, b.right, b.bottom);
+		layout.putPositionXY(data, firstVertex + UR_VERTEX, b.right, b.top);
+	}
+
+	public static void setUVMapping(VertexLayout layout, ByteBuffer data, int firstVertex, RectF uvCoords) {
+		setUVMapping(layout, data, firstVertex, uvCoords.left, uvCoords.top, uvCoords.right, uvCoords.bottom);
+	}
+
+	public static void setUVMapping(VertexLayout layout, ByteBuffer data, int firstVertex, 
+			float ulU, float ulV, float lrU, float lrV){
+		layout.putUv(data, firstVertex + UL_VERTEX, ulU, ulV);
+		layout.putUv(data, firstVertex + LL_VERTEX, ulU, lrV);
+		layout.putUv(data, firstVertex + LR_VERTEX, lrU, lrV);
+		layout.putUv(data, firstVertex + UR_VERTEX, lrU, ulV);
+	}
+
+	public static void setUVMappingRotated(VertexLayout layout, ByteBuffer data, int firstVertex, RectF b) {
+		layout.putUv(data, firstVertex + UL_VERTEX, b.right, b.top);
+		layout.putUv(data, firstVertex + LL_VERTEX, b.left, b.top);
+		layout.putUv(data, firstVertex + LR_VERTEX, b.left, b.bottom);
+		layout.putUv(data, firstVertex + UR_VERTEX, b.right, b.bottom);
+	}
+
+	/**
+	 * Sets the shader evaluated alpha fade for all vertices, see VertexLayout.ALPHA_ANIMATION.
+	 */
+	public static void setAlphaAnimation(VertexLayout layout, ByteBuffer data, int firstVertex, 
+			float startAlpha, float targetAlpha, float startTime, float endTime){
+		for (int i = 0; i < VERTEX_COUNT; i++){
+			layout.putAlphaAnimation(data, firstVertex + i, startAlpha, targetAlpha, startTime, endTime);
+		}
+	}
+
+	public static void setAlpha(VertexLayout layout, ByteBuffer data, int firstVertex, float alpha){
+		for (int i = 0; i < VERTEX_COUNT; i++) layout.putAlpha(data, firstVertex + i, alpha);
+	}
+
+	public static void setTextureIndex(VertexLayout layout, ByteBuffer data, int firstVertex, int index){
+		for (int i = 0; i < VERTEX_COUNT; i++) layout.putTextureIndex(data, firstVertex + i, index);
+	}
+
+	public static void setPulseIntensity(VertexLayout layout, ByteBuffer data, int firstVertex, float intensity){
+		for (int i = 0; i < VERTEX_COUNT; i++) layout.putPulseIntensity(data, firstVertex + i, intensity);
+	}
+
+	/**
+	 * Like <code>renderTextured</code>, but for client side vertex data in the given layout.
+	 * Same convention as all layout based render methods: The indices address the vertices
+	 * of <code>quadsData</code> from its start, <code>firstQuad</code> selects where to start
+	 * in the index buffer.
+	 */
+	public static boolean renderTextured(RenderProgram rp, VertexLayout layout,
+			int firstQuad, int quadsCount, ByteBuffer quadsData, ShortBuffer quadsIndices) {
+		layout.bindAttributes(rp, quadsData, 0);
+
+		quadsIndices.position(firstQuad * INDICES_COUNT);
+		GLES20.glDrawElements(GLES20.GL_TRIANGLES, quadsCount * INDICES_COUNT,
+				GLES20.GL_UNSIGNED_SHORT, quadsIndices);
+		
+		return true;
+	}
+	
 	private TexturedQuad(){
 		// no instances allowed!
 	}	
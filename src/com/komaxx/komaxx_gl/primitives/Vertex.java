@@ -329,4 +329,17 @@ public class Vertex {
 		indexBuffer.position(firstIndex);
 		GLES20.glDrawElements(GLES20.GL_TRIANGLES, vertexCount, GLES20.GL_UNSIGNED_SHORT, indexBuffer);
 	}
+
+
+	/**
+	 * Draws a vertex VBO (which needs to be already bound!) in the given layout with a 
+	 * user space index buffer. Works for all layouts, packed or not.
+	 */
+	public static void renderTriangles(RenderProgram rp, VertexLayout layout, 
+			int firstIndex, int indexCount, ShortBuffer indexBuffer) {
+		layout.bindAttributes(rp, 0);
+
+		indexBuffer.position(firstIndex);
+		GLES20.glDrawElements(GLES20.GL_TRIANGLES, indexCount, GLES20.GL_UNSIGNED_SHORT, indexBuffer);
+	}
 }
@@ -0,0 +1,328 @@
+package com.komaxx.komaxx_gl.primitives;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import android.opengl.GLES20;
+
+import com.komaxx.komaxx_gl.RenderProgram;
+
+/**
+ * Declarative description of how one vertex is laid out in memory. A layout
+ * knows for each attribute usage (position, uv, alpha, ...) the number of
+ * components, the GL type, whether it is normalized and its byte offset inside
+ * the vertex. With that, it can bind the attributes to the handles of any
+ * RenderProgram and encode values into a (direct) ByteBuffer.</br>
+ * Besides the classic 28 byte float layouts (<code>TEXTURED</code>, <code>COLORED</code>)
+ * there are packed layouts for 2D geometry which need only 12 to 16 bytes per vertex.
+ *
+ * @author Matthias Schicker
+ */
+public class VertexLayout {
+	// attribute usages. Each usage can be in a layout at most once.
+	public static final int POSITION = 0;
+	public static final int UV = 1;
+	public static final int ALPHA = 2;
+	public static final int COLOR = 3;
+	// mutual exclusive, usually share their slot!
+	public static final int TEXTURE_INDEX = 4;
+	public static final int PULSE_INTENSITY = 5;
+	/**
+	 * vec4: start alpha, target alpha, start time, end time. Evaluated in the shader.
+	 */
+	public static final int ALPHA_ANIMATION = 6;
+	/**
+	 * Target position of a position transition, POSITION is the start position.
+	 */
+	public static final int TARGET_POSITION = 7;
+	/**
+	 * vec2: start time, end time of a position transition. Evaluated in the shader.
+	 */
+	public static final int TRANSITION_TIME = 8;
+
+	private static final int USAGE_COUNT = 9;
+
+	/**
+	 * The default textured layout, identical with the Vertex.TEXTURED_* constants.
+	 * 28 bytes: xyz, uv, alpha (floats), texture index / pulse intensity (float)
+	 */
+	public static final VertexLayout TEXTURED = new VertexLayout(Vertex.TEXTURED_VERTEX_DATA_STRIDE_BYTES)
+		.add(POSITION, 3, GLES20.GL_FLOAT, false, 0)
+		.add(UV, 2, GLES20.GL_FLOAT, false, 12)
+		.add(ALPHA, 1, GLES20.GL_FLOAT, false, 20)
+		.add(TEXTURE_INDEX, 1, GLES20.GL_FLOAT, false, 24)
+		.add(PULSE_INTENSITY, 1, GLES20.GL_FLOAT, false, 24);
+
+	/**
+	 * The default colored layout, identical with the Vertex.COLOR_* constants.
+	 * 28 bytes: xyz, rgba (floats)
+	 */
+	public static final VertexLayout COLORED = new VertexLayout(Vertex.COLOR_VERTEX_DATA_STRIDE_BYTES)
+		.add(POSITION, 3, GLES20.GL_FLOAT, false, 0)
+		.add(COLOR, 4, GLES20.GL_FLOAT, false, 12);
+
+	/**
+	 * Packed textured layout for 2D geometry. 16 bytes: xy (floats), uv (normalized
+	 * unsigned shorts), alpha (normalized byte), texture index / pulse intensity (byte), 2 bytes padding.
+	 * NOTE: uv coords are clamped to [0|1], so no texture repeating with this layout!
+	 */
+	public static final VertexLayout PACKED_TEXTURED_2D = new VertexLayout(16)
+		.add(POSITION, 2, GLES20.GL_FLOAT, false, 0)
+		.add(UV, 2, GLES20.GL_UNSIGNED_SHORT, true, 8)
+		.add(ALPHA, 1, GLES20.GL_UNSIGNED_BYTE, true, 12)
+		.add(TEXTURE_INDEX, 1, GLES20.GL_UNSIGNED_BYTE, false, 13)
+		.add(PULSE_INTENSITY, 1, GLES20.GL_UNSIGNED_BYTE, true, 13);
+
+	/**
+	 * Like PACKED_TEXTURED_2D but with xy as (not normalized) shorts, for pixel
+	 * aligned geometry. 12 bytes: xy, uv, alpha, texture index / pulse intensity.
+	 * NOTE: Positions are rounded to full units!
+	 */
+	public static final VertexLayout PACKED_TEXTURED_2D_SHORT = new VertexLayout(12)
+		.add(POSITION, 2, GLES20.GL_SHORT, false, 0)
+		.add(UV, 2, GLES20.GL_UNSIGNED_SHORT, true, 4)
+		.add(ALPHA, 1, GLES20.GL_UNSIGNED_BYTE, true, 8)
+		.add(TEXTURE_INDEX, 1, GLES20.GL_UNSIGNED_BYTE, false, 9)
+		.add(PULSE_INTENSITY, 1, GLES20.GL_UNSIGNED_BYTE, true, 9);
+
+	/**
+	 * Textured layout where the alpha fade is evaluated in the shader (see
+	 * ARenderProgramStore.ANIMATED_ALPHA_TEXTURED). 36 bytes: xyz, uv, alpha animation (floats)
+	 */
+	public static final VertexLayout ALPHA_ANIMATED_TEXTURED = new VertexLayout(36)
+		.add(POSITION, 3, GLES20.GL_FLOAT, false, 0)
+		.add(UV, 2, GLES20.GL_FLOAT, false, 12)
+		.add(ALPHA_ANIMATION, 4, GLES20.GL_FLOAT, false, 20);
+
+	/**
+	 * Textured layout where position transitions are evaluated in the shader (see
+	 * ARenderProgramStore.ANIMATED_POSITION_TEXTURED). 44 bytes: start xyz, target xyz, 
+	 * uv, alpha, transition start and end time (floats)
+	 */
+	public static final VertexLayout POSITION_ANIMATED_TEXTURED = new VertexLayout(44)
+		.add(POSITION, 3, GLES20.GL_FLOAT, false, 0)
+		.add(TARGET_POSITION, 3, GLES20.GL_FLOAT, false, 12)
+		.add(UV, 2, GLES20.GL_FLOAT, false, 24)
+		.add(ALPHA, 1, GLES20.GL_FLOAT, false, 32)
+		.add(TRANSITION_TIME, 2, GLES20.GL_FLOAT, false, 36);
+
+	/**
+	 * Packed colored layout for 2D geometry. 12 bytes: xy (floats), rgba (normalized bytes)
+	 */
+	public static final VertexLayout PACKED_COLORED_2D = new VertexLayout(12)
+		.add(POSITION, 2, GLES20.GL_FLOAT, false, 0)
+		.add(COLOR, 4, GLES20.GL_UNSIGNED_BYTE, true, 8);
+
+
+	private final int strideBytes;
+
+	private final int[] components = new int[USAGE_COUNT];
+	private final int[] types = new int[USAGE_COUNT];
+	private final boolean[] normalized = new boolean[USAGE_COUNT];
+	private final int[] byteOffsets = new int[USAGE_COUNT];
+
+
+	public VertexLayout(int strideBytes){
+		this.strideBytes = strideBytes;
+		for (int i = 0; i < USAGE_COUNT; i++) byteOffsets[i] = -1;
+	}
+
+	/**
+	 * Defines where and how the attribute with the given usage is stored in a vertex.
+	 * @return	this, for chaining
+	 */
+	public VertexLayout add(int usage, int componentCount, int glType, boolean normalize, int byteOffset){
+		if (byteOffset + componentCount * getTypeSizeBytes(glType) > strideBytes){
+			throw new RuntimeException("Attribute " + usage + " does not fit into vertex stride " + strideBytes);
+		}
+		components[usage] = componentCount;
+		types[usage] = glType;
+		normalized[usage] = normalize;
+		byteOffsets[usage] = byteOffset;
+		return this;
+	}
+
+	public int getStrideBytes() {
+		return strideBytes;
+	}
+
+	public boolean has(int usage){
+		return byteOffsets[usage] != -1;
+	}
+
+	public int getComponentCount(int usage){
+		return components[usage];
+	}
+
+	public ByteBuffer allocate(int vertexCount){
+		return ByteBuffer.allocateDirect(vertexCount * strideBytes).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Sets and enables the attribute pointers of the given render program for a
+	 * <b>bound</b> VBO. All attributes that are not in this layout or not used
+	 * by the render program are ignored.
+	 * @param firstVertex		Index of the first vertex in the VBO.
+	 */
+	public void bindAttributes(RenderProgram rp, int firstVertex){
+		int firstByte = firstVertex * strideBytes;
+		for (int usage = 0; usage < USAGE_COUNT; usage++){
+			int handle = getHandle(rp, usage);
+			if (handle == -1 || byteOffsets[usage] == -1) continue;
+
+			GLES20.glVertexAttribPointer(handle, components[usage], types[usage], normalized[usage],
+					strideBytes, firstByte + byteOffsets[usage]);
+			GLES20.glEnableVertexAttribArray(handle);
+		}
+	}
+
+	/**
+	 * Sets and enables the attribute pointers of the given render program for client side vertex data.
+	 * All attributes that are not in this layout or not used by the render program are ignored.
+	 */
+	public void bindAttributes(RenderProgram rp, ByteBuffer data, int firstVertex){
+		int firstByte = firstVertex * strideBytes;
+		for (int usage = 0; usage < USAGE_COUNT; usage++){
+			int handle = getHandle(rp, usage);
+			if (handle == -1 || byteOffsets[usage] == -1) continue;
+
+			data.position(firstByte + byteOffsets[usage]);
+			GLES20.glVertexAttribPointer(handle, components[usage], types[usage], normalized[usage],
+					strideBytes, data);
+			GLES20.glEnableVertexAttribArray(handle);
+		}
+		data.position(0);
+	}
+
+	private static int getHandle(RenderProgram rp, int usage) {
+		switch (usage){
+		case POSITION: return rp.vertexXyzHandle;
+		case UV: return rp.vertexUvHandle;
+		case ALPHA: return rp.vertexAlphaHandle;
+		case COLOR: return rp.vertexColorHandle;
+		case TEXTURE_INDEX: return rp.vertexTextureIndexHandle;
+		// pulse intensity shares its slot with the texture index
+		case PULSE_INTENSITY: return (rp.vertexTextureIndexHandle == -1) ? rp.vertexPulseIntensityHandle : -1;
+		case ALPHA_ANIMATION: return rp.vertexAlphaAnimationHandle;
+		case TARGET_POSITION: return rp.vertexTargetXyzHandle;
+		case TRANSITION_TIME: return rp.vertexTransitionTimeHandle;
+		}
+		return -1;
+	}
+
+	/**
+	 * Encodes one component of an attribute into the vertex data. Components that
+	 * are not part of the layout (e.g., z in 2D layouts) are silently dropped.
+	 */
+	public void put(ByteBuffer data, int vertexIndex, int usage, int component, float value){
+		if (byteOffsets[usage] == -1 || component >= components[usage]) return;
+
+		int type = types[usage];
+		int index = vertexIndex * strideBytes + byteOffsets[usage] + component * getTypeSizeBytes(type);
+
+		if (type == GLES20.GL_FLOAT){
+			data.putFloat(index, value);
+		} else if (type == GLES20.GL_UNSIGNED_SHORT){
+			data.putShort(index, (short)(normalized[usage] ? (int)(clamp(value) * 65535f + 0.5f) : (int)value));
+		} else if (type == GLES20.GL_SHORT){
+			data.putShort(index, (short)(normalized[usage] ? Math.round(value * 32767f) : Math.round(value)));
+		} else if (type == GLES20.GL_UNSIGNED_BYTE){
+			data.put(index, (byte)(normalized[usage] ? (int)(clamp(value) * 255f + 0.5f) : (int)value));
+		} else if (type == GLES20.GL_BYTE){
+			data.put(index, (byte)(normalized[usage] ? Math.round(value * 127f) : Math.round(value)));
+		}
+	}
+
+	/**
+	 * Decodes one component of an attribute, the inverse of <code>put</code>. Components
+	 * that are not part of the layout are read as 0.
+	 */
+	public float get(ByteBuffer data, int vertexIndex, int usage, int component){
+		if (byteOffsets[usage] == -1 || component >= components[usage]) return 0;
+
+		int type = types[usage];
+		int index = vertexIndex * strideBytes + byteOffsets[usage] + component * getTypeSizeBytes(type);
+
+		if (type == GLES20.GL_FLOAT){
+			return data.getFloat(index);
+		} else if (type == GLES20.GL_UNSIGNED_SHORT){
+			int v = data.getShort(index) & 0xFFFF;
+			return normalized[usage] ? (float)v / 65535f : v;
+		} else if (type == GLES20.GL_SHORT){
+			short v = data.getShort(index);
+			return normalized[usage] ? (float)v / 32767f : v;
+		} else if (type == GLES20.GL_UNSIGNED_BYTE){
+			int v = data.get(index) & 0xFF;
+			return normalized[usage] ? (float)v / 255f : v;
+		} else if (type == GLES20.GL_BYTE){
+			byte v = data.get(index);
+			return normalized[usage] ? (float)v / 127f : v;
+		}
+		return 0;
+	}
+
+	public void putPosition(ByteBuffer data, int vertexIndex, float x, float y, float z){
+		put(data, vertexIndex, POSITION, 0, x);
+		put(data, vertexIndex, POSITION, 1, y);
+		put(data, vertexIndex, POSITION, 2, z);
+	}
+
+	public void putPositionXY(ByteBuffer data, int vertexIndex, float x, float y){
+		put(data, vertexIndex, POSITION, 0, x);
+		put(data, vertexIndex, POSITION, 1, y);
+	}
+
+	public void putUv(ByteBuffer data, int vertexIndex, float u, float v){
+		put(data, vertexIndex, UV, 0, u);
+		put(data, vertexIndex, UV, 1, v);
+	}
+
+	public void putAlpha(ByteBuffer data, int vertexIndex, float alpha){
+		put(data, vertexIndex, ALPHA, 0, alpha);
+	}
+
+	/**
+	 * Times are shader times, see RenderContext.toShaderTime.
+	 */
+	public void putAlphaAnimation(ByteBuffer data, int vertexIndex, 
+			float startAlpha, float targetAlpha, float startTime, float endTime){
+		put(data, vertexIndex, ALPHA_ANIMATION, 0, startAlpha);
+		put(data, vertexIndex, ALPHA_ANIMATION, 1, targetAlpha);
+		put(data, vertexIndex, ALPHA_ANIMATION, 2, startTime);
+		put(data, vertexIndex, ALPHA_ANIMATION, 3, endTime);
+	}
+
+	/**
+	 * Times are shader times, see RenderContext.toShaderTime.
+	 */
+	public void putTransitionTime(ByteBuffer data, int vertexIndex, float startTime, float endTime){
+		put(data, vertexIndex, TRANSITION_TIME, 0, startTime);
+		put(data, vertexIndex, TRANSITION_TIME, 1, endTime);
+	}
+
+	public void putColor(ByteBuffer data, int vertexIndex, float r, float g, float b, float a){
+		put(data, vertexIndex, COLOR, 0, r);
+		put(data, vertexIndex, COLOR, 1, g);
+		put(data, vertexIndex, COLOR, 2, b);
+		put(data, vertexIndex, COLOR, 3, a);
+	}
+
+	public void putTextureIndex(ByteBuffer data, int vertexIndex, int textureIndex){
+		put(data, vertexIndex, TEXTURE_INDEX, 0, textureIndex);
+	}
+
+	public void putPulseIntensity(ByteBuffer data, int vertexIndex, float intensity){
+		put(data, vertexIndex, PULSE_INTENSITY, 0, intensity);
+	}
+
+	private static float clamp(float f) {
+		return (f < 0) ? 0 : ((f > 1) ? 1 : f);
+	}
+
+	public static int getTypeSizeBytes(int glType) {
+		if (glType == GLES20.GL_FLOAT) return 4;
+		if (glType == GLES20.GL_SHORT || glType == GLES20.GL_UNSIGNED_SHORT) return 2;
+		if (glType == GLES20.GL_BYTE || glType == GLES20.GL_UNSIGNED_BYTE) return 1;
+		throw new RuntimeException("Unsupported vertex attribute type: " + glType);
+	}
+}
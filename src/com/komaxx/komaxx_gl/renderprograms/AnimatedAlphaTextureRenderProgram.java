@@ -0,0 +1,66 @@
+package com.komaxx.komaxx_gl.renderprograms;
+
+import com.komaxx.komaxx_gl.RenderProgram;
+
+/**
+ * Like the AlphaTextureRenderProgram, but the alpha of each vertex is not a
+ * fixed value but a fade (start alpha, target alpha, start time, end time) that is
+ * evaluated in the vertex shader with the current frame time. So, a fade needs
+ * only one upload at its start instead of one per frame.</br>
+ * The easing is quadratic, matching the default alpha animation of BoundTexturedQuad.
+ * Use with VertexLayout.ALPHA_ANIMATED_TEXTURED.
+ * 
+ * @author Matthias Schicker
+ */
+public class AnimatedAlphaTextureRenderProgram extends RenderProgram {
+	@Override
+	protected void findHandles() {
+		vertexXyzHandle = getAttributeHandle("aPosition");
+		vertexUvHandle = getAttributeHandle("aTextureCoord");
+		vertexAlphaAnimationHandle = getAttributeHandle("aAlphaAnimation");
+		
+		matrixMVPHandle = getUniformHandle("uMVPMatrix");
+		uTime = getUniformHandle("uTime");
+	}
+
+	@Override
+	protected String getVertexShader() {
+		return animatedAlphaVertexShader;
+	}
+
+	@Override
+	protected String getFragmentShader() {
+		return animatedAlphaFragmentShader;
+	}
+
+	private final String animatedAlphaVertexShader = 
+			  "uniform mat4 uMVPMatrix;\n"
+			+ "uniform float uTime;\n"
+			
+			+ "attribute vec4 aPosition;\n"
+			+ "attribute vec2 aTextureCoord;\n"
+			// start alpha, target alpha, start time, end time
+			+ "attribute vec4 aAlphaAnimation;\n"
+			
+			+ "varying vec2 vTextureCoord;\n"
+			+ "varying float vAlpha;\n"
+			
+			+ "void main() {\n"
+			+ "  gl_Position = uMVPMatrix * aPosition;\n"
+			+ "  vTextureCoord = aTextureCoord;\n"
+			+ "  float t = clamp((uTime - aAlphaAnimation.z) / max(aAlphaAnimation.w - aAlphaAnimation.z, 0.0001), 0.0, 1.0);\n"
+			+ "  vAlpha = mix(aAlphaAnimation.x, aAlphaAnimation.y, t*t);\n"
+			+ "}\n";
+
+	private final String animatedAlphaFragmentShader = 
+			  "precision mediump float;\n"
+			
+			+ "uniform sampler2D sTexture;\n"
+			
+			+ "varying vec2 vTextureCoord;\n"
+			+ "varying float vAlpha;\n"
+			
+			+ "void main() {\n"
+			+ "  gl_FragColor = texture2D(sTexture, vTextureCoord) * vAlpha;\n"
+			+ "}\n";
+}
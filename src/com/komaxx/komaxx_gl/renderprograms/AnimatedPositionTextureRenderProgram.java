@@ -0,0 +1,70 @@
+package com.komaxx.komaxx_gl.renderprograms;
+
+import com.komaxx.komaxx_gl.RenderProgram;
+
+/**
+ * Like the AlphaTextureRenderProgram, but each vertex contains a start and a
+ * target position as well as start and end time of the transition between them.
+ * The current position is evaluated in the vertex shader with the frame time, so
+ * a moving quad needs only one upload per transition instead of one per frame.</br>
+ * The easing is quadratic, matching the position animation of AnimatedBoundTexturedQuad.
+ * Use with VertexLayout.POSITION_ANIMATED_TEXTURED.
+ * 
+ * @author Matthias Schicker
+ */
+public class AnimatedPositionTextureRenderProgram extends RenderProgram {
+	@Override
+	protected void findHandles() {
+		vertexXyzHandle = getAttributeHandle("aPosition");
+		vertexTargetXyzHandle = getAttributeHandle("aTargetPosition");
+		vertexTransitionTimeHandle = getAttributeHandle("aTransitionTime");
+		vertexUvHandle = getAttributeHandle("aTextureCoord");
+		vertexAlphaHandle = getAttributeHandle("aAlpha");
+		
+		matrixMVPHandle = getUniformHandle("uMVPMatrix");
+		uTime = getUniformHandle("uTime");
+	}
+
+	@Override
+	protected String getVertexShader() {
+		return animatedPositionVertexShader;
+	}
+
+	@Override
+	protected String getFragmentShader() {
+		return animatedPositionFragmentShader;
+	}
+
+	private final String animatedPositionVertexShader = 
+			  "uniform mat4 uMVPMatrix;\n"
+			+ "uniform float uTime;\n"
+			
+			+ "attribute vec4 aPosition;\n"
+			+ "attribute vec4 aTargetPosition;\n"
+			// start time, end time
+			+ "attribute vec2 aTransitionTime;\n"
+			+ "attribute vec2 aTextureCoord;\n"
+			+ "attribute float aAlpha;\n"
+			
+			+ "varying vec2 vTextureCoord;\n"
+			+ "varying float vAlpha;\n"
+			
+			+ "void main() {\n"
+			+ "  float t = clamp((uTime - aTransitionTime.x) / max(aTransitionTime.y - aTransitionTime.x, 0.0001), 0.0, 1.0);\n"
+			+ "  gl_Position = uMVPMatrix * mix(aPosition, aTargetPosition, t*t);\n"
+			+ "  vTextureCoord = aTextureCoord;\n"
+			+ "  vAlpha = aAlpha;\n"
+			+ "}\n";
+
+	private final String animatedPositionFragmentShader = 
+			  "precision mediump float;\n"
+			
+			+ "uniform sampler2D sTexture;\n"
+			
+			+ "varying vec2 vTextureCoord;\n"
+			+ "varying float vAlpha;\n"
+			
+			+ "void main() {\n"
+			+ "  gl_FragColor = texture2D(sTexture, vTextureCoord) * vAlpha;\n"
+			+ "}\n";
+}
@@ -0,0 +1,94 @@
+package com.komaxx.komaxx_gl.renderprograms;
+
+import com.komaxx.komaxx_gl.RenderProgram;
+
+/**
+ * Computes solid colors, gradients and patterns in the fragment shader, configured by
+ * a ProceduralFill. Takes textured vertices, the uv coords span the filled quad from
+ * (0,0) to (1,1); no texture is sampled.
+ *
+ * @author Matthias Schicker
+ */
+public class ProceduralFillRenderProgram extends RenderProgram {
+	@Override
+	protected void findHandles() {
+		vertexXyzHandle = getAttributeHandle("aPosition");
+		vertexUvHandle = getAttributeHandle("aFillCoord");
+		vertexAlphaHandle = getAttributeHandle("aAlpha");
+
+		matrixMVPHandle = getUniformHandle("uMVPMatrix");
+		uFillMode = getUniformHandle("uFillMode");
+		uColor = getUniformHandle("uColor");
+		uColor2 = getUniformHandle("uColor2");
+		uFillParams = getUniformHandle("uFillParams");
+		uFillSize = getUniformHandle("uFillSize");
+	}
+
+	@Override
+	protected String getVertexShader() {
+		return fillVertexShader;
+	}
+
+	@Override
+	protected String getFragmentShader() {
+		return fillFragmentShader;
+	}
+
+	private final String fillVertexShader =
+			  "uniform mat4 uMVPMatrix;\n"
+
+			+ "attribute vec4 aPosition;\n"
+			+ "attribute vec2 aFillCoord;\n"
+			+ "attribute float aAlpha;\n"
+
+			+ "varying vec2 vFillCoord;\n"
+			+ "varying float vAlpha;\n"
+
+			+ "void main() {\n"
+			+ "  gl_Position = uMVPMatrix * aPosition;\n"
+			+ "  vFillCoord = aFillCoord;\n"
+			+ "  vAlpha = aAlpha;\n"
+			+ "}\n";
+
+	// modes as in ProceduralFill. The uniform branches are coherent for the whole draw call.
+	// Fill coords need highp where available: mediump gradients band and patterns jitter on
+	// large quads. The epsilon keeps degenerate gradients (from == to) from dividing by zero,
+	// they yield t = 0, i.e., the from color. 1e-6 would be flushed to zero in mediump.
+	private final String fillFragmentShader =
+			  "#ifdef GL_FRAGMENT_PRECISION_HIGH\n"
+			+ "precision highp float;\n"
+			+ "#define FILL_EPSILON 1e-6\n"
+			+ "#else\n"
+			+ "precision mediump float;\n"
+			+ "#define FILL_EPSILON 1e-4\n"
+			+ "#endif\n"
+
+			+ "uniform float uFillMode;\n"
+			+ "uniform vec4 uColor;\n"
+			+ "uniform vec4 uColor2;\n"
+			+ "uniform vec4 uFillParams;\n"
+			+ "uniform vec2 uFillSize;\n"
+
+			+ "varying vec2 vFillCoord;\n"
+			+ "varying float vAlpha;\n"
+
+			+ "void main() {\n"
+			+ "  float t = 0.0;\n"
+			+ "  if (uFillMode < 0.5) {\n"
+			+ "    t = 0.0;\n"
+			+ "  } else if (uFillMode < 1.5) {\n"
+			+ "    vec2 d = uFillParams.zw;\n"
+			+ "    t = clamp(dot(vFillCoord - uFillParams.xy, d) / max(dot(d, d), FILL_EPSILON), 0.0, 1.0);\n"
+			+ "  } else if (uFillMode < 2.5) {\n"
+			+ "    t = clamp(length((vFillCoord - uFillParams.xy) / uFillParams.zw), 0.0, 1.0);\n"
+			+ "  } else if (uFillMode < 3.5) {\n"
+			+ "    vec2 cell = floor(vFillCoord * uFillSize / uFillParams.x);\n"
+			+ "    t = mod(cell.x + cell.y, 2.0);\n"
+			+ "  } else {\n"
+			+ "    float p = dot(vFillCoord * uFillSize, uFillParams.yz) / uFillParams.x;\n"
+			+ "    t = mod(floor(p), 2.0);\n"
+			+ "  }\n"
+			+ "  vec4 color = mix(uColor, uColor2, t);\n"
+			+ "  gl_FragColor = vec4(color.rgb, color.a * vAlpha);\n"
+			+ "}\n";
+}
@@ -5,7 +5,10 @@ import android.opengl.GLES20;
 import com.komaxx.komaxx_gl.RenderProgram;
 import com.komaxx.komaxx_gl.renderprograms.AlphaTestRenderProgram;
 import com.komaxx.komaxx_gl.renderprograms.AlphaTextureRenderProgram;
+import com.komaxx.komaxx_gl.renderprograms.AnimatedAlphaTextureRenderProgram;
+import com.komaxx.komaxx_gl.renderprograms.AnimatedPositionTextureRenderProgram;
 import com.komaxx.komaxx_gl.renderprograms.DeppenShader;
+import com.komaxx.komaxx_gl.renderprograms.ProceduralFillRenderProgram;
 import com.komaxx.komaxx_gl.renderprograms.SimpleColorProgram;
 import com.komaxx.komaxx_gl.renderprograms.SimpleTexturedRenderProgram;
 import com.komaxx.komaxx_gl.renderprograms.TextureTestRenderProgram;
@@ -18,6 +21,14 @@ import com.komaxx.komaxx_gl.renderprograms.TextureTestRenderProgram;
  */
 public abstract class ARenderProgramStore {
 	private RenderProgram[] renderPrograms;
+	private RenderProgram[] extendedPrograms;
+	
+	/**
+	 * Inbuilt programs that were added later get indices from this reserved range, so
+	 * they do not move FIRST_CUSTOM_RENDER_PROGRAM: Custom indices stay stable, also when
+	 * hard coded or persisted.
+	 */
+	private static final int EXTENDED_PROGRAMS_BASE = 0x10000;
 	
 	public static final int DEPPEN_SHADER = 0;
 	public static final int SIMPLE_COLORED = 1;
@@ -25,8 +36,16 @@ public abstract class ARenderProgramStore {
 	public static final int ALPHA_TEST = 3;
 	public static final int ALPHA_TEXTURED = 4;
 	public static final int SIMPLE_TEXTURED = 5;
+	public static final int ANIMATED_ALPHA_TEXTURED = EXTENDED_PROGRAMS_BASE;
+	public static final int ANIMATED_POSITION_TEXTURED = EXTENDED_PROGRAMS_BASE + 1;
+	public static final int PROCEDURAL_FILL = EXTENDED_PROGRAMS_BASE + 2;
 	
+	/**
+	 * The number of inbuilt programs below FIRST_CUSTOM_RENDER_PROGRAM. Fixed, new inbuilt
+	 * programs go into the extended range.
+	 */
 	private static final int DEFAULT_PROGRAMS_COUNT = 6;
+	private static final int EXTENDED_PROGRAMS_COUNT = 3;
 	protected static final int FIRST_CUSTOM_RENDER_PROGRAM = DEFAULT_PROGRAMS_COUNT;
 
 	
@@ -35,10 +54,13 @@ public abstract class ARenderProgramStore {
 	}
 
 	public void activateRenderProgram(int renderProgramIndex) {
-		renderPrograms[renderProgramIndex].activate();
+		getRenderProgram(renderProgramIndex).activate();
 	}
 
 	public RenderProgram getRenderProgram(int renderProgramIndex) {
+		if (renderProgramIndex >= EXTENDED_PROGRAMS_BASE){
+			return extendedPrograms[renderProgramIndex - EXTENDED_PROGRAMS_BASE];
+		}
 		return renderPrograms[renderProgramIndex];
 	}
 
@@ -49,12 +71,19 @@ public abstract class ARenderProgramStore {
 		for (int i = renderPrograms.length-1; i >=0; --i){
 			renderPrograms[i].createProgram();
 		}
+		for (int i = extendedPrograms.length-1; i >=0; --i){
+			extendedPrograms[i].createProgram();
+		}
 		GLES20.glReleaseShaderCompiler();
 	}
 	
 	private void buildRenderProgramArray(){
 		int al = getAdditionalProgramsCount();
+		if (DEFAULT_PROGRAMS_COUNT + al > EXTENDED_PROGRAMS_BASE){
+			throw new RuntimeException("Too many custom RenderPrograms: " + al);
+		}
 		renderPrograms = new RenderProgram[DEFAULT_PROGRAMS_COUNT + al];
+		extendedPrograms = new RenderProgram[EXTENDED_PROGRAMS_COUNT];
 		
 		// create the inbuilt RenderPrograms
 		renderPrograms[SIMPLE_COLORED] = new SimpleColorProgram();
@@ -65,6 +94,10 @@ public abstract class ARenderProgramStore {
 		renderPrograms[ALPHA_TEXTURED] = new AlphaTextureRenderProgram();
 		renderPrograms[SIMPLE_TEXTURED] = new SimpleTexturedRenderProgram();
 
+		extendedPrograms[ANIMATED_ALPHA_TEXTURED - EXTENDED_PROGRAMS_BASE] = new AnimatedAlphaTextureRenderProgram();
+		extendedPrograms[ANIMATED_POSITION_TEXTURED - EXTENDED_PROGRAMS_BASE] = new AnimatedPositionTextureRenderProgram();
+		extendedPrograms[PROCEDURAL_FILL - EXTENDED_PROGRAMS_BASE] = new ProceduralFillRenderProgram();
+
 		int l = al + DEFAULT_PROGRAMS_COUNT;
 		for (int i = DEFAULT_PROGRAMS_COUNT; i < l; i++){
 			renderPrograms[i] = buildRenderProgram(i);
@@ -75,7 +108,8 @@ public abstract class ARenderProgramStore {
 	 * Your custom RenderPrograms will be requested in here. <br>
 	 * <b>NOTE:</b> RenderPrograms will be activated and accessed via their
 	 * index in this list. Therefore, you might want to create <i>public static int</i>
-	 * constants for the indices. The first allowed index is FIRST_CUSTOM_RENDER_PROGRAM.
+	 * constants for the indices. The first allowed index is FIRST_CUSTOM_RENDER_PROGRAM,
+	 * which does not change when inbuilt programs are added.
 	 */
 	protected abstract RenderProgram buildRenderProgram(int i);
 
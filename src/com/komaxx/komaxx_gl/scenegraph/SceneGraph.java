@@ -22,6 +22,10 @@ import com.komaxx.komaxx_gl.scenegraph.basic_nodes.RootNode;
 import com.komaxx.komaxx_gl.scenegraph.interaction.InteractionContext;
 import com.komaxx.komaxx_gl.texturing.TextureStore;
 import com.komaxx.komaxx_gl.threading.AOnScreenRunnable;
+import com.komaxx.komaxx_gl.threading.CancellationToken;
+import com.komaxx.komaxx_gl.threading.Job;
+import com.komaxx.komaxx_gl.threading.JobFuture;
+import com.komaxx.komaxx_gl.threading.JobSystem;
 import com.komaxx.komaxx_gl.threading.OnScreenHandlerThread;
 import com.komaxx.komaxx_gl.traversing.NodeFindVisitor;
 import com.komaxx.komaxx_gl.traversing.SceneGraphBroadFirstTraverser;
@@ -42,6 +46,7 @@ public class SceneGraph {
 	private RootNode root = new RootNode();
 
 	private OnScreenHandlerThread offRenderThread;
+	private JobSystem jobSystem;
 	private Handler uiThreadHandler;
 	
 	private ARenderProgramStore renderProgramStore;
@@ -97,6 +102,7 @@ public class SceneGraph {
 		basicInteractionContext.sceneGraph = this;
 		
 		offRenderThread = new OnScreenHandlerThread("OffScreenRendering");
+		jobSystem = new JobSystem();
 		uiThreadHandler = new Handler();
 		
 		frameRenderContext = new RenderContext(renderProgramStore);
@@ -106,6 +112,7 @@ public class SceneGraph {
 		graphAnalysis.onResume();
 		root.attach(this);
 		offRenderThread.onResume();
+		jobSystem.onResume();
 		graphAnalysis.setDirty();
 	}
 	
@@ -113,11 +120,14 @@ public class SceneGraph {
 		graphAnalysis.onPause();
 		root.detach();
 		offRenderThread.onPause();
+		jobSystem.onPause();
 	}
 	
 	public void onDestroy(){
 		graphAnalysis.onDestroy();
 		offRenderThread.onDestroy();
+		jobSystem.onDestroy();
+		basicRenderContext.textureStore.onDestroy();
 	}
 	
 	/**
@@ -254,6 +264,41 @@ public class SceneGraph {
 		offRenderThread.post(toRun);
 	}
 	
+	/**
+	 * Like <code>postToOffRenderThread</code>, but the runnable supersedes the owner's
+	 * previously posted one: If that one did not yet run, it is skipped; if it is running,
+	 * its <code>isCancelled</code> turns true. Runs in the same off-render thread, so
+	 * all posted runnables still run one after another.
+	 * 
+	 * @param ownerKey	e.g., the owner id of a TextureSegment, or the node to render for.
+	 * @return	The runnable's token, cancel it to skip the runnable.
+	 */
+	public CancellationToken postToOffRenderThread(Object ownerKey, AOnScreenRunnable toRun){
+		return offRenderThread.post(ownerKey, toRun);
+	}
+	
+	/**
+	 * Computes the job in the JobSystem's worker pool, its result is committed in the
+	 * GL thread between frames. Any thread.
+	 * 
+	 * @param priority	One of the JobSystem.PRIORITY_ constants.
+	 */
+	public <T> JobFuture<T> submitJob(Job<T> job, int priority){
+		return jobSystem.submit(job, priority);
+	}
+	
+	/**
+	 * Like <code>submitJob</code>, but the job supersedes (cancels) the owner's previous,
+	 * unfinished job.
+	 */
+	public <T> JobFuture<T> submitJob(Object ownerKey, Job<T> job, int priority){
+		return jobSystem.submit(ownerKey, job, priority);
+	}
+	
+	public JobSystem getJobSystem() {
+		return jobSystem;
+	}
+	
 	/**
 	 * Executes the Runnable in the UI thread.
 	 */
@@ -286,6 +331,7 @@ public class SceneGraph {
 		if (renderLinearization == null) return;		// paused/aborted
 		
 		executeIdleRunnables();
+		jobSystem.commit(frameRenderContext);
 		
 		profiler.frameStart();
 		
@@ -298,6 +344,11 @@ public class SceneGraph {
 //		root.dumbRender(frameRenderContext);		// only used for debugging!
 		render(renderLinearization);
 		
+		// updates queued after their texture was bound last, visible from the next frame on
+		frameRenderContext.textureStore.commitUploads(frameRenderContext);
+		profiler.texturesUploaded(TextureStore.getFrameUploads(), TextureStore.getFrameUploadBytes());
+		TextureStore.clearFrameUploadTracking();
+		
 		profiler.frameDone(frameRenderContext);
 	}
 
@@ -441,6 +492,8 @@ public class SceneGraph {
     	GLES20.glDisable(GLES20.GL_CULL_FACE);
     	GLES20.glDisable(GLES20.GL_POLYGON_OFFSET_FILL);
     	GLES20.glDisable(GLES20.GL_STENCIL_TEST);
+		// tightly packed rows for all pixel formats (incl. 16 bit ones with odd widths);
+		// all texture uploads rely on this, do not change it anywhere else
 		GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
    	
 		renderProgramStore.recreate();
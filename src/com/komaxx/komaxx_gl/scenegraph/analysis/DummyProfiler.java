@@ -28,4 +28,7 @@ public class DummyProfiler implements IRenderProfiler {
 	@Override
 	public void pathDone(Path path) {}
 
+	@Override
+	public void texturesUploaded(int uploads, int bytes) {}
+
 }
@@ -31,6 +31,9 @@ public class FpsProfiler implements IRenderProfiler, Runnable {
 	private long max;
 	
 	private float fps;
+	
+	private int uploadCollector;
+	private long uploadBytesCollector;
 
 
 
@@ -61,11 +64,15 @@ public class FpsProfiler implements IRenderProfiler, Runnable {
 			} else {
 				KoLog.i(this, "fps: ", Float.toString(fps), 
 						"    max ", Float.toString((float)SECOND_NS/(float)min),
-						", min: ", Float.toString((float)SECOND_NS/(float)max));
+						", min: ", Float.toString((float)SECOND_NS/(float)max),
+						", uploads/frame: ", Float.toString((float)uploadCollector / (float)frameCollector),
+						", kB/frame: ", Float.toString((float)uploadBytesCollector / 1024f / (float)frameCollector));
 			}
 
 			timeCollector = 0;
 			frameCollector = 0;
+			uploadCollector = 0;
+			uploadBytesCollector = 0;
 			min = Long.MAX_VALUE;
 			max = Long.MIN_VALUE;
 		}
@@ -88,4 +95,10 @@ public class FpsProfiler implements IRenderProfiler, Runnable {
 	@Override
 	public void pathDone(Path path) { /* unused */ }
 
+	@Override
+	public void texturesUploaded(int uploads, int bytes) {
+		uploadCollector += uploads;
+		uploadBytesCollector += bytes;
+	}
+
 }
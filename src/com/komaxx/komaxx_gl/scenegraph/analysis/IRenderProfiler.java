@@ -16,4 +16,9 @@ public interface IRenderProfiler {
 
 	void pathDone(Path path);
 
+	/**
+	 * Texture uploads (glTexImage2D and glTexSubImage2D calls) and uploaded bytes of the frame.
+	 */
+	void texturesUploaded(int uploads, int bytes);
+
 }
\ No newline at end of file
@@ -48,7 +48,8 @@ public class RenderProfiler implements IRenderProfiler  {
 		
 		KoLog.i(this, "FrameTime: " 
 				+  referenceDifference + "% , InterFrameTime: " + currentReport.interFrameTime
-				+  ", global runnables time: " +currentReport.globalRunnablesTime);
+				+  ", global runnables time: " +currentReport.globalRunnablesTime
+				+  ", uploads: " + currentReport.uploads + " (" + currentReport.uploadBytes + " bytes)");
 		
 		lastFrameReport = currentReport;
 		currentReport = null;
@@ -92,14 +93,24 @@ public class RenderProfiler implements IRenderProfiler  {
 		path.updateRenderTime(pathTime);
 	}
 	
+	@Override
+	public void texturesUploaded(int uploads, int bytes) {
+		currentReport.uploads = uploads;
+		currentReport.uploadBytes = bytes;
+	}
+	
 	private static class ProfilerReport {
 		public long frameEndTime;
 		public long interFrameTime;
 		public long frameStartTime;
 		public long globalRunnablesTime;
+		public int uploads;
+		public int uploadBytes;
 		
 		public ProfilerReport reset() {
 			globalRunnablesTime = 0;
+			uploads = 0;
+			uploadBytes = 0;
 			return this;
 		}
 	}
@@ -0,0 +1,87 @@
+package com.komaxx.komaxx_gl.scenegraph.basic_nodes;
+
+import java.nio.ShortBuffer;
+
+import com.komaxx.komaxx_gl.RenderContext;
+import com.komaxx.komaxx_gl.bound_meshes.PackedBoundTexturedQuad;
+import com.komaxx.komaxx_gl.bound_meshes.Vbo;
+import com.komaxx.komaxx_gl.primitives.ProceduralFill;
+import com.komaxx.komaxx_gl.primitives.TexturedQuad;
+import com.komaxx.komaxx_gl.primitives.Vertex;
+import com.komaxx.komaxx_gl.scenegraph.ARenderProgramStore;
+import com.komaxx.komaxx_gl.scenegraph.Node;
+
+/**
+ * Paints a screen filling quad with a ProceduralFill (solid color, gradient, pattern).
+ * Replaces Tiled- and StretchBackgroundNodes for backgrounds that need no image:
+ * No texture memory, no upload. Pattern sizes are in pixels.
+ *
+ * @author Matthias Schicker
+ */
+public class FillBackgroundNode extends Node {
+	private ProceduralFill fill;
+
+	private ShortBuffer quadsIndices;
+	private PackedBoundTexturedQuad quad;
+
+	private float widthPx = 1;
+	private float heightPx = 1;
+
+
+	public FillBackgroundNode(ProceduralFill fill, int zLevel) {
+		this.draws = true;
+		this.renderProgramIndex = ARenderProgramStore.PROCEDURAL_FILL;
+		this.depthTest = DEACTIVATE;
+		this.transforms = false;
+		this.useVboPainting = true;
+		this.zLevel = zLevel;
+
+		this.vbo = new Vbo(TexturedQuad.VERTEX_COUNT,
+				PackedBoundTexturedQuad.LAYOUT.getStrideBytes());
+		this.quadsIndices = TexturedQuad.allocateQuadIndices(1);
+		this.quad = new PackedBoundTexturedQuad();
+		quad.bindToVbo(vbo);
+		quad.setTexCoordsUv(0, 0, 1, 1, false);
+
+		setFill(fill);
+	}
+
+	/**
+	 * The fill may also be changed directly, call this again when its
+	 * translucency changed.
+	 */
+	public void setFill(ProceduralFill fill) {
+		this.fill = fill;
+		this.blending = fill.isTranslucent() ? ACTIVATE : DEACTIVATE;
+	}
+
+	public ProceduralFill getFill() {
+		return fill;
+	}
+
+	@Override
+	protected void onSurfaceCreated(RenderContext renderContext) {
+		// the vbo was recreated, uv coords and alpha must be uploaded again
+		quad.setTexCoordsUv(0, 0, 1, 1, false);
+		quad.setAlphaDirect(quad.getAlpha());
+	}
+
+	@Override
+	public void onSurfaceChanged(RenderContext renderContext) {
+		widthPx = renderContext.surfaceWidth;
+		heightPx = renderContext.surfaceHeight;
+
+		renderContext.bindVBO(vbo.getHandle());
+		quad.positionXY(0, 0, widthPx, -heightPx);
+		quadsIndices.position(0);
+		quad.render(renderContext, quadsIndices);
+	}
+
+	@Override
+	public boolean onRender(RenderContext renderContext) {
+		fill.apply(renderContext.currentRenderProgram, widthPx, heightPx);
+		Vertex.renderTriangles(renderContext.currentRenderProgram, PackedBoundTexturedQuad.LAYOUT, 0, 6, quadsIndices);
+
+		return true;
+	}
+}
@@ -0,0 +1,96 @@
+package com.komaxx.komaxx_gl.scenegraph.basic_nodes;
+
+import java.nio.ShortBuffer;
+
+import com.komaxx.komaxx_gl.RenderContext;
+import com.komaxx.komaxx_gl.bound_meshes.PackedBoundTexturedQuad;
+import com.komaxx.komaxx_gl.bound_meshes.Vbo;
+import com.komaxx.komaxx_gl.primitives.ProceduralFill;
+import com.komaxx.komaxx_gl.primitives.TexturedQuad;
+import com.komaxx.komaxx_gl.primitives.Vertex;
+import com.komaxx.komaxx_gl.scenegraph.ARenderProgramStore;
+import com.komaxx.komaxx_gl.scenegraph.Node;
+
+/**
+ * Paints one quad in scene coordinates with a ProceduralFill, e.g., as the background of
+ * a panel. Pattern sizes are in scene units (pixels unless the camera zooms). Can be faded like BoundTexturedQuads.
+ *
+ * @author Matthias Schicker
+ */
+public class FillQuadNode extends Node {
+	private ProceduralFill fill;
+
+	private ShortBuffer quadsIndices;
+	private PackedBoundTexturedQuad quad;
+
+	private float left, top, right, bottom;
+
+
+	public FillQuadNode(ProceduralFill fill) {
+		this.draws = true;
+		this.renderProgramIndex = ARenderProgramStore.PROCEDURAL_FILL;
+		this.depthTest = DONT_CARE;
+		this.transforms = false;
+		this.useVboPainting = true;
+
+		this.vbo = new Vbo(TexturedQuad.VERTEX_COUNT,
+				PackedBoundTexturedQuad.LAYOUT.getStrideBytes());
+		this.quadsIndices = TexturedQuad.allocateQuadIndices(1);
+		this.quad = new PackedBoundTexturedQuad();
+		quad.bindToVbo(vbo);
+		quad.setTexCoordsUv(0, 0, 1, 1, false);
+
+		setFill(fill);
+	}
+
+	/**
+	 * The fill may also be changed directly, call this again when its
+	 * translucency changed.
+	 */
+	public void setFill(ProceduralFill fill) {
+		this.fill = fill;
+		updateBlending();
+	}
+
+	public ProceduralFill getFill() {
+		return fill;
+	}
+
+	/**
+	 * Scene coordinates, y pointing up as everywhere in the scene graph.
+	 */
+	public void positionXY(float left, float top, float right, float bottom){
+		this.left = left;
+		this.top = top;
+		this.right = right;
+		this.bottom = bottom;
+		quad.positionXY(left, top, right, bottom);
+	}
+
+	public void setAlpha(float alpha){
+		quad.setAlpha(alpha);
+		updateBlending();
+	}
+
+	private void updateBlending() {
+		blending = (fill.isTranslucent() || quad.getAlpha() < 1) ? ACTIVATE : DEACTIVATE;
+	}
+
+	@Override
+	protected void onSurfaceCreated(RenderContext renderContext) {
+		// the vbo was recreated, everything must be uploaded again
+		quad.positionXY(left, top, right, bottom);
+		quad.setTexCoordsUv(0, 0, 1, 1, false);
+		quad.setAlphaDirect(quad.getAlpha());
+	}
+
+	@Override
+	public boolean onRender(RenderContext renderContext) {
+		quadsIndices.position(0);
+		if (quad.render(renderContext, quadsIndices) == 0) return true;
+
+		fill.apply(renderContext.currentRenderProgram, Math.abs(right - left), Math.abs(top - bottom));
+		Vertex.renderTriangles(renderContext.currentRenderProgram, PackedBoundTexturedQuad.LAYOUT, 0, 6, quadsIndices);
+		return true;
+	}
+}
@@ -357,6 +357,28 @@ public class ListCameraNode extends Node implements ICameraInfoProvider {
 		result[1] = - (pixelXY[1] - eyePoint[1]);
 	}
 	
+	/**
+	 * The vertical distance of the given world y range (top > bottom) from the currently visible area,
+	 * 0 when (partly) visible. <b>NOTE:</b> Larger means farther away; as eviction priority,
+	 * use <code>getEvictionPriority</code>.
+	 */
+	public float getDistanceToVisibleArea(float top, float bottom){
+		float visibleTop = eyePoint[1];
+		float visibleBottom = eyePoint[1] - surfaceHeight;
+		if (bottom > visibleTop) return bottom - visibleTop;
+		if (top < visibleBottom) return visibleBottom - top;
+		return 0;
+	}
+	
+	/**
+	 * Ready to use as IOwnerPriorityProvider priority for segments of list items (see
+	 * PriorityEvictionPolicy): The nearer the y range is to the visible area, the higher,
+	 * so items far away are evicted first.
+	 */
+	public float getEvictionPriority(float top, float bottom){
+		return -getDistanceToVisibleArea(top, bottom);
+	}
+	
 	public void centerOnY(SceneGraphContext sc, float y) {
 		long frameTime = sc.frameNanoTime;
     	flingInterpolatorY = 
@@ -3,17 +3,18 @@ package com.komaxx.komaxx_gl.scenegraph.basic_nodes;
 import java.nio.ShortBuffer;
 
 import android.graphics.Bitmap;
-import android.graphics.drawable.BitmapDrawable;
 
 import com.komaxx.komaxx_gl.RenderContext;
-import com.komaxx.komaxx_gl.bound_meshes.BoundTexturedQuad;
+import com.komaxx.komaxx_gl.bound_meshes.PackedBoundTexturedQuad;
 import com.komaxx.komaxx_gl.bound_meshes.Vbo;
 import com.komaxx.komaxx_gl.primitives.TexturedQuad;
 import com.komaxx.komaxx_gl.primitives.Vertex;
 import com.komaxx.komaxx_gl.scenegraph.ARenderProgramStore;
 import com.komaxx.komaxx_gl.scenegraph.Node;
+import com.komaxx.komaxx_gl.texturing.BitmapDecoder;
 import com.komaxx.komaxx_gl.texturing.Texture;
 import com.komaxx.komaxx_gl.texturing.TextureConfig;
+import com.komaxx.komaxx_gl.texturing.TextureStore;
 
 /**
  * Just paints a screen filling quad.
@@ -26,7 +27,7 @@ public class StretchBackgroundNode extends Node {
 	private ShortBuffer quadsIndices;
 
 	private Texture texture;
-	private BoundTexturedQuad quad;
+	private PackedBoundTexturedQuad quad;
 
 
 	/**
@@ -42,9 +43,9 @@ public class StretchBackgroundNode extends Node {
 		this.useVboPainting = true;
 
 		this.vbo = new Vbo(TexturedQuad.VERTEX_COUNT,
-				Vertex.TEXTURED_VERTEX_DATA_STRIDE_BYTES);
+				PackedBoundTexturedQuad.LAYOUT.getStrideBytes());
 		this.quadsIndices = TexturedQuad.allocateQuadIndices(1);
-		this.quad = new BoundTexturedQuad();
+		this.quad = new PackedBoundTexturedQuad();
 		quad.bindToVbo(vbo);
 	}
 
@@ -54,7 +55,9 @@ public class StretchBackgroundNode extends Node {
 	}
 
 	private void recreateTexture(RenderContext renderContext) {
-		Bitmap updateBmp = ((BitmapDrawable)renderContext.resources.getDrawable(drawableId)).getBitmap();
+		// the image is stretched over the surface anyway, no need for more pixels
+		Bitmap updateBmp = TextureStore.getDrawableBitmap(renderContext.resources, drawableId, 
+				renderContext.surfaceWidth, renderContext.surfaceHeight);
 
 		int minSize = Math.max(updateBmp.getWidth(), updateBmp.getHeight());
 		
@@ -77,6 +80,7 @@ public class StretchBackgroundNode extends Node {
 		quad.setTexCoordsUv(0, 0, 
 				(float)updateBmp.getWidth()/(float)texture.getWidth(), 
 				(float)updateBmp.getHeight()/(float)texture.getHeight(), false);
+		BitmapDecoder.recycle(updateBmp);
 		
 		onSurfaceChanged(renderContext);
 	}
@@ -94,7 +98,7 @@ public class StretchBackgroundNode extends Node {
 	
 	@Override
 	public boolean onRender(RenderContext renderContext) {
-		Vertex.renderTexturedTriangles(renderContext.currentRenderProgram, 0, 6, quadsIndices);
+		Vertex.renderTriangles(renderContext.currentRenderProgram, PackedBoundTexturedQuad.LAYOUT, 0, 6, quadsIndices);
 
 		return true;
 	}
@@ -3,7 +3,6 @@ package com.komaxx.komaxx_gl.scenegraph.basic_nodes;
 import java.nio.ShortBuffer;
 
 import android.graphics.Bitmap;
-import android.graphics.drawable.BitmapDrawable;
 
 import com.komaxx.komaxx_gl.RenderContext;
 import com.komaxx.komaxx_gl.bound_meshes.BoundTexturedQuad;
@@ -12,8 +11,10 @@ import com.komaxx.komaxx_gl.primitives.TexturedQuad;
 import com.komaxx.komaxx_gl.primitives.Vertex;
 import com.komaxx.komaxx_gl.scenegraph.ARenderProgramStore;
 import com.komaxx.komaxx_gl.scenegraph.Node;
+import com.komaxx.komaxx_gl.texturing.BitmapDecoder;
 import com.komaxx.komaxx_gl.texturing.Texture;
 import com.komaxx.komaxx_gl.texturing.TextureConfig;
+import com.komaxx.komaxx_gl.texturing.TextureStore;
 
 /**
  * Just paints a screen filling quad.
@@ -79,11 +80,14 @@ public class TiledBackgroundNode extends Node {
 		int w = renderContext.surfaceWidth;
 		int h = renderContext.surfaceHeight;
 		
-		Bitmap updateBmp = ((BitmapDrawable)renderContext.resources.getDrawable(drawableId)).getBitmap();
-		updateBmp = Bitmap.createScaledBitmap(updateBmp, size, size, true);
+		// decode only about as many pixels as the tile shows
+		Bitmap decoded = TextureStore.getDrawableBitmap(renderContext.resources, drawableId, size, size);
+		Bitmap updateBmp = Bitmap.createScaledBitmap(decoded, size, size, true);
 
 		renderContext.bindTexture(textureHandle);
 		texture.update(updateBmp, 0, 0);
+		if (updateBmp != decoded) updateBmp.recycle();
+		BitmapDecoder.recycle(decoded);
 
 		renderContext.bindVBO(vbo.getHandle());
 		quad.positionXY(0, 0, w, -h);
@@ -0,0 +1,651 @@
+package com.komaxx.komaxx_gl.scenegraph.basic_nodes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.opengl.Matrix;
+import android.util.SparseArray;
+
+import com.komaxx.komaxx_gl.RenderConfig;
+import com.komaxx.komaxx_gl.RenderContext;
+import com.komaxx.komaxx_gl.primitives.TexturedQuad;
+import com.komaxx.komaxx_gl.primitives.Vertex;
+import com.komaxx.komaxx_gl.scenegraph.ARenderProgramStore;
+import com.komaxx.komaxx_gl.scenegraph.IGlRunnable;
+import com.komaxx.komaxx_gl.scenegraph.Node;
+import com.komaxx.komaxx_gl.scenegraph.SceneGraph;
+import com.komaxx.komaxx_gl.texturing.PriorityEvictionPolicy;
+import com.komaxx.komaxx_gl.texturing.Texture;
+import com.komaxx.komaxx_gl.texturing.TextureSegment;
+import com.komaxx.komaxx_gl.texturing.TextureStrip;
+import com.komaxx.komaxx_gl.texturing.TextureStore;
+import com.komaxx.komaxx_gl.texturing.TextureStripConfig;
+import com.komaxx.komaxx_gl.util.KoLog;
+
+/**
+ * Shows an image of any size (e.g., a map or a scanned document) without ever loading it
+ * completely: The image is split into square tiles on a pyramid of resolution levels
+ * (level n is subsampled by 2^n). Only the tiles intersecting the visible area are decoded
+ * - with a BitmapRegionDecoder in the TextureStore's background threads - at the level
+ * that fits the current zoom. Tiles live in segments of a few TextureStrips (at most
+ * 2048x2048 each); when these are full, the tiles farthest from the visible area are
+ * evicted. Until a tile is loaded, the best coarser tile is shown in its place.</br>
+ * The image is placed with its upper left corner at <code>left/top</code> in world
+ * coordinates, one image pixel covering <code>scale</code> world units.
+ *
+ * @author Matthias Schicker
+ */
+public class TiledImageNode extends Node implements PriorityEvictionPolicy.IOwnerPriorityProvider {
+	private static final int MAX_STRIP_SIZE = 2048;
+	private static final int MAX_DECODES_IN_FLIGHT = 2;
+	/**
+	 * Tiles that were not needed for this many frames are forgotten (when not in a segment).
+	 */
+	private static final int FORGET_AFTER_FRAMES = 120;
+
+	private final String path;
+	private final int rawResourceId;
+	private final int tileSize;
+	private final boolean alphaChannel;
+
+	private Resources resources;
+	private volatile BitmapRegionDecoder decoder;
+	private boolean opening = false;
+	private int imageWidth;
+	private int imageHeight;
+	private int levelCount;
+
+	private float left = 0;
+	private float top = 0;
+	private float scale = 1;
+
+	private TextureStrip[] strips = new TextureStrip[0];
+	private int nextStrip = 0;
+
+	private final HashMap<Long, Tile> tiles = new HashMap<Long, Tile>();
+	private final SparseArray<Tile> tilesByOwner = new SparseArray<Tile>();
+	private final ArrayList<Tile> missingTiles = new ArrayList<Tile>();
+	private final AtomicInteger decodesInFlight = new AtomicInteger();
+	private volatile int generation = 0;
+	private volatile int currentFrame = 0;
+
+	/**
+	 * Visible part of the image in level 0 pixels, updated each frame.
+	 */
+	private final RectF visibleImageRect = new RectF();
+	private int currentLevel = 0;
+
+	private FloatBuffer vertexData;
+	private ShortBuffer quadIndices;
+	private int maxQuads;
+	private ArrayList<Tile>[] quadTiles;
+	private ArrayList<RectF>[] quadSourceRects;
+	private final ArrayList<RectF> rectPool = new ArrayList<RectF>();
+	private int usedRects = 0;
+
+	private final float[] invertedMvp = new float[16];
+	private final float[] tmpIn = new float[4];
+	private final float[] tmpNear = new float[4];
+	private final float[] tmpFar = new float[4];
+
+
+	/**
+	 * @param path		An image file (JPEG or PNG).
+	 * @param tileSize	Edge length of the tiles in pixels, power of two. 256 is a good start.
+	 * @param alphaChannel	false for opaque images, which then take less memory when
+	 * <code>Texture.highResolutionColor</code> is off.
+	 */
+	public TiledImageNode(String path, int tileSize, boolean alphaChannel) {
+		this(path, 0, tileSize, alphaChannel);
+	}
+
+	/**
+	 * @param rawResourceId	An image (JPEG or PNG) in res/raw.
+	 */
+	public TiledImageNode(int rawResourceId, int tileSize, boolean alphaChannel) {
+		this(null, rawResourceId, tileSize, alphaChannel);
+	}
+
+	@SuppressWarnings("unchecked")
+	private TiledImageNode(String path, int rawResourceId, int tileSize, boolean alphaChannel) {
+		if (Integer.bitCount(tileSize) != 1 || tileSize > MAX_STRIP_SIZE){
+			throw new RuntimeException("Tile size must be a power of two <= " + MAX_STRIP_SIZE);
+		}
+		this.path = path;
+		this.rawResourceId = rawResourceId;
+		this.tileSize = tileSize;
+		this.alphaChannel = alphaChannel;
+
+		this.draws = true;
+		this.renderProgramIndex = ARenderProgramStore.ALPHA_TEXTURED;
+		this.blending = alphaChannel ? ACTIVATE : DEACTIVATE;
+		this.depthTest = DEACTIVATE;
+		this.transforms = false;
+		this.useVboPainting = false;
+
+		quadTiles = new ArrayList[0];
+		quadSourceRects = new ArrayList[0];
+	}
+
+	/**
+	 * Places the upper left corner of the image at the world coords; one image pixel
+	 * covers <code>scale</code> world units.
+	 */
+	public void setPosition(float left, float top, float scale){
+		this.left = left;
+		this.top = top;
+		this.scale = scale;
+	}
+
+	@Override
+	protected void onSurfaceCreated(RenderContext renderContext) {
+		resources = renderContext.resources;
+		// all textures are gone, tiles still decoding belong to the old surface
+		generation++;
+		tiles.clear();
+		tilesByOwner.clear();
+		strips = new TextureStrip[0];
+	}
+
+	@Override
+	public void onSurfaceChanged(RenderContext renderContext) {
+		releaseStrips(renderContext);
+		createStrips(renderContext);
+	}
+
+	/**
+	 * Enough segments for the visible tiles at the worst zoom within a level, plus a
+	 * quarter for coarser fallbacks and tiles that are about to scroll in.
+	 */
+	@SuppressWarnings("unchecked")
+	private void createStrips(RenderContext rc) {
+		// a level is chosen such that tiles show with 0.7 to 1.4 times their size
+		float minTileOnScreen = tileSize * 0.7f;
+		int columns = (int) Math.ceil(rc.surfaceWidth / minTileOnScreen) + 1;
+		int rows = (int) Math.ceil(rc.surfaceHeight / minTileOnScreen) + 1;
+		int visibleTiles = columns * rows;
+		int neededSegments = visibleTiles + visibleTiles / 4;
+
+		int segmentsPerStrip = (MAX_STRIP_SIZE / tileSize) * (MAX_STRIP_SIZE / tileSize);
+		int stripCount = (neededSegments + segmentsPerStrip - 1) / segmentsPerStrip;
+		strips = new TextureStrip[stripCount];
+		PriorityEvictionPolicy evictionPolicy = new PriorityEvictionPolicy(this, 8);
+		for (int i = 0; i < stripCount; i++){
+			TextureStripConfig config = new TextureStripConfig();
+			config.alphaChannel = alphaChannel;
+			config.mipMapped = false;
+			config.segmentWidth = tileSize;
+			config.segmentHeight = tileSize;
+			config.minSegmentCount = Math.min(segmentsPerStrip, neededSegments - i * segmentsPerStrip);
+			config.proportionsType = TextureStripConfig.PROPORTIONS_QUADRATIC;
+			config.basicColor = 0;
+
+			strips[i] = rc.textureStore.getTextureStrip(config);
+			strips[i].create(rc);
+			strips[i].setEvictionPolicy(evictionPolicy);
+		}
+
+		maxQuads = visibleTiles;
+		vertexData = TexturedQuad.allocateQuads(maxQuads);
+		quadIndices = TexturedQuad.allocateQuadIndices(maxQuads);
+		quadTiles = new ArrayList[stripCount];
+		quadSourceRects = new ArrayList[stripCount];
+		for (int i = 0; i < stripCount; i++){
+			quadTiles[i] = new ArrayList<Tile>();
+			quadSourceRects[i] = new ArrayList<RectF>();
+		}
+	}
+
+	private void releaseStrips(RenderContext rc) {
+		for (TextureStrip strip : strips) rc.textureStore.releaseTextureStrip(strip);
+		strips = new TextureStrip[0];
+		tiles.clear();
+		tilesByOwner.clear();
+		generation++;
+	}
+
+	@Override
+	public boolean onRender(RenderContext rc) {
+		currentFrame = rc.frame;
+		if (decoder == null){
+			openDecoder(rc);
+			return true;
+		}
+		if (strips.length == 0 || !computeVisibleArea(rc)) return true;
+
+		collectQuads(rc);
+		requestMissingTiles(rc);
+		renderQuads(rc);
+
+		if (rc.frame % FORGET_AFTER_FRAMES == 0) forgetUnusedTiles(rc.frame);
+		return true;
+	}
+
+	// //////////////////////////////////////////////////////////////////
+	// visibility
+
+	/**
+	 * Intersects the view frustum with the z=0 plane. Returns false when the image
+	 * is not visible at all.
+	 */
+	private boolean computeVisibleArea(RenderContext rc) {
+		if (!Matrix.invertM(invertedMvp, 0, rc.getMvpMatrix(), 0)) return false;
+
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+		for (int corner = 0; corner < 4; corner++){
+			float ndcX = (corner & 1) == 0 ? -1 : 1;
+			float ndcY = (corner & 2) == 0 ? -1 : 1;
+			unproject(ndcX, ndcY, -1, tmpNear);
+			unproject(ndcX, ndcY, 1, tmpFar);
+
+			float dz = tmpFar[2] - tmpNear[2];
+			float t = (Math.abs(dz) < 0.00001f) ? 0 : -tmpNear[2] / dz;
+			float x = tmpNear[0] + t * (tmpFar[0] - tmpNear[0]);
+			float y = tmpNear[1] + t * (tmpFar[1] - tmpNear[1]);
+			minX = Math.min(minX, x);
+			maxX = Math.max(maxX, x);
+			minY = Math.min(minY, y);
+			maxY = Math.max(maxY, y);
+		}
+
+		// world -> image pixels (image y points down)
+		visibleImageRect.set(
+				(minX - left) / scale, (top - maxY) / scale,
+				(maxX - left) / scale, (top - minY) / scale);
+		float screenPxPerImagePx = rc.surfaceWidth / Math.max(0.0001f, visibleImageRect.width());
+		if (!visibleImageRect.intersect(0, 0, imageWidth, imageHeight)) return false;
+
+		// round(log2(1/screenPxPerImagePx)): tiles show with 0.7 to 1.4 times their size
+		int level = (int) Math.floor(Math.log(1 / screenPxPerImagePx) / Math.log(2) + 0.5);
+		currentLevel = Math.max(0, Math.min(levelCount - 1, level));
+		return true;
+	}
+
+	private void unproject(float ndcX, float ndcY, float ndcZ, float[] result){
+		tmpIn[0] = ndcX;
+		tmpIn[1] = ndcY;
+		tmpIn[2] = ndcZ;
+		tmpIn[3] = 1;
+		Matrix.multiplyMV(result, 0, invertedMvp, 0, tmpIn, 0);
+		float w = (result[3] == 0) ? 0.00001f : result[3];
+		result[0] /= w;
+		result[1] /= w;
+		result[2] /= w;
+	}
+
+	// //////////////////////////////////////////////////////////////////
+	// tiles
+
+	/**
+	 * For each visible tile of the current level: the tile itself when loaded, the
+	 * matching part of the best loaded coarser tile otherwise.
+	 */
+	private void collectQuads(RenderContext rc) {
+		for (int i = 0; i < strips.length; i++){
+			quadTiles[i].clear();
+			quadSourceRects[i].clear();
+		}
+		usedRects = 0;
+		missingTiles.clear();
+
+		int span = tileSize << currentLevel;
+		int firstX = (int) (visibleImageRect.left / span);
+		int lastX = (int) Math.ceil(visibleImageRect.right / span) - 1;
+		int firstY = (int) (visibleImageRect.top / span);
+		int lastY = (int) Math.ceil(visibleImageRect.bottom / span) - 1;
+		int quadCount = 0;
+
+		for (int ty = firstY; ty <= lastY; ty++){
+			for (int tx = firstX; tx <= lastX; tx++){
+				Tile tile = getTile(currentLevel, tx, ty);
+				tile.wantedFrame = rc.frame;
+
+				Tile shown = tile;
+				if (!isLoaded(tile)){
+					if (!tile.loading) missingTiles.add(tile);
+					shown = findLoadedAncestor(tile);
+				}
+				if (shown == null || quadCount >= maxQuads) continue;
+
+				shown.segment.finger(rc.frame);
+				RectF area = obtainRect();
+				area.set(tx * span, ty * span,
+						Math.min(imageWidth, (tx + 1) * span), Math.min(imageHeight, (ty + 1) * span));
+				int stripIndex = indexOf(shown.strip);
+				quadTiles[stripIndex].add(shown);
+				quadSourceRects[stripIndex].add(area);
+				quadCount++;
+			}
+		}
+	}
+
+	private Tile findLoadedAncestor(Tile tile){
+		for (int level = tile.level + 1; level < levelCount; level++){
+			int shift = level - tile.level;
+			Tile ancestor = tiles.get(key(level, tile.x >> shift, tile.y >> shift));
+			if (ancestor != null && isLoaded(ancestor)) return ancestor;
+		}
+		return null;
+	}
+
+	/**
+	 * Decodes missing tiles, the ones closest to the center of the visible area first.
+	 */
+	private void requestMissingTiles(RenderContext rc) {
+		float centerX = visibleImageRect.centerX();
+		float centerY = visibleImageRect.centerY();
+		while (decodesInFlight.get() < MAX_DECODES_IN_FLIGHT && missingTiles.size() > 0){
+			int best = 0;
+			float bestDistance = Float.MAX_VALUE;
+			for (int i = missingTiles.size() - 1; i >= 0; i--){
+				Tile t = missingTiles.get(i);
+				int span = tileSize << t.level;
+				float dx = (t.x + 0.5f) * span - centerX;
+				float dy = (t.y + 0.5f) * span - centerY;
+				float distance = dx * dx + dy * dy;
+				if (distance < bestDistance){
+					bestDistance = distance;
+					best = i;
+				}
+			}
+			Tile tile = missingTiles.remove(best);
+			tile.loading = true;
+			decodesInFlight.incrementAndGet();
+			rc.textureStore.executeInBackground(new DecodeJob(tile, rc.sceneGraph, generation));
+		}
+	}
+
+	private Tile getTile(int level, int x, int y){
+		long key = key(level, x, y);
+		Tile ret = tiles.get(key);
+		if (ret == null){
+			ret = new Tile(level, x, y);
+			tiles.put(key, ret);
+			tilesByOwner.put(ret.ownerId, ret);
+		}
+		return ret;
+	}
+
+	private static long key(int level, int x, int y){
+		return ((long)level << 48) | ((long)x << 24) | y;
+	}
+
+	private boolean isLoaded(Tile tile){
+		return tile.segment != null && tile.segment.getOwnerId() == tile.ownerId;
+	}
+
+	private void forgetUnusedTiles(int frame) {
+		Iterator<Tile> it = tiles.values().iterator();
+		while (it.hasNext()){
+			Tile t = it.next();
+			if (!t.loading && !isLoaded(t) && frame - t.wantedFrame > FORGET_AFTER_FRAMES){
+				it.remove();
+				tilesByOwner.remove(t.ownerId);
+			}
+		}
+	}
+
+	/**
+	 * Eviction priority of the tile in a segment: Tiles far away from the visible area
+	 * and tiles of finer levels than currently needed go first. Coarser tiles stay
+	 * longer, they are the fallback when zooming out.
+	 */
+	@Override
+	public float getPriority(int ownerId) {
+		Tile t = tilesByOwner.get(ownerId);
+		if (t == null) return -Float.MAX_VALUE;
+
+		int span = tileSize << t.level;
+		float tileLeft = t.x * span;
+		float tileTop = t.y * span;
+		float dx = Math.max(0, Math.max(visibleImageRect.left - (tileLeft + span), tileLeft - visibleImageRect.right));
+		float dy = Math.max(0, Math.max(visibleImageRect.top - (tileTop + span), tileTop - visibleImageRect.bottom));
+
+		int currentSpan = tileSize << currentLevel;
+		float levelPenalty = (t.level < currentLevel)
+				? (currentLevel - t.level) * 4 * currentSpan : (t.level - currentLevel) * currentSpan;
+		return -(dx + dy + levelPenalty);
+	}
+
+	// //////////////////////////////////////////////////////////////////
+	// rendering
+
+	private void renderQuads(RenderContext rc) {
+		int quad = 0;
+		for (int s = 0; s < strips.length; s++){
+			ArrayList<Tile> stripTiles = quadTiles[s];
+			int l = stripTiles.size();
+			if (l == 0) continue;
+
+			int firstQuad = quad;
+			for (int i = 0; i < l; i++){
+				writeQuad(quad++, stripTiles.get(i), quadSourceRects[s].get(i));
+			}
+
+			rc.bindTexture(strips[s].getHandle());
+			Vertex.renderTexturedTriangles(rc.currentRenderProgram,
+					firstQuad * TexturedQuad.INDICES_COUNT, l * TexturedQuad.INDICES_COUNT,
+					vertexData, quadIndices);
+		}
+	}
+
+	/**
+	 * Shows the <code>area</code> (level 0 image pixels) of the image with the content
+	 * of the tile, which covers the area or more (coarser fallback tiles).
+	 */
+	private void writeQuad(int quad, Tile tile, RectF area) {
+		int offset = quad * TexturedQuad.QUAD_FLOATS;
+		TexturedQuad.position(vertexData, offset,
+				left + area.left * scale, top - area.top * scale, 0,
+				left + area.right * scale, top - area.bottom * scale, 0);
+
+		// area relative to the tile, in tile pixels
+		int tileSpan = tileSize << tile.level;
+		float inTileScale = (float) tile.contentWidth / Math.min(tileSpan, imageWidth - tile.x * tileSpan);
+		float u0 = (area.left - tile.x * tileSpan) * inTileScale;
+		float v0 = (area.top - tile.y * tileSpan) * inTileScale;
+		float u1 = (area.right - tile.x * tileSpan) * inTileScale;
+		float v1 = (area.bottom - tile.y * tileSpan) * inTileScale;
+
+		Rect px = tile.segment.getPixelCoords();
+		float texW = tile.strip.getWidth();
+		float texH = tile.strip.getHeight();
+		TexturedQuad.setUVMapping(vertexData, offset,
+				(px.left + u0) / texW, (px.top + v0) / texH,
+				(px.left + u1) / texW, (px.top + v1) / texH);
+		TexturedQuad.setAlpha(vertexData, offset, 1, 1, 1, 1);
+	}
+
+	private RectF obtainRect(){
+		if (usedRects == rectPool.size()) rectPool.add(new RectF());
+		return rectPool.get(usedRects++);
+	}
+
+	private int indexOf(Texture strip){
+		for (int i = 0; i < strips.length; i++) if (strips[i] == strip) return i;
+		return 0;
+	}
+
+	// //////////////////////////////////////////////////////////////////
+	// decoding
+
+	private void openDecoder(final RenderContext rc) {
+		if (opening) return;
+		opening = true;
+		final SceneGraph sceneGraph = rc.sceneGraph;
+		rc.textureStore.executeInBackground(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					final BitmapRegionDecoder nuDecoder;
+					if (path != null){
+						nuDecoder = BitmapRegionDecoder.newInstance(path, false);
+					} else {
+						InputStream is = resources.openRawResource(rawResourceId);
+						try {
+							nuDecoder = BitmapRegionDecoder.newInstance(is, false);
+						} finally {
+							is.close();
+						}
+					}
+					sceneGraph.queueIdleJob(new IGlRunnable() {
+						@Override
+						public void run(RenderContext rc) {
+							imageWidth = nuDecoder.getWidth();
+							imageHeight = nuDecoder.getHeight();
+							int levels = 1;
+							while ((tileSize << (levels - 1)) < Math.max(imageWidth, imageHeight)) levels++;
+							levelCount = levels;
+							decoder = nuDecoder;
+						}
+
+						@Override
+						public void abort() {
+							nuDecoder.recycle();
+						}
+					});
+				} catch (IOException e){
+					KoLog.e("TiledImageNode", "Could not open image: " + e);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void onDestroy() {
+		generation++;
+		BitmapRegionDecoder d = decoder;
+		decoder = null;
+		if (d != null){
+			synchronized (d) {
+				d.recycle();
+			}
+		}
+	}
+
+	/**
+	 * One tile on one level. GL thread only, except for <code>wantedFrame</code>.
+	 */
+	private static class Tile {
+		private final int level;
+		private final int x;
+		private final int y;
+		private final int ownerId = TextureStore.createOwnerID();
+
+		private volatile int wantedFrame;
+		private boolean loading = false;
+		private TextureStrip strip;
+		private TextureSegment segment;
+		/**
+		 * Size of the decoded pixels, smaller than tileSize at the right and bottom edge.
+		 */
+		private int contentWidth;
+
+		private Tile(int level, int x, int y){
+			this.level = level;
+			this.x = x;
+			this.y = y;
+		}
+	}
+
+	/**
+	 * Decodes a tile in a background thread, uploads it in an idle job.
+	 */
+	private class DecodeJob implements Runnable, IGlRunnable {
+		private final Tile tile;
+		private final SceneGraph sceneGraph;
+		private final int jobGeneration;
+		private Bitmap bitmap;
+
+		public DecodeJob(Tile tile, SceneGraph sceneGraph, int generation){
+			this.tile = tile;
+			this.sceneGraph = sceneGraph;
+			this.jobGeneration = generation;
+		}
+
+		@Override
+		public void run() {
+			BitmapRegionDecoder d = decoder;
+			// scrolled away while waiting?
+			if (d == null || jobGeneration != generation || currentFrame - tile.wantedFrame > 2){
+				sceneGraph.queueIdleJob(this);
+				return;
+			}
+
+			int span = tileSize << tile.level;
+			Rect region = new Rect(tile.x * span, tile.y * span,
+					Math.min(imageWidth, (tile.x + 1) * span), Math.min(imageHeight, (tile.y + 1) * span));
+			BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inSampleSize = 1 << tile.level;
+			options.inPreferredConfig = alphaChannel || Texture.highResolutionColor
+					? Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565;
+			try {
+				synchronized (d) {
+					if (!d.isRecycled()) bitmap = d.decodeRegion(region, options);
+				}
+			} catch (Exception e){
+				KoLog.w("TiledImageNode", "Could not decode tile " + region + ": " + e);
+			}
+			sceneGraph.queueIdleJob(this);
+		}
+
+		@Override
+		public void run(RenderContext rc) {
+			decodesInFlight.decrementAndGet();
+			tile.loading = false;
+			if (bitmap == null || jobGeneration != generation || strips.length == 0){
+				recycleBitmap();
+				return;
+			}
+			if (bitmap.getWidth() > tileSize || bitmap.getHeight() > tileSize){
+				Bitmap cropped = Bitmap.createBitmap(bitmap, 0, 0,
+						Math.min(tileSize, bitmap.getWidth()), Math.min(tileSize, bitmap.getHeight()));
+				bitmap.recycle();
+				bitmap = cropped;
+			}
+
+			TextureStrip strip = strips[nextStrip++ % strips.length];
+			TextureSegment segment = strip.getSegment(tile.ownerId, rc.frame);
+			// staged: tiles arriving in the same frame are uploaded together per strip
+			Rect px = segment.getPixelCoords();
+			if (bitmap.getWidth() == px.width() && bitmap.getHeight() == px.height()){
+				segment.queueUpdate(rc, bitmap);
+			} else if (!strip.queueUpdate(rc, bitmap, px.left, px.top)){
+				// binding commits what is queued, so this does not get overwritten later
+				rc.bindTexture(strip.getHandle());
+				strip.update(bitmap, px.left, px.top);
+			}
+
+			tile.strip = strip;
+			tile.segment = segment;
+			tile.contentWidth = bitmap.getWidth();
+			if (RenderConfig.RECYCLE_BITMAPS) bitmap.recycle();
+			bitmap = null;
+		}
+
+		@Override
+		public void abort() {
+			decodesInFlight.decrementAndGet();
+			tile.loading = false;
+			recycleBitmap();
+		}
+
+		private void recycleBitmap() {
+			if (bitmap != null) bitmap.recycle();
+			bitmap = null;
+		}
+	}
+}
@@ -0,0 +1,405 @@
+package com.komaxx.komaxx_gl.texturing;
+
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.util.TypedValue;
+
+import com.komaxx.komaxx_gl.RenderConfig;
+import com.komaxx.komaxx_gl.util.KoLog;
+
+/**
+ * Decodes image resources at (about) the size they are shown at instead of the full
+ * resolution: A bounds-only pre-pass reads the image size, then the largest power-of-two
+ * <code>inSampleSize</code> is chosen that still delivers at least the target size. When
+ * the image is center-cropped to the target proportions, only the shown region is decoded
+ * with a BitmapRegionDecoder.</br>
+ * Decode buffers are reused: Each thread keeps its own <code>inTempStorage</code>, and
+ * bitmaps given back with <code>recycle</code> are decoded into again (<code>inBitmap</code>)
+ * where the platform allows it.</br>
+ * Thread safe, typically called in decoder threads.
+ *
+ * @author Matthias Schicker
+ */
+public class BitmapDecoder {
+	private static final int TEMP_STORAGE_BYTES = 16 * 1024;
+	private static final int MAX_REUSABLE_PER_SIZE = 2;
+
+	private static final ThreadLocal<byte[]> tempStorage = new ThreadLocal<byte[]>(){
+		@Override
+		protected byte[] initialValue() {
+			return new byte[TEMP_STORAGE_BYTES];
+		}
+	};
+
+	private static final HashMap<Long, ArrayList<Bitmap>> reusableBitmaps = new HashMap<Long, ArrayList<Bitmap>>();
+	private static int reusableBudget = 4 * 1024 * 1024;
+	private static int reusableBytes = 0;
+
+	// inBitmap and inMutable only exist since HONEYCOMB, found by reflection.
+	private static Field inBitmapField;
+	private static Field inMutableField;
+	static {
+		try {
+			inBitmapField = BitmapFactory.Options.class.getField("inBitmap");
+			inMutableField = BitmapFactory.Options.class.getField("inMutable");
+		} catch (Exception e){
+			inBitmapField = null;
+			inMutableField = null;
+		}
+	}
+
+	private static final AtomicInteger decodeCount = new AtomicInteger();
+	private static final AtomicInteger sampledDecodeCount = new AtomicInteger();
+	private static final AtomicInteger regionDecodeCount = new AtomicInteger();
+	private static final AtomicInteger reusedBitmapCount = new AtomicInteger();
+	private static final AtomicLong decodedPixels = new AtomicLong();
+	private static final AtomicLong displayedPixels = new AtomicLong();
+	private static final AtomicLong sourcePixels = new AtomicLong();
+
+
+	private BitmapDecoder(){
+		// static only
+	}
+
+	/**
+	 * Decodes the full image at full resolution.
+	 */
+	public static Bitmap decode(Resources res, int id){
+		return decode(res, id, 0, 0, false);
+	}
+
+	/**
+	 * Decodes the image such that it is at least <code>targetWidth x targetHeight</code>
+	 * large but not (much) larger. The result still needs to be scaled to the exact size.
+	 *
+	 * @param targetWidth, targetHeight	The size the image is shown at, in pixels. 0 for
+	 * no restriction in this dimension.
+	 * @param centerCrop	true when only the centered part of the image with the target
+	 * proportions is shown: Only that region is decoded.
+	 * @return	null when the resource could not be decoded.
+	 */
+	public static Bitmap decode(Resources res, int id, int targetWidth, int targetHeight, boolean centerCrop){
+		return decode(res, id, targetWidth, targetHeight, centerCrop, 1);
+	}
+
+	/**
+	 * Like <code>decode</code>, but for drawables the way <code>Resources.getDrawable</code>
+	 * would deliver them: The density of the resource's bucket is respected, i.e., images
+	 * from higher density buckets are not decoded larger than getDrawable would show them.
+	 * Resources that BitmapFactory can not read (XML drawables, aliases, ...) are drawn
+	 * from <code>getDrawable</code> instead, at their intrinsic size or the target size.</br>
+	 * Never null. Give the result back with <code>recycle</code>.
+	 */
+	public static Bitmap decodeDrawable(Resources res, int id, int targetWidth, int targetHeight){
+		Bitmap ret = null;
+		try {
+			ret = decode(res, id, targetWidth, targetHeight, false, getDensityScale(res, id));
+		} catch (Resources.NotFoundException e){
+			// not a file, e.g., a color: getDrawable knows what to do
+		}
+		if (ret != null) return ret;
+
+		Drawable drawable = res.getDrawable(id);
+		int width = drawable.getIntrinsicWidth() > 0 ? drawable.getIntrinsicWidth() : Math.max(1, targetWidth);
+		int height = drawable.getIntrinsicHeight() > 0 ? drawable.getIntrinsicHeight() : Math.max(1, targetHeight);
+		ret = Bitmap.createBitmap(width, height, Config.ARGB_8888);
+		drawable.setBounds(0, 0, width, height);
+		drawable.draw(new Canvas(ret));
+		return ret;
+	}
+
+	/**
+	 * How much <code>Resources.getDrawable</code> scales the image: The display density
+	 * divided by the density of the resource's bucket. 1 for density independent resources.
+	 */
+	public static float getDensityScale(Resources res, int id){
+		TypedValue value = new TypedValue();
+		res.getValue(id, value, true);
+		if (value.density == TypedValue.DENSITY_NONE) return 1;
+		int density = (value.density == TypedValue.DENSITY_DEFAULT) ? 160 : value.density;
+		return res.getDisplayMetrics().densityDpi / (float)density;
+	}
+
+	/**
+	 * @param densityScale	How much getDrawable would scale the image. Below 1, the image
+	 * is not decoded larger than the scaled size.
+	 */
+	private static Bitmap decode(Resources res, int id, int targetWidth, int targetHeight, 
+			boolean centerCrop, float densityScale){
+		// bounds only pre-pass
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		options.inTempStorage = tempStorage.get();
+		InputStream is = res.openRawResource(id);
+		try {
+			BitmapFactory.decodeStream(is, null, options);
+		} finally {
+			close(is, id);
+		}
+		int width = options.outWidth;
+		int height = options.outHeight;
+		if (width <= 0 || height <= 0){
+			KoLog.w("BitmapDecoder", "Not an image: " + id);
+			return null;
+		}
+
+		Rect region = new Rect(0, 0, width, height);
+		if (centerCrop && targetWidth > 0 && targetHeight > 0) cropToProportions(region, targetWidth, targetHeight);
+		boolean regionDecode = region.width() < width || region.height() < height;
+		if (regionDecode && !isRegionDecodable(options.outMimeType)){
+			// decode it all, the caller crops
+			region.set(0, 0, width, height);
+			regionDecode = false;
+		}
+
+		if (densityScale < 1){
+			int scaledWidth = Math.max(1, (int) Math.ceil(region.width() * densityScale));
+			int scaledHeight = Math.max(1, (int) Math.ceil(region.height() * densityScale));
+			targetWidth = (targetWidth > 0) ? Math.min(targetWidth, scaledWidth) : scaledWidth;
+			targetHeight = (targetHeight > 0) ? Math.min(targetHeight, scaledHeight) : scaledHeight;
+		}
+
+		options.inJustDecodeBounds = false;
+		options.inSampleSize = computeSampleSize(region.width(), region.height(), targetWidth, targetHeight);
+
+		Bitmap ret = regionDecode ? decodeRegion(res, id, region, options) : decodeFully(res, id, options);
+		if (ret == null) return null;
+
+		decodeCount.incrementAndGet();
+		if (options.inSampleSize > 1) sampledDecodeCount.incrementAndGet();
+		if (regionDecode) regionDecodeCount.incrementAndGet();
+		decodedPixels.addAndGet(ret.getWidth() * ret.getHeight());
+		sourcePixels.addAndGet(width * height);
+		displayedPixels.addAndGet((targetWidth > 0 && targetHeight > 0)
+				? targetWidth * targetHeight : ret.getWidth() * ret.getHeight());
+		return ret;
+	}
+
+	/**
+	 * The largest power of two that does not sample the image below the target size.
+	 */
+	public static int computeSampleSize(int width, int height, int targetWidth, int targetHeight){
+		int ret = 1;
+		while (true){
+			int next = ret * 2;
+			if (targetWidth > 0 && width / next < targetWidth) break;
+			if (targetHeight > 0 && height / next < targetHeight) break;
+			if (targetWidth <= 0 && targetHeight <= 0) break;
+			ret = next;
+		}
+		return ret;
+	}
+
+	private static void cropToProportions(Rect region, int targetWidth, int targetHeight) {
+		int width = region.width();
+		int height = region.height();
+		// compare width/height with targetWidth/targetHeight without division
+		long a = (long)width * targetHeight;
+		long b = (long)targetWidth * height;
+		if (a > b){
+			int croppedWidth = (int) (b / targetHeight);
+			region.left = (width - croppedWidth) / 2;
+			region.right = region.left + croppedWidth;
+		} else if (a < b){
+			int croppedHeight = (int) (a / targetWidth);
+			region.top = (height - croppedHeight) / 2;
+			region.bottom = region.top + croppedHeight;
+		}
+	}
+
+	private static boolean isRegionDecodable(String mimeType){
+		return "image/jpeg".equals(mimeType) || "image/png".equals(mimeType);
+	}
+
+	private static Bitmap decodeFully(Resources res, int id, BitmapFactory.Options options) {
+		Bitmap reusable = setReusable(options, (options.outWidth + options.inSampleSize - 1) / options.inSampleSize,
+				(options.outHeight + options.inSampleSize - 1) / options.inSampleSize);
+
+		InputStream is = res.openRawResource(id);
+		try {
+			return BitmapFactory.decodeStream(is, null, options);
+		} catch (IllegalArgumentException e){
+			// the reused bitmap did not fit after all
+			close(is, id);
+			giveBack(reusable);
+			setInBitmap(options, null);
+			is = res.openRawResource(id);
+			return BitmapFactory.decodeStream(is, null, options);
+		} finally {
+			close(is, id);
+		}
+	}
+
+	private static Bitmap decodeRegion(Resources res, int id, Rect region, BitmapFactory.Options options) {
+		InputStream is = res.openRawResource(id);
+		BitmapRegionDecoder regionDecoder = null;
+		try {
+			regionDecoder = BitmapRegionDecoder.newInstance(is, false);
+			return regionDecoder.decodeRegion(region, options);
+		} catch (Exception e){
+			KoLog.w("BitmapDecoder", "Region decoding failed for " + id + ": " + e);
+			return null;
+		} finally {
+			if (regionDecoder != null) regionDecoder.recycle();
+			close(is, id);
+		}
+	}
+
+	private static void close(InputStream is, int id){
+		try {
+			is.close();
+		} catch (Exception e){
+			KoLog.e("BitmapDecoder", "Error when closing bitmap " + id + ": " + e.toString());
+		}
+	}
+
+	// //////////////////////////////////////////////////////////////////
+	// bitmap reuse
+
+	/**
+	 * Gives a decoded bitmap back when it is no longer needed: It is decoded into again
+	 * by a later decode of the same size, or recycled.
+	 */
+	public static void recycle(Bitmap bitmap){
+		if (bitmap == null || bitmap.isRecycled()) return;
+		int bytes = bitmap.getRowBytes() * bitmap.getHeight();
+		if (inBitmapField == null || !bitmap.isMutable()){
+			if (RenderConfig.RECYCLE_BITMAPS) bitmap.recycle();
+			return;
+		}
+
+		synchronized (reusableBitmaps) {
+			long key = key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+			ArrayList<Bitmap> list = reusableBitmaps.get(key);
+			if (list == null){
+				list = new ArrayList<Bitmap>(MAX_REUSABLE_PER_SIZE);
+				reusableBitmaps.put(key, list);
+			}
+			if (list.size() < MAX_REUSABLE_PER_SIZE && reusableBytes + bytes <= reusableBudget){
+				list.add(bitmap);
+				reusableBytes += bytes;
+				return;
+			}
+		}
+		if (RenderConfig.RECYCLE_BITMAPS) bitmap.recycle();
+	}
+
+	/**
+	 * Requests a mutable result and sets a pooled bitmap of the expected size as decode
+	 * target, if there is one.
+	 */
+	private static Bitmap setReusable(BitmapFactory.Options options, int width, int height) {
+		if (inBitmapField == null) return null;
+		try {
+			inMutableField.setBoolean(options, true);
+		} catch (Exception e){
+			return null;
+		}
+
+		Config config = (options.inPreferredConfig == null) ? Config.ARGB_8888 : options.inPreferredConfig;
+		Bitmap reusable = null;
+		synchronized (reusableBitmaps) {
+			ArrayList<Bitmap> list = reusableBitmaps.get(key(width, height, config));
+			if (list != null && list.size() > 0){
+				reusable = list.remove(list.size() - 1);
+				reusableBytes -= reusable.getRowBytes() * reusable.getHeight();
+			}
+		}
+		if (reusable != null && setInBitmap(options, reusable)) reusedBitmapCount.incrementAndGet();
+		return reusable;
+	}
+
+	private static boolean setInBitmap(BitmapFactory.Options options, Bitmap bitmap){
+		try {
+			inBitmapField.set(options, bitmap);
+			return true;
+		} catch (Exception e){
+			return false;
+		}
+	}
+
+	private static void giveBack(Bitmap bitmap){
+		if (bitmap != null) recycle(bitmap);
+	}
+
+	public static void setReusableBudget(int bytes) {
+		reusableBudget = bytes;
+	}
+
+	/**
+	 * Recycles all bitmaps waiting for reuse.
+	 */
+	public static void clearReusableBitmaps(){
+		synchronized (reusableBitmaps) {
+			for (ArrayList<Bitmap> list : reusableBitmaps.values()){
+				for (Bitmap b : list) if (RenderConfig.RECYCLE_BITMAPS) b.recycle();
+			}
+			reusableBitmaps.clear();
+			reusableBytes = 0;
+		}
+	}
+
+	private static long key(int width, int height, Config config){
+		return ((long)width << 32) | ((long)height << 8) | config.ordinal();
+	}
+
+	// //////////////////////////////////////////////////////////////////
+	// statistics
+
+	public static int getDecodeCount() {
+		return decodeCount.get();
+	}
+
+	public static int getSampledDecodeCount() {
+		return sampledDecodeCount.get();
+	}
+
+	public static int getRegionDecodeCount() {
+		return regionDecodeCount.get();
+	}
+
+	public static int getReusedBitmapCount() {
+		return reusedBitmapCount.get();
+	}
+
+	/**
+	 * Decoded pixels per displayed pixel over all decodes. 1 is perfect, larger values
+	 * show decode time and memory spent on pixels that were scaled away.
+	 */
+	public static float getDecodedToDisplayedRatio(){
+		long displayed = displayedPixels.get();
+		return (displayed == 0) ? 0 : (float)decodedPixels.get() / (float)displayed;
+	}
+
+	/**
+	 * Decoded pixels per pixel in the source images: What sampling and region decoding
+	 * saved compared to full decodes.
+	 */
+	public static float getDecodedToSourceRatio(){
+		long source = sourcePixels.get();
+		return (source == 0) ? 0 : (float)decodedPixels.get() / (float)source;
+	}
+
+	public static void resetStatistics(){
+		decodeCount.set(0);
+		sampledDecodeCount.set(0);
+		regionDecodeCount.set(0);
+		reusedBitmapCount.set(0);
+		decodedPixels.set(0);
+		displayedPixels.set(0);
+		sourcePixels.set(0);
+	}
+}
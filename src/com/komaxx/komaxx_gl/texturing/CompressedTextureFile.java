@@ -0,0 +1,215 @@
+package com.komaxx.komaxx_gl.texturing;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A pre-compressed texture as read from a PKM (ETC1/ETC2) or KTX container. Only
+ * parses, does not touch the GL, so it can be used in any thread (and on the JVM).
+ * All mipmap levels contained in the file are read into direct buffers, ready
+ * for <code>glCompressedTexImage2D</code>.
+ *
+ * @author Matthias Schicker
+ */
+public class CompressedTextureFile {
+	public static final int GL_ETC1_RGB8_OES = 0x8D64;
+	public static final int GL_COMPRESSED_RGB8_ETC2 = 0x9274;
+	public static final int GL_COMPRESSED_SRGB8_ETC2 = 0x9275;
+	public static final int GL_COMPRESSED_RGB8_PUNCHTHROUGH_ALPHA1_ETC2 = 0x9276;
+	public static final int GL_COMPRESSED_RGBA8_ETC2_EAC = 0x9278;
+	public static final int GL_COMPRESSED_R11_EAC = 0x9270;
+	public static final int GL_COMPRESSED_RG11_EAC = 0x9272;
+
+	private static final byte[] KTX_IDENTIFIER = new byte[]{
+		(byte)0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte)0xBB, '\r', '\n', 0x1A, '\n'
+	};
+	private static final int KTX_ENDIANNESS = 0x04030201;
+
+	/**
+	 * The GL internal format, e.g., GL_ETC1_RGB8_OES.
+	 */
+	public int glInternalFormat;
+	/**
+	 * Size of level 0 in pixels.
+	 */
+	public int width;
+	public int height;
+
+	/**
+	 * Compressed data, one buffer per mipmap level.
+	 */
+	public ByteBuffer[] levels;
+
+
+	private CompressedTextureFile(){
+		// use read
+	}
+
+	/**
+	 * Reads a PKM or KTX file, detected by the magic bytes. Does not close the stream.
+	 */
+	public static CompressedTextureFile read(InputStream is) throws IOException {
+		DataInputStream in = new DataInputStream(is);
+		byte[] magic = new byte[4];
+		in.readFully(magic);
+
+		if (magic[0] == 'P' && magic[1] == 'K' && magic[2] == 'M' && magic[3] == ' '){
+			return readPkm(in);
+		} else if (magic[0] == KTX_IDENTIFIER[0] && magic[1] == 'K' && magic[2] == 'T' && magic[3] == 'X'){
+			return readKtx(in);
+		}
+		throw new IOException("Neither a PKM nor a KTX file");
+	}
+
+	/**
+	 * PKM: "PKM " + version ("10" / "20"), then big endian shorts: data type, padded width,
+	 * padded height, width, height. One level of data follows.
+	 */
+	private static CompressedTextureFile readPkm(DataInputStream in) throws IOException {
+		CompressedTextureFile ret = new CompressedTextureFile();
+		int version1 = in.readUnsignedByte();
+		in.readUnsignedByte();
+		int dataType = in.readUnsignedShort();
+		int paddedWidth = in.readUnsignedShort();
+		int paddedHeight = in.readUnsignedShort();
+		ret.width = in.readUnsignedShort();
+		ret.height = in.readUnsignedShort();
+
+		if (version1 == '1'){
+			ret.glInternalFormat = GL_ETC1_RGB8_OES;
+		} else {
+			switch (dataType){
+			case 0: ret.glInternalFormat = GL_ETC1_RGB8_OES; break;
+			case 1: ret.glInternalFormat = GL_COMPRESSED_RGB8_ETC2; break;
+			case 3: ret.glInternalFormat = GL_COMPRESSED_RGBA8_ETC2_EAC; break;
+			case 4: ret.glInternalFormat = GL_COMPRESSED_RGB8_PUNCHTHROUGH_ALPHA1_ETC2; break;
+			case 5: ret.glInternalFormat = GL_COMPRESSED_R11_EAC; break;
+			case 6: ret.glInternalFormat = GL_COMPRESSED_RG11_EAC; break;
+			default: throw new IOException("Unsupported PKM data type " + dataType);
+			}
+		}
+
+		int size = getEncodedSize(ret.glInternalFormat, paddedWidth, paddedHeight);
+		ret.levels = new ByteBuffer[]{ readDirect(in, size) };
+		return ret;
+	}
+
+	/**
+	 * KTX 1.1: identifier, header of 13 uints in the file's endianness, key/value data,
+	 * then per level: image size, data, padding to 4 bytes.
+	 */
+	private static CompressedTextureFile readKtx(DataInputStream in) throws IOException {
+		byte[] rest = new byte[KTX_IDENTIFIER.length - 4];
+		in.readFully(rest);
+		for (int i = 0; i < rest.length; i++){
+			if (rest[i] != KTX_IDENTIFIER[i + 4]) throw new IOException("Broken KTX identifier");
+		}
+
+		byte[] headerBytes = new byte[13 * 4];
+		in.readFully(headerBytes);
+		ByteBuffer header = ByteBuffer.wrap(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+		if (header.getInt(0) != KTX_ENDIANNESS) header.order(ByteOrder.BIG_ENDIAN);
+		ByteOrder order = header.order();
+
+		int glType = header.getInt(4);
+		int glInternalFormat = header.getInt(16);
+		int pixelWidth = header.getInt(24);
+		int pixelHeight = header.getInt(28);
+		int faces = header.getInt(40);
+		int mipLevels = header.getInt(44);
+		int keyValueBytes = header.getInt(48);
+
+		if (glType != 0) throw new IOException("KTX does not contain compressed data");
+		if (faces != 1) throw new IOException("KTX cube maps are not supported");
+
+		CompressedTextureFile ret = new CompressedTextureFile();
+		ret.glInternalFormat = glInternalFormat;
+		ret.width = pixelWidth;
+		ret.height = Math.max(1, pixelHeight);
+		skipFully(in, keyValueBytes);
+
+		int levelCount = Math.max(1, mipLevels);
+		ret.levels = new ByteBuffer[levelCount];
+		byte[] sizeBytes = new byte[4];
+		for (int i = 0; i < levelCount; i++){
+			in.readFully(sizeBytes);
+			int size = ByteBuffer.wrap(sizeBytes).order(order).getInt();
+			ret.levels[i] = readDirect(in, size);
+			skipFully(in, (4 - (size % 4)) % 4);
+		}
+		return ret;
+	}
+
+	private static ByteBuffer readDirect(DataInputStream in, int size) throws IOException {
+		byte[] tmp = new byte[size];
+		in.readFully(tmp);
+		ByteBuffer ret = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+		ret.put(tmp).position(0);
+		return ret;
+	}
+
+	private static void skipFully(DataInputStream in, int bytes) throws IOException {
+		while (bytes > 0){
+			int skipped = in.skipBytes(bytes);
+			if (skipped <= 0) throw new IOException("Unexpected end of file");
+			bytes -= skipped;
+		}
+	}
+
+	/**
+	 * Size of the encoded data of one level: ETC formats use 4x4 blocks of 8 or 16 bytes.
+	 */
+	public static int getEncodedSize(int glInternalFormat, int width, int height){
+		int blocks = ((width + 3) / 4) * ((height + 3) / 4);
+		switch (glInternalFormat){
+		case GL_COMPRESSED_RGBA8_ETC2_EAC:
+		case GL_COMPRESSED_RG11_EAC:
+			return blocks * 16;
+		default:
+			return blocks * 8;
+		}
+	}
+
+	/**
+	 * Width of the given mipmap level.
+	 */
+	public int getWidth(int level){
+		return Math.max(1, width >> level);
+	}
+
+	public int getHeight(int level){
+		return Math.max(1, height >> level);
+	}
+
+	/**
+	 * true when the file contains all mipmap levels down to 1x1. Only then, the texture
+	 * is complete with a mipmapping filter; ES2 samples incomplete textures as black.
+	 */
+	public boolean hasFullMipChain(){
+		int last = levels.length - 1;
+		return last > 0 && getWidth(last) == 1 && getHeight(last) == 1;
+	}
+
+	/**
+	 * The number of bytes of all levels, i.e., the GPU memory the texture takes.
+	 */
+	public int getSizeBytes(){
+		int ret = 0;
+		for (ByteBuffer b : levels) ret += b.capacity();
+		return ret;
+	}
+
+	public boolean hasAlpha(){
+		return glInternalFormat == GL_COMPRESSED_RGBA8_ETC2_EAC
+				|| glInternalFormat == GL_COMPRESSED_RGB8_PUNCHTHROUGH_ALPHA1_ETC2;
+	}
+
+	@Override
+	public String toString() {
+		return "CompressedTextureFile 0x" + Integer.toHexString(glInternalFormat) + " ("
+				+ width + "x" + height + ", " + levels.length + " levels, " + getSizeBytes() + " bytes)";
+	}
+}
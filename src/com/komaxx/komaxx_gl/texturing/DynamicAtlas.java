@@ -0,0 +1,293 @@
+package com.komaxx.komaxx_gl.texturing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.opengl.GLES20;
+
+import com.komaxx.komaxx_gl.RenderConfig;
+import com.komaxx.komaxx_gl.RenderContext;
+import com.komaxx.komaxx_gl.util.KoLog;
+import com.komaxx.komaxx_gl.util.ObjectsStore;
+import com.komaxx.komaxx_gl.util.RectPacker;
+import com.komaxx.komaxx_gl.util.RenderUtil;
+
+/**
+ * A texture that hands out regions of arbitrary size at runtime, e.g., for thumbnails
+ * or labels. Regions are TextureSegments, so they deliver uv coords and are updated
+ * like any other segment (which uploads only the region's rectangle).</br>
+ * Freeing regions fragments the free space over time. <code>defragment</code> repacks
+ * all living regions and copies their pixels in the GL (via a framebuffer), the handle of
+ * the texture stays the same. The uv coords of moved regions change, though: Whoever
+ * copied uv coords must check <code>getLayoutVersion</code> and re-apply them.</br>
+ * Neither mipmaps nor rotated regions are supported.
+ *
+ * @author Matthias Schicker
+ */
+public class DynamicAtlas extends Texture {
+	private final int padding;
+	private RectPacker.FreeSpace freeSpace;
+	private final ArrayList<AtlasRegion> regions = new ArrayList<AtlasRegion>();
+
+	/**
+	 * Ids of freed regions are handed out again, so the short ids of TextureSegments
+	 * do not run out in long sessions.
+	 */
+	private final ArrayDeque<Short> freeRegionIds = new ArrayDeque<Short>();
+	private short nextRegionId = 0;
+	private int usedArea = 0;
+	private int layoutVersion = 0;
+
+	private final RectPacker.Placement tmpPlacement = new RectPacker.Placement();
+	private static Rect tmpRect = new Rect();
+
+
+	/**
+	 * @param padding	Empty pixels between regions, avoids bleeding with linear filtering.
+	 */
+	public DynamicAtlas(TextureConfig config, int padding) {
+		super(config);
+		if (config.mipMapped) throw new RuntimeException("DynamicAtlas can not be mipmapped");
+		this.padding = padding;
+		freeSpace = new RectPacker.FreeSpace(width - padding, height - padding);
+	}
+
+	/**
+	 * Reserves a region of the given size. Returns null when there's no free space
+	 * big enough. The region's content is undefined until updated.
+	 */
+	public AtlasRegion allocate(int regionWidth, int regionHeight){
+		if (!freeSpace.findPosition(regionWidth + padding, regionHeight + padding,
+				false, RectPacker.HEURISTIC_BEST_SHORT_SIDE_FIT, tmpPlacement)){
+			return null;
+		}
+		freeSpace.occupy(tmpPlacement.x, tmpPlacement.y, tmpPlacement.width, tmpPlacement.height);
+
+		tmpRect.set(tmpPlacement.x + padding, tmpPlacement.y + padding,
+				tmpPlacement.x + padding + regionWidth, tmpPlacement.y + padding + regionHeight);
+		AtlasRegion ret = new AtlasRegion(this, obtainRegionId(), tmpRect);
+		regions.add(ret);
+		usedArea += regionWidth * regionHeight;
+		return ret;
+	}
+
+	/**
+	 * Like <code>allocate(int, int)</code>, but defragments the atlas when the
+	 * region would fit in the overall free space. GL thread only.
+	 */
+	public AtlasRegion allocate(RenderContext rc, int regionWidth, int regionHeight){
+		AtlasRegion ret = allocate(regionWidth, regionHeight);
+		if (ret == null && getFreeArea() >= (regionWidth + padding) * (regionHeight + padding)){
+			if (defragment(rc)) ret = allocate(regionWidth, regionHeight);
+		}
+		return ret;
+	}
+
+	/**
+	 * Allocates a region of the size of the bitmap and uploads it. Returns null
+	 * when the atlas is full. GL thread only.
+	 */
+	public AtlasRegion allocate(RenderContext rc, Bitmap content){
+		AtlasRegion ret = allocate(rc, content.getWidth(), content.getHeight());
+		if (ret != null) ret.update(rc, content, 0);
+		return ret;
+	}
+
+	/**
+	 * Gives the region back. The region must not be used afterwards.
+	 */
+	public void free(AtlasRegion region){
+		if (region.getTexture() != this || !regions.remove(region)) return;
+
+		Rect r = region.getPixelCoords();
+		usedArea -= r.width() * r.height();
+		freeSpace.free(r.left - padding, r.top - padding, r.width() + padding, r.height() + padding);
+		freeRegionIds.push(region.getId());
+		region.release();
+	}
+
+	private short obtainRegionId() {
+		if (!freeRegionIds.isEmpty()) return freeRegionIds.pop();
+		if (nextRegionId == Short.MAX_VALUE){
+			throw new RuntimeException("DynamicAtlas: More than " + Short.MAX_VALUE + " regions at once");
+		}
+		return nextRegionId++;
+	}
+
+	/**
+	 * Defragments only when the free space is split up so much that the largest
+	 * free rect is smaller than <code>minLargestFreeFraction</code> of the free
+	 * area. Meant to be called periodically, e.g., in an idle job. GL thread only.
+	 */
+	public boolean defragmentIfNeeded(RenderContext rc, float minLargestFreeFraction){
+		int freeArea = getFreeArea();
+		if (freeArea <= 0) return false;
+		if ((float)freeSpace.getLargestFreeArea() / (float)freeArea >= minLargestFreeFraction) return false;
+		return defragment(rc);
+	}
+
+	/**
+	 * Repacks all regions and moves their pixels accordingly. Returns false when the
+	 * regions could not be repacked or the GL could not copy; the atlas is unchanged then.
+	 * GL thread only.
+	 */
+	public boolean defragment(RenderContext rc){
+		int l = regions.size();
+		int[] widths = new int[l];
+		int[] heights = new int[l];
+		for (int i = 0; i < l; i++){
+			Rect r = regions.get(i).getPixelCoords();
+			widths[i] = r.width();
+			heights[i] = r.height();
+		}
+		RectPacker.Result packing = new RectPacker(width, height).setPadding(padding)
+				.setMaxBins(1).pack(widths, heights);
+		if (packing.getUnplacedCount() > 0){
+			KoLog.w(this, "Could not repack " + l + " regions, not defragmented");
+			return false;
+		}
+
+		long start = System.nanoTime();
+		Texture tmp = new Texture(getConfig());
+		tmp.create(rc);
+
+		// copy all regions to their new places in tmp, then everything back
+		boolean ok = copyRegions(rc, this, tmp, packing);
+		if (ok) ok = copyAll(rc, tmp, this);
+		tmp.delete();
+		if (!ok) return false;
+
+		freeSpace.clear();
+		for (int i = 0; i < l; i++){
+			RectPacker.Placement p = packing.placements[i];
+			freeSpace.occupy(p.x - padding, p.y - padding, p.width + padding, p.height + padding);
+			tmpRect.set(p.x, p.y, p.x + p.width, p.y + p.height);
+			regions.get(i).moveTo(tmpRect);
+		}
+		layoutVersion++;
+
+		if (RenderConfig.PROFILING){
+			KoLog.i(this, "Defragmented " + l + " regions in "
+					+ ((System.nanoTime() - start) / 1000) + " µs");
+		}
+		return true;
+	}
+
+	private boolean copyRegions(RenderContext rc, Texture source, Texture target, RectPacker.Result packing) {
+		int oldFramebuffer = bindAsFramebuffer(source);
+		if (oldFramebuffer == Integer.MIN_VALUE) return false;
+
+		rc.bindTexture(target.getHandle());
+		int l = regions.size();
+		for (int i = 0; i < l; i++){
+			Rect from = regions.get(i).getPixelCoords();
+			RectPacker.Placement to = packing.placements[i];
+			GLES20.glCopyTexSubImage2D(GLES20.GL_TEXTURE_2D, 0,
+					to.x, to.y, from.left, from.top, from.width(), from.height());
+		}
+
+		return unbindFramebuffer(oldFramebuffer);
+	}
+
+	private boolean copyAll(RenderContext rc, Texture source, Texture target) {
+		int oldFramebuffer = bindAsFramebuffer(source);
+		if (oldFramebuffer == Integer.MIN_VALUE) return false;
+
+		rc.bindTexture(target.getHandle());
+		GLES20.glCopyTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, 0, 0, width, height);
+
+		return unbindFramebuffer(oldFramebuffer);
+	}
+
+	/**
+	 * Returns the previously bound framebuffer, or Integer.MIN_VALUE when the texture
+	 * can not be used as framebuffer.
+	 */
+	private static int bindAsFramebuffer(Texture t){
+		GLES20.glGetIntegerv(GLES20.GL_FRAMEBUFFER_BINDING, ObjectsStore.tmpIntBuffer, 0);
+		int ret = ObjectsStore.tmpIntBuffer[0];
+
+		GLES20.glGenFramebuffers(1, ObjectsStore.tmpIntBuffer, 0);
+		int fbo = ObjectsStore.tmpIntBuffer[0];
+		GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, fbo);
+		GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+				GLES20.GL_TEXTURE_2D, t.getHandle(), 0);
+
+		if (GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER) != GLES20.GL_FRAMEBUFFER_COMPLETE){
+			KoLog.w("DynamicAtlas", "Texture can not be used as framebuffer, can not copy");
+			unbindFramebuffer(ret);
+			return Integer.MIN_VALUE;
+		}
+		return ret;
+	}
+
+	private static boolean unbindFramebuffer(int oldFramebuffer) {
+		GLES20.glGetIntegerv(GLES20.GL_FRAMEBUFFER_BINDING, ObjectsStore.tmpIntBuffer, 0);
+		GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, oldFramebuffer);
+		GLES20.glDeleteFramebuffers(1, ObjectsStore.tmpIntBuffer, 0);
+
+		return !(RenderConfig.GL_DEBUG && RenderUtil.checkGlError("DynamicAtlas copy"));
+	}
+
+	/**
+	 * Incremented with each defragmentation, i.e., whenever the uv coords of regions changed.
+	 */
+	public int getLayoutVersion() {
+		return layoutVersion;
+	}
+
+	public int getRegionCount(){
+		return regions.size();
+	}
+
+	/**
+	 * Pixels not covered by regions (padding counts as used).
+	 */
+	public int getFreeArea(){
+		int l = regions.size();
+		int paddedUsed = 0;
+		for (int i = 0; i < l; i++){
+			Rect r = regions.get(i).getPixelCoords();
+			paddedUsed += (r.width() + padding) * (r.height() + padding);
+		}
+		return (width - padding) * (height - padding) - paddedUsed;
+	}
+
+	/**
+	 * Fraction of the texture covered by regions.
+	 */
+	public float getOccupancy(){
+		return (float)usedArea / (float)(width * height);
+	}
+
+	/**
+	 * Frees all regions and deletes the texture. GL thread only.
+	 */
+	@Override
+	public void delete() {
+		super.delete();
+		for (AtlasRegion r : regions) r.release();
+		regions.clear();
+		freeRegionIds.clear();
+		nextRegionId = 0;
+		freeSpace.clear();
+		usedArea = 0;
+	}
+
+	@Override
+	public String toString() {
+		return "DynamicAtlas ("+width+"x"+height+") " + regions.size() + " regions, occupancy "
+				+ getOccupancy() + ", " + freeSpace.getFreeRectCount() + " free rects";
+	}
+
+	/**
+	 * A region in a DynamicAtlas. Use like any other TextureSegment.
+	 */
+	public static class AtlasRegion extends TextureSegment {
+		private AtlasRegion(DynamicAtlas atlas, short id, Rect pixelCoords) {
+			super(atlas, id, pixelCoords, false);
+		}
+	}
+}
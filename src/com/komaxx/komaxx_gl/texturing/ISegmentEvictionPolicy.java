@@ -0,0 +1,26 @@
+package com.komaxx.komaxx_gl.texturing;
+
+/**
+ * Decides which segment of a TextureStripper is handed to a new owner, i.e., whose
+ * content is thrown away. Set with <code>TextureStripper.setEvictionPolicy</code>.
+ * 
+ * @author Matthias Schicker
+ */
+public interface ISegmentEvictionPolicy {
+	/**
+	 * @param leastRecentlyUsed	The head of the stripper's LRU list. Follow 
+	 * <code>getMoreRecentlyUsed</code> for the other segments. Never null.
+	 * @return	the segment to be evicted. Must be a segment of the list.
+	 */
+	TextureSegment chooseVictim(TextureSegment leastRecentlyUsed);
+	
+	/**
+	 * Evicts the least recently used segment. The default, O(1).
+	 */
+	public static class Lru implements ISegmentEvictionPolicy {
+		@Override
+		public TextureSegment chooseVictim(TextureSegment leastRecentlyUsed) {
+			return leastRecentlyUsed;
+		}
+	}
+}
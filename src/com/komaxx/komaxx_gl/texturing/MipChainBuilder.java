@@ -0,0 +1,167 @@
+package com.komaxx.komaxx_gl.texturing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Computes mipmap levels on the CPU from plain ARGB pixel arrays (as delivered by
+ * <code>Bitmap.getPixels</code>) with a 2x2 box filter, and packs them into buffers
+ * ready for <code>glTexSubImage2D</code>. Pure Java and stateless, so it can run in
+ * any thread (and on the JVM).</br>
+ * The filter works on straight (not premultiplied) alpha and weights colors by alpha,
+ * transparent pixels do not darken their neighbors. Textures hold premultiplied pixels
+ * like all other uploads, so <code>premultiply</code> the levels before packing them.
+ *
+ * @author Matthias Schicker
+ */
+public class MipChainBuilder {
+	/**
+	 * Can not be instantiated.
+	 */
+	private MipChainBuilder(){
+		// nothing
+	}
+
+	/**
+	 * Number of levels down to 1x1, including level 0.
+	 */
+	public static int getLevelCount(int width, int height){
+		int ret = 1;
+		while (width > 1 || height > 1){
+			width = Math.max(1, width >> 1);
+			height = Math.max(1, height >> 1);
+			ret++;
+		}
+		return ret;
+	}
+
+	/**
+	 * Builds the mip chain. Level 0 is <code>argb</code> itself (not copied).
+	 *
+	 * @param maxLevels	Maximum number of levels, including level 0.
+	 */
+	public static int[][] build(int[] argb, int width, int height, int maxLevels){
+		int levels = Math.min(maxLevels, getLevelCount(width, height));
+		int[][] ret = new int[levels][];
+		ret[0] = argb;
+		for (int i = 1; i < levels; i++){
+			ret[i] = downsample(ret[i-1], width, height);
+			width = Math.max(1, width >> 1);
+			height = Math.max(1, height >> 1);
+		}
+		return ret;
+	}
+
+	/**
+	 * Halves the image with a 2x2 box filter. Odd sizes drop the last row / column,
+	 * a size of 1 is kept.
+	 */
+	public static int[] downsample(int[] src, int width, int height){
+		int nuWidth = Math.max(1, width >> 1);
+		int nuHeight = Math.max(1, height >> 1);
+		int[] ret = new int[nuWidth * nuHeight];
+
+		int dx = (width > 1) ? 1 : 0;
+		int dy = (height > 1) ? width : 0;
+		for (int y = 0; y < nuHeight; y++){
+			int srcRow = (y << (height > 1 ? 1 : 0)) * width;
+			for (int x = 0; x < nuWidth; x++){
+				int i = srcRow + (x << (width > 1 ? 1 : 0));
+				ret[y * nuWidth + x] = average(src[i], src[i + dx], src[i + dy], src[i + dx + dy]);
+			}
+		}
+		return ret;
+	}
+
+	private static int average(int c0, int c1, int c2, int c3){
+		int a0 = c0 >>> 24, a1 = c1 >>> 24, a2 = c2 >>> 24, a3 = c3 >>> 24;
+		int aSum = a0 + a1 + a2 + a3;
+		if (aSum == 0) return 0;
+
+		int r = (((c0 >> 16) & 0xFF) * a0 + ((c1 >> 16) & 0xFF) * a1
+				+ ((c2 >> 16) & 0xFF) * a2 + ((c3 >> 16) & 0xFF) * a3) / aSum;
+		int g = (((c0 >> 8) & 0xFF) * a0 + ((c1 >> 8) & 0xFF) * a1
+				+ ((c2 >> 8) & 0xFF) * a2 + ((c3 >> 8) & 0xFF) * a3) / aSum;
+		int b = ((c0 & 0xFF) * a0 + (c1 & 0xFF) * a1 + (c2 & 0xFF) * a2 + (c3 & 0xFF) * a3) / aSum;
+		return (((aSum + 2) >> 2) << 24) | (r << 16) | (g << 8) | b;
+	}
+
+	/**
+	 * Converts straight alpha ARGB pixels to premultiplied alpha, in place. Applied to
+	 * an alpha weighted level, this gives the box filtered premultiplied pixels.
+	 */
+	public static void premultiply(int[] argb){
+		int l = argb.length;
+		for (int i = 0; i < l; i++){
+			int c = argb[i];
+			int a = c >>> 24;
+			if (a == 255) continue;
+			int r = (((c >> 16) & 0xFF) * a + 127) / 255;
+			int g = (((c >> 8) & 0xFF) * a + 127) / 255;
+			int b = ((c & 0xFF) * a + 127) / 255;
+			argb[i] = (a << 24) | (r << 16) | (g << 8) | b;
+		}
+	}
+
+	/**
+	 * Rotates by 90 degrees clockwise, as for vertical TextureSegments. The result
+	 * is <code>height</code> wide and <code>width</code> high.
+	 */
+	public static int[] rotateClockwise(int[] src, int width, int height){
+		int[] ret = new int[src.length];
+		for (int y = 0; y < height; y++){
+			for (int x = 0; x < width; x++){
+				ret[x * height + (height - 1 - y)] = src[y * width + x];
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Packs ARGB pixels for upload as GL_RGBA / GL_UNSIGNED_BYTE.
+	 */
+	public static ByteBuffer packRgba8888(int[] argb){
+		ByteBuffer ret = ByteBuffer.allocateDirect(argb.length * 4).order(ByteOrder.nativeOrder());
+		for (int c : argb){
+			ret.put((byte)(c >> 16)).put((byte)(c >> 8)).put((byte)c).put((byte)(c >>> 24));
+		}
+		ret.position(0);
+		return ret;
+	}
+
+	/**
+	 * Packs ARGB pixels for upload as GL_RGBA / GL_UNSIGNED_SHORT_4_4_4_4.
+	 */
+	public static ByteBuffer packRgba4444(int[] argb){
+		ByteBuffer ret = ByteBuffer.allocateDirect(argb.length * 2).order(ByteOrder.nativeOrder());
+		for (int c : argb){
+			ret.putShort((short)(((c >> 8) & 0xF000) | ((c >> 4) & 0x0F00) | (c & 0x00F0) | ((c >>> 28) & 0x000F)));
+		}
+		ret.position(0);
+		return ret;
+	}
+
+	/**
+	 * Packs ARGB pixels for upload as GL_RGBA / GL_UNSIGNED_SHORT_5_5_5_1.
+	 */
+	public static ByteBuffer packRgba5551(int[] argb){
+		ByteBuffer ret = ByteBuffer.allocateDirect(argb.length * 2).order(ByteOrder.nativeOrder());
+		for (int c : argb){
+			ret.putShort((short)(((c >> 8) & 0xF800) | ((c >> 5) & 0x07C0) | ((c >> 2) & 0x003E) | (c >>> 31)));
+		}
+		ret.position(0);
+		return ret;
+	}
+
+	/**
+	 * Packs ARGB pixels for upload as GL_RGB / GL_UNSIGNED_SHORT_5_6_5.
+	 */
+	public static ByteBuffer packRgb565(int[] argb){
+		ByteBuffer ret = ByteBuffer.allocateDirect(argb.length * 2).order(ByteOrder.nativeOrder());
+		for (int c : argb){
+			ret.putShort((short)(((c >> 8) & 0xF800) | ((c >> 5) & 0x07E0) | ((c >> 3) & 0x001F)));
+		}
+		ret.position(0);
+		return ret;
+	}
+}
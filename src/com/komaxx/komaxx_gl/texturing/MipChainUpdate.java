@@ -0,0 +1,128 @@
+package com.komaxx.komaxx_gl.texturing;
+
+import java.nio.ByteBuffer;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+
+import com.komaxx.komaxx_gl.RenderConfig;
+import com.komaxx.komaxx_gl.RenderContext;
+import com.komaxx.komaxx_gl.scenegraph.IGlRunnable;
+import com.komaxx.komaxx_gl.scenegraph.SceneGraph;
+import com.komaxx.komaxx_gl.util.RenderUtil;
+
+/**
+ * Updates all mipmap levels of one TextureSegment: The levels are computed with
+ * the MipChainBuilder in a background thread, the GL thread then uploads one level
+ * per idle job, so the uploads are spread over frames according to the idle job budget.
+ * Created by <code>TextureSegment.updateMipChainAsync</code>.</br>
+ * Outdated updates (the segment was updated again meanwhile) are dropped.
+ *
+ * @author Matthias Schicker
+ */
+class MipChainUpdate implements Runnable, IGlRunnable {
+	private final TextureSegment segment;
+	private final SceneGraph sceneGraph;
+	private final int generation;
+	private final int textureHandle;
+
+	private int[] pixels;
+	private int width;
+	private int height;
+	private final boolean rotate;
+	private final int maxLevels;
+
+	private ByteBuffer[] levels;
+	private int nextLevel = 0;
+	private volatile boolean aborted = false;
+
+
+	/**
+	 * Reads the pixels right away, so the bitmap may be changed afterwards.
+	 * <code>getPixels</code> delivers straight alpha, the levels are premultiplied
+	 * after filtering.
+	 */
+	MipChainUpdate(RenderContext rc, TextureSegment segment, Bitmap bitmap, int generation){
+		this.segment = segment;
+		this.sceneGraph = rc.sceneGraph;
+		this.generation = generation;
+		this.textureHandle = segment.getTexture().getHandle();
+
+		this.width = bitmap.getWidth();
+		this.height = bitmap.getHeight();
+		this.pixels = new int[width * height];
+		bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+
+		this.rotate = segment.isVertical();
+		this.maxLevels = segment.getTexture().getConfig().mipMapped ? Integer.MAX_VALUE : 1;
+	}
+
+	/**
+	 * Background part: rotate, build the chain, pack.
+	 */
+	@Override
+	public void run() {
+		if (aborted || segment.getMipUpdateGeneration() != generation) return;
+
+		if (rotate){
+			pixels = MipChainBuilder.rotateClockwise(pixels, width, height);
+			int tmp = width;
+			width = height;
+			height = tmp;
+		}
+
+		int[][] chain = MipChainBuilder.build(pixels, width, height, maxLevels);
+		pixels = null;
+
+		byte pixelFormat = segment.getTexture().getPixelFormat();
+		levels = new ByteBuffer[chain.length];
+		for (int i = 0; i < chain.length; i++){
+			// the texture holds premultiplied pixels, as uploaded by GLUtils
+			MipChainBuilder.premultiply(chain[i]);
+			switch (pixelFormat){
+			case PixelConverter.FORMAT_RGBA_4444: levels[i] = MipChainBuilder.packRgba4444(chain[i]); break;
+			case PixelConverter.FORMAT_RGB_565: levels[i] = MipChainBuilder.packRgb565(chain[i]); break;
+			case PixelConverter.FORMAT_RGBA_5551: levels[i] = MipChainBuilder.packRgba5551(chain[i]); break;
+			default: levels[i] = MipChainBuilder.packRgba8888(chain[i]); break;
+			}
+			chain[i] = null;
+		}
+
+		if (!aborted) sceneGraph.queueIdleJob(this);
+	}
+
+	/**
+	 * GL part: uploads the next level, re-queues itself when levels are left.
+	 */
+	@Override
+	public void run(RenderContext rc) {
+		if (aborted || segment.getMipUpdateGeneration() != generation
+				|| segment.getTexture().getHandle() != textureHandle){
+			abort();
+			return;
+		}
+
+		// packed in the format the texture was allocated in; the context's unpack
+		// alignment of 1 fits the rows of all formats
+		Texture texture = segment.getTexture();
+		int level = nextLevel++;
+		rc.bindTexture(textureHandle);
+		GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, level,
+				segment.getPixelCoords().left >> level, segment.getPixelCoords().top >> level,
+				Math.max(1, width >> level), Math.max(1, height >> level),
+				texture.getGlFormat(), texture.getGlType(), levels[level]);
+		TextureStore.uploaded(levels[level].capacity());
+		if (RenderConfig.GL_DEBUG) RenderUtil.checkGlError("Uploading mip level " + level);
+		levels[level] = null;
+
+		if (nextLevel < levels.length) rc.sceneGraph.queueIdleJob(this);
+		else levels = null;
+	}
+
+	@Override
+	public void abort() {
+		aborted = true;
+		levels = null;
+		pixels = null;
+	}
+}
@@ -0,0 +1,135 @@
+package com.komaxx.komaxx_gl.texturing;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts RGBA8888 pixels (byte order R, G, B, A, as delivered by
+ * <code>Bitmap.copyPixelsToBuffer</code> for ARGB_8888 bitmaps) into the 16 bit formats
+ * the GL takes, without any intermediate Bitmap. Optionally applies ordered (Bayer 4x4)
+ * dithering and converts between premultiplied and straight alpha.</br>
+ * Pure Java and stateless, so it can run in any thread (and be benchmarked on the JVM).
+ * Target buffers must be in native order, which direct buffers for the GL always are.
+ *
+ * @author Matthias Schicker
+ */
+public class PixelConverter {
+	public static final byte FORMAT_RGBA_8888 = 0;
+	/**
+	 * GL_RGBA / GL_UNSIGNED_SHORT_4_4_4_4
+	 */
+	public static final byte FORMAT_RGBA_4444 = 1;
+	/**
+	 * GL_RGB / GL_UNSIGNED_SHORT_5_6_5
+	 */
+	public static final byte FORMAT_RGB_565 = 2;
+	/**
+	 * GL_RGBA / GL_UNSIGNED_SHORT_5_5_5_1, for images with binary alpha.
+	 */
+	public static final byte FORMAT_RGBA_5551 = 3;
+	public static final int FORMAT_COUNT = 4;
+
+	public static final byte ALPHA_KEEP = 0;
+	public static final byte ALPHA_PREMULTIPLY = 1;
+	public static final byte ALPHA_UNPREMULTIPLY = 2;
+
+	/**
+	 * 4x4 Bayer matrix, values 0..15.
+	 */
+	private static final int[] BAYER_4X4 = new int[]{
+		 0,  8,  2, 10,
+		12,  4, 14,  6,
+		 3, 11,  1,  9,
+		15,  7, 13,  5
+	};
+
+	/**
+	 * Can not be instantiated.
+	 */
+	private PixelConverter(){
+		// nothing
+	}
+
+	public static int getBytesPerPixel(byte format){
+		return (format == FORMAT_RGBA_8888) ? 4 : 2;
+	}
+
+	public static String getFormatName(byte format){
+		switch (format){
+		case FORMAT_RGBA_4444: return "RGBA4444";
+		case FORMAT_RGB_565: return "RGB565";
+		case FORMAT_RGBA_5551: return "RGBA5551";
+		default: return "RGBA8888";
+		}
+	}
+
+	/**
+	 * Converts <code>width*height</code> pixels, reading from the current position of
+	 * <code>src</code> and writing from the current position of <code>dst</code>. Both
+	 * positions are advanced.
+	 *
+	 * @param dither	Ordered dithering, hides banding in gradients when reducing to 16 bit.
+	 * @param alphaMode	One of the ALPHA_ constants.
+	 */
+	public static void convert(ByteBuffer src, int width, int height,
+			ByteBuffer dst, byte targetFormat, boolean dither, byte alphaMode){
+		for (int y = 0; y < height; y++){
+			int bayerRow = (y & 3) << 2;
+			for (int x = 0; x < width; x++){
+				int r = src.get() & 0xFF;
+				int g = src.get() & 0xFF;
+				int b = src.get() & 0xFF;
+				int a = src.get() & 0xFF;
+
+				if (alphaMode == ALPHA_PREMULTIPLY){
+					r = (r * a + 127) / 255;
+					g = (g * a + 127) / 255;
+					b = (b * a + 127) / 255;
+				} else if (alphaMode == ALPHA_UNPREMULTIPLY && a != 0 && a != 255){
+					r = Math.min(255, (r * 255 + (a >> 1)) / a);
+					g = Math.min(255, (g * 255 + (a >> 1)) / a);
+					b = Math.min(255, (b * 255 + (a >> 1)) / a);
+				}
+
+				switch (targetFormat){
+				case FORMAT_RGBA_4444: {
+					// one step of 4 bit is 17 in 8 bit
+					int d = dither ? (BAYER_4X4[bayerRow + (x & 3)] * 17) >> 4 : 8;
+					dst.putShort((short)(
+							(quantize(r, d, 17) << 12) | (quantize(g, d, 17) << 8)
+							| (quantize(b, d, 17) << 4) | quantize(a, d, 17)));
+					break;
+				}
+				case FORMAT_RGB_565: {
+					int bayer = BAYER_4X4[bayerRow + (x & 3)];
+					int d5 = dither ? (bayer * 8) >> 4 : 4;
+					int d6 = dither ? (bayer * 4) >> 4 : 2;
+					dst.putShort((short)(
+							(Math.min(31, (r + d5) >> 3) << 11)
+							| (Math.min(63, (g + d6) >> 2) << 5)
+							| Math.min(31, (b + d5) >> 3)));
+					break;
+				}
+				case FORMAT_RGBA_5551: {
+					int d5 = dither ? (BAYER_4X4[bayerRow + (x & 3)] * 8) >> 4 : 4;
+					dst.putShort((short)(
+							(Math.min(31, (r + d5) >> 3) << 11)
+							| (Math.min(31, (g + d5) >> 3) << 6)
+							| (Math.min(31, (b + d5) >> 3) << 1)
+							| (a >> 7)));
+					break;
+				}
+				default:
+					dst.put((byte)r).put((byte)g).put((byte)b).put((byte)a);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Maps 0..255 to 0..15, <code>offset</code> is the rounding (or dithering) offset.
+	 */
+	private static int quantize(int value, int offset, int step){
+		return Math.min(15, (value + offset) / step);
+	}
+}
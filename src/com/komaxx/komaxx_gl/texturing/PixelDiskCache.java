@@ -0,0 +1,290 @@
+package com.komaxx.komaxx_gl.texturing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.opengl.GLES20;
+
+import com.komaxx.komaxx_gl.util.KoLog;
+
+/**
+ * Keeps decoded and converted pixels of resource textures on disk, so reloading a
+ * texture (e.g., after the GL context was lost, or on the next cold start) costs one
+ * mmap and one upload instead of decoding the image again. Entries are keyed by
+ * resource id and pixel format; the whole cache is dropped when the app is updated.</br>
+ * Thread safe, reading and writing may happen in any thread. Entries written while the
+ * cache is cleared are dropped.
+ *
+ * @author Matthias Schicker
+ */
+public class PixelDiskCache {
+	public static final byte FORMAT_RGBA_8888 = PixelConverter.FORMAT_RGBA_8888;
+	public static final byte FORMAT_RGBA_4444 = PixelConverter.FORMAT_RGBA_4444;
+	public static final byte FORMAT_RGB_565 = PixelConverter.FORMAT_RGB_565;
+	public static final byte FORMAT_RGBA_5551 = PixelConverter.FORMAT_RGBA_5551;
+
+	private static final int MAGIC = 0x4B4F5058;		// "KOPX"
+	private static final int HEADER_SIZE = 16;
+	private static final String VERSION_FILE = "version";
+
+	private final File directory;
+
+	private final AtomicInteger hits = new AtomicInteger();
+	private final AtomicInteger misses = new AtomicInteger();
+	/**
+	 * Incremented with each <code>clear</code>: Entries written while clearing are dropped.
+	 */
+	private int clearCount = 0;
+
+
+	/**
+	 * Creates the cache in the app's cache dir, invalidated with each app update.
+	 */
+	public static PixelDiskCache create(Context context){
+		String version = "0";
+		try {
+			PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+			version = info.versionCode + "_" + info.lastUpdateTime;
+		} catch (Exception e){
+			KoLog.w("PixelDiskCache", "Could not read package version: " + e);
+		}
+		return new PixelDiskCache(new File(context.getCacheDir(), "komaxx_pixels"), version);
+	}
+
+	/**
+	 * @param version	Whenever this differs from the version the cache was written
+	 * with, all entries are deleted.
+	 */
+	public PixelDiskCache(File directory, String version){
+		this.directory = directory;
+		if (!directory.isDirectory() && !directory.mkdirs()){
+			KoLog.w(this, "Could not create cache directory " + directory);
+		}
+		checkVersion(version);
+	}
+
+	private synchronized void checkVersion(String version) {
+		File versionFile = new File(directory, VERSION_FILE);
+		String cachedVersion = null;
+		if (versionFile.exists()){
+			try {
+				FileInputStream in = new FileInputStream(versionFile);
+				try {
+					byte[] b = new byte[(int)versionFile.length()];
+					int read = in.read(b);
+					cachedVersion = new String(b, 0, Math.max(0, read), "UTF-8");
+				} finally {
+					in.close();
+				}
+			} catch (IOException e){
+				KoLog.w(this, "Could not read cache version: " + e);
+			}
+		}
+		if (version.equals(cachedVersion)) return;
+
+		clear();
+		try {
+			FileOutputStream out = new FileOutputStream(versionFile);
+			try {
+				out.write(version.getBytes("UTF-8"));
+			} finally {
+				out.close();
+			}
+		} catch (IOException e){
+			KoLog.w(this, "Could not write cache version: " + e);
+		}
+	}
+
+	/**
+	 * Deletes all entries.
+	 */
+	public synchronized void clear(){
+		clearCount++;
+		File[] files = directory.listFiles();
+		if (files == null) return;
+		for (File f : files){
+			if (!f.delete()) KoLog.w(this, "Could not delete " + f);
+		}
+	}
+
+	/**
+	 * The format the resource is cached in, -1 when not cached at all. For
+	 * automatically formatted textures, whose format is known only after decoding.
+	 */
+	public byte findFormat(int resourceId){
+		for (byte format = 0; format < PixelConverter.FORMAT_COUNT; format++){
+			if (getFile(resourceId, format).exists()) return format;
+		}
+		return -1;
+	}
+
+	/**
+	 * Maps the cached pixels, or returns null when not cached.
+	 */
+	public Entry get(int resourceId, byte format){
+		File f = getFile(resourceId, format);
+		if (!f.exists()){
+			misses.incrementAndGet();
+			return null;
+		}
+
+		try {
+			RandomAccessFile raf = new RandomAccessFile(f, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				mapped.order(ByteOrder.BIG_ENDIAN);
+				if (mapped.getInt(0) != MAGIC || mapped.get(12) != format){
+					throw new IOException("Broken cache entry");
+				}
+
+				Entry ret = new Entry();
+				ret.width = mapped.getInt(4);
+				ret.height = mapped.getInt(8);
+				ret.format = format;
+				mapped.position(HEADER_SIZE);
+				ret.pixels = mapped.slice().order(ByteOrder.nativeOrder());
+				if (ret.pixels.capacity() < ret.width * ret.height * getBytesPerPixel(format)){
+					throw new IOException("Truncated cache entry");
+				}
+				hits.incrementAndGet();
+				return ret;
+			} finally {
+				// the mapping stays valid
+				raf.close();
+			}
+		} catch (IOException e){
+			KoLog.w(this, "Could not read cached pixels of " + resourceId + ": " + e);
+			if (!f.delete()) KoLog.w(this, "Could not delete " + f);
+			misses.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the pixels of the bitmap, converted to the format. Writes to a temporary
+	 * file first, so readers never see half written entries. Slow, better not
+	 * called in the GL thread.
+	 */
+	public void put(int resourceId, byte format, Bitmap bitmap){
+		int clearCountAtStart;
+		synchronized (this) {
+			clearCountAtStart = clearCount;
+		}
+		Config config = getBitmapConfig(format);
+		int width = bitmap.getWidth();
+		int height = bitmap.getHeight();
+
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + width * height * getBytesPerPixel(format));
+		buffer.putInt(MAGIC).putInt(width).putInt(height).put(format);
+		buffer.position(HEADER_SIZE);
+		buffer.order(ByteOrder.nativeOrder());
+		if (bitmap.getConfig() == config && format != FORMAT_RGBA_5551){
+			bitmap.copyPixelsToBuffer(buffer);
+		} else if (bitmap.getConfig() == Config.ARGB_8888){
+			convert(bitmap, format, buffer);
+		} else {
+			Bitmap converted = bitmap.copy(Config.ARGB_8888, false);
+			if (format == FORMAT_RGBA_8888) converted.copyPixelsToBuffer(buffer);
+			else convert(converted, format, buffer);
+			converted.recycle();
+		}
+
+		File f = getFile(resourceId, format);
+		File tmp = new File(directory, f.getName() + ".tmp");
+		try {
+			FileOutputStream out = new FileOutputStream(tmp);
+			try {
+				out.write(buffer.array(), 0, buffer.capacity());
+			} finally {
+				out.close();
+			}
+			synchronized (this) {
+				if (clearCount != clearCountAtStart){
+					// cleared in the meantime, the entry may be outdated
+					if (!tmp.delete()) KoLog.w(this, "Could not delete " + tmp);
+					return;
+				}
+				if (!tmp.renameTo(f)) throw new IOException("Could not rename " + tmp);
+			}
+		} catch (IOException e){
+			KoLog.w(this, "Could not cache pixels of " + resourceId + ": " + e);
+			if (tmp.exists() && !tmp.delete()) KoLog.w(this, "Could not delete " + tmp);
+		}
+	}
+
+	private static void convert(Bitmap argb8888, byte format, ByteBuffer target){
+		int width = argb8888.getWidth();
+		int height = argb8888.getHeight();
+		ByteBuffer src = Texture.getStagingBufferPool().obtain(width * height * 4);
+		argb8888.copyPixelsToBuffer(src);
+		src.position(0);
+		PixelConverter.convert(src, width, height, target, format, Texture.ditherConversions, PixelConverter.ALPHA_KEEP);
+		Texture.getStagingBufferPool().release(src);
+	}
+
+	private File getFile(int resourceId, byte format){
+		return new File(directory, Integer.toHexString(resourceId) + "_" + format + ".px");
+	}
+
+	public static int getBytesPerPixel(byte format){
+		return PixelConverter.getBytesPerPixel(format);
+	}
+
+	/**
+	 * RGBA5551 has no Bitmap config, ARGB_8888 is returned.
+	 */
+	public static Config getBitmapConfig(byte format){
+		switch (format){
+		case FORMAT_RGBA_4444: return Config.ARGB_4444;
+		case FORMAT_RGB_565: return Config.RGB_565;
+		default: return Config.ARGB_8888;
+		}
+	}
+
+	public int getHits() {
+		return hits.get();
+	}
+
+	public int getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Pixels of one cached texture, mapped from disk.
+	 */
+	public static class Entry {
+		public int width;
+		public int height;
+		public byte format;
+		/**
+		 * Directly usable in glTexImage2D, see <code>upload</code>.
+		 */
+		public ByteBuffer pixels;
+
+		/**
+		 * Uploads the pixels as level 0 into the currently bound texture. GL thread only.
+		 */
+		public void upload(){
+			int glFormat = TextureConfig.getGlFormat(format);
+			int glType = TextureConfig.getGlType(format);
+
+			pixels.position(0);
+			GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, glFormat, width, height, 0,
+					glFormat, glType, pixels);
+			TextureStore.uploaded(width * height * PixelConverter.getBytesPerPixel(format));
+		}
+	}
+}
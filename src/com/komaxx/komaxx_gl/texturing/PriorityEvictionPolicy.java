@@ -0,0 +1,51 @@
+package com.komaxx.komaxx_gl.texturing;
+
+/**
+ * Evicts the segment whose owner has the lowest priority, e.g., the list item farthest
+ * away from the visible area (see <code>ListCameraNode.getEvictionPriority</code>).
+ * This keeps items that are about to scroll back into view during a fling.</br>
+ * Only the <code>candidateCount</code> least recently used segments are inspected, which
+ * bounds the cost per acquisition. Unowned segments are always taken first.
+ * 
+ * @author Matthias Schicker
+ */
+public class PriorityEvictionPolicy implements ISegmentEvictionPolicy {
+	private final IOwnerPriorityProvider priorityProvider;
+	private final int candidateCount;
+	
+	
+	/**
+	 * @param candidateCount	How many of the least recently used segments are compared.
+	 */
+	public PriorityEvictionPolicy(IOwnerPriorityProvider priorityProvider, int candidateCount){
+		this.priorityProvider = priorityProvider;
+		this.candidateCount = Math.max(1, candidateCount);
+	}
+	
+	@Override
+	public TextureSegment chooseVictim(TextureSegment leastRecentlyUsed) {
+		TextureSegment ret = leastRecentlyUsed;
+		float lowestPriority = Float.MAX_VALUE;
+		
+		TextureSegment s = leastRecentlyUsed;
+		for (int i = 0; i < candidateCount && s != null; i++){
+			int owner = s.getOwnerId();
+			if (owner == 0) return s;
+			
+			float priority = priorityProvider.getPriority(owner);
+			if (priority < lowestPriority){
+				lowestPriority = priority;
+				ret = s;
+			}
+			s = s.getMoreRecentlyUsed();
+		}
+		return ret;
+	}
+	
+	public static interface IOwnerPriorityProvider {
+		/**
+		 * The higher, the longer the segment of the owner is kept. Called in the GL thread.
+		 */
+		float getPriority(int ownerId);
+	}
+}
@@ -0,0 +1,116 @@
+package com.komaxx.komaxx_gl.texturing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Canvas;
+
+import com.komaxx.komaxx_gl.RenderConfig;
+
+/**
+ * Hands out temporary bitmaps (with a Canvas to draw into them) of a given size and
+ * config, and takes them back for reuse. Used to rescale and rotate update bitmaps of
+ * TextureSegments without allocating in every update.</br>
+ * Not thread safe, GL thread only. Obtained bitmaps are dirty: Erase them if necessary.
+ *
+ * @author Matthias Schicker
+ */
+public class ScratchBitmapPool {
+	/**
+	 * How many bitmaps of the same size and config are kept.
+	 */
+	private static final int MAX_PER_KEY = 2;
+
+	private final HashMap<Long, ArrayList<Scratch>> pool = new HashMap<Long, ArrayList<Scratch>>();
+	private final int maxBytes;
+	private int pooledBytes = 0;
+
+	private int obtained = 0;
+	private int created = 0;
+
+
+	/**
+	 * @param maxBytes	Released bitmaps are recycled instead of pooled when the pool
+	 * would grow bigger.
+	 */
+	public ScratchBitmapPool(int maxBytes){
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Delivers a bitmap with undefined content. Give it back with <code>release</code>.
+	 */
+	public Scratch obtain(int width, int height, Config config){
+		obtained++;
+		ArrayList<Scratch> list = pool.get(key(width, height, config));
+		if (list != null && list.size() > 0){
+			Scratch ret = list.remove(list.size() - 1);
+			pooledBytes -= ret.sizeBytes;
+			return ret;
+		}
+
+		created++;
+		return new Scratch(width, height, config);
+	}
+
+	public void release(Scratch s){
+		long key = key(s.bitmap.getWidth(), s.bitmap.getHeight(), s.bitmap.getConfig());
+		ArrayList<Scratch> list = pool.get(key);
+		if (list == null){
+			list = new ArrayList<Scratch>(MAX_PER_KEY);
+			pool.put(key, list);
+		}
+
+		if (list.size() >= MAX_PER_KEY || pooledBytes + s.sizeBytes > maxBytes){
+			if (RenderConfig.RECYCLE_BITMAPS) s.bitmap.recycle();
+			return;
+		}
+		list.add(s);
+		pooledBytes += s.sizeBytes;
+	}
+
+	/**
+	 * Recycles all pooled bitmaps.
+	 */
+	public void clear(){
+		for (ArrayList<Scratch> list : pool.values()){
+			for (Scratch s : list){
+				if (RenderConfig.RECYCLE_BITMAPS) s.bitmap.recycle();
+			}
+		}
+		pool.clear();
+		pooledBytes = 0;
+	}
+
+	private static long key(int width, int height, Config config){
+		return ((long)width << 32) | ((long)height << 8) | config.ordinal();
+	}
+
+	public int getPooledBytes() {
+		return pooledBytes;
+	}
+
+	/**
+	 * Fraction of <code>obtain</code> calls that did not allocate.
+	 */
+	public float getReuseRate(){
+		return (obtained == 0) ? 0 : 1f - (float)created / (float)obtained;
+	}
+
+	/**
+	 * A pooled bitmap and a Canvas drawing into it.
+	 */
+	public static class Scratch {
+		public final Bitmap bitmap;
+		public final Canvas canvas;
+		private final int sizeBytes;
+
+		private Scratch(int width, int height, Config config){
+			bitmap = Bitmap.createBitmap(width, height, config);
+			canvas = new Canvas(bitmap);
+			sizeBytes = width * height * ((config == Config.ARGB_8888) ? 4 : 2);
+		}
+	}
+}
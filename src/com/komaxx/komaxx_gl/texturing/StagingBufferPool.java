@@ -0,0 +1,73 @@
+package com.komaxx.komaxx_gl.texturing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+/**
+ * Direct, native ordered ByteBuffers for uploads, reused instead of allocated per
+ * update. Capacities are rounded up to powers of two, so buffers serve differently
+ * sized updates. Thread safe.
+ *
+ * @author Matthias Schicker
+ */
+public class StagingBufferPool {
+	private static final int MIN_CAPACITY = 1024;
+	private static final int MAX_PER_SIZE = 2;
+
+	/**
+	 * Pooled buffers by log2 of the capacity.
+	 */
+	@SuppressWarnings("unchecked")
+	private final ArrayList<ByteBuffer>[] pooled = new ArrayList[32];
+	private final int maxPooledBytes;
+	private int pooledBytes = 0;
+
+
+	public StagingBufferPool(int maxPooledBytes){
+		this.maxPooledBytes = maxPooledBytes;
+	}
+
+	/**
+	 * Delivers a buffer with at least the given capacity, position 0 and limit
+	 * <code>bytes</code>. Content is undefined.
+	 */
+	public synchronized ByteBuffer obtain(int bytes){
+		int bucket = bucket(bytes);
+		ArrayList<ByteBuffer> list = pooled[bucket];
+		ByteBuffer ret;
+		if (list != null && list.size() > 0){
+			ret = list.remove(list.size() - 1);
+			pooledBytes -= ret.capacity();
+		} else {
+			ret = ByteBuffer.allocateDirect(1 << bucket).order(ByteOrder.nativeOrder());
+		}
+		ret.clear();
+		ret.limit(bytes);
+		return ret;
+	}
+
+	public synchronized void release(ByteBuffer buffer){
+		int bucket = bucket(buffer.capacity());
+		if ((1 << bucket) != buffer.capacity()) return;		// not from this pool
+
+		if (pooled[bucket] == null) pooled[bucket] = new ArrayList<ByteBuffer>(MAX_PER_SIZE);
+		if (pooled[bucket].size() >= MAX_PER_SIZE || pooledBytes + buffer.capacity() > maxPooledBytes) return;
+		pooled[bucket].add(buffer);
+		pooledBytes += buffer.capacity();
+	}
+
+	public synchronized void clear(){
+		for (int i = 0; i < pooled.length; i++) pooled[i] = null;
+		pooledBytes = 0;
+	}
+
+	private static int bucket(int bytes){
+		int ret = 31 - Integer.numberOfLeadingZeros(Math.max(MIN_CAPACITY, bytes) - 1) + 1;
+		return ret;
+	}
+
+	public synchronized int getPooledBytes() {
+		return pooledBytes;
+	}
+}
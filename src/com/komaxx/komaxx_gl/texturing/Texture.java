@@ -5,7 +5,6 @@ import java.nio.ByteBuffer;
 
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.Config;
-import android.graphics.Canvas;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.opengl.GLES20;
@@ -23,12 +22,36 @@ public class Texture {
 	protected static Config ALPHA_CONFIG = highResolutionColor ? Config.ARGB_8888 : Config.ARGB_4444;
 	protected static Config OPAQUE_CONFIG = highResolutionColor ? Config.ARGB_8888 : Config.RGB_565;
 	
+	/**
+	 * When true, ARGB_8888 updates of 16 bit textures are converted with ordered dithering.
+	 */
+	public static boolean ditherConversions = true;
+	
+	/**
+	 * Direct buffers for converted uploads, shared by all textures.
+	 */
+	private static final StagingBufferPool stagingBufferPool = new StagingBufferPool(4 * 1024 * 1024);
+	private static final int FILL_CHUNK_BYTES = 64 * 1024;
+	/**
+	 * Picks the formats of FORMAT_AUTO textures, shared with the TextureStore.
+	 */
+	private static final TextureFormatAnalyzer formatAnalyzer = new TextureFormatAnalyzer();
+	
 	private final TextureConfig config;
 
 	protected int handle;
 
 	protected int width;
 	protected int height;
+	
+	/**
+	 * Temporary bitmaps for segment updates, created on demand.
+	 */
+	private ScratchBitmapPool scratchBitmapPool;
+	/**
+	 * Staged sub image updates, created on demand.
+	 */
+	private UploadQueue uploadQueue;
 
 	public Texture(TextureConfig config) {
 		this.config = config.clone();
@@ -66,19 +89,21 @@ public class Texture {
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, config.edgeBehavior);
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, config.edgeBehavior);
         
-        if (config.alphaChannel){
-        	GLES20.glTexImage2D(
-        			GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, 
-        			width, height, 0, GLES20.GL_RGBA, 
-        			highResolutionColor ? GLES20.GL_UNSIGNED_BYTE : GLES20.GL_UNSIGNED_SHORT_4_4_4_4, null);
-        } else {
-        	Bitmap b = Bitmap.createBitmap(width, height, OPAQUE_CONFIG);
-        	Canvas c = new Canvas(b);
-        	c.drawColor(0xFF000000 | config.basicColor);
-        	
-        	GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, b, 0);
-        	if (RenderConfig.RECYCLE_BITMAPS) b.recycle();
-        }
+        if (!allocate()) return false;
+		
+		TextureStore.textureCreated(this);
+		
+		return true;
+	}
+	
+	/**
+	 * (Re-)specifies the storage of the bound texture in its current pixel format.
+	 */
+	private boolean allocate(){
+        GLES20.glTexImage2D(
+        		GLES20.GL_TEXTURE_2D, 0, getGlFormat(), 
+        		width, height, 0, getGlFormat(), getGlType(), null);
+        if (!config.alphaChannel) fill(0xFF000000 | config.basicColor);
 
 		if (RenderConfig.GL_DEBUG && RenderUtil.checkGlError("Bind texture")) return false;
 		
@@ -86,10 +111,64 @@ public class Texture {
 			GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
 			if (RenderConfig.GL_DEBUG) RenderUtil.checkGlError("Generate mipmaps");
 		}
+		return true;
+	}
+	
+	/**
+	 * true while a FORMAT_AUTO texture waits for its first update to pick the format.
+	 */
+	public boolean isFormatPending(){
+		return config.pixelFormat == TextureConfig.FORMAT_AUTO;
+	}
+	
+	/**
+	 * For FORMAT_AUTO textures: Picks the pixel format from the first update, see
+	 * TextureFormatAnalyzer, and re-allocates the texture in it when it differs from the
+	 * default format it was created in. Does nothing for all other textures. Called by
+	 * the update methods of Textures and TextureSegments.</br>
+	 * <b>NOTE</b> Make sure that this texture is currently bound in the GL - 
+	 * this call will *NOT* bind it!
+	 */
+	public void resolveAutoFormat(Bitmap firstUpdate){
+		if (!isFormatPending()) return;
 		
-		TextureStore.textureCreated(this);
+		byte createdFormat = getPixelFormat();
+		byte chosen = chooseFormat(firstUpdate);
+		boolean reallocate = chosen != createdFormat;
+		if (reallocate) TextureStore.textureDeleted(this);
 		
-		return true;
+		config.pixelFormat = chosen;
+		// TextureStrips deliver their own copy of the config
+		getConfig().pixelFormat = chosen;
+		
+		if (reallocate){
+			allocate();
+			TextureStore.textureCreated(this);
+		}
+	}
+	
+	private byte chooseFormat(Bitmap bitmap){
+		Config bitmapConfig = bitmap.getConfig();
+		if (bitmapConfig == Config.RGB_565) return PixelConverter.FORMAT_RGB_565;
+		if (bitmapConfig == Config.ARGB_4444) return PixelConverter.FORMAT_RGBA_4444;
+		if (bitmapConfig != Config.ARGB_8888) return getPixelFormat();
+		
+		int w = bitmap.getWidth();
+		int h = bitmap.getHeight();
+		ByteBuffer src = stagingBufferPool.obtain(w * h * 4);
+		bitmap.copyPixelsToBuffer(src);
+		src.position(0);
+		byte ret = formatAnalyzer.analyze(src, w, h).recommendedFormat;
+		stagingBufferPool.release(src);
+		return ret;
+	}
+	
+	/**
+	 * Tunes the format choice of FORMAT_AUTO textures and of the TextureStore's 
+	 * automatic format selection.
+	 */
+	public static TextureFormatAnalyzer getFormatAnalyzer() {
+		return formatAnalyzer;
 	}
 
 	/**
@@ -100,22 +179,48 @@ public class Texture {
 		// First: Make sure that 'this' texture is changed.
 		rc.bindTexture(handle);
 		
-		int format = config.alphaChannel ? GLES20.GL_RGBA : GLES20.GL_RGB;
-		int type = config.alphaChannel ? 
-				(highResolutionColor ? GLES20.GL_UNSIGNED_BYTE : GLES20.GL_UNSIGNED_SHORT_4_4_4_4) : 
-				GLES20.GL_RGB565;
-		
-		Buffer b = ByteBuffer.wrap(new byte[width * 3]);
+		Buffer b = ByteBuffer.wrap(new byte[width * PixelConverter.getBytesPerPixel(getPixelFormat())]);
 		
 		// Stream the empty pixels one line at a time
 		for (int i = 0; i < height; i++){
-			GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, i, width, 1, format, type, b);
+			GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, i, width, 1, getGlFormat(), getGlType(), b);
+			TextureStore.uploaded(b.capacity());
 		}
 		
 		RenderUtil.checkGlError("clear");
 
 	}
 	
+	/**
+	 * Fills level 0 with the color, streamed in chunks of rows from one small staging
+	 * buffer instead of a texture sized Bitmap. The texture must be bound.
+	 */
+	private void fill(int argb){
+		byte format = getPixelFormat();
+		int rows = Math.max(1, Math.min(height, FILL_CHUNK_BYTES / (width * 4)));
+		ByteBuffer src = stagingBufferPool.obtain(width * rows * 4);
+		byte r = (byte) (argb >> 16), g = (byte) (argb >> 8), b = (byte) argb, a = (byte) (argb >>> 24);
+		for (int i = width * rows; i > 0; i--) src.put(r).put(g).put(b).put(a);
+		src.position(0);
+		
+		ByteBuffer pixels = src;
+		if (format != PixelConverter.FORMAT_RGBA_8888){
+			pixels = stagingBufferPool.obtain(width * rows * PixelConverter.getBytesPerPixel(format));
+			PixelConverter.convert(src, width, rows, pixels, format, false, PixelConverter.ALPHA_KEEP);
+		}
+		
+		for (int y = 0; y < height; y += rows){
+			int chunkRows = Math.min(rows, height - y);
+			pixels.position(0);
+			GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, y, width, chunkRows,
+					getGlFormat(), getGlType(), pixels);
+			TextureStore.uploaded(width * chunkRows * PixelConverter.getBytesPerPixel(format));
+		}
+		
+		if (pixels != src) stagingBufferPool.release(pixels);
+		stagingBufferPool.release(src);
+	}
+	
 	public int getHandle(){
 		return handle;
 	}
@@ -139,19 +244,27 @@ public class Texture {
 	 * this call will *NOT* bind it!
 	 */
 	public void update(Bitmap updateBitmap, int mipMapLevel) {
-		if (config.alphaChannel && updateBitmap.getConfig() != ALPHA_CONFIG){
-			updateBitmap = updateBitmap.copy(ALPHA_CONFIG, false);
-		} else if (!config.alphaChannel && updateBitmap.getConfig() != OPAQUE_CONFIG){
-			updateBitmap = updateBitmap.copy(OPAQUE_CONFIG, false);
+		resolveAutoFormat(updateBitmap);
+		int targetSize = width >> mipMapLevel;
+		if (updateBitmap.getWidth() == targetSize && updateBitmap.getHeight() == targetSize
+				&& updateBitmap.getConfig() != getBitmapConfig() 
+				&& uploadConverted(updateBitmap, mipMapLevel, 0, 0)){
+			if (RenderConfig.GL_DEBUG) RenderUtil.checkGlError("Updating texture segment");
+			return;
 		}
 		
-		int targetSize = width >> mipMapLevel;
+		if (updateBitmap.getConfig() != getBitmapConfig()){
+			updateBitmap = updateBitmap.copy(getBitmapConfig(), false);
+		}
 		
 		if (updateBitmap.getWidth() != targetSize || updateBitmap.getHeight() != targetSize){
 			updateBitmap = Bitmap.createScaledBitmap(updateBitmap, targetSize, targetSize, true); 
 		}
 
-		GLUtils.texSubImage2D(GLES20.GL_TEXTURE_2D, mipMapLevel, 0, 0, updateBitmap);
+		if (!uploadConverted(updateBitmap, mipMapLevel, 0, 0)){
+			GLUtils.texSubImage2D(GLES20.GL_TEXTURE_2D, mipMapLevel, 0, 0, updateBitmap);
+			TextureStore.uploaded(updateBitmap);
+		}
 		
 		if (RenderConfig.GL_DEBUG) RenderUtil.checkGlError("Updating texture segment");
 	}
@@ -163,19 +276,139 @@ public class Texture {
 	 * this call will *NOT* bind it!
 	 */
 	public void update(Bitmap updateBitmap, int xPos, int yPos) {
-		if (config.alphaChannel && updateBitmap.getConfig() != ALPHA_CONFIG){
-			updateBitmap = updateBitmap.copy(ALPHA_CONFIG, false);
-		} else if (!config.alphaChannel && updateBitmap.getConfig() != OPAQUE_CONFIG){
-			updateBitmap = updateBitmap.copy(OPAQUE_CONFIG, false);
+		resolveAutoFormat(updateBitmap);
+		if (updateBitmap.getConfig() != getBitmapConfig() && uploadConverted(updateBitmap, 0, xPos, yPos)){
+			if (RenderConfig.GL_DEBUG) RenderUtil.checkGlError("Updating texture");
+			return;
+		}
+		
+		if (updateBitmap.getConfig() != getBitmapConfig()){
+			updateBitmap = updateBitmap.copy(getBitmapConfig(), false);
+		}
+		if (!uploadConverted(updateBitmap, 0, xPos, yPos)){
+			GLUtils.texSubImage2D(GLES20.GL_TEXTURE_2D, 0, xPos, yPos, updateBitmap);
+			TextureStore.uploaded(updateBitmap);
 		}
-
-		GLUtils.texSubImage2D(GLES20.GL_TEXTURE_2D, 0, xPos, yPos, updateBitmap);
 		
 		if (RenderConfig.GL_DEBUG) RenderUtil.checkGlError("Updating texture");
 	}
 	
+	/**
+	 * Like <code>update(Bitmap, int, int)</code>, but only stages the pixels in the texture's
+	 * UploadQueue: Queued updates are uploaded together (merged where they are adjacent)
+	 * when the texture is bound with <code>RenderContext.bindTexture</code>, with
+	 * <code>commitUploads</code>, or at the end of the frame. The bitmap may be changed 
+	 * right after the call.</br>
+	 * Returns false (and queues nothing) when the bitmap can not be staged directly,
+	 * use <code>update</code> then. GL thread only.
+	 */
+	public boolean queueUpdate(RenderContext rc, Bitmap updateBitmap, int xPos, int yPos){
+		if (isFormatPending()){
+			rc.bindTexture(handle);
+			resolveAutoFormat(updateBitmap);
+		}
+		return getUploadQueue().queue(rc, updateBitmap, xPos, yPos);
+	}
+	
+	/**
+	 * Uploads all queued updates now, e.g., before drawing the texture in the same
+	 * <code>onRender</code> that queued them. Binds the texture when anything was queued.
+	 */
+	public void commitUploads(RenderContext rc){
+		if (uploadQueue != null) uploadQueue.commit(rc);
+	}
+	
+	public UploadQueue getUploadQueue() {
+		if (uploadQueue == null) uploadQueue = new UploadQueue(this);
+		return uploadQueue;
+	}
+	
+	/**
+	 * Uploads an ARGB_8888 bitmap into a 16 bit texture: The pixels are converted by the 
+	 * PixelConverter into a pooled staging buffer and uploaded with glTexSubImage2D, no
+	 * converted Bitmap is created. Counts the upload, see TextureStore.uploaded.
+	 * Returns false (and uploads nothing) when the bitmap
+	 * is not ARGB_8888 or the texture is not 16 bit, callers then fall back to the Bitmap path.</br>
+	 * <b>NOTE</b> Make sure that this texture is currently bound in the GL - 
+	 * this call will *NOT* bind it!
+	 */
+	public boolean uploadConverted(Bitmap bitmap, int mipMapLevel, int xPos, int yPos){
+		byte pixelFormat = getPixelFormat();
+		if (pixelFormat == PixelConverter.FORMAT_RGBA_8888 || bitmap.getConfig() != Config.ARGB_8888){
+			return false;
+		}
+		
+		int w = bitmap.getWidth();
+		int h = bitmap.getHeight();
+		ByteBuffer src = stagingBufferPool.obtain(w * h * 4);
+		ByteBuffer dst = stagingBufferPool.obtain(w * h * PixelConverter.getBytesPerPixel(pixelFormat));
+		
+		bitmap.copyPixelsToBuffer(src);
+		src.position(0);
+		// Bitmaps and GLUtils work with premultiplied alpha, so does the texture
+		PixelConverter.convert(src, w, h, dst, pixelFormat, ditherConversions, PixelConverter.ALPHA_KEEP);
+		dst.position(0);
+		
+		GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, mipMapLevel, xPos, yPos, w, h, 
+				getGlFormat(), getGlType(), dst);
+		TextureStore.uploaded(w * h * PixelConverter.getBytesPerPixel(pixelFormat));
+		
+		stagingBufferPool.release(src);
+		stagingBufferPool.release(dst);
+		return true;
+	}
+	
+	/**
+	 * The PixelConverter format of this texture, as set in the TextureConfig or 
+	 * derived from <code>highResolutionColor</code>.
+	 */
+	public byte getPixelFormat(){
+		return config.getEffectivePixelFormat();
+	}
+	
+	public int getGlFormat(){
+		return TextureConfig.getGlFormat(getPixelFormat());
+	}
+	
+	public int getGlType(){
+		return TextureConfig.getGlType(getPixelFormat());
+	}
+	
+	public static StagingBufferPool getStagingBufferPool() {
+		return stagingBufferPool;
+	}
+	
+	/**
+	 * Temporary bitmaps to adapt update bitmaps, shared by all segments of the texture.
+	 * Keeps at most what one update of the largest region needs (a scaled and a rotated
+	 * ARGB_8888 bitmap), larger scratches are recycled instead. GL thread only.
+	 */
+	public ScratchBitmapPool getScratchBitmapPool() {
+		if (scratchBitmapPool == null){
+			scratchBitmapPool = new ScratchBitmapPool(getLargestUpdateRegionPixels() * 4 * 2);
+		}
+		return scratchBitmapPool;
+	}
+	
+	/**
+	 * The size of the largest region that is updated with one segment update, sizes the
+	 * scratch bitmap pool. Segments of plain textures may have any size, so up to 256x256.
+	 */
+	protected int getLargestUpdateRegionPixels(){
+		return Math.min(width * height, 256 * 256);
+	}
+	
+	/**
+	 * The Bitmap config matching the texture's pixels. RGBA5551 has none, its
+	 * updates are prepared in ARGB_8888 and converted on upload.
+	 */
 	public Config getBitmapConfig() {
-		return config.alphaChannel ? ALPHA_CONFIG : OPAQUE_CONFIG;
+		if (config.pixelFormat < 0) return config.alphaChannel ? ALPHA_CONFIG : OPAQUE_CONFIG;
+		switch (config.pixelFormat){
+		case PixelConverter.FORMAT_RGBA_4444: return Config.ARGB_4444;
+		case PixelConverter.FORMAT_RGB_565: return Config.RGB_565;
+		default: return Config.ARGB_8888;
+		}
 	}
 
 	/**
@@ -185,6 +418,12 @@ public class Texture {
 		ObjectsStore.tmpIntBuffer[0] = this.handle;
 		GLES20.glDeleteTextures(1, ObjectsStore.tmpIntBuffer, 0);
 		
+		if (scratchBitmapPool != null){
+			scratchBitmapPool.clear();
+			scratchBitmapPool = null;
+		}
+		if (uploadQueue != null) uploadQueue.discard();
+		
 		TextureStore.textureDeleted(this);
 	}
 
@@ -12,6 +12,19 @@ public class TextureConfig {
 	public static final int EDGE_REPEAT = GLES20.GL_REPEAT;
 	public static final int EDGE_MIRROR_REPEAT = GLES20.GL_MIRRORED_REPEAT;
 	
+	/**
+	 * Pixel format follows <code>Texture.highResolutionColor</code> and <code>alphaChannel</code>.
+	 */
+	public static final byte FORMAT_DEFAULT = -1;
+	/**
+	 * The smallest fitting format is picked by analyzing the pixels, see TextureFormatAnalyzer:
+	 * For Textures, the first update decides (until then, the texture has the FORMAT_DEFAULT
+	 * format). Choose a format explicitly for textures whose later content differs a lot.
+	 * Resource textures are analyzed at load time when 
+	 * <code>TextureStore.setAutomaticFormatSelection</code> is on.
+	 */
+	public static final byte FORMAT_AUTO = -2;
+	
 	public boolean mipMapped = false;
 	public boolean alphaChannel = false;
 	
@@ -34,6 +47,35 @@ public class TextureConfig {
 	*/
 	public int basicColor = 0xFF000000;
 	
+	/**
+	 * FORMAT_DEFAULT, FORMAT_AUTO, or one of the PixelConverter.FORMAT_ constants to
+	 * force a format. Updates in other formats are converted on upload.
+	 */
+	public byte pixelFormat = FORMAT_DEFAULT;
+	
+	/**
+	 * The format uploads actually use; FORMAT_AUTO counts as FORMAT_DEFAULT until the
+	 * texture picked its format.
+	 */
+	public byte getEffectivePixelFormat(){
+		if (pixelFormat >= 0) return pixelFormat;
+		if (Texture.highResolutionColor) return PixelConverter.FORMAT_RGBA_8888;
+		return alphaChannel ? PixelConverter.FORMAT_RGBA_4444 : PixelConverter.FORMAT_RGB_565;
+	}
+	
+	public static int getGlFormat(byte pixelFormat){
+		return (pixelFormat == PixelConverter.FORMAT_RGB_565) ? GLES20.GL_RGB : GLES20.GL_RGBA;
+	}
+	
+	public static int getGlType(byte pixelFormat){
+		switch (pixelFormat){
+		case PixelConverter.FORMAT_RGBA_4444: return GLES20.GL_UNSIGNED_SHORT_4_4_4_4;
+		case PixelConverter.FORMAT_RGB_565: return GLES20.GL_UNSIGNED_SHORT_5_6_5;
+		case PixelConverter.FORMAT_RGBA_5551: return GLES20.GL_UNSIGNED_SHORT_5_5_5_1;
+		default: return GLES20.GL_UNSIGNED_BYTE;
+		}
+	}
+	
 	@Override
 	public TextureConfig clone(){
 		TextureConfig ret = new TextureConfig();
@@ -44,6 +86,7 @@ public class TextureConfig {
 		
 		ret.nearestMapping = this.nearestMapping;
 		ret.edgeBehavior = this.edgeBehavior;
+		ret.pixelFormat = this.pixelFormat;
 		
 		return ret;
 	}
@@ -59,6 +102,7 @@ public class TextureConfig {
 		result = prime * result + minWidth;
 		result = prime * result + (mipMapped ? 1231 : 1237);
 		result = prime * result + (nearestMapping ? 1231 : 1237);
+		result = prime * result + pixelFormat;
 		return result;
 	}
 
@@ -85,6 +129,8 @@ public class TextureConfig {
 			return false;
 		if (nearestMapping != other.nearestMapping)
 			return false;
+		if (pixelFormat != other.pixelFormat)
+			return false;
 		return true;
 	}
 
@@ -95,6 +141,8 @@ public class TextureConfig {
 		ret.append("min-size: " +minWidth+ "x" + minHeight);
 		ret.append(nearestMapping ?  "nearest mapping, " : "linear mapping, ");
 		ret.append(alphaChannel ?  "alpha, " : "No alpha, ");
+		if (pixelFormat >= 0) ret.append(PixelConverter.getFormatName(pixelFormat));
+		else if (pixelFormat == FORMAT_AUTO) ret.append("auto format");
 		return ret.toString();
 	}
 }
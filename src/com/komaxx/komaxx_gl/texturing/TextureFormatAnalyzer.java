@@ -0,0 +1,196 @@
+package com.komaxx.komaxx_gl.texturing;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Looks at the pixels of an image once and picks the smallest PixelConverter format
+ * that shows it without visible loss:
+ * <ul>
+ * <li>Opaque images become RGB565,</li>
+ * <li>images with binary alpha (only fully transparent or opaque pixels) RGBA5551,</li>
+ * <li>images with few alpha levels RGBA4444,</li>
+ * <li>everything else stays RGBA8888.</li>
+ * </ul>
+ * Smooth gradients would band in 16 bit, so images with many tiny color steps between
+ * neighbors stay in RGBA8888 - unless the 16 bit format represents them exactly or
+ * the image has only a handful of colors (flat art with anti-aliased edges).</br>
+ * Pure Java, may run in any thread.
+ *
+ * @author Matthias Schicker
+ */
+public class TextureFormatAnalyzer {
+	/**
+	 * Counting colors stops here.
+	 */
+	private static final int MAX_COUNTED_COLORS = 1024;
+
+	/**
+	 * Large images are analyzed in only about this many evenly spread rows.
+	 */
+	private int maxAnalyzedRows = 256;
+	/**
+	 * Fraction of neighbor pairs with tiny, nonzero color steps above which an image is
+	 * considered a smooth gradient.
+	 */
+	private float gradientThreshold = 0.15f;
+	/**
+	 * At most this many alpha levels go to RGBA4444.
+	 */
+	private int maxAlphaLevelsFor4444 = 16;
+	/**
+	 * Images with at most this many colors are never considered smooth gradients.
+	 */
+	private int maxColorsForFlat = 16;
+
+	private final int[] colorTable = new int[MAX_COUNTED_COLORS * 2];
+	private boolean countedWhite;
+
+
+	/**
+	 * Analyzes <code>width*height</code> RGBA8888 pixels (byte order R, G, B, A) from
+	 * position 0 of the buffer. The buffer position is not changed.
+	 */
+	public synchronized Analysis analyze(ByteBuffer rgba, int width, int height){
+		Analysis ret = new Analysis();
+		int rowStep = Math.max(1, height / maxAnalyzedRows);
+
+		boolean[] alphaLevels = new boolean[256];
+		int alphaLevelCount = 0;
+		int pairs = 0;
+		int smallSteps = 0;
+		boolean exact565 = true;
+		boolean exact5551 = true;
+		boolean exact4444 = true;
+		for (int i = 0; i < colorTable.length; i++) colorTable[i] = -1;
+		countedWhite = false;
+
+		for (int y = 0; y < height; y += rowStep){
+			int rowStart = y * width * 4;
+			int lastR = 0, lastG = 0, lastB = 0;
+			for (int x = 0; x < width; x++){
+				int i = rowStart + x * 4;
+				int r = rgba.get(i) & 0xFF;
+				int g = rgba.get(i+1) & 0xFF;
+				int b = rgba.get(i+2) & 0xFF;
+				int a = rgba.get(i+3) & 0xFF;
+
+				if (!alphaLevels[a]){
+					alphaLevels[a] = true;
+					alphaLevelCount++;
+				}
+				if (ret.colorCount < MAX_COUNTED_COLORS) countColor(ret, (a << 24) | (r << 16) | (g << 8) | b);
+
+				if (exact565 && (!exact(r, 5) || !exact(g, 6) || !exact(b, 5))) exact565 = false;
+				if (exact5551 && (!exact(r, 5) || !exact(g, 5) || !exact(b, 5))) exact5551 = false;
+				if (exact4444 && (!exact(r, 4) || !exact(g, 4) || !exact(b, 4) || !exact(a, 4))) exact4444 = false;
+
+				if (x > 0){
+					int step = Math.max(Math.abs(r - lastR), Math.max(Math.abs(g - lastG), Math.abs(b - lastB)));
+					if (step > 0 && step <= 3) smallSteps++;
+					pairs++;
+				}
+				lastR = r; lastG = g; lastB = b;
+			}
+		}
+
+		ret.hasAlpha = alphaLevelCount > 1 || !alphaLevels[255];
+		ret.binaryAlpha = ret.hasAlpha && countLevels(alphaLevels, 1, 254) == 0;
+		ret.alphaLevelCount = alphaLevelCount;
+		ret.gradientFraction = (pairs == 0) ? 0 : (float)smallSteps / pairs;
+		boolean smooth = ret.gradientFraction > gradientThreshold && ret.colorCount > maxColorsForFlat;
+
+		if (!ret.hasAlpha && (exact565 || !smooth)){
+			ret.recommendedFormat = PixelConverter.FORMAT_RGB_565;
+		} else if (ret.binaryAlpha && (exact5551 || !smooth)){
+			ret.recommendedFormat = PixelConverter.FORMAT_RGBA_5551;
+		} else if (exact4444 || (alphaLevelCount <= maxAlphaLevelsFor4444 && !smooth)){
+			ret.recommendedFormat = PixelConverter.FORMAT_RGBA_4444;
+		} else {
+			ret.recommendedFormat = PixelConverter.FORMAT_RGBA_8888;
+		}
+		return ret;
+	}
+
+	/**
+	 * Whether the 8 bit value survives the reduction to <code>bits</code> and the
+	 * expansion back to 8 bit (bit replication) in the GL.
+	 */
+	private static boolean exact(int value, int bits){
+		int reduced = value >> (8 - bits);
+		int expanded = (reduced << (8 - bits)) | (reduced >> (2 * bits - 8));
+		return expanded == value;
+	}
+
+	private static int countLevels(boolean[] levels, int from, int to){
+		int ret = 0;
+		for (int i = from; i <= to; i++) if (levels[i]) ret++;
+		return ret;
+	}
+
+	/**
+	 * Open addressing in <code>colorTable</code>, -1 marks free slots. -1 itself is
+	 * opaque white, tracked separately.
+	 */
+	private void countColor(Analysis analysis, int argb){
+		if (argb == -1){
+			if (!countedWhite) analysis.colorCount++;
+			countedWhite = true;
+			return;
+		}
+		int mask = colorTable.length - 1;
+		int slot = (argb * 0x9E3779B1) >>> 21 & mask;
+		while (colorTable[slot] != -1){
+			if (colorTable[slot] == argb) return;
+			slot = (slot + 1) & mask;
+		}
+		colorTable[slot] = argb;
+		analysis.colorCount++;
+	}
+
+	public void setMaxAnalyzedRows(int maxAnalyzedRows) {
+		this.maxAnalyzedRows = Math.max(1, maxAnalyzedRows);
+	}
+
+	public void setGradientThreshold(float gradientThreshold) {
+		this.gradientThreshold = gradientThreshold;
+	}
+
+	public void setMaxAlphaLevelsFor4444(int maxAlphaLevelsFor4444) {
+		this.maxAlphaLevelsFor4444 = maxAlphaLevelsFor4444;
+	}
+
+	public void setMaxColorsForFlat(int maxColorsForFlat) {
+		this.maxColorsForFlat = maxColorsForFlat;
+	}
+
+	/**
+	 * What the analyzer found out about one image.
+	 */
+	public static class Analysis {
+		public boolean hasAlpha;
+		/**
+		 * Only fully transparent and fully opaque pixels.
+		 */
+		public boolean binaryAlpha;
+		public int alphaLevelCount;
+		/**
+		 * Number of distinct colors, counts at most to 1024.
+		 */
+		public int colorCount;
+		/**
+		 * Fraction of neighboring pixels that differ by tiny steps: High for gradients.
+		 */
+		public float gradientFraction;
+		/**
+		 * One of the PixelConverter.FORMAT_ constants.
+		 */
+		public byte recommendedFormat;
+
+		@Override
+		public String toString() {
+			return "Analysis: alpha " + hasAlpha + (binaryAlpha ? " (binary)" : "")
+					+ ", colors " + colorCount + ", gradient " + gradientFraction
+					+ " -> " + PixelConverter.getFormatName(recommendedFormat);
+		}
+	}
+}
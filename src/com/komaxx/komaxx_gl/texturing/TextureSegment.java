@@ -3,7 +3,6 @@ package com.komaxx.komaxx_gl.texturing;
 import java.nio.FloatBuffer;
 
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Matrix;
 import android.graphics.Rect;
@@ -28,6 +27,19 @@ public class TextureSegment {
 	protected final RectF uvCoords;
 	protected final boolean vertical;
 	
+	/**
+	 * Incremented with each update, outdated asynchronous mip chain updates are dropped.
+	 */
+	private volatile int mipUpdateGeneration = 0;
+	
+	/**
+	 * The stripper managing this segment (null when unmanaged), and the neighbors
+	 * in its LRU list.
+	 */
+	TextureStripper stripper;
+	TextureSegment lruPrevious;
+	TextureSegment lruNext;
+	
 	private static Matrix bitmapRotMatrix = new Matrix();
 	
 	private static RectF tmpRect = new RectF();
@@ -60,6 +72,7 @@ public class TextureSegment {
 	 */
 	public void finger(int frame) {
 		lastUsedFrame = frame;
+		if (stripper != null) stripper.touched(this);
 	}
 	
 	public int getPixelWidth(){
@@ -90,7 +103,10 @@ public class TextureSegment {
 	}
 	
 	public boolean update(RenderContext rc, Bitmap updateBitmap, int mipMapLevel){
-		TextureConfig config = texture.getConfig();
+		if (mipMapLevel == 0) mipUpdateGeneration++;
+		// queued updates are older, they must not overwrite this one later
+		texture.commitUploads(rc);
+		resolveAutoFormat(rc, updateBitmap);
 		
 		int sWidth = vertical ? pixelCoords.height() : pixelCoords.width();
 		int sHeight = vertical ? pixelCoords.width() : pixelCoords.height();
@@ -102,17 +118,31 @@ public class TextureSegment {
 		sHeight = Math.max(sHeight, 1);
 
 		// does the configuration of the update image fit the texture?
-		if (	
-				(config.alphaChannel && updateBitmap.getConfig() != Texture.ALPHA_CONFIG ) ||
-				(!config.alphaChannel && updateBitmap.getConfig() != Texture.OPAQUE_CONFIG) ||
-				(updateBitmap.getWidth() != sWidth || updateBitmap.getHeight() != sHeight)
-		){
-			Bitmap tmpBitmap = getTmpBitmap(sWidth, sHeight);
-			Canvas c = new Canvas(tmpBitmap);
+		ScratchBitmapPool pool = texture.getScratchBitmapPool();
+		ScratchBitmapPool.Scratch scaled = null;
+		ScratchBitmapPool.Scratch rotated = null;
+		boolean configMismatch = updateBitmap.getConfig() != texture.getBitmapConfig();
+		boolean sizeMismatch = updateBitmap.getWidth() != sWidth || updateBitmap.getHeight() != sHeight;
+		
+		// only the pixel format is off: convert directly into a staging buffer, no redraw
+		if (configMismatch && !sizeMismatch && !vertical){
+			if (rc.boundTexture != texture.getHandle()){
+				GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture.getHandle());
+			}
+			if (texture.uploadConverted(updateBitmap, mipMapLevel, 
+					pixelCoords.left >> mipMapLevel, pixelCoords.top >> mipMapLevel)){
+				if (RenderConfig.GL_DEBUG) return !RenderUtil.checkGlError("Updating texture segment");
+				return true;
+			}
+		}
+		
+		if (configMismatch || sizeMismatch){
+			scaled = pool.obtain(sWidth, sHeight, texture.getBitmapConfig());
+			scaled.bitmap.eraseColor(Color.TRANSPARENT);
 			tmpRect.left = 0; tmpRect.right = sWidth;
 			tmpRect.top = 0; tmpRect.bottom = sHeight; 
-			c.drawBitmap(updateBitmap, null, tmpRect, null);
-			updateBitmap = tmpBitmap;
+			scaled.canvas.drawBitmap(updateBitmap, null, tmpRect, null);
+			updateBitmap = scaled.bitmap;
 			
 			if (RenderConfig.GL_DEBUG){
 				KoLog.w(this, "Warning, incorrect update bitmap. Was adapted (slow)");
@@ -123,59 +153,54 @@ public class TextureSegment {
 			bitmapRotMatrix.reset();
 			bitmapRotMatrix.postRotate(90);
 			bitmapRotMatrix.postTranslate(sHeight, 0);
-			Bitmap rotBitmap = getTmpBitmap(sHeight, sWidth);
-			rotBitmap.eraseColor(Color.TRANSPARENT);
-			Canvas c = new Canvas(rotBitmap);
-			c.drawBitmap(updateBitmap, bitmapRotMatrix, null);
-			updateBitmap = rotBitmap;
+			rotated = pool.obtain(sHeight, sWidth, texture.getBitmapConfig());
+			rotated.bitmap.eraseColor(Color.TRANSPARENT);
+			rotated.canvas.drawBitmap(updateBitmap, bitmapRotMatrix, null);
+			updateBitmap = rotated.bitmap;
 		}
 		
 		if (rc.boundTexture != texture.getHandle()){
 			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture.getHandle());
 		}
 		
-		int format = config.alphaChannel ? GLES20.GL_RGBA : GLES20.GL_RGB;
-		int type = Texture.highResolutionColor ? GLES20.GL_UNSIGNED_BYTE : 
-			(config.alphaChannel ? GLES20.GL_UNSIGNED_SHORT_4_4_4_4 : GLES20.GL_UNSIGNED_SHORT_5_6_5);
-
-		GLUtils.texSubImage2D(GLES20.GL_TEXTURE_2D, mipMapLevel, 
-				pixelCoords.left >> mipMapLevel, 
-				pixelCoords.top >> mipMapLevel, 
-				updateBitmap, format, type);
+		// RGBA5551 textures are prepared in ARGB_8888 and converted here
+		if (!texture.uploadConverted(updateBitmap, mipMapLevel, 
+				pixelCoords.left >> mipMapLevel, pixelCoords.top >> mipMapLevel)){
+			GLUtils.texSubImage2D(GLES20.GL_TEXTURE_2D, mipMapLevel, 
+					pixelCoords.left >> mipMapLevel, 
+					pixelCoords.top >> mipMapLevel, 
+					updateBitmap, texture.getGlFormat(), texture.getGlType());
+			TextureStore.uploaded(updateBitmap);
+		}
 
 //		GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, mipMapLevel,
 //				pixelCoords.left >> mipMapLevel, pixelCoords.top >> mipMapLevel,
 //				sWidth, sHeight, format, type, updateBitmap.);
 		
+		if (scaled != null) pool.release(scaled);
+		if (rotated != null) pool.release(rotated);
+		
 		if (RenderConfig.GL_DEBUG) return !RenderUtil.checkGlError("Updating texture segment");
 		return true;
 	}
 	
 	/**
-	 * GL THREAD ONLY!
-	 * @param sHeight 
+	 * Like <code>update(rc, updateBitmap, 0)</code>, but stages the pixels in the texture's
+	 * UploadQueue, see <code>Texture.queueUpdate</code>: Updates of many segments of the
+	 * same strip in one frame are uploaded together, adjacent segments in one call. Falls
+	 * back to an immediate update when the bitmap needs to be scaled, converted or rotated
+	 * (vertical segments).
 	 */
-	protected Bitmap getTmpBitmap(int sWidth, int sHeight){
-		
-		// TODO: A pooling/caching might be in order here!
-		
-//		if (vertical && segmentTmpBmpVertical==null){
-//			segmentTmpBmpVertical = new MipMapBitmaps(config.segmentHeight, config.segmentWidth, 
-//					getBitmapConfig(), 1000);
-//		} else if (!vertical && segmentTmpBmpHorizontal==null){
-//			segmentTmpBmpHorizontal = new MipMapBitmaps(config.segmentWidth, config.segmentHeight, 
-//					getBitmapConfig(), 1000);
-//		}
-		
-//		return vertical 
-//					? segmentTmpBmpVertical.getBitmaps()[mipMapLevel] 
-//					: segmentTmpBmpHorizontal.getBitmaps()[mipMapLevel];
-		
-		// TODO: MipMap levels!
-		
-		return Bitmap.createBitmap(sWidth, sHeight, texture.getBitmapConfig());
+	public boolean queueUpdate(RenderContext rc, Bitmap updateBitmap){
+		mipUpdateGeneration++;
+		if (!vertical && updateBitmap.getWidth() == pixelCoords.width() 
+				&& updateBitmap.getHeight() == pixelCoords.height()
+				&& texture.queueUpdate(rc, updateBitmap, pixelCoords.left, pixelCoords.top)){
+			return true;
+		}
+		return update(rc, updateBitmap, 0);
 	}
-
+	
 	@Override
 	public String toString() {
 		StringBuffer ret = new StringBuffer();
@@ -227,6 +252,49 @@ public class TextureSegment {
 		}
 	}
 
+	/**
+	 * Updates the segment with all mipmap levels (only level 0 when the texture is
+	 * not mipmapped), without blocking the GL thread: The levels are computed in a 
+	 * background thread and uploaded one level per idle job. The bitmap is read
+	 * immediately and may be changed afterwards. 
+	 * </br>
+	 * GL thread only.
+	 */
+	public void updateMipChainAsync(RenderContext rc, Bitmap updateBitmap){
+		resolveAutoFormat(rc, updateBitmap);
+		int sWidth = vertical ? pixelCoords.height() : pixelCoords.width();
+		int sHeight = vertical ? pixelCoords.width() : pixelCoords.height();
+		Bitmap scaled = null;
+		if (updateBitmap.getWidth() != sWidth || updateBitmap.getHeight() != sHeight){
+			scaled = Bitmap.createScaledBitmap(updateBitmap, sWidth, sHeight, true);
+			updateBitmap = scaled;
+			if (RenderConfig.GL_DEBUG){
+				KoLog.w(this, "Warning, incorrect update bitmap. Was adapted (slow)");
+			}
+		}
+		
+		mipUpdateGeneration++;
+		MipChainUpdate job = new MipChainUpdate(rc, this, updateBitmap, mipUpdateGeneration);
+		// the job copied the pixels already
+		if (scaled != null && RenderConfig.RECYCLE_BITMAPS) scaled.recycle();
+		rc.textureStore.executeInBackground(job);
+	}
+	
+	/**
+	 * The first update of a FORMAT_AUTO strip picks its format, see Texture.resolveAutoFormat.
+	 */
+	private void resolveAutoFormat(RenderContext rc, Bitmap updateBitmap){
+		if (!texture.isFormatPending()) return;
+		if (rc.boundTexture != texture.getHandle()){
+			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture.getHandle());
+		}
+		texture.resolveAutoFormat(updateBitmap);
+	}
+	
+	int getMipUpdateGeneration() {
+		return mipUpdateGeneration;
+	}
+
 	public void update(RenderContext rc, MipMapBitmaps updateBitmaps, int startLevel) {
 		Bitmap[] bitmaps = updateBitmaps.getBitmaps();
 		int l = bitmaps.length;
@@ -252,8 +320,37 @@ public class TextureSegment {
 	}
 
 	public void own(int nuOwnerId, int frame) {
+		if (stripper != null) stripper.ownerChanged(this, ownerId, nuOwnerId);
 		ownerId = nuOwnerId;
 		lastUsedFrame = frame;
+		if (stripper != null) stripper.touched(this);
+	}
+
+	/**
+	 * Changes where the segment lives in the texture, e.g., when a DynamicAtlas 
+	 * is defragmented. The uv coords are recomputed.
+	 */
+	protected void moveTo(Rect nuPixelCoords){
+		pixelCoords.set(nuPixelCoords);
+		texture.getUvCoords(uvCoords, nuPixelCoords);
+	}
+	
+	/**
+	 * Makes the segment unowned and the first candidate for the next request.
+	 */
+	public void release() {
+		if (stripper != null) stripper.ownerChanged(this, ownerId, 0);
+		ownerId = 0;
+		lastUsedFrame = -1;
+		if (stripper != null) stripper.released(this);
+	}
+
+	/**
+	 * The next segment in the LRU list of the TextureStripper, null for the most
+	 * recently used one or unmanaged segments.
+	 */
+	public TextureSegment getMoreRecentlyUsed() {
+		return lruNext;
 	}
 
 	public int getLastUsedFrame() {
@@ -1,28 +1,100 @@
 package com.komaxx.komaxx_gl.texturing;
 
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.opengl.ETC1;
 import android.opengl.GLES20;
 import android.opengl.GLUtils;
 
 import com.komaxx.komaxx_gl.RenderConfig;
 import com.komaxx.komaxx_gl.RenderContext;
+import com.komaxx.komaxx_gl.scenegraph.IGlRunnable;
+import com.komaxx.komaxx_gl.scenegraph.SceneGraph;
 import com.komaxx.komaxx_gl.util.KoLog;
 import com.komaxx.komaxx_gl.util.RenderUtil;
 
 public class TextureStore {
 	private static final boolean DEBUG = false;
 	
-	private Hashtable<Integer, ResourceTexture> resourceTextures = new Hashtable<Integer, TextureStore.ResourceTexture>();
+	/**
+	 * Access ordered: The least recently requested or released texture comes first.
+	 */
+	private LinkedHashMap<Integer, ResourceTexture> resourceTextures = 
+			new LinkedHashMap<Integer, TextureStore.ResourceTexture>(16, 0.75f, true);
+	
+	/**
+	 * When the estimated size of all cached resource textures exceeds this, the least
+	 * recently released ones that are neither held nor pinned are deleted. Default: unlimited.
+	 */
+	private int resourceTextureBudgetBytes = Integer.MAX_VALUE;
+	private int cachedResourceBytes = 0;
+	
+	/**
+	 * Released TextureStrips, ready for reuse. Keyed by the requested config.
+	 */
+	private HashMap<TextureStripConfig, ArrayList<TextureStrip>> stripPool = 
+			new HashMap<TextureStripConfig, ArrayList<TextureStrip>>();
+	/**
+	 * All pooled strips, the longest pooled first. Trimming starts here.
+	 */
+	private ArrayList<TextureStrip> pooledStrips = new ArrayList<TextureStrip>();
+	private int maxPooledStripsPerConfig = 2;
+	private int stripPoolBudgetBytes = 8 * 1024 * 1024;
+	private int pooledStripBytes = 0;
+	private int stripPoolHits = 0;
+	private int stripPoolMisses = 0;
+	
+	/**
+	 * Compressed resources whose format is not supported -> their fallback resource.
+	 */
+	private HashMap<Integer, Integer> compressedFallbacks = new HashMap<Integer, Integer>();
+	
+	private int cacheHits = 0;
+	private int cacheMisses = 0;
+	private int cacheEvictions = 0;
+	private int failedLoads = 0;
 
 	private static int[] tmpTextureHandle = new int[1];
 
 	private static int nextOwnerID = 1;
+	
+	private static final int DECODER_THREADS = 2;
+	private volatile PixelDiskCache pixelDiskCache;
+	private volatile boolean automaticFormats = false;
+	private final TextureFormatAnalyzer formatAnalyzer = Texture.getFormatAnalyzer();
+	private ExecutorService decoderPool;
+	/**
+	 * Incremented with each reset. Asynchronous loads of older generations are dropped.
+	 */
+	private volatile int generation = 0;
+	private final ByteBuffer placeholderPixel = ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder());
+	
+	private final AtomicInteger pendingDecodes = new AtomicInteger();
+	private final AtomicInteger pendingUploads = new AtomicInteger();
+	private final AtomicInteger decodedCount = new AtomicInteger();
+	private final AtomicInteger uploadedCount = new AtomicInteger();
+	private final AtomicLong decodeTimeNs = new AtomicLong();
+	private final AtomicLong uploadTimeNs = new AtomicLong();
+	
+	/**
+	 * Textures with updates in their UploadQueue. GL thread only.
+	 */
+	private final ArrayList<Texture> queuedUploadTextures = new ArrayList<Texture>();
 
 	/**
 	 * Whenever requesting a texture (or texture segment), obtain one
@@ -36,28 +108,183 @@ public class TextureStore {
 	}
 
 	public void reset(){
+		// pending asynchronous loads are for the old surface, drop them when they arrive
+		generation++;
+		
 		// discard all old textures
-		Enumeration<ResourceTexture> elements = resourceTextures.elements();
-		while (elements.hasMoreElements()) elements.nextElement().delete();
+		for (ResourceTexture t : resourceTextures.values()) t.delete();
 		resourceTextures.clear();
+		cachedResourceBytes = 0;
+		
+		for (TextureStrip strip : pooledStrips) strip.delete();
+		pooledStrips.clear();
+		stripPool.clear();
+		pooledStripBytes = 0;
+		queuedUploadTextures.clear();
 		clearAllocationTracking();
 	}
 	
+	/**
+	 * Changes with each reset, i.e., with each new surface.
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+	
+	void uploadsQueued(Texture t){
+		if (!queuedUploadTextures.contains(t)) queuedUploadTextures.add(t);
+	}
+	
+	void uploadsCommitted(Texture t){
+		queuedUploadTextures.remove(t);
+	}
+	
+	public boolean hasQueuedUploads(){
+		return queuedUploadTextures.size() > 0;
+	}
+	
+	/**
+	 * Commits the UploadQueue of the texture with the given handle, if it has queued
+	 * updates. Called when textures are bound. GL thread only.
+	 */
+	public void commitUploads(RenderContext rc, int textureHandle){
+		for (int i = queuedUploadTextures.size() - 1; i >= 0; i--){
+			Texture t = queuedUploadTextures.get(i);
+			if (t.getHandle() == textureHandle){
+				t.commitUploads(rc);
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Commits all UploadQueues with queued updates. Called at the end of each frame.
+	 * GL thread only.
+	 */
+	public void commitUploads(RenderContext rc){
+		while (queuedUploadTextures.size() > 0){
+			Texture t = queuedUploadTextures.get(queuedUploadTextures.size() - 1);
+			// deleted textures discarded their queue already
+			if (t.getUploadQueue().isEmpty()) queuedUploadTextures.remove(queuedUploadTextures.size() - 1);
+			else t.commitUploads(rc);
+		}
+	}
+	
+	/**
+	 * Delivers a TextureStrip for the config. Strips released with 
+	 * <code>releaseTextureStrip</code> are reused when the config is equal; these are
+	 * already created and all their segments are unowned. Calling <code>create</code>
+	 * is necessary (and cheap) nevertheless.
+	 */
 	public TextureStrip getTextureStrip(TextureStripConfig config){
-		// TODO: check in pool whether still one stored in a cache.
+		ArrayList<TextureStrip> pooled = stripPool.get(config);
+		if (pooled != null && pooled.size() > 0){
+			TextureStrip ret = pooled.remove(pooled.size() - 1);
+			pooledStrips.remove(ret);
+			pooledStripBytes -= estimateSizeBytes(ret);
+			stripPoolHits++;
+			return ret;
+		}
 		
-		TextureStrip ret = new TextureStrip(config);
+		stripPoolMisses++;
+		return new TextureStrip(config);
+	}
+	
+	/**
+	 * Returns a strip that is no longer used to the pool instead of deleting it. When
+	 * the pool is full, the strip is deleted. The strip must not be used afterwards. 
+	 * GL thread only.
+	 */
+	public void releaseTextureStrip(TextureStrip strip){
+		// strips of a lost surface have no valid texture to keep
+		if (!strip.isCreatedIn(generation)) return;
 		
-		return ret;
+		TextureStripConfig key = strip.getRequestedConfig();
+		ArrayList<TextureStrip> pooled = stripPool.get(key);
+		if (pooled == null){
+			pooled = new ArrayList<TextureStrip>(maxPooledStripsPerConfig);
+			stripPool.put(key, pooled);
+		}
+		
+		int size = estimateSizeBytes(strip);
+		if (pooled.size() >= maxPooledStripsPerConfig || size > stripPoolBudgetBytes){
+			strip.delete();
+			return;
+		}
+		
+		strip.releaseAllSegments();
+		pooled.add(strip);
+		pooledStrips.add(strip);
+		pooledStripBytes += size;
+		trimTextureStripPool(stripPoolBudgetBytes);
+	}
+	
+	/**
+	 * Deletes pooled strips, longest pooled first, until the pool takes at most
+	 * <code>targetBytes</code>. GL thread only.
+	 */
+	public void trimTextureStripPool(int targetBytes){
+		while (pooledStripBytes > targetBytes && pooledStrips.size() > 0){
+			TextureStrip strip = pooledStrips.remove(0);
+			stripPool.get(strip.getRequestedConfig()).remove(strip);
+			pooledStripBytes -= estimateSizeBytes(strip);
+			strip.delete();
+		}
+	}
+	
+	/**
+	 * Frees memory that is not strictly needed: Empties the strip pool and the decoder's
+	 * reusable bitmaps and deletes the cached resource textures that nobody holds (and
+	 * that are not pinned). Call, e.g., from <code>onLowMemory</code>. GL thread only.
+	 */
+	public void trimMemory(){
+		trimTextureStripPool(0);
+		trimResourceTextures(0);
+		BitmapDecoder.clearReusableBitmaps();
+	}
+	
+	public void setMaxPooledStripsPerConfig(int maxPooledStripsPerConfig) {
+		this.maxPooledStripsPerConfig = maxPooledStripsPerConfig;
+	}
+	
+	/**
+	 * Maximum estimated size of all pooled strips. Default: 8 MB. 
+	 */
+	public void setStripPoolBudget(int bytes) {
+		this.stripPoolBudgetBytes = bytes;
+		trimTextureStripPool(bytes);
+	}
+	
+	public int getPooledStripBytes() {
+		return pooledStripBytes;
+	}
+	
+	public int getPooledStripCount() {
+		return pooledStrips.size();
+	}
+	
+	public int getStripPoolHits() {
+		return stripPoolHits;
+	}
+	
+	public int getStripPoolMisses() {
+		return stripPoolMisses;
 	}
 	
 	/**
 	 * Delivers the texture (possibly creates it first). In case of new creation, the bound
-	 * texture may change! No need to extra "create" like TextureStrips!
+	 * texture may change! No need to extra "create" like TextureStrips!</br>
+	 * Each call holds the texture: It is not evicted before it was given back with
+	 * <code>releaseResourceTexture</code> as often as it was requested.
 	 */
 	public ResourceTexture getResourceTexture(RenderContext rc, int rawId, boolean mipMapped){
 		ResourceTexture ret = resourceTextures.get(rawId);
-		if (ret != null) return ret;
+		if (ret != null){
+			cacheHits++;
+			ret.holdCount++;
+			return ret;
+		}
+		cacheMisses++;
 
 		ret = new ResourceTexture();
 		ret.resourceId = rawId;
@@ -78,24 +305,685 @@ public class TextureStore {
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
 
-		Bitmap bitmap = getBitmap(rc, rawId);
-		ret.width = bitmap.getWidth();
-		ret.height = bitmap.getWidth();
-		
-		GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
-		RenderUtil.checkGlError("Bind resource texture");
-		if (RenderConfig.RECYCLE_BITMAPS) bitmap.recycle();
+		PixelDiskCache.Entry cachedPixels = getCachedPixels(rawId);
+		if (cachedPixels != null){
+			ret.width = cachedPixels.width;
+			ret.height = cachedPixels.height;
+			ret.pixelFormat = cachedPixels.format;
+			cachedPixels.upload();
+			RenderUtil.checkGlError("Bind cached resource texture");
+		} else {
+			final Bitmap bitmap = getBitmap(rc, rawId);
+			ret.width = bitmap.getWidth();
+			ret.height = bitmap.getHeight();
+			
+			PixelDiskCache.Entry converted = automaticFormats ? convertAutomatically(rawId, bitmap) : null;
+			if (converted != null){
+				ret.pixelFormat = converted.format;
+				converted.upload();
+			} else {
+				GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+				uploaded(bitmap);
+			}
+			RenderUtil.checkGlError("Bind resource texture");
+			
+			if (pixelDiskCache != null){
+				// the bitmap is recycled in the background after writing
+				final int id = rawId;
+				final byte format = ret.pixelFormat;
+				executeInBackground(new Runnable() {
+					@Override
+					public void run() {
+						writeToDiskCache(id, format, bitmap);
+					}
+				});
+			} else if (RenderConfig.RECYCLE_BITMAPS) bitmap.recycle();
+		}
 		
 		if (mipMapped){
 			GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
 			RenderUtil.checkGlError("Generate mipmaps");
 		}
 
+		ret.sizeBytes = estimateSizeBytes(ret.width, ret.height, 
+				PixelConverter.getBytesPerPixel(ret.pixelFormat), mipMapped);
+		textureCreated(ret);
+		ret.loaded = true;
+		
+		ret.holdCount = 1;
+		resourceTextures.put(rawId, ret);
+		cached(ret);
+		return ret;
+	}
+	
+	/**
+	 * Delivers a texture from a raw resource that contains a pre-compressed PKM or KTX file
+	 * (ETC1 or ETC2/EAC). The texture is mipmapped when the file contains the full mipmap
+	 * chain down to 1x1; files with a partial chain are uploaded without mipmaps.</br>
+	 * When the GL does not support the format, ETC1 data is decoded on the CPU and uploaded
+	 * as RGB565 (mipmaps of a partial chain are generated then). Other formats fall back to
+	 * the given uncompressed resource.
+	 * 
+	 * Holds the texture like <code>getResourceTexture</code>.
+	 * 
+	 * @param fallbackRawId	An uncompressed image resource for GLs without support for
+	 * the compressed format. 0 for none: A RuntimeException is thrown then.
+	 */
+	public ResourceTexture getCompressedResourceTexture(RenderContext rc, int rawId, int fallbackRawId){
+		ResourceTexture ret = resourceTextures.get(rawId);
+		if (ret != null){
+			cacheHits++;
+			ret.holdCount++;
+			return ret;
+		}
+		Integer knownFallback = compressedFallbacks.get(rawId);
+		if (knownFallback != null) return getResourceTexture(rc, knownFallback, false);
+		
+		CompressedTextureFile file;
+		InputStream is = rc.resources.openRawResource(rawId);
+		try {
+			file = CompressedTextureFile.read(is);
+		} catch (IOException e){
+			throw new RuntimeException("Could not read compressed texture " + rawId + ": " + e);
+		} finally {
+			try {
+				is.close();
+			} catch (IOException e) {
+				KoLog.e("TextureStore", "Error when closing compressed texture " + rawId + ": " + e.toString());
+			}
+		}
+		
+		boolean supported = RenderUtil.isCompressedFormatSupported(file.glInternalFormat);
+		boolean etc1 = file.glInternalFormat == CompressedTextureFile.GL_ETC1_RGB8_OES;
+		if (!supported && !etc1){
+			if (fallbackRawId == 0){
+				throw new RuntimeException("Compressed format 0x" 
+						+ Integer.toHexString(file.glInternalFormat) + " not supported, no fallback");
+			}
+			KoLog.w("TextureStore", "Compressed format not supported, using fallback for " + rawId);
+			// do not parse the file again with the next request
+			compressedFallbacks.put(rawId, fallbackRawId);
+			return getResourceTexture(rc, fallbackRawId, false);
+		}
+		cacheMisses++;
+		
+		boolean fullChain = file.hasFullMipChain();
+		if (!fullChain && file.levels.length > 1){
+			KoLog.w("TextureStore", "Compressed texture " + rawId + " has an incomplete mipmap chain");
+		}
+		
+		ret = new ResourceTexture();
+		ret.resourceId = rawId;
+		ret.mipMapped = fullChain || (!supported && file.levels.length > 1);
+		ret.pixelFormat = TextureConfig.FORMAT_DEFAULT;
+		ret.width = file.width;
+		ret.height = file.height;
+		GLES20.glGenTextures(1, tmpTextureHandle, 0);
+		ret.handle = tmpTextureHandle[0];
+		rc.bindTexture(ret.handle);
+		
+		GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, 
+				ret.mipMapped ? GLES20.GL_LINEAR_MIPMAP_LINEAR : GLES20.GL_LINEAR);
+		GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+		
+		// a partial chain is incomplete: only the base level then
+		int l = fullChain ? file.levels.length : 1;
+		if (supported){
+			for (int i = 0; i < l; i++){
+				ByteBuffer data = file.levels[i];
+				GLES20.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, i, file.glInternalFormat, 
+						file.getWidth(i), file.getHeight(i), 0, data.capacity(), data);
+				uploaded(data.capacity());
+				ret.sizeBytes += data.capacity();
+			}
+		} else {
+			// ETC1 without GL support: decode to 565
+			for (int i = 0; i < l; i++){
+				int w = file.getWidth(i);
+				int h = file.getHeight(i);
+				ByteBuffer decoded = ByteBuffer.allocateDirect(w * h * 2).order(ByteOrder.nativeOrder());
+				ETC1.decodeImage(file.levels[i], decoded, w, h, 2, w * 2);
+				decoded.position(0);
+				GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, i, GLES20.GL_RGB, w, h, 0, 
+						GLES20.GL_RGB, GLES20.GL_UNSIGNED_SHORT_5_6_5, decoded);
+				uploaded(w * h * 2);
+				ret.sizeBytes += w * h * 2;
+			}
+			if (ret.mipMapped && !fullChain){
+				GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+				ret.sizeBytes = estimateSizeBytes(file.width, file.height, 2, true);
+			}
+			if (DEBUG) KoLog.i("TextureStore", "ETC1 not supported, decoded " + rawId + " on the CPU");
+		}
+		RenderUtil.checkGlError("Upload compressed texture");
+		
 		textureCreated(ret);
+		ret.loaded = true;
+		
+		ret.holdCount = 1;
+		resourceTextures.put(rawId, ret);
+		cached(ret);
+		return ret;
+	}
+	
+	/**
+	 * Delivers the texture immediately without blocking the GL thread: When not yet
+	 * loaded, the returned texture has a valid handle but contains only one pixel of
+	 * the placeholder color. The resource is decoded in a background thread and
+	 * uploaded into the same handle in an idle job, so the handle may be used right away.
+	 * Holds the texture like <code>getResourceTexture</code>.
+	 * 
+	 * @param listener	Called in the GL thread when the texture is loaded or when loading
+	 * failed. Called immediately when the texture was already loaded. May be null.
+	 */
+	public ResourceTexture getResourceTextureAsync(RenderContext rc, int rawId, boolean mipMapped, 
+			ITextureLoadListener listener){
+		ResourceTexture ret = resourceTextures.get(rawId);
+		if (ret != null){
+			cacheHits++;
+			ret.holdCount++;
+			if (listener != null){
+				if (ret.loaded) listener.onTextureLoaded(ret);
+				else ret.listeners.add(listener);
+			}
+			return ret;
+		}
+		cacheMisses++;
+		
+		ret = new ResourceTexture();
+		ret.resourceId = rawId;
+		ret.mipMapped = mipMapped;
+		ret.width = 1;
+		ret.height = 1;
+		if (listener != null) ret.listeners.add(listener);
+		GLES20.glGenTextures(1, tmpTextureHandle, 0);
+		ret.handle = tmpTextureHandle[0];
+		rc.bindTexture(ret.handle);
+		
+		GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, 
+				mipMapped ? GLES20.GL_LINEAR_MIPMAP_LINEAR : GLES20.GL_LINEAR);
+		GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
 		
+		placeholderPixel.position(0);
+		GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, 1, 1, 0, 
+				GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, placeholderPixel);
+		uploaded(4);
+		if (RenderConfig.GL_DEBUG) RenderUtil.checkGlError("Placeholder texture");
+		
+		ret.holdCount = 1;
 		resourceTextures.put(rawId, ret);
+		
+		pendingDecodes.incrementAndGet();
+		getDecoderPool().execute(new AsyncLoadJob(rc.resources, rc.sceneGraph, ret, generation));
+		return ret;
+	}
+	
+	/**
+	 * The color of asynchronously loaded textures until the real data is uploaded.
+	 * Only affects textures requested afterwards. Default: transparent.
+	 */
+	public void setPlaceholderColor(int color){
+		placeholderPixel.put(0, (byte) Color.red(color));
+		placeholderPixel.put(1, (byte) Color.green(color));
+		placeholderPixel.put(2, (byte) Color.blue(color));
+		placeholderPixel.put(3, (byte) Color.alpha(color));
+	}
+	
+	private synchronized ExecutorService getDecoderPool() {
+		if (decoderPool == null){
+			decoderPool = Executors.newFixedThreadPool(DECODER_THREADS, new ThreadFactory() {
+				private int count = 0;
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread ret = new Thread(r, "TextureDecoder" + (count++));
+					ret.setPriority(Thread.MIN_PRIORITY + 1);
+					ret.setDaemon(true);
+					return ret;
+				}
+			});
+		}
+		return decoderPool;
+	}
+	
+	/**
+	 * When set, decoded resource textures are stored on disk and loaded from there
+	 * next time (e.g., after the surface was lost or on the next start) without decoding.
+	 * Null to disable (default).
+	 */
+	public void setPixelDiskCache(PixelDiskCache pixelDiskCache) {
+		this.pixelDiskCache = pixelDiskCache;
+	}
+	
+	public PixelDiskCache getPixelDiskCache() {
+		return pixelDiskCache;
+	}
+	
+	private void writeToDiskCache(int rawId, byte format, Bitmap bitmap){
+		PixelDiskCache diskCache = pixelDiskCache;
+		if (diskCache != null) diskCache.put(rawId, format, bitmap);
+		if (RenderConfig.RECYCLE_BITMAPS) bitmap.recycle();
+	}
+	
+	/**
+	 * Cached pixels in the format the resource was cached in when automatic formats 
+	 * are on, in RGBA8888 otherwise. Null when not cached. Any thread.
+	 */
+	private PixelDiskCache.Entry getCachedPixels(int rawId){
+		PixelDiskCache diskCache = pixelDiskCache;
+		if (diskCache == null) return null;
+		
+		byte format = automaticFormats ? diskCache.findFormat(rawId) : PixelDiskCache.FORMAT_RGBA_8888;
+		if (format < 0) format = PixelDiskCache.FORMAT_RGBA_8888;		// counts the miss
+		return diskCache.get(rawId, format);
+	}
+	
+	/**
+	 * Analyzes the bitmap and converts it to the recommended format. Returns null when
+	 * the bitmap should be uploaded as it is (RGBA8888). Any thread.
+	 */
+	private PixelDiskCache.Entry convertAutomatically(int rawId, Bitmap bitmap){
+		if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) return null;
+		
+		int width = bitmap.getWidth();
+		int height = bitmap.getHeight();
+		StagingBufferPool stagingBuffers = Texture.getStagingBufferPool();
+		ByteBuffer src = stagingBuffers.obtain(width * height * 4);
+		bitmap.copyPixelsToBuffer(src);
+		
+		TextureFormatAnalyzer.Analysis analysis = formatAnalyzer.analyze(src, width, height);
+		if (DEBUG) KoLog.i("TextureStore", "Resource " + rawId + ": " + analysis);
+		if (analysis.recommendedFormat == PixelConverter.FORMAT_RGBA_8888){
+			stagingBuffers.release(src);
+			return null;
+		}
+		
+		PixelDiskCache.Entry ret = new PixelDiskCache.Entry();
+		ret.width = width;
+		ret.height = height;
+		ret.format = analysis.recommendedFormat;
+		ret.pixels = ByteBuffer.allocateDirect(width * height * 2).order(ByteOrder.nativeOrder());
+		src.position(0);
+		PixelConverter.convert(src, width, height, ret.pixels, ret.format, 
+				Texture.ditherConversions, PixelConverter.ALPHA_KEEP);
+		stagingBuffers.release(src);
+		return ret;
+	}
+	
+	/**
+	 * When on, each resource texture is analyzed when loaded and stored in the smallest
+	 * format that shows it without visible loss (RGB565 for opaque images, RGBA5551 for 
+	 * binary alpha, ...), see TextureFormatAnalyzer. The choice is available in
+	 * <code>ResourceTexture.getConfig()</code>, the savings in <code>getFormatReport</code>.
+	 * Only affects textures loaded afterwards. Default: off.
+	 */
+	public void setAutomaticFormatSelection(boolean automaticFormats) {
+		this.automaticFormats = automaticFormats;
+	}
+	
+	public boolean isAutomaticFormatSelection() {
+		return automaticFormats;
+	}
+	
+	/**
+	 * To tune the automatic format selection. The same analyzer picks the formats of
+	 * Textures with TextureConfig.FORMAT_AUTO.
+	 */
+	public TextureFormatAnalyzer getFormatAnalyzer() {
+		return formatAnalyzer;
+	}
+	
+	/**
+	 * Memory of all currently loaded, uncompressed resource textures and of all
+	 * Textures (including TextureStrips) per format, compared to storing all of them 
+	 * as RGBA8888.
+	 */
+	public FormatReport getFormatReport(){
+		FormatReport ret = new FormatReport();
+		for (byte i = 0; i < PixelConverter.FORMAT_COUNT; i++){
+			ret.textureCounts[i] += liveTextureCounts[i];
+			ret.bytes[i] += liveTextureBytes[i];
+			ret.usedBytes += liveTextureBytes[i];
+		}
+		ret.rgba8888Bytes += liveTextureRgba8888Bytes;
+		for (ResourceTexture t : resourceTextures.values()){
+			if (!t.loaded || t.pixelFormat < 0) continue;
+			ret.textureCounts[t.pixelFormat]++;
+			ret.bytes[t.pixelFormat] += t.sizeBytes;
+			ret.usedBytes += t.sizeBytes;
+			ret.rgba8888Bytes += estimateSizeBytes(t.width, t.height, 4, t.mipMapped);
+		}
 		return ret;
 	}
+	
+	/**
+	 * Runs the job in one of the low priority texture decoding threads, e.g., to
+	 * prepare texture data off the GL thread.
+	 */
+	public void executeInBackground(Runnable job){
+		getDecoderPool().execute(job);
+	}
+	
+	/**
+	 * To be called, when the TextureStore is definitely no longer used.
+	 */
+	public synchronized void onDestroy(){
+		if (decoderPool != null){
+			decoderPool.shutdownNow();
+			decoderPool = null;
+		}
+	}
+	
+	/**
+	 * Decodes in a decoder thread, then queues itself as idle job to upload in the GL thread.
+	 */
+	private class AsyncLoadJob implements Runnable, IGlRunnable {
+		private final Resources resources;
+		private final SceneGraph sceneGraph;
+		private final ResourceTexture texture;
+		private final int jobGeneration;
+		
+		private Bitmap bitmap;
+		private PixelDiskCache.Entry cachedPixels;
+		private boolean decodeFailed = false;
+		
+		public AsyncLoadJob(Resources res, SceneGraph sceneGraph, ResourceTexture texture, int generation){
+			this.resources = res;
+			this.sceneGraph = sceneGraph;
+			this.texture = texture;
+			this.jobGeneration = generation;
+		}
+		
+		@Override
+		public void run() {
+			long start = System.nanoTime();
+			PixelDiskCache diskCache = pixelDiskCache;
+			cachedPixels = getCachedPixels(texture.resourceId);
+			if (cachedPixels == null){
+				try {
+					bitmap = getBitmap(resources, texture.resourceId);
+				} catch (Exception e){
+					KoLog.e("TextureStore", "Could not decode resource " + texture.resourceId + ": " + e);
+				}
+			}
+			decodeTimeNs.addAndGet(System.nanoTime() - start);
+			decodedCount.incrementAndGet();
+			pendingDecodes.decrementAndGet();
+			
+			if (bitmap == null && cachedPixels == null){
+				// the GL thread must give up the placeholder and tell the listeners
+				decodeFailed = true;
+				sceneGraph.queueIdleJob(this);
+				return;
+			}
+			if (bitmap != null){
+				PixelDiskCache.Entry converted = automaticFormats ? convertAutomatically(texture.resourceId, bitmap) : null;
+				byte format = (converted == null) ? PixelConverter.FORMAT_RGBA_8888 : converted.format;
+				if (diskCache != null) diskCache.put(texture.resourceId, format, bitmap);
+				if (converted != null){
+					if (RenderConfig.RECYCLE_BITMAPS) bitmap.recycle();
+					bitmap = null;
+					cachedPixels = converted;
+				}
+			}
+			pendingUploads.incrementAndGet();
+			sceneGraph.queueIdleJob(this);
+		}
+		
+		@Override
+		public void run(RenderContext rc) {
+			if (decodeFailed){
+				// after a surface loss, the placeholder is gone already
+				loadFailed(texture, jobGeneration == generation && !texture.evicted);
+				return;
+			}
+			
+			pendingUploads.decrementAndGet();
+			if (jobGeneration != generation || texture.evicted){
+				// the surface was lost in the meantime, the handle is invalid
+				abort();
+				loadFailed(texture, false);
+				return;
+			}
+			
+			long start = System.nanoTime();
+			rc.bindTexture(texture.handle);
+			if (cachedPixels != null){
+				cachedPixels.upload();
+				texture.width = cachedPixels.width;
+				texture.height = cachedPixels.height;
+				texture.pixelFormat = cachedPixels.format;
+				cachedPixels = null;
+			} else {
+				GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+				uploaded(bitmap);
+				texture.width = bitmap.getWidth();
+				texture.height = bitmap.getHeight();
+				if (RenderConfig.RECYCLE_BITMAPS) bitmap.recycle();
+				bitmap = null;
+			}
+			if (texture.mipMapped) GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+			if (RenderConfig.GL_DEBUG) RenderUtil.checkGlError("Async resource texture upload");
+			
+			texture.sizeBytes = estimateSizeBytes(texture.width, texture.height, 
+					PixelConverter.getBytesPerPixel(texture.pixelFormat), texture.mipMapped);
+			texture.loaded = true;
+			textureCreated(texture);
+			cached(texture);
+			
+			uploadTimeNs.addAndGet(System.nanoTime() - start);
+			uploadedCount.incrementAndGet();
+			
+			int l = texture.listeners.size();
+			for (int i = 0; i < l; i++) texture.listeners.get(i).onTextureLoaded(texture);
+			texture.listeners.clear();
+		}
+		
+		@Override
+		public void abort() {
+			if (bitmap != null && RenderConfig.RECYCLE_BITMAPS) bitmap.recycle();
+			bitmap = null;
+			cachedPixels = null;
+		}
+	}
+	
+	/**
+	 * An asynchronous load did not deliver: The texture leaves the cache (so requesting it
+	 * again retries) and the listeners are told. GL thread only.
+	 * @param deletePlaceholder	false when the handle is gone already (surface lost, evicted).
+	 */
+	private void loadFailed(ResourceTexture texture, boolean deletePlaceholder){
+		KoLog.w("TextureStore", "Could not load resource texture " + texture.resourceId 
+				+ (deletePlaceholder ? ", decoding failed" : ", cancelled"));
+		failedLoads++;
+		
+		if (resourceTextures.get(texture.resourceId) == texture) resourceTextures.remove(texture.resourceId);
+		if (deletePlaceholder) texture.delete();
+		texture.evicted = true;
+		texture.failed = true;
+		
+		int l = texture.listeners.size();
+		for (int i = 0; i < l; i++) texture.listeners.get(i).onTextureLoadFailed(texture);
+		texture.listeners.clear();
+	}
+	
+	// //////////////////////////////////////////////////////////////////
+	// cache budget
+	
+	/**
+	 * Gives back a texture delivered by one of the <code>get..ResourceTexture</code> methods.
+	 * When nobody holds it anymore, it stays cached but may be evicted to stay within the
+	 * budget. Must be called in the GL thread.
+	 */
+	public void releaseResourceTexture(ResourceTexture tex){
+		if (tex.holdCount == 0) return;
+		tex.holdCount--;
+		if (tex.holdCount > 0 || tex.evicted) return;
+		
+		// touch it: evicted after all textures released before
+		resourceTextures.get(tex.resourceId);
+		if (cachedResourceBytes > resourceTextureBudgetBytes) trimResourceTextures(resourceTextureBudgetBytes, null);
+	}
+	
+	private void cached(ResourceTexture tex){
+		cachedResourceBytes += tex.sizeBytes;
+		if (cachedResourceBytes > resourceTextureBudgetBytes) trimResourceTextures(resourceTextureBudgetBytes, tex);
+	}
+	
+	/**
+	 * Sets the maximum estimated size of all cached resource textures. Immediately evicts
+	 * textures when currently above. Must be called in the GL thread.
+	 */
+	public void setResourceTextureBudget(int bytes){
+		resourceTextureBudgetBytes = bytes;
+		trimResourceTextures(bytes, null);
+	}
+	
+	public int getResourceTextureBudget() {
+		return resourceTextureBudgetBytes;
+	}
+	
+	/**
+	 * Deletes the least recently released resource textures that nobody holds and that 
+	 * are not pinned until the cached textures take at most <code>targetBytes</code>. 
+	 * Textures still in use are never deleted. Must be called in the GL thread.
+	 */
+	public void trimResourceTextures(int targetBytes){
+		trimResourceTextures(targetBytes, null);
+	}
+	
+	private void trimResourceTextures(int targetBytes, ResourceTexture keep){
+		Iterator<ResourceTexture> it = resourceTextures.values().iterator();
+		while (cachedResourceBytes > targetBytes && it.hasNext()){
+			ResourceTexture t = it.next();
+			// placeholders are not accounted yet, the newest one must survive
+			if (t == keep || t.holdCount > 0 || t.pinCount > 0 || !t.loaded) continue;
+			
+			it.remove();
+			cachedResourceBytes -= t.sizeBytes;
+			t.delete();
+			t.evicted = true;
+			cacheEvictions++;
+			if (DEBUG) KoLog.i("TextureStore", "Evicted resource texture " + t.resourceId 
+					+ ", cached: " + cachedResourceBytes);
+		}
+	}
+	
+	public int getCachedResourceTextureBytes() {
+		return cachedResourceBytes;
+	}
+	
+	public int getCachedResourceTextureCount() {
+		return resourceTextures.size();
+	}
+	
+	public int getCacheHits() {
+		return cacheHits;
+	}
+	
+	public int getCacheMisses() {
+		return cacheMisses;
+	}
+	
+	public int getCacheEvictions() {
+		return cacheEvictions;
+	}
+	
+	public void resetCacheStatistics(){
+		cacheHits = 0;
+		cacheMisses = 0;
+		cacheEvictions = 0;
+		stripPoolHits = 0;
+		stripPoolMisses = 0;
+	}
+	
+	public static interface ITextureLoadListener {
+		/**
+		 * Called in the GL thread when the texture data is uploaded. 
+		 */
+		void onTextureLoaded(ResourceTexture texture);
+		
+		/**
+		 * Called in the GL thread when the texture could not be loaded: Decoding failed, or
+		 * the load was dropped because the surface was lost or the texture was evicted.
+		 * The texture is not cached anymore and its handle is invalid.
+		 */
+		void onTextureLoadFailed(ResourceTexture texture);
+	}
+	
+	// //////////////////////////////////////////////////////////////////
+	// asynchronous loading metrics
+
+	/**
+	 * Number of resources waiting for or in decoding.
+	 */
+	public int getPendingDecodeCount() {
+		return pendingDecodes.get();
+	}
+	
+	/**
+	 * Number of decoded resources waiting for their upload in the GL thread.
+	 */
+	public int getPendingUploadCount() {
+		return pendingUploads.get();
+	}
+	
+	public float getAverageDecodeTimeMs() {
+		int count = decodedCount.get();
+		return (count == 0) ? 0 : (float)(decodeTimeNs.get() / count) / 1000000f;
+	}
+	
+	public float getAverageUploadTimeMs() {
+		int count = uploadedCount.get();
+		return (count == 0) ? 0 : (float)(uploadTimeNs.get() / count) / 1000000f;
+	}
+	
+	public int getAsyncLoadedCount() {
+		return uploadedCount.get();
+	}
+	
+	/**
+	 * Asynchronous loads that failed or were dropped.
+	 */
+	public int getAsyncFailedCount() {
+		return failedLoads;
+	}
+
+	/**
+	 * Memory of textures by pixel format, see <code>getFormatReport</code>.
+	 */
+	public static class FormatReport {
+		/**
+		 * Indexed by PixelConverter.FORMAT_ constants.
+		 */
+		public final int[] textureCounts = new int[PixelConverter.FORMAT_COUNT];
+		public final int[] bytes = new int[PixelConverter.FORMAT_COUNT];
+		public int usedBytes;
+		/**
+		 * What the same textures would take as RGBA8888.
+		 */
+		public int rgba8888Bytes;
+		
+		public int getSavedBytes(){
+			return rgba8888Bytes - usedBytes;
+		}
+		
+		@Override
+		public String toString() {
+			StringBuffer ret = new StringBuffer("Texture formats: ");
+			for (byte i = 0; i < PixelConverter.FORMAT_COUNT; i++){
+				if (textureCounts[i] == 0) continue;
+				ret.append(PixelConverter.getFormatName(i)).append(' ').append(textureCounts[i])
+					.append(" (").append(bytes[i] / 1024).append(" kB), ");
+			}
+			ret.append("saved ").append(getSavedBytes() / 1024).append(" of ")
+				.append(rgba8888Bytes / 1024).append(" kB");
+			return ret.toString();
+		}
+	}
 
 	public static class ResourceTexture {
 		private int resourceId;
@@ -106,6 +994,21 @@ public class TextureStore {
 		private int height;
 
 		private boolean mipMapped = false;
+		/**
+		 * PixelConverter.FORMAT_ constant, TextureConfig.FORMAT_DEFAULT for compressed textures.
+		 */
+		private byte pixelFormat = PixelConverter.FORMAT_RGBA_8888;
+		
+		private volatile boolean loaded = false;
+		private int sizeBytes = 0;
+		private int pinCount = 0;
+		/**
+		 * Requests minus releases. Only textures nobody holds are evicted.
+		 */
+		private int holdCount = 0;
+		private boolean evicted = false;
+		private boolean failed = false;
+		private final ArrayList<ITextureLoadListener> listeners = new ArrayList<ITextureLoadListener>(1);
 
 		private ResourceTexture(){
 			// not publicly constructible
@@ -119,7 +1022,8 @@ public class TextureStore {
 			tmpTextureHandle[0] = this.handle;
 			GLES20.glDeleteTextures(1, tmpTextureHandle, 0);
 
-			TextureStore.textureDeleted(this);
+			// placeholders were never accounted
+			if (loaded) TextureStore.textureDeleted(this);
 		}
 
 		public int getWidth() {
@@ -130,6 +1034,13 @@ public class TextureStore {
 			return height;
 		}
 		
+		/**
+		 * The GPU memory taken by the texture; for compressed textures the compressed size.
+		 */
+		public int getSizeBytes() {
+			return sizeBytes;
+		}
+		
 		public int getResourceId() {
 			return resourceId;
 		}
@@ -137,6 +1048,71 @@ public class TextureStore {
 		public boolean isMipMapped() {
 			return mipMapped;
 		}
+		
+		/**
+		 * The PixelConverter format the texture is stored in, TextureConfig.FORMAT_DEFAULT
+		 * for compressed textures.
+		 */
+		public byte getPixelFormat() {
+			return pixelFormat;
+		}
+		
+		/**
+		 * Describes the texture as it was loaded, including the chosen pixel format.
+		 * A new instance with each call.
+		 */
+		public TextureConfig getConfig(){
+			TextureConfig ret = new TextureConfig();
+			ret.mipMapped = mipMapped;
+			ret.alphaChannel = pixelFormat != PixelConverter.FORMAT_RGB_565;
+			ret.pixelFormat = pixelFormat;
+			ret.minWidth = width;
+			ret.minHeight = height;
+			return ret;
+		}
+		
+		/**
+		 * A pinned texture is never evicted from the TextureStore, no matter the budget,
+		 * even when nobody holds it. Each <code>pin</code> needs one <code>unpin</code>.
+		 */
+		public void pin(){
+			pinCount++;
+		}
+		
+		public void unpin(){
+			if (pinCount > 0) pinCount--;
+		}
+		
+		public boolean isPinned() {
+			return pinCount > 0;
+		}
+		
+		public boolean isHeld() {
+			return holdCount > 0;
+		}
+		
+		/**
+		 * true when the texture was deleted to stay within the budget after it was
+		 * released. The handle is invalid, request the texture again from the TextureStore.
+		 */
+		public boolean isEvicted() {
+			return evicted;
+		}
+		
+		/**
+		 * false while an asynchronously requested texture still shows the placeholder.
+		 */
+		public boolean isLoaded() {
+			return loaded;
+		}
+		
+		/**
+		 * true when an asynchronous load failed or was dropped. The handle is invalid,
+		 * request the texture again to retry.
+		 */
+		public boolean isFailed() {
+			return failed;
+		}
 	}
 
 	/**
@@ -148,18 +1124,26 @@ public class TextureStore {
 	}
 	
 	public static Bitmap getBitmap(Resources res, int id) {
-		InputStream is = res.openRawResource(id);
-		Bitmap bitmap;
-		try {
-			bitmap = BitmapFactory.decodeStream(is);
-		} finally {
-			try {
-				is.close();
-			} catch(Exception e) {
-				KoLog.e("RenderUtil", "Error when loading bitmap " + id + ": " + e.toString());
-			}
-		}
-		return bitmap;
+		return BitmapDecoder.decode(res, id);
+	}
+
+	/**
+	 * Like <code>getBitmap</code>, but decodes only as many pixels as needed to show the
+	 * image at the given size (see BitmapDecoder). The result is at least that large and
+	 * still needs to be scaled to the exact size. Give it back with
+	 * <code>BitmapDecoder.recycle</code> when done.
+	 */
+	public static Bitmap getBitmap(Resources res, int id, int targetWidth, int targetHeight, boolean centerCrop) {
+		return BitmapDecoder.decode(res, id, targetWidth, targetHeight, centerCrop);
+	}
+
+	/**
+	 * Like <code>getBitmap</code> with a target size, but respects the resource density
+	 * and also takes non-bitmap drawables (see <code>BitmapDecoder.decodeDrawable</code>).
+	 * Never null. Give it back with <code>BitmapDecoder.recycle</code> when done.
+	 */
+	public static Bitmap getDrawableBitmap(Resources res, int id, int targetWidth, int targetHeight) {
+		return BitmapDecoder.decodeDrawable(res, id, targetWidth, targetHeight);
 	}
 
 	
@@ -169,31 +1153,89 @@ public class TextureStore {
 	private static int textureAllocations = 0;
 	private static int usedTextureMemory = 0;
 	
+	/**
+	 * Textures (not resource textures) per format, for the FormatReport.
+	 */
+	private static final int[] liveTextureCounts = new int[PixelConverter.FORMAT_COUNT];
+	private static final int[] liveTextureBytes = new int[PixelConverter.FORMAT_COUNT];
+	private static int liveTextureRgba8888Bytes = 0;
+	
+	private static int frameUploads = 0;
+	private static int frameUploadBytes = 0;
+	
+	/**
+	 * Counts one texture upload for the profiler. Every glTexImage2D, glTexSubImage2D and
+	 * GLUtils upload with pixel data reports itself here exactly once. GL thread only.
+	 */
+	static void uploaded(int bytes){
+		frameUploads++;
+		frameUploadBytes += bytes;
+	}
+	
+	/**
+	 * Counts the upload of a whole bitmap, see <code>uploaded(int)</code>.
+	 */
+	static void uploaded(Bitmap bitmap){
+		uploaded(bitmap.getRowBytes() * bitmap.getHeight());
+	}
+	
+	/**
+	 * Texture uploads (glTexImage2D, glTexSubImage2D, glCompressedTexImage2D) since the last 
+	 * <code>clearFrameUploadTracking</code>, i.e., in the current frame.
+	 */
+	public static int getFrameUploads() {
+		return frameUploads;
+	}
+	
+	public static int getFrameUploadBytes() {
+		return frameUploadBytes;
+	}
+	
+	public static void clearFrameUploadTracking(){
+		frameUploads = 0;
+		frameUploadBytes = 0;
+	}
+	
 	public static void clearAllocationTracking(){
 		textureAllocations = 0;
 		usedTextureMemory = 0;
+		for (int i = 0; i < PixelConverter.FORMAT_COUNT; i++){
+			liveTextureCounts[i] = 0;
+			liveTextureBytes[i] = 0;
+		}
+		liveTextureRgba8888Bytes = 0;
 	}
 	
+	/**
+	 * Counts the texture in its current pixel format. A texture that changes its format
+	 * (FORMAT_AUTO) is deleted and created again in these statistics.
+	 */
 	public static void textureCreated(Texture tex){
-		TextureConfig config = tex.getConfig();
-		textureMemoryAllocated(estimateSizeBytes(
-				tex.getWidth(), tex.getHeight(), config.alphaChannel, config.mipMapped));
+		int size = estimateSizeBytes(tex);
+		byte format = tex.getPixelFormat();
+		liveTextureCounts[format]++;
+		liveTextureBytes[format] += size;
+		liveTextureRgba8888Bytes += estimateSizeBytes(
+				tex.getWidth(), tex.getHeight(), 4, tex.getConfig().mipMapped);
+		textureMemoryAllocated(size);
 	}
 
 	public static void textureCreated(ResourceTexture tex) {
-		textureMemoryAllocated(
-				estimateSizeBytes(tex.getWidth(), tex.getHeight(), true, tex.mipMapped));
+		textureMemoryAllocated(tex.sizeBytes);
 	}
 	
 	public static void textureDeleted(Texture tex) {
-		TextureConfig config = tex.getConfig();
-		textureMemoryFreed(
-				estimateSizeBytes(tex.getWidth(), tex.getHeight(), config.alphaChannel, config.mipMapped));
+		int size = estimateSizeBytes(tex);
+		byte format = tex.getPixelFormat();
+		liveTextureCounts[format]--;
+		liveTextureBytes[format] -= size;
+		liveTextureRgba8888Bytes -= estimateSizeBytes(
+				tex.getWidth(), tex.getHeight(), 4, tex.getConfig().mipMapped);
+		textureMemoryFreed(size);
 	}
 	
 	public static void textureDeleted(ResourceTexture tex) {
-		textureMemoryFreed(
-				estimateSizeBytes(tex.getWidth(), tex.getHeight(), true, tex.mipMapped));
+		textureMemoryFreed(tex.sizeBytes);
 	}
 	
 	private static void textureMemoryAllocated(int size){
@@ -211,9 +1253,13 @@ public class TextureStore {
 				+", overall size: "+usedTextureMemory);
 	}
 
+	private static int estimateSizeBytes(Texture tex){
+		return estimateSizeBytes(tex.getWidth(), tex.getHeight(), 
+				PixelConverter.getBytesPerPixel(tex.getPixelFormat()), tex.getConfig().mipMapped);
+	}
+	
 	private static int estimateSizeBytes
-		(int width, int height, boolean alpha, boolean mipMapped) {
-		int pixelSize = (alpha ? 4 : 2);
+		(int width, int height, int pixelSize, boolean mipMapped) {
 		int ret = width * height * pixelSize;
 		if (mipMapped){
 			int tmpWidth = width/2;
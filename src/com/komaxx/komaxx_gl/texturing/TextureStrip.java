@@ -4,6 +4,7 @@ import android.graphics.Bitmap;
 import android.graphics.Rect;
 
 import com.komaxx.komaxx_gl.MipMapBitmaps;
+import com.komaxx.komaxx_gl.RenderContext;
 
 
 /**
@@ -15,6 +16,15 @@ import com.komaxx.komaxx_gl.MipMapBitmaps;
  */
 public class TextureStrip extends Texture {
 	private final TextureStripConfig config;
+	/**
+	 * The config as requested, before segment sizes were adjusted. Key in the TextureStore pool.
+	 */
+	private final TextureStripConfig requestedConfig;
+	
+	/**
+	 * The TextureStore generation (i.e., surface) the GL texture was created in, -1 when not created.
+	 */
+	private int createdGeneration = -1;
 
 	private TextureStripper textureStripper;
 	
@@ -25,6 +35,7 @@ public class TextureStrip extends Texture {
 	
 	public TextureStrip(TextureStripConfig config) {
 		super(config);
+		this.requestedConfig = config.clone();
 		this.config = config.clone();
 		computeTextureSize();
 		textureStripper = new TextureStripper(
@@ -36,6 +47,45 @@ public class TextureStrip extends Texture {
 		return config;
 	}
 	
+	TextureStripConfig getRequestedConfig() {
+		return requestedConfig;
+	}
+	
+	/**
+	 * Segments are updated one at a time, no scratch bitmap is larger than one.
+	 */
+	@Override
+	protected int getLargestUpdateRegionPixels() {
+		return config.segmentWidth * config.segmentHeight;
+	}
+	
+	/**
+	 * Only creates the GL texture once per surface: Strips from the TextureStore pool
+	 * already exist, strips that survived a context loss are created again.
+	 */
+	@Override
+	public boolean create(RenderContext rc) {
+		int generation = rc.textureStore.getGeneration();
+		if (createdGeneration == generation) return true;
+		if (!super.create(rc)) return false;
+		createdGeneration = generation;
+		return true;
+	}
+	
+	/**
+	 * true when the GL texture was created in the given TextureStore generation.
+	 */
+	boolean isCreatedIn(int generation) {
+		return createdGeneration == generation;
+	}
+	
+	/**
+	 * Releases all segments. Called when the strip is returned to the pool.
+	 */
+	void releaseAllSegments(){
+		textureStripper.releaseAllSegments();
+	}
+	
 	private void computeTextureSize() {
 		switch (config.proportionsType){
 		case TextureStripConfig.PROPORTIONS_QUADRATIC:
@@ -113,16 +163,32 @@ public class TextureStrip extends Texture {
 	}
 	
 	/**
-	 * Just delivers the segment in the strip whose last usage frame is longest ago.
+	 * Just delivers the segment in the strip that was used least recently.
 	 */
 	public TextureSegment getOldestSegment(){
 		return textureStripper.getOldestSegment();
 	}
 	
 	public TextureSegment getSegment(int nuOwnerId, int frame){
-		TextureSegment ret = getOldestSegment();
-		ret.own(nuOwnerId, frame);
-		return ret;
+		return textureStripper.getSegment(nuOwnerId, frame);
+	}
+	
+	public void setEvictionPolicy(ISegmentEvictionPolicy evictionPolicy){
+		textureStripper.setEvictionPolicy(evictionPolicy);
+	}
+	
+	/**
+	 * Hits / misses / evictions of the segments in this strip.
+	 */
+	public TextureStripper getStripper() {
+		return textureStripper;
+	}
+	
+	/**
+	 * Delivers the segment the owner acquired last, when it still owns it, null otherwise.
+	 */
+	public TextureSegment getSegmentOfOwner(int ownerId){
+		return textureStripper.getSegmentOfOwner(ownerId);
 	}
 	
 	@Override
@@ -137,6 +203,7 @@ public class TextureStrip extends Texture {
 	@Override
 	public void delete() {
 		super.delete();
+		createdGeneration = -1;
 		this.textureStripper = null;
 		if (segmentTmpBmpHorizontal != null){
 			segmentTmpBmpHorizontal.recycle();
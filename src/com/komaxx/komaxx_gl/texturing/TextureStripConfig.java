@@ -42,8 +42,10 @@ public class TextureStripConfig extends TextureConfig {
 		
 		ret.nearestMapping = this.nearestMapping;
 		ret.edgeBehavior = this.edgeBehavior;
+		ret.pixelFormat = this.pixelFormat;
 		
 		ret.proportionsType = this.proportionsType;
+		ret.mayRotate = this.mayRotate;
 		
 		return ret;
 	}
@@ -55,8 +57,13 @@ public class TextureStripConfig extends TextureConfig {
 		result = prime * result + (alphaChannel ? 1231 : 1237);
 		result = prime * result + minSegmentCount;
 		result = prime * result + (mipMapped ? 1231 : 1237);
+		result = prime * result + (mayRotate ? 1231 : 1237);
+		result = prime * result + proportionsType;
+		result = prime * result + minWidth;
+		result = prime * result + minHeight;
 		result = prime * result + segmentHeight;
 		result = prime * result + segmentWidth;
+		result = prime * result + pixelFormat;
 		return result;
 	}
 
@@ -72,6 +79,14 @@ public class TextureStripConfig extends TextureConfig {
 		if (mipMapped != other.mipMapped) return false;
 		if (segmentHeight != other.segmentHeight) return false;
 		if (segmentWidth != other.segmentWidth) return false;
+		// strips of configs that are equal are interchangeable (TextureStore pool)
+		if (mayRotate != other.mayRotate) return false;
+		if (proportionsType != other.proportionsType) return false;
+		if (minWidth != other.minWidth) return false;
+		if (minHeight != other.minHeight) return false;
+		if (edgeBehavior != other.edgeBehavior) return false;
+		if (basicColor != other.basicColor) return false;
+		if (pixelFormat != other.pixelFormat) return false;
 		return true;
 	}
 	
@@ -84,6 +99,8 @@ public class TextureStripConfig extends TextureConfig {
 		ret.append(segmentWidth).append('x').append(segmentHeight).append(", ");
 		ret.append(proportionsType==PROPORTIONS_QUADRATIC ?  "quadratic, " : (proportionsType==PROPORTIONS_COLUMN ? "column, " : "row, "));
 		ret.append(">").append(minSegmentCount);
+		if (pixelFormat >= 0) ret.append(", ").append(PixelConverter.getFormatName(pixelFormat));
+		else if (pixelFormat == FORMAT_AUTO) ret.append(", auto format");
 		return ret.toString();
 	}
 }
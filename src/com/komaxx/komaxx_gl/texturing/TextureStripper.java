@@ -2,6 +2,7 @@ package com.komaxx.komaxx_gl.texturing;
 
 import android.graphics.Bitmap;
 import android.graphics.Rect;
+import android.util.SparseArray;
 
 /**
  * This class takes a rectangle of a texture and splits it into
@@ -22,6 +23,23 @@ public class TextureStripper {
 	private int segmentCount;
 
 	private TextureSegment[] segments;
+	
+	/**
+	 * All segments as doubly linked list, the least recently used first.
+	 */
+	private TextureSegment lruHead;
+	private TextureSegment lruTail;
+	
+	/**
+	 * ownerId -> the segment the owner acquired last.
+	 */
+	private final SparseArray<TextureSegment> ownedSegments = new SparseArray<TextureSegment>();
+	
+	private ISegmentEvictionPolicy evictionPolicy = new ISegmentEvictionPolicy.Lru();
+	
+	private int hits = 0;
+	private int misses = 0;
+	private int evictions = 0;
 
 
 	/**
@@ -35,6 +53,11 @@ public class TextureStripper {
 		this.segmentWidth = segmentWidth;
 		this.segmentHeight = segmentHeight;
 		createSegments(mayRotate);
+		
+		for (int i = 0; i < segmentCount; i++){
+			segments[i].stripper = this;
+			append(segments[i]);
+		}
 	}
 
 	public Texture getTexture() {
@@ -152,20 +175,97 @@ public class TextureStripper {
 	}
 
 	/**
-	 * Just delivers the segment in the strip whose last usage frame is longest ago.
+	 * Just delivers the segment in the strip that was used least recently. O(1).
 	 */
 	public TextureSegment getOldestSegment(){
-		// find least used segment
-		int oldestTime = segments[0].lastUsedFrame;
-		int oldestSegmentIndex = 0;
-		int tmpTime;
-		for (int i = 1; i < segmentCount; i++){
-			if ((tmpTime = segments[i].lastUsedFrame) < oldestTime){
-				oldestTime = tmpTime;
-				oldestSegmentIndex = i;
-			}
-		}
-		return segments[oldestSegmentIndex];
+		return lruHead;
+	}
+	
+	/**
+	 * Delivers the segment the owner acquired last, when it still owns it. Otherwise
+	 * null (and the owner needs to acquire and render a segment again). O(1).
+	 */
+	public TextureSegment getSegmentOfOwner(int ownerId){
+		TextureSegment ret = ownedSegments.get(ownerId);
+		if (ret != null) hits++;
+		else misses++;
+		return ret;
+	}
+	
+	/**
+	 * Decides which segment is given to the next requesting owner. Default: LRU.
+	 */
+	public void setEvictionPolicy(ISegmentEvictionPolicy evictionPolicy) {
+		this.evictionPolicy = evictionPolicy;
+	}
+	
+	/**
+	 * Number of <code>getSegmentOfOwner</code> calls where the owner still had the
+	 * segment it acquired last.
+	 */
+	public int getHits() {
+		return hits;
+	}
+	
+	/**
+	 * Number of <code>getSegmentOfOwner</code> calls where the owner had lost its segment
+	 * (or never had one) and needs to render again.
+	 */
+	public int getMisses() {
+		return misses;
+	}
+	
+	/**
+	 * Number of segments taken from another owner.
+	 */
+	public int getEvictions() {
+		return evictions;
+	}
+	
+	public void resetStatistics(){
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+	
+	// //////////////////////////////////////////////////////////////////
+	// lru list, maintained by the segments
+
+	void touched(TextureSegment s){
+		if (s == lruTail) return;
+		unlink(s);
+		append(s);
+	}
+	
+	void released(TextureSegment s){
+		if (s == lruHead) return;
+		unlink(s);
+		s.lruNext = lruHead;
+		lruHead.lruPrevious = s;
+		lruHead = s;
+	}
+	
+	void ownerChanged(TextureSegment s, int oldOwnerId, int nuOwnerId){
+		if (oldOwnerId == nuOwnerId) return;
+		if (ownedSegments.get(oldOwnerId) == s) ownedSegments.remove(oldOwnerId);
+		if (nuOwnerId != 0) ownedSegments.put(nuOwnerId, s);
+	}
+	
+	private void append(TextureSegment s){
+		s.lruNext = null;
+		s.lruPrevious = lruTail;
+		if (lruTail != null) lruTail.lruNext = s;
+		lruTail = s;
+		if (lruHead == null) lruHead = s;
+	}
+	
+	private void unlink(TextureSegment s){
+		if (s.lruPrevious != null) s.lruPrevious.lruNext = s.lruNext;
+		else lruHead = s.lruNext;
+		if (s.lruNext != null) s.lruNext.lruPrevious = s.lruPrevious;
+		else lruTail = s.lruPrevious;
+		s.lruPrevious = null;
+		s.lruNext = null;
 	}
 
 	/**
@@ -175,11 +275,19 @@ public class TextureStripper {
 	 * renderContex.frame). Used for LRU estimates.
 	 */
 	public TextureSegment getSegment(int nuOwnerId, int frame){
-		TextureSegment ret = getOldestSegment();
+		TextureSegment ret = evictionPolicy.chooseVictim(lruHead);
+		if (ret.getOwnerId() != 0 && ret.getOwnerId() != nuOwnerId) evictions++;
 		ret.own(nuOwnerId, frame);
 		return ret;
 	}
 
+	/**
+	 * Releases all segments, e.g., when the texture is reused for something else.
+	 */
+	public void releaseAllSegments(){
+		for (int i = 0; i < segmentCount; i++) segments[i].release();
+	}
+
 	@Override
 	public String toString() {
 		return "TextureStrip ("+bounds.toShortString()+") " + segmentCount + " segments ("
@@ -0,0 +1,316 @@
+package com.komaxx.komaxx_gl.texturing;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.opengl.GLES20;
+
+import com.komaxx.komaxx_gl.RenderConfig;
+import com.komaxx.komaxx_gl.RenderContext;
+import com.komaxx.komaxx_gl.util.RenderUtil;
+
+/**
+ * Collects sub image updates of one texture (typically the segments of a TextureStrip)
+ * and uploads them together: The pixels are staged (in the texture's pixel format) in one
+ * shared staging buffer. On <code>commit</code>, updates of adjacent rectangles that form
+ * a larger rectangle (e.g., a row of neighboring segments) are merged into one
+ * glTexSubImage2D call, and the texture is bound once.</br>
+ * GL thread only.
+ *
+ * @author Matthias Schicker
+ */
+public class UploadQueue {
+	/**
+	 * When more is staged, the queue is committed before staging further updates.
+	 */
+	private static final int MAX_STAGED_BYTES = 4 * 1024 * 1024;
+
+	private final Texture texture;
+	private final int bytesPerPixel;
+
+	private ByteBuffer staging;
+	private int stagedBytes = 0;
+	private final ArrayList<Entry> entries = new ArrayList<Entry>();
+	private final ArrayList<Entry> entryPool = new ArrayList<Entry>();
+
+	private int committedUploads = 0;
+	private int queuedUpdates = 0;
+
+	private static final Comparator<Entry> rowOrder = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry a, Entry b) {
+			if (a.y != b.y) return a.y - b.y;
+			return a.x - b.x;
+		}
+	};
+	private static final Comparator<Entry> columnOrder = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry a, Entry b) {
+			if (a.x != b.x) return a.x - b.x;
+			return a.y - b.y;
+		}
+	};
+
+
+	UploadQueue(Texture texture){
+		this.texture = texture;
+		this.bytesPerPixel = PixelConverter.getBytesPerPixel(texture.getPixelFormat());
+	}
+
+	/**
+	 * true when the bitmap can be staged for this texture without drawing it into
+	 * another Bitmap first.
+	 */
+	public boolean canStage(Bitmap bitmap){
+		byte format = texture.getPixelFormat();
+		if (bitmap.getConfig() == Config.ARGB_8888) return true;
+		return bitmap.getConfig() == texture.getBitmapConfig() && format != PixelConverter.FORMAT_RGBA_5551;
+	}
+
+	/**
+	 * Stages the bitmap to be uploaded to (x, y) of mip level 0. Returns false (and stages
+	 * nothing) when <code>canStage</code> is false.
+	 */
+	public boolean queue(RenderContext rc, Bitmap bitmap, int x, int y){
+		if (!canStage(bitmap)) return false;
+		int w = bitmap.getWidth();
+		int h = bitmap.getHeight();
+		int bytes = w * h * bytesPerPixel;
+
+		// a later update of the same rect replaces the earlier one; overlapping ones must
+		// keep their order, upload what is there first
+		for (int i = entries.size() - 1; i >= 0; i--){
+			Entry e = entries.get(i);
+			if (e.x == x && e.y == y && e.width == w && e.height == h){
+				entries.remove(i);
+				entryPool.add(e);
+			} else if (e.x < x + w && x < e.x + e.width && e.y < y + h && y < e.y + e.height){
+				commit(rc);
+				break;
+			}
+		}
+		if (stagedBytes + bytes > MAX_STAGED_BYTES && entries.size() > 0) commit(rc);
+
+		ensureCapacity(stagedBytes + bytes);
+		staging.limit(stagedBytes + bytes);
+		staging.position(stagedBytes);
+		ByteBuffer target = staging.slice();
+		target.order(staging.order());
+		stage(bitmap, target);
+
+		Entry entry = obtainEntry(entryPool);
+		entry.x = x;
+		entry.y = y;
+		entry.width = w;
+		entry.height = h;
+		entry.offset = stagedBytes;
+		entries.add(entry);
+		stagedBytes += bytes;
+		queuedUpdates++;
+
+		if (entries.size() == 1) rc.textureStore.uploadsQueued(texture);
+		return true;
+	}
+
+	/**
+	 * Writes the bitmap's pixels in the texture's format into the target.
+	 */
+	private void stage(Bitmap bitmap, ByteBuffer target) {
+		byte format = texture.getPixelFormat();
+		if (bitmap.getConfig() != Config.ARGB_8888 || format == PixelConverter.FORMAT_RGBA_8888){
+			// same layout as the texture
+			bitmap.copyPixelsToBuffer(target);
+			return;
+		}
+
+		int w = bitmap.getWidth();
+		int h = bitmap.getHeight();
+		StagingBufferPool pool = Texture.getStagingBufferPool();
+		ByteBuffer src = pool.obtain(w * h * 4);
+		bitmap.copyPixelsToBuffer(src);
+		src.position(0);
+		PixelConverter.convert(src, w, h, target, format, Texture.ditherConversions, PixelConverter.ALPHA_KEEP);
+		pool.release(src);
+	}
+
+	private void ensureCapacity(int bytes) {
+		if (staging != null && staging.capacity() >= bytes) return;
+
+		StagingBufferPool pool = Texture.getStagingBufferPool();
+		ByteBuffer nuStaging = pool.obtain(Math.max(bytes, stagedBytes * 2));
+		nuStaging.limit(nuStaging.capacity());
+		if (staging != null){
+			staging.position(0);
+			staging.limit(stagedBytes);
+			nuStaging.put(staging);
+			pool.release(staging);
+		}
+		staging = nuStaging;
+	}
+
+	/**
+	 * Uploads all staged updates, merged where possible. The texture is bound afterwards
+	 * when anything was uploaded.
+	 */
+	public void commit(RenderContext rc){
+		if (entries.size() == 0) return;
+		rc.textureStore.uploadsCommitted(texture);
+
+		// not through rc.bindTexture, that would commit again
+		if (rc.boundTexture != texture.getHandle()){
+			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture.getHandle());
+			rc.boundTexture = texture.getHandle();
+		}
+
+		merge(entries, entryPool);
+
+		int l = entries.size();
+		for (int i = 0; i < l; i++) upload(rc, entries.get(i));
+
+		if (RenderConfig.GL_DEBUG) RenderUtil.checkGlError("Committing upload queue");
+
+		for (int i = 0; i < l; i++) recycle(entries.get(i));
+		entries.clear();
+		stagedBytes = 0;
+		if (staging != null){
+			Texture.getStagingBufferPool().release(staging);
+			staging = null;
+		}
+	}
+
+	/**
+	 * Merges the entries into as few rectangles as possible: Rows of neighbors first, then
+	 * rows of the same width are stacked. Merged entries hold the originals in <code>parts</code>.
+	 * New entries are taken from the pool. Pure Java, package visible for tests.
+	 */
+	static void merge(ArrayList<Entry> entries, ArrayList<Entry> entryPool){
+		Collections.sort(entries, rowOrder);
+		mergeRuns(entries, entryPool, true);
+		Collections.sort(entries, columnOrder);
+		mergeRuns(entries, entryPool, false);
+	}
+
+	/**
+	 * Merges consecutive entries that touch and together form a rectangle.
+	 */
+	private static void mergeRuns(ArrayList<Entry> entries, ArrayList<Entry> entryPool, boolean horizontal) {
+		for (int i = entries.size() - 1; i > 0; i--){
+			Entry a = entries.get(i - 1);
+			Entry b = entries.get(i);
+			boolean touching = horizontal
+					? (a.y == b.y && a.height == b.height && a.x + a.width == b.x)
+					: (a.x == b.x && a.width == b.width && a.y + a.height == b.y);
+			if (!touching) continue;
+
+			Entry merged = obtainEntry(entryPool);
+			merged.x = a.x;
+			merged.y = a.y;
+			merged.width = horizontal ? a.width + b.width : a.width;
+			merged.height = horizontal ? a.height : a.height + b.height;
+			merged.parts.add(a);
+			merged.parts.add(b);
+			entries.set(i - 1, merged);
+			entries.remove(i);
+		}
+	}
+
+	private void upload(RenderContext rc, Entry e) {
+		ByteBuffer pixels;
+		ByteBuffer assembled = null;
+		if (e.parts.size() == 0){
+			staging.limit(e.offset + e.width * e.height * bytesPerPixel);
+			staging.position(e.offset);
+			pixels = staging;
+		} else {
+			assembled = Texture.getStagingBufferPool().obtain(e.width * e.height * bytesPerPixel);
+			assemble(e, e.x, e.y, e.width, assembled);
+			assembled.position(0);
+			pixels = assembled;
+		}
+
+		GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, e.x, e.y, e.width, e.height,
+				texture.getGlFormat(), texture.getGlType(), pixels);
+		committedUploads++;
+		TextureStore.uploaded(e.width * e.height * bytesPerPixel);
+
+		if (assembled != null) Texture.getStagingBufferPool().release(assembled);
+	}
+
+	/**
+	 * Copies the rows of all staged parts of the entry into their place in the target,
+	 * which holds a rectangle of <code>targetWidth</code> pixels starting at (x, y).
+	 */
+	private void assemble(Entry e, int x, int y, int targetWidth, ByteBuffer target){
+		if (e.parts.size() > 0){
+			for (Entry part : e.parts) assemble(part, x, y, targetWidth, target);
+			return;
+		}
+		int rowBytes = e.width * bytesPerPixel;
+		for (int row = 0; row < e.height; row++){
+			int src = e.offset + row * rowBytes;
+			staging.limit(src + rowBytes);
+			staging.position(src);
+			target.limit(target.capacity());
+			target.position(((e.y - y + row) * targetWidth + (e.x - x)) * bytesPerPixel);
+			target.put(staging);
+		}
+	}
+
+	/**
+	 * Drops all staged updates, e.g., when the texture is deleted.
+	 */
+	public void discard(){
+		for (Entry e : entries) recycle(e);
+		entries.clear();
+		stagedBytes = 0;
+		if (staging != null){
+			Texture.getStagingBufferPool().release(staging);
+			staging = null;
+		}
+	}
+
+	private static Entry obtainEntry(ArrayList<Entry> entryPool){
+		if (entryPool.size() > 0) return entryPool.remove(entryPool.size() - 1);
+		return new Entry();
+	}
+
+	private void recycle(Entry e){
+		for (Entry part : e.parts) recycle(part);
+		e.parts.clear();
+		entryPool.add(e);
+	}
+
+	public boolean isEmpty(){
+		return entries.size() == 0;
+	}
+
+	public int getStagedBytes() {
+		return stagedBytes;
+	}
+
+	/**
+	 * Updates per glTexSubImage2D call since the queue was created. Larger is better.
+	 */
+	public float getMergeRate(){
+		return (committedUploads == 0) ? 0 : (float)queuedUpdates / (float)committedUploads;
+	}
+
+	/**
+	 * One staged update, or several merged ones (then in <code>parts</code>).
+	 */
+	static class Entry {
+		int x;
+		int y;
+		int width;
+		int height;
+		/**
+		 * Where the pixels start in the staging buffer, for unmerged entries.
+		 */
+		int offset;
+		final ArrayList<Entry> parts = new ArrayList<Entry>(2);
+	}
+}
@@ -10,15 +10,33 @@ package com.komaxx.komaxx_gl.threading;
  */
 public abstract class AOnScreenRunnable implements Runnable {
 	private OnScreenHandlerThread handlerThread;
+	private Object ownerKey;
+	private volatile CancellationToken token;
 	
 	void setHandlerThread(OnScreenHandlerThread t){
 		handlerThread = t;
 	}
 	
+	void setOwner(Object ownerKey, CancellationToken token){
+		this.ownerKey = ownerKey;
+		this.token = token;
+	}
+	
+	void supersede(){
+		token.cancel();
+	}
+	
 	@Override
 	public final void run() {
-		if (handlerThread.isRunning()) doRun();
-		else discarded();
+		try {
+			if (isCancelled()) cancelled();
+			else if (handlerThread.isRunning()){
+				doRun();
+				if (isCancelled()) cancelled();
+			} else discarded();
+		} finally {
+			if (ownerKey != null) handlerThread.finished(ownerKey, this);
+		}
 	}
 	
 	/**
@@ -31,4 +49,23 @@ public abstract class AOnScreenRunnable implements Runnable {
 	 * Same as <code>run</code> in normal Runnables.
 	 */
 	protected abstract void doRun();
+	
+	/**
+	 * true when a newer runnable of the same owner was posted (see 
+	 * <code>SceneGraph.postToOffRenderThread(Object, AOnScreenRunnable)</code>). Long 
+	 * running <code>doRun</code> implementations should check it now and then and return.
+	 */
+	protected boolean isCancelled(){
+		CancellationToken t = token;
+		return t != null && t.isCancelled();
+	}
+	
+	/**
+	 * Called when the runnable was superseded by a newer one of the same owner (or its
+	 * token was cancelled), either instead of <code>doRun</code> or after it returned. 
+	 * Called in the OnScreenHandlerThread.
+	 */
+	protected void cancelled(){
+		// nothing by default
+	}
 }
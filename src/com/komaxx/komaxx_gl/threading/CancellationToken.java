@@ -0,0 +1,33 @@
+package com.komaxx.komaxx_gl.threading;
+
+/**
+ * Tells a Job that its result is no longer wanted. Long running jobs should check
+ * <code>isCancelled</code> now and then and return early. Each submitted job gets its
+ * own token; pass a group token on submission to cancel several jobs together.
+ *
+ * @author Matthias Schicker
+ */
+public class CancellationToken {
+	private final CancellationToken parent;
+	private volatile boolean cancelled = false;
+
+
+	public CancellationToken(){
+		this(null);
+	}
+
+	/**
+	 * @param parent	This token is cancelled, too, when the parent is. May be null.
+	 */
+	public CancellationToken(CancellationToken parent){
+		this.parent = parent;
+	}
+
+	public void cancel(){
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled || (parent != null && parent.isCancelled());
+	}
+}
@@ -0,0 +1,44 @@
+package com.komaxx.komaxx_gl.threading;
+
+import com.komaxx.komaxx_gl.RenderContext;
+
+/**
+ * A piece of background work for the JobSystem: <code>compute</code> runs in a worker
+ * thread (render a bitmap, decode, build geometry), <code>commit</code> then hands the
+ * result to the GL (upload, swap buffers) in the GL thread, in the budgeted commit stage
+ * between frames.
+ *
+ * @author Matthias Schicker
+ */
+public abstract class Job<T> {
+	/**
+	 * Worker thread. Check the token in long computations and return early (with
+	 * anything, the result is discarded) when it was cancelled.
+	 */
+	protected abstract T compute(CancellationToken token) throws Exception;
+
+	/**
+	 * GL thread. Gets the computed result unless the job was cancelled in the meantime.
+	 * Keep it short, the commit stage has a time budget per frame.
+	 */
+	protected void commit(RenderContext rc, T result){
+		// nothing by default
+	}
+
+	/**
+	 * Called instead of <code>commit</code> when the job was cancelled or failed. The
+	 * result is null when <code>compute</code> did not run or did not finish. Release
+	 * resources (e.g., recycle bitmaps) here. Any thread.
+	 */
+	protected void discard(T result){
+		// nothing by default
+	}
+
+	/**
+	 * false for jobs without GL work: They are done right after <code>compute</code>
+	 * and do not take a place in the commit stage.
+	 */
+	protected boolean hasCommit(){
+		return true;
+	}
+}
@@ -0,0 +1,176 @@
+package com.komaxx.komaxx_gl.threading;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Handle of a Job submitted to the JobSystem: Cancels it, tells its state and delivers
+ * its result. <code>get</code> returns as soon as the result was computed, the GL commit
+ * may still be pending then (see <code>isCommitted</code>). Do not call <code>get</code>
+ * in the GL thread, it blocks.
+ *
+ * @author Matthias Schicker
+ */
+public class JobFuture<T> implements Future<T> {
+	static final int STATE_QUEUED = 0;
+	static final int STATE_RUNNING = 1;
+	static final int STATE_COMPUTED = 2;
+	static final int STATE_COMMITTED = 3;
+	static final int STATE_CANCELLED = 4;
+	static final int STATE_FAILED = 5;
+
+	final Job<T> job;
+	final JobSystem system;
+	final CancellationToken token;
+	final long sequence;
+	/**
+	 * Newer jobs with the same key supersede this one, null for unkeyed jobs.
+	 */
+	final Object ownerKey;
+	int priority;
+	long computeNs;
+
+	private int state = STATE_QUEUED;
+	private T result;
+	private Throwable failure;
+
+
+	JobFuture(JobSystem system, Job<T> job, int priority, CancellationToken token, long sequence,
+			Object ownerKey){
+		this.system = system;
+		this.job = job;
+		this.ownerKey = ownerKey;
+		this.priority = priority;
+		this.token = token;
+		this.sequence = sequence;
+	}
+
+	/**
+	 * Queued jobs are dropped, running ones are told through their token, computed ones
+	 * are not committed. <code>Job.discard</code> is called in any case.
+	 * Returns false when the job was already committed, cancelled or failed.
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return system.cancel(this);
+	}
+
+	@Override
+	public synchronized boolean isCancelled() {
+		return state == STATE_CANCELLED;
+	}
+
+	/**
+	 * true when the result is computed (committed or not), or the job was cancelled
+	 * or failed.
+	 */
+	@Override
+	public synchronized boolean isDone() {
+		return state >= STATE_COMPUTED;
+	}
+
+	public synchronized boolean isCommitted() {
+		return state == STATE_COMMITTED;
+	}
+
+	public synchronized boolean isFailed() {
+		return state == STATE_FAILED;
+	}
+
+	public int getPriority() {
+		return priority;
+	}
+
+	public CancellationToken getToken() {
+		return token;
+	}
+
+	public Object getOwnerKey() {
+		return ownerKey;
+	}
+
+	/**
+	 * The result when computed, null otherwise. Does not block.
+	 */
+	public synchronized T getResult(){
+		return (state == STATE_COMPUTED || state == STATE_COMMITTED) ? result : null;
+	}
+
+	@Override
+	public synchronized T get() throws InterruptedException, ExecutionException {
+		while (state < STATE_COMPUTED) wait();
+		return deliver();
+	}
+
+	@Override
+	public synchronized T get(long timeout, TimeUnit unit)
+			throws InterruptedException, ExecutionException, TimeoutException {
+		long end = System.nanoTime() + unit.toNanos(timeout);
+		while (state < STATE_COMPUTED){
+			long left = end - System.nanoTime();
+			if (left <= 0) throw new TimeoutException();
+			wait(left / 1000000, (int) (left % 1000000));
+		}
+		return deliver();
+	}
+
+	private T deliver() throws ExecutionException {
+		if (state == STATE_CANCELLED) throw new CancellationException();
+		if (state == STATE_FAILED) throw new ExecutionException(failure);
+		return result;
+	}
+
+	// //////////////////////////////////////////////////////////////////
+	// state transitions, called by the JobSystem
+
+	/**
+	 * Returns false when the job was cancelled before it could start.
+	 */
+	synchronized boolean start(){
+		if (state != STATE_QUEUED || token.isCancelled()) return false;
+		state = STATE_RUNNING;
+		return true;
+	}
+
+	synchronized boolean computed(T result){
+		if (state != STATE_RUNNING) return false;
+		this.result = result;
+		state = job.hasCommit() ? STATE_COMPUTED : STATE_COMMITTED;
+		notifyAll();
+		return true;
+	}
+
+	synchronized void failed(Throwable t){
+		if (state != STATE_RUNNING) return;
+		failure = t;
+		state = STATE_FAILED;
+		notifyAll();
+	}
+
+	synchronized boolean committing(){
+		if (state != STATE_COMPUTED) return false;
+		state = STATE_COMMITTED;
+		return true;
+	}
+
+	/**
+	 * Returns the state before the cancellation, -1 when it could not be cancelled.
+	 */
+	synchronized int cancelled(){
+		int previous = state;
+		if (previous >= STATE_COMMITTED) return -1;
+		state = STATE_CANCELLED;
+		token.cancel();
+		notifyAll();
+		return previous;
+	}
+
+	synchronized T takeResult(){
+		T ret = result;
+		result = null;
+		return ret;
+	}
+}
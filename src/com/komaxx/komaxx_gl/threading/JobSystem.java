@@ -0,0 +1,454 @@
+package com.komaxx.komaxx_gl.threading;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.os.Process;
+
+import com.komaxx.komaxx_gl.RenderContext;
+import com.komaxx.komaxx_gl.util.KoLog;
+
+/**
+ * Runs Jobs in a pool of worker threads (one per core, but at least one and leaving a core
+ * to the GL thread when there are more) and commits their results in the GL thread:
+ * <ul>
+ * <li>Priority lanes: Queued jobs are started by priority (<code>PRIORITY_VISIBLE</code>
+ * first, <code>PRIORITY_PREFETCH</code> last), in submission order within a lane.</li>
+ * <li>Cancellation: Each job gets a CancellationToken, <code>JobFuture.cancel</code>
+ * drops it wherever it is.</li>
+ * <li>Commit stage: Computed results wait in a queue (again by priority) until the
+ * SceneGraph calls <code>commit</code> between frames, which commits only as many as fit
+ * into the frame's time budget. So many finishing jobs do not cause a frame spike.</li>
+ * <li>Owner keys: Jobs may be submitted for an owner (e.g., the owner id of a 
+ * TextureSegment, or a node). A newer job of the same owner supersedes the older one, 
+ * which is cancelled wherever it is: A list item that scrolled by quickly does not keep
+ * the workers busy with content nobody will see.</li>
+ * </ul>
+ * While paused (activity not in front), no new jobs are started.
+ *
+ * @author Matthias Schicker
+ */
+public class JobSystem {
+	/**
+	 * Content that is visible right now.
+	 */
+	public static final int PRIORITY_VISIBLE = 0;
+	public static final int PRIORITY_DEFAULT = 1;
+	/**
+	 * Content that might become visible soon.
+	 */
+	public static final int PRIORITY_PREFETCH = 2;
+
+	/**
+	 * Time budget of the commit stage per frame, idle or not: It runs in addition to the
+	 * idle jobs, a larger budget would cause the frame spikes it is meant to avoid.
+	 */
+	public static final int COMMIT_BUDGET_NS = 4 * 1000 * 1000;
+
+	private static final Comparator<JobFuture<?>> order = new Comparator<JobFuture<?>>() {
+		@Override
+		public int compare(JobFuture<?> a, JobFuture<?> b) {
+			if (a.priority != b.priority) return a.priority - b.priority;
+			return (a.sequence < b.sequence) ? -1 : ((a.sequence > b.sequence) ? 1 : 0);
+		}
+	};
+
+	private final PriorityBlockingQueue<JobFuture<?>> queue = new PriorityBlockingQueue<JobFuture<?>>(16, order);
+	private final PriorityQueue<JobFuture<?>> commitQueue = new PriorityQueue<JobFuture<?>>(16, order);
+	private final Worker[] workers;
+	/**
+	 * The latest unfinished job of each owner key.
+	 */
+	private final HashMap<Object, JobFuture<?>> ownedJobs = new HashMap<Object, JobFuture<?>>();
+
+	private final Object pauseLock = new Object();
+	private boolean paused = false;
+	private volatile boolean destroyed = false;
+
+	private final AtomicLong nextSequence = new AtomicLong();
+	private final AtomicInteger runningCount = new AtomicInteger();
+	private final AtomicInteger submittedCount = new AtomicInteger();
+	private final AtomicInteger committedCount = new AtomicInteger();
+	private final AtomicInteger cancelledCount = new AtomicInteger();
+	private final AtomicInteger failedCount = new AtomicInteger();
+	private long commitTimeNs = 0;
+	private int deferredCommitFrames = 0;
+
+	private final AtomicInteger supersededCount = new AtomicInteger();
+	private final AtomicInteger supersededQueuedCount = new AtomicInteger();
+	private final AtomicInteger supersededRunningCount = new AtomicInteger();
+	private final AtomicInteger supersededComputedCount = new AtomicInteger();
+	private final AtomicLong wastedComputeNs = new AtomicLong();
+
+
+	public JobSystem(){
+		this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+	}
+
+	public JobSystem(int workerCount){
+		workers = new Worker[workerCount];
+		for (int i = 0; i < workerCount; i++){
+			workers[i] = new Worker(i);
+			workers[i].start();
+		}
+	}
+
+	public <T> JobFuture<T> submit(Job<T> job, int priority){
+		return submit(job, priority, null);
+	}
+
+	/**
+	 * Queues the job. Any thread.
+	 *
+	 * @param groupToken	When cancelled, the job is cancelled, too. May be null.
+	 */
+	public <T> JobFuture<T> submit(Job<T> job, int priority, CancellationToken groupToken){
+		return submit(null, job, priority, groupToken);
+	}
+
+	/**
+	 * Queues the job for the owner: The owner's previous job, if still unfinished, is
+	 * superseded and cancelled (queued, running or waiting for its commit). Any thread.
+	 *
+	 * @param ownerKey	Identifies the owner, compared with <code>equals</code>. null for
+	 * jobs without owner.
+	 */
+	public <T> JobFuture<T> submit(Object ownerKey, Job<T> job, int priority){
+		return submit(ownerKey, job, priority, null);
+	}
+
+	public <T> JobFuture<T> submit(Object ownerKey, Job<T> job, int priority, CancellationToken groupToken){
+		JobFuture<T> ret = new JobFuture<T>(this, job, priority,
+				new CancellationToken(groupToken), nextSequence.getAndIncrement(), ownerKey);
+		submittedCount.incrementAndGet();
+		if (destroyed){
+			cancel(ret);
+			return ret;
+		}
+
+		if (ownerKey != null){
+			JobFuture<?> previous;
+			synchronized (ownedJobs) {
+				previous = ownedJobs.put(ownerKey, ret);
+			}
+			if (previous != null) supersede(previous);
+		}
+		queue.add(ret);
+		return ret;
+	}
+
+	/**
+	 * Cancels the owner's unfinished job, if any, e.g., when the owner is gone.
+	 * Returns false when there was none.
+	 */
+	public boolean cancelOwner(Object ownerKey){
+		JobFuture<?> f;
+		synchronized (ownedJobs) {
+			f = ownedJobs.get(ownerKey);
+		}
+		return f != null && cancel(f);
+	}
+
+	private void supersede(JobFuture<?> previous) {
+		int state = cancelAndGetState(previous);
+		if (state < 0) return;
+
+		supersededCount.incrementAndGet();
+		if (state == JobFuture.STATE_QUEUED) supersededQueuedCount.incrementAndGet();
+		else if (state == JobFuture.STATE_RUNNING) supersededRunningCount.incrementAndGet();
+		else if (state == JobFuture.STATE_COMPUTED) supersededComputedCount.incrementAndGet();
+	}
+
+	/**
+	 * Forgets the owner's job when it is done.
+	 */
+	private void finished(JobFuture<?> future){
+		if (future.ownerKey == null) return;
+		synchronized (ownedJobs) {
+			if (ownedJobs.get(future.ownerKey) == future) ownedJobs.remove(future.ownerKey);
+		}
+	}
+
+	/**
+	 * Moves a job that did not yet start (or waits for its commit) to another lane,
+	 * e.g., when prefetched content became visible.
+	 */
+	public void setPriority(JobFuture<?> future, int priority){
+		if (future.priority == priority) return;
+		if (queue.remove(future)){
+			future.priority = priority;
+			queue.add(future);
+			return;
+		}
+		synchronized (commitQueue) {
+			if (commitQueue.remove(future)){
+				future.priority = priority;
+				commitQueue.add(future);
+				return;
+			}
+		}
+		future.priority = priority;
+	}
+
+	boolean cancel(JobFuture<?> future){
+		return cancelAndGetState(future) >= 0;
+	}
+
+	/**
+	 * Returns the state of the job before it was cancelled, -1 when it could not be.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private int cancelAndGetState(JobFuture future){
+		int previous = future.cancelled();
+		if (previous < 0) return previous;
+		cancelledCount.incrementAndGet();
+		finished(future);
+
+		if (previous == JobFuture.STATE_QUEUED){
+			queue.remove(future);
+			future.job.discard(null);
+		} else if (previous == JobFuture.STATE_COMPUTED){
+			synchronized (commitQueue) {
+				commitQueue.remove(future);
+			}
+			wastedComputeNs.addAndGet(future.computeNs);
+			future.job.discard(future.takeResult());
+		}
+		// running: the worker discards the result when compute returns
+		return previous;
+	}
+
+	/**
+	 * Computes one job in a worker thread.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void execute(JobFuture future){
+		if (!future.start()){
+			// cancelled while queued; through a group token, it is not yet marked
+			if (future.token.isCancelled()) cancel(future);
+			return;
+		}
+
+		runningCount.incrementAndGet();
+		long start = System.nanoTime();
+		Object result = null;
+		try {
+			result = future.job.compute(future.token);
+		} catch (Throwable t){
+			KoLog.e("JobSystem", "Job failed: " + t);
+			failedCount.incrementAndGet();
+			future.failed(t);
+			finished(future);
+			future.job.discard(null);
+			return;
+		} finally {
+			runningCount.decrementAndGet();
+			future.computeNs = System.nanoTime() - start;
+		}
+
+		if (future.token.isCancelled()) cancel(future);
+		if (!future.computed(result)){
+			// cancelled while running
+			wastedComputeNs.addAndGet(future.computeNs);
+			future.job.discard(result);
+			return;
+		}
+		if (!future.job.hasCommit()){
+			finished(future);
+		} else {
+			synchronized (commitQueue) {
+				commitQueue.add(future);
+			}
+		}
+	}
+
+	/**
+	 * The commit stage, called by the SceneGraph before each frame: Commits computed
+	 * results by priority until the budget is used up, at least one. GL thread only.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void commit(RenderContext rc){
+		long start = System.nanoTime();
+		long end = start + COMMIT_BUDGET_NS;
+
+		while (true){
+			JobFuture future;
+			synchronized (commitQueue) {
+				future = commitQueue.poll();
+			}
+			if (future == null) break;
+
+			if (!future.committing()) continue;		// cancelled in the meantime
+			finished(future);
+			future.job.commit(rc, future.getResult());
+			committedCount.incrementAndGet();
+
+			if (System.nanoTime() >= end){
+				synchronized (commitQueue) {
+					if (commitQueue.size() > 0) deferredCommitFrames++;
+				}
+				break;
+			}
+		}
+		commitTimeNs += System.nanoTime() - start;
+	}
+
+	public void onResume(){
+		synchronized (pauseLock) {
+			paused = false;
+			pauseLock.notifyAll();
+		}
+	}
+
+	public void onPause(){
+		synchronized (pauseLock) {
+			paused = true;
+		}
+	}
+
+	/**
+	 * Cancels all jobs and stops the workers. The JobSystem can not be used afterwards.
+	 */
+	public void onDestroy(){
+		destroyed = true;
+		for (Worker w : workers) w.interrupt();
+
+		JobFuture<?> f;
+		while ((f = queue.poll()) != null) cancel(f);
+		while (true){
+			synchronized (commitQueue) {
+				f = commitQueue.poll();
+			}
+			if (f == null) break;
+			cancel(f);
+		}
+	}
+
+	// //////////////////////////////////////////////////////////////////
+	// statistics
+
+	public int getWorkerCount(){
+		return workers.length;
+	}
+
+	public int getQueuedCount(){
+		return queue.size();
+	}
+
+	public int getRunningCount(){
+		return runningCount.get();
+	}
+
+	public int getCommitQueueLength(){
+		synchronized (commitQueue) {
+			return commitQueue.size();
+		}
+	}
+
+	public int getSubmittedCount() {
+		return submittedCount.get();
+	}
+
+	public int getCommittedCount() {
+		return committedCount.get();
+	}
+
+	public int getCancelledCount() {
+		return cancelledCount.get();
+	}
+
+	public int getFailedCount() {
+		return failedCount.get();
+	}
+
+	public float getAverageCommitTimeMs(){
+		int committed = committedCount.get();
+		return (committed == 0) ? 0 : (float)(commitTimeNs / committed) / 1000000f;
+	}
+
+	/**
+	 * Frames in which the budget ran out before all computed results were committed.
+	 */
+	public int getDeferredCommitFrames() {
+		return deferredCommitFrames;
+	}
+
+	/**
+	 * Jobs cancelled because a newer job of the same owner was submitted.
+	 */
+	public int getSupersededCount() {
+		return supersededCount.get();
+	}
+
+	/**
+	 * Superseded jobs that were still queued: Their work was skipped completely.
+	 */
+	public int getSupersededQueuedCount() {
+		return supersededQueuedCount.get();
+	}
+
+	/**
+	 * Superseded jobs that were running: Told to stop through their token.
+	 */
+	public int getSupersededRunningCount() {
+		return supersededRunningCount.get();
+	}
+
+	/**
+	 * Superseded jobs that were computed already: Only the commit was skipped.
+	 */
+	public int getSupersededComputedCount() {
+		return supersededComputedCount.get();
+	}
+
+	/**
+	 * Compute time of all cancelled jobs (superseded or not) whose result was thrown away.
+	 */
+	public float getWastedComputeMs() {
+		return (float)wastedComputeNs.get() / 1000000f;
+	}
+
+	@Override
+	public String toString() {
+		return "JobSystem: " + workers.length + " workers, " + getQueuedCount() + " queued, "
+				+ getRunningCount() + " running, " + getCommitQueueLength() + " to commit; "
+				+ getCommittedCount() + " committed, " + getCancelledCount() + " cancelled, "
+				+ getFailedCount() + " failed; " + getSupersededCount() + " superseded ("
+				+ getSupersededQueuedCount() + " skipped, " + getSupersededRunningCount() + " stopped, "
+				+ getSupersededComputedCount() + " not committed), " + getWastedComputeMs() + " ms wasted";
+	}
+
+	private class Worker extends Thread {
+		public Worker(int index){
+			super("JobWorker" + index);
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+			try {
+				while (!destroyed){
+					synchronized (pauseLock) {
+						while (paused) pauseLock.wait();
+					}
+					JobFuture<?> next = queue.take();
+					// paused while waiting for the job: give it back, it is started after resuming
+					synchronized (pauseLock) {
+						if (paused){
+							queue.add(next);
+							continue;
+						}
+					}
+					execute(next);
+				}
+			} catch (InterruptedException e){
+				// destroyed
+			}
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package com.komaxx.komaxx_gl.threading;
 
+import java.util.HashMap;
+
 import android.os.Handler;
 import android.os.HandlerThread;
 
@@ -14,6 +16,11 @@ public class OnScreenHandlerThread {
 	private Handler handler;
 	private boolean running;
 	
+	/**
+	 * The last posted runnable of each owner key, until it ran. Any thread.
+	 */
+	private final HashMap<Object, AOnScreenRunnable> latestByOwner = new HashMap<Object, AOnScreenRunnable>();
+	
 	public OnScreenHandlerThread(String name){
 		thread = new HandlerThread(name, Thread.MIN_PRIORITY+1);
 		thread.start();
@@ -22,7 +29,38 @@ public class OnScreenHandlerThread {
 
 	public void post(AOnScreenRunnable runnable){
 		runnable.setHandlerThread(this);
+		runnable.setOwner(null, null);
+		handler.post(runnable);
+	}
+	
+	/**
+	 * Like <code>post</code>, but the runnable supersedes the owner's previously posted 
+	 * one: If that one did not yet run, it is skipped; if it is running, its 
+	 * <code>isCancelled</code> turns true. Runnables still run one after another.
+	 * 
+	 * @return	The runnable's token, cancel it to skip the runnable.
+	 */
+	public CancellationToken post(Object ownerKey, AOnScreenRunnable runnable){
+		CancellationToken token = new CancellationToken();
+		runnable.setHandlerThread(this);
+		runnable.setOwner(ownerKey, token);
+		
+		AOnScreenRunnable previous;
+		synchronized (latestByOwner){
+			previous = latestByOwner.put(ownerKey, runnable);
+		}
+		if (previous != null) previous.supersede();
 		handler.post(runnable);
+		return token;
+	}
+	
+	/**
+	 * Called by a keyed runnable when it ran (or was skipped).
+	 */
+	void finished(Object ownerKey, AOnScreenRunnable runnable){
+		synchronized (latestByOwner){
+			if (latestByOwner.get(ownerKey) == runnable) latestByOwner.remove(ownerKey);
+		}
 	}
 	
 	public void onResume(){
@@ -8,12 +8,16 @@ import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
 
 import com.komaxx.komaxx_gl.RenderConfig;
+import com.komaxx.komaxx_gl.RenderContext;
 import com.komaxx.komaxx_gl.texturing.Texture;
+import com.komaxx.komaxx_gl.texturing.TextureConfig;
 
 /**
  * The atlas painter is a helpful tool that takes a series of drawable IDs
  * and a texture to paint all the drawables onto. It then returns the
- * according texture coordinates.
+ * according texture coordinates.</br>
+ * For fixed sets of images, prefer baking the atlas at build time (AtlasBaker tool,
+ * loaded with BakedAtlas): Nothing is painted at runtime then.
  * 
  * @author Matthias Schicker
  */
@@ -32,105 +36,178 @@ public class AtlasPainter {
 	/**
 	 * Draws the given drawableIDs to the texture (inside of the given paintBounds)
 	 * and returns the coordinates (pixelCoords) where the drawables were painted.
+	 * Drawables that do not fit get an empty Rect, use <code>planAtlas</code> to check
+	 * beforehand or <code>drawAtlases</code> to spill onto further textures.
 	 * </br>
 	 * <b>GLThread only. GL thread *must* have been created before.</b>
 	 */
 	public static Rect[] drawAtlas(Resources r, int[] drawableIds, Texture t, Rect paintBounds, int padding){
-		// first: measure them vertically and horizontally, fit them into the paintBounds and
-		// check, which way wastes less space.
+		Drawable[] drawables = getDrawables(r, drawableIds);
+		RectPacker.Result packing = plan(drawables, paintBounds.width(), paintBounds.height(), padding, false, 1);
 		
-		int l = drawableIds.length;
-		Rect[] ret = new Rect[l];
-		Drawable[] drawables = new Drawable[l];
-		for (int i = 0; i < l; i++){
-			Drawable nowDrawable = r.getDrawable(drawableIds[i]);
-			drawables[i] = nowDrawable;
-			ret[i] = new Rect(0, 0, nowDrawable.getIntrinsicWidth(), nowDrawable.getIntrinsicHeight());
+		if (packing.getUnplacedCount() > 0){
+			KoLog.w("[AtlasPainter]", "==== Uh oh ===");
+			KoLog.w("[AtlasPainter]", packing.getUnplacedCount() 
+					+ " of the given drawables did *NOT* fit into the given texture and are not drawn!");
 		}
 		
-		positionHorizontally(ret, paintBounds.width(), padding);
-		Rect horizontalBoundingRect = getBoundingRect(ret);
+		Rect[] ret = new Rect[drawables.length];
+		for (int i = 0; i < ret.length; i++) ret[i] = new Rect();
+		if (packing.getBinCount() > 0){
+			paint(drawables, packing, 0, t, paintBounds.left, paintBounds.top, padding, ret);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Computes where the drawables would be placed in textures of the given size, without
+	 * drawing anything. The result tells how many textures are needed and how well they
+	 * are filled.
+	 */
+	public static RectPacker.Result planAtlas(Resources r, int[] drawableIds, 
+			int width, int height, int padding, boolean allowRotation){
+		return plan(getDrawables(r, drawableIds), width, height, padding, allowRotation, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Packs the drawables into as many textures (built with the given config) as necessary,
+	 * creates the textures and draws the drawables. 
+	 * </br>
+	 * <b>GLThread only.</b>
+	 * 
+	 * @param allowRotation	When true, drawables may be drawn rotated by 90 degrees clockwise
+	 * to pack better. Check <code>Atlas.rotated</code> and map the texture coords accordingly.
+	 */
+	public static Atlas drawAtlases(RenderContext rc, int[] drawableIds, TextureConfig config, 
+			int padding, boolean allowRotation){
+		Drawable[] drawables = getDrawables(rc.resources, drawableIds);
 		
-		positionVertically(ret, paintBounds.width(), padding);
-		Rect boundingRect = getBoundingRect(ret);
+		Texture probe = new Texture(config);
+		RectPacker.Result packing = plan(drawables, probe.getWidth(), probe.getHeight(), 
+				padding, allowRotation, Integer.MAX_VALUE);
+		if (packing.getUnplacedCount() > 0){
+			KoLog.w("[AtlasPainter]", packing.getUnplacedCount() 
+					+ " drawables are bigger than the texture and are not drawn!");
+		}
 		
-		// horizontal was better? Then redo it!
-		if (area(horizontalBoundingRect) <= area(boundingRect)){
-			positionHorizontally(ret, paintBounds.width(), padding);
-			boundingRect = horizontalBoundingRect;
-		} 
-
-		int bmpWidth = (int)Math.ceil(boundingRect.width());
-		int bmpHeight = (int) Math.ceil(boundingRect.height());
+		int l = drawables.length;
+		Atlas ret = new Atlas(packing.getBinCount(), l);
+		ret.packing = packing;
+		for (int i = 0; i < l; i++){
+			ret.pxCoords[i] = new Rect();
+			ret.textureIndex[i] = packing.placements[i].bin;
+			ret.rotated[i] = packing.placements[i].rotated;
+		}
 		
-		if (bmpWidth > t.getWidth() || bmpHeight > t.getHeight()){
-			KoLog.w("[AtlasPainter]", "==== Uh oh ===");
-			KoLog.w("[AtlasPainter]", "The given drawables did *NOT* fit into the given texture!");
-			KoLog.w("[AtlasPainter]", "Teh bitmap will be truncated, graphic errors are inevitable!");
-			
-			bmpWidth = Math.min(bmpWidth, t.getWidth());
-			bmpHeight = Math.min(bmpHeight, t.getHeight());
+		for (int bin = 0; bin < ret.textures.length; bin++){
+			Texture t = new Texture(config);
+			t.create(rc);
+			paint(drawables, packing, bin, t, 0, 0, padding, ret.pxCoords);
+			ret.textures[bin] = t;
 		}
 		
-		// now, let's render it!
-		Bitmap tmpBmp = Bitmap.createBitmap(bmpWidth, bmpHeight, t.getBitmapConfig());
+		return ret;
+	}
+	
+	private static Drawable[] getDrawables(Resources r, int[] drawableIds){
+		int l = drawableIds.length;
+		Drawable[] ret = new Drawable[l];
+		for (int i = 0; i < l; i++) ret[i] = r.getDrawable(drawableIds[i]);
+		return ret;
+	}
+	
+	private static RectPacker.Result plan(Drawable[] drawables, int width, int height, 
+			int padding, boolean allowRotation, int maxBins){
+		int l = drawables.length;
+		int[] widths = new int[l];
+		int[] heights = new int[l];
+		for (int i = 0; i < l; i++){
+			widths[i] = drawables[i].getIntrinsicWidth();
+			heights[i] = drawables[i].getIntrinsicHeight();
+		}
+		
+		RectPacker packer = new RectPacker(width, height)
+			.setPadding(padding).setAllowRotation(allowRotation).setMaxBins(maxBins);
+		RectPacker.Result ret = packer.pack(widths, heights);
+		if (RenderConfig.PROFILING) KoLog.i("[AtlasPainter]", ret.toString());
+		return ret;
+	}
+	
+	/**
+	 * Draws all drawables placed in the given bin into one tmp bitmap and uploads it.
+	 */
+	private static void paint(Drawable[] drawables, RectPacker.Result packing, int bin, 
+			Texture t, int offsetX, int offsetY, int padding, Rect[] pxCoords){
+		int[] size = packing.getUsedSize(bin, padding);
+		Bitmap tmpBmp = Bitmap.createBitmap(
+				Math.min(size[0], t.getWidth() - offsetX), 
+				Math.min(size[1], t.getHeight() - offsetY), t.getBitmapConfig());
 		Canvas c = new Canvas(tmpBmp);
 		
-		for (int i = 0; i < l; i++){
-			drawables[i].setBounds(ret[i]);
-			drawables[i].draw(c);
-			
-			ret[i].offset(paintBounds.left, paintBounds.top);
+		for (RectPacker.Placement p : packing.placements){
+			if (p.bin != bin) continue;
+			Drawable d = drawables[p.index];
+			if (p.rotated){
+				c.save();
+				c.translate(p.x + p.width, p.y);
+				c.rotate(90);
+				d.setBounds(0, 0, p.height, p.width);
+				d.draw(c);
+				c.restore();
+			} else {
+				d.setBounds(p.x, p.y, p.x + p.width, p.y + p.height);
+				d.draw(c);
+			}
+			pxCoords[p.index].set(p.x, p.y, p.x + p.width, p.y + p.height);
+			pxCoords[p.index].offset(offsetX, offsetY);
 		}
 		
-		t.update(tmpBmp, paintBounds.left, paintBounds.top);
+		t.update(tmpBmp, offsetX, offsetY);
 
 		if (RenderConfig.RECYCLE_BITMAPS) tmpBmp.recycle();
-		
-		return ret;
 	}
 
-	private static void positionVertically(Rect[] ret, int maxHeight, int padding) {
-		int lineWidth = 0;
+	/**
+	 * The result of <code>drawAtlases</code>: Which drawable went where.
+	 */
+	public static class Atlas {
+		public final Texture[] textures;
+		/**
+		 * The index in <code>textures</code> for each drawable, -1 when not drawn.
+		 */
+		public final int[] textureIndex;
+		/**
+		 * Pixel coords of each drawable in its texture (as placed, i.e., rotated).
+		 */
+		public final Rect[] pxCoords;
+		/**
+		 * true for drawables that were drawn rotated by 90 degrees clockwise.
+		 */
+		public final boolean[] rotated;
+		public RectPacker.Result packing;
 		
-		int x = padding;
-		int y = padding;
-		Rect r;
-		for (int i = 0; i < ret.length; i++){
-			r = ret[i];
-			if (y + r.height() > maxHeight){
-				y = padding;
-				x += lineWidth + padding;
-				
-				lineWidth = r.width()+padding;
-			}
-			
-			r.offsetTo(x, y);
-			y += r.height() + padding;
-			
-			lineWidth = Math.max(lineWidth, r.width());
+		private Atlas(int textureCount, int drawableCount){
+			textures = new Texture[textureCount];
+			textureIndex = new int[drawableCount];
+			pxCoords = new Rect[drawableCount];
+			rotated = new boolean[drawableCount];
 		}
-	}
-	
-	private static void positionHorizontally(Rect[] ret, int maxWidth, int padding) {
-		int lineHeight = 0;
 		
-		int x = padding;
-		int y = padding;
-		Rect r;
-		for (int i = 0; i < ret.length; i++){
-			r = ret[i];
-			if (x + r.width() > maxWidth){
-				x = padding;
-				y += lineHeight + padding;
-				
-				lineHeight = r.height()+padding;
-			}
-			
-			r.offsetTo(x, y);
-			x += r.width() + padding;
-			
-			lineHeight = Math.max(lineHeight, r.height());
+		public Texture getTexture(int drawableIndex){
+			int i = textureIndex[drawableIndex];
+			return (i < 0) ? null : textures[i];
+		}
+		
+		public RectF getUvCoords(int drawableIndex){
+			Texture t = getTexture(drawableIndex);
+			return (t == null) ? new RectF() : t.getUvCoords(pxCoords[drawableIndex]);
+		}
+		
+		/**
+		 * GL thread only.
+		 */
+		public void delete(){
+			for (Texture t : textures) t.delete();
 		}
 	}
 
@@ -166,29 +243,17 @@ public class AtlasPainter {
 	}
 	
 	public static void runTest(){
-		Rect[] r = new Rect[]{
-			new Rect(0,0,30,30), new Rect(0,0,30,30), new Rect(0,0,40,40)
-		};
-		KoLog.i("TEST", "pre bounding rect " + getBoundingRect(r));
-		
-		positionHorizontally(r, 10000, 1);
-		KoLog.i("TEST", "1 horizontal bounding rect " + getBoundingRect(r));
-
-		positionVertically(r, 10000, 1);
-		KoLog.i("TEST", "1 vertical bounding rect " + getBoundingRect(r));
+		int[] w = new int[]{ 30, 30, 40 };
+		int[] h = new int[]{ 30, 30, 40 };
+		KoLog.i("TEST", "1 " + new RectPacker(10000, 10000).setPadding(1).pack(w, h));
 		
-		// with line break
-		r = new Rect[]{
-				new Rect(0,0,30,30), new Rect(0,0,30,30), new Rect(0,0,40,40)
-			};
-
-		positionVertically(r, 70, 1);
-		KoLog.i("TEST", "2 vertical bounding rect " + getBoundingRect(r));
-
-		positionHorizontally(r, 70, 1);
-		KoLog.i("TEST", "2 horizontal bounding rect " + getBoundingRect(r));
-
+		// does not fit in one bin
+		KoLog.i("TEST", "2 " + new RectPacker(70, 70).setPadding(1).pack(w, h));
 		
+		// rotation
+		w = new int[]{ 60, 60 };
+		h = new int[]{ 10, 10 };
+		KoLog.i("TEST", "3 " + new RectPacker(20, 64).setAllowRotation(true).pack(w, h));
 		
 		KoLog.i("TEST", "TEST DONE");
 	}
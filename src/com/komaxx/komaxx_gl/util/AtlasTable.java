@@ -0,0 +1,107 @@
+package com.komaxx.komaxx_gl.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The placement table of a pre-baked atlas (see the AtlasBaker tool and BakedAtlas):
+ * Name, pixel rect and rotation of each image in the atlas image.</br>
+ * Binary format, big endian: magic "KATL", version (short), atlas width and height
+ * (unsigned shorts), entry count (int), then per entry: name (modified UTF-8), x, y,
+ * width, height (unsigned shorts, as placed) and a flags byte (bit 0: rotated by 90
+ * degrees clockwise).</br>
+ * Pure Java without any Android dependencies, so it also runs on a desktop JVM.
+ *
+ * @author Matthias Schicker
+ */
+public class AtlasTable {
+	private static final int MAGIC = ('K' << 24) | ('A' << 16) | ('T' << 8) | 'L';
+	private static final short VERSION = 1;
+	private static final int FLAG_ROTATED = 1;
+
+	public final int atlasWidth;
+	public final int atlasHeight;
+
+	public final String[] names;
+	public final int[] x;
+	public final int[] y;
+	public final int[] width;
+	public final int[] height;
+	/**
+	 * true for images that were drawn rotated by 90 degrees clockwise.
+	 */
+	public final boolean[] rotated;
+
+
+	public AtlasTable(int atlasWidth, int atlasHeight, int entryCount){
+		this.atlasWidth = atlasWidth;
+		this.atlasHeight = atlasHeight;
+		names = new String[entryCount];
+		x = new int[entryCount];
+		y = new int[entryCount];
+		width = new int[entryCount];
+		height = new int[entryCount];
+		rotated = new boolean[entryCount];
+	}
+
+	public int getEntryCount(){
+		return names.length;
+	}
+
+	/**
+	 * The index of the image with the given name, -1 when not in the atlas.
+	 */
+	public int indexOf(String name){
+		for (int i = 0; i < names.length; i++) if (names[i].equals(name)) return i;
+		return -1;
+	}
+
+	public void write(OutputStream os) throws IOException {
+		DataOutputStream dos = new DataOutputStream(os);
+		dos.writeInt(MAGIC);
+		dos.writeShort(VERSION);
+		dos.writeShort(atlasWidth);
+		dos.writeShort(atlasHeight);
+		dos.writeInt(names.length);
+		for (int i = 0; i < names.length; i++){
+			dos.writeUTF(names[i]);
+			dos.writeShort(x[i]);
+			dos.writeShort(y[i]);
+			dos.writeShort(width[i]);
+			dos.writeShort(height[i]);
+			dos.writeByte(rotated[i] ? FLAG_ROTATED : 0);
+		}
+		dos.flush();
+	}
+
+	/**
+	 * Reads a table as written by <code>write</code>. Does not close the stream.
+	 */
+	public static AtlasTable read(InputStream is) throws IOException {
+		DataInputStream dis = new DataInputStream(is);
+		if (dis.readInt() != MAGIC) throw new IOException("Not an atlas table");
+		short version = dis.readShort();
+		if (version != VERSION) throw new IOException("Unsupported atlas table version " + version);
+
+		int atlasWidth = dis.readUnsignedShort();
+		int atlasHeight = dis.readUnsignedShort();
+		AtlasTable ret = new AtlasTable(atlasWidth, atlasHeight, dis.readInt());
+		for (int i = 0; i < ret.names.length; i++){
+			ret.names[i] = dis.readUTF();
+			ret.x[i] = dis.readUnsignedShort();
+			ret.y[i] = dis.readUnsignedShort();
+			ret.width[i] = dis.readUnsignedShort();
+			ret.height[i] = dis.readUnsignedShort();
+			ret.rotated[i] = (dis.readByte() & FLAG_ROTATED) != 0;
+		}
+		return ret;
+	}
+
+	@Override
+	public String toString() {
+		return "AtlasTable (" + atlasWidth + "x" + atlasHeight + ", " + names.length + " entries)";
+	}
+}
@@ -0,0 +1,118 @@
+package com.komaxx.komaxx_gl.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.content.res.Resources;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import com.komaxx.komaxx_gl.RenderContext;
+import com.komaxx.komaxx_gl.texturing.TextureStore.ResourceTexture;
+
+/**
+ * An atlas that was packed and painted at build time by the AtlasBaker tool: The atlas
+ * image and its AtlasTable are raw resources. Replaces <code>AtlasPainter.drawAtlas</code>
+ * for fixed sets of images: Nothing is measured, packed or painted at runtime, creating the
+ * atlas (again, after a context loss) is one texture load.</br>
+ * Coordinates are delivered in the order in which the images were given to the baker, just
+ * as <code>drawAtlas</code> / <code>convertPxToUv</code> deliver them.
+ *
+ * @author Matthias Schicker
+ */
+public class BakedAtlas {
+	private final int imageRawId;
+	private final boolean mipMapped;
+	private final AtlasTable table;
+
+	private final Rect[] pxCoords;
+	private RectF[] uvCoords;
+
+
+	/**
+	 * Reads the table, may be called in any thread. The texture is loaded with
+	 * <code>getTexture</code>.
+	 */
+	public BakedAtlas(Resources res, int imageRawId, int tableRawId, boolean mipMapped){
+		this.imageRawId = imageRawId;
+		this.mipMapped = mipMapped;
+
+		InputStream is = res.openRawResource(tableRawId);
+		try {
+			table = AtlasTable.read(is);
+		} catch (IOException e) {
+			throw new RuntimeException("Could not read atlas table " + tableRawId, e);
+		} finally {
+			try {
+				is.close();
+			} catch (IOException e){
+				KoLog.e("BakedAtlas", "Error when closing atlas table " + tableRawId + ": " + e);
+			}
+		}
+
+		int l = table.getEntryCount();
+		pxCoords = new Rect[l];
+		for (int i = 0; i < l; i++){
+			pxCoords[i] = new Rect(table.x[i], table.y[i],
+					table.x[i] + table.width[i], table.y[i] + table.height[i]);
+		}
+	}
+
+	/**
+	 * Delivers the atlas texture, loads it when not yet in the TextureStore. Call again in
+	 * <code>onSurfaceCreated</code>. The texture is held until given back with 
+	 * <code>TextureStore.releaseResourceTexture</code>. GL thread only.
+	 */
+	public ResourceTexture getTexture(RenderContext rc){
+		ResourceTexture ret = rc.textureStore.getResourceTexture(rc, imageRawId, mipMapped);
+		if (ret.getWidth() != table.atlasWidth || ret.getHeight() != table.atlasHeight){
+			KoLog.w("BakedAtlas", "Atlas image is " + ret.getWidth() + "x" + ret.getHeight()
+					+ ", the table expects " + table.atlasWidth + "x" + table.atlasHeight);
+		}
+		return ret;
+	}
+
+	/**
+	 * Pixel coords of each image, as placed (i.e., rotated). Do not modify.
+	 */
+	public Rect[] getPxCoords() {
+		return pxCoords;
+	}
+
+	/**
+	 * UV coords of each image, as placed (i.e., rotated). Do not modify.
+	 */
+	public RectF[] getUvCoords() {
+		if (uvCoords == null){
+			int l = pxCoords.length;
+			RectF[] ret = new RectF[l];
+			float w = table.atlasWidth;
+			float h = table.atlasHeight;
+			for (int i = 0; i < l; i++){
+				Rect r = pxCoords[i];
+				ret[i] = new RectF(r.left / w, r.top / h, r.right / w, r.bottom / h);
+			}
+			uvCoords = ret;
+		}
+		return uvCoords;
+	}
+
+	/**
+	 * true when the image was baked rotated by 90 degrees clockwise.
+	 */
+	public boolean isRotated(int index){
+		return table.rotated[index];
+	}
+
+	/**
+	 * The index of the image that was baked from the file with the given name (without
+	 * extension), -1 when not in the atlas.
+	 */
+	public int indexOf(String name){
+		return table.indexOf(name);
+	}
+
+	public AtlasTable getTable() {
+		return table;
+	}
+}
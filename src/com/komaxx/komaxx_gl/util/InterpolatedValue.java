@@ -119,6 +119,10 @@ public class InterpolatedValue {
 		animationDuration = nuDuration;
 	}
 
+	public long getDuration() {
+		return animationDuration;
+	}
+
 	public static long msToNs(int ms) {
 		return (long)ms * 1000000;
 	}
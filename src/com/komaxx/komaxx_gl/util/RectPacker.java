@@ -0,0 +1,452 @@
+package com.komaxx.komaxx_gl.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Packs rectangles into as few bins (textures) of a fixed size as possible, using
+ * the MaxRects algorithm: All maximal free rectangles of a bin are tracked, each
+ * rectangle is put into the free rectangle chosen by the heuristic. When a rectangle
+ * fits in none of the open bins, a new bin is opened.</br>
+ * Pure Java without any Android dependencies, so it also runs on a desktop JVM.
+ *
+ * @author Matthias Schicker
+ */
+public class RectPacker {
+	/**
+	 * Place into the free rect where the shorter leftover side is minimal. Good default.
+	 */
+	public static final byte HEURISTIC_BEST_SHORT_SIDE_FIT = 0;
+	/**
+	 * Place into the smallest free rect that fits.
+	 */
+	public static final byte HEURISTIC_BEST_AREA_FIT = 1;
+	/**
+	 * Place as far to the top (and then left) as possible. Produces compact
+	 * bounding boxes at the top of the bin.
+	 */
+	public static final byte HEURISTIC_BOTTOM_LEFT = 2;
+
+	/**
+	 * Keep the given order.
+	 */
+	public static final byte SORT_NONE = 0;
+	public static final byte SORT_AREA = 1;
+	public static final byte SORT_MAX_SIDE = 2;
+	public static final byte SORT_PERIMETER = 3;
+
+	private final int binWidth;
+	private final int binHeight;
+
+	private int padding = 0;
+	private boolean allowRotation = false;
+	private byte heuristic = HEURISTIC_BEST_SHORT_SIDE_FIT;
+	private byte sortOrder = SORT_AREA;
+	private int maxBins = Integer.MAX_VALUE;
+
+
+	public RectPacker(int binWidth, int binHeight){
+		this.binWidth = binWidth;
+		this.binHeight = binHeight;
+	}
+
+	/**
+	 * Empty pixels between rectangles and between rectangles and the bin edges. Default: 0.
+	 */
+	public RectPacker setPadding(int padding) {
+		this.padding = padding;
+		return this;
+	}
+
+	/**
+	 * When true, rectangles may be placed rotated by 90 degrees. Default: false.
+	 */
+	public RectPacker setAllowRotation(boolean allowRotation) {
+		this.allowRotation = allowRotation;
+		return this;
+	}
+
+	public RectPacker setHeuristic(byte heuristic) {
+		this.heuristic = heuristic;
+		return this;
+	}
+
+	/**
+	 * The order in which rectangles are placed. Big ones first (default: SORT_AREA)
+	 * usually packs best.
+	 */
+	public RectPacker setSortOrder(byte sortOrder) {
+		this.sortOrder = sortOrder;
+		return this;
+	}
+
+	/**
+	 * Rectangles that fit in none of this many bins are not placed. Default: unlimited.
+	 */
+	public RectPacker setMaxBins(int maxBins) {
+		this.maxBins = maxBins;
+		return this;
+	}
+
+	/**
+	 * Computes the placement of all rectangles. Does not change the packer, may be
+	 * called repeatedly.
+	 */
+	public Result pack(int[] widths, int[] heights){
+		final int l = widths.length;
+		if (heights.length != l) throw new RuntimeException("widths and heights differ in length");
+
+		Result ret = new Result(binWidth, binHeight, l);
+		ArrayList<FreeSpace> bins = new ArrayList<FreeSpace>();
+
+		Integer[] order = sortedOrder(widths, heights);
+		Placement candidate = new Placement();
+		for (int o = 0; o < l; o++){
+			int i = order[o];
+			int w = widths[i] + padding;
+			int h = heights[i] + padding;
+
+			Placement p = new Placement();
+			p.index = i;
+			ret.placements[i] = p;
+
+			boolean placed = false;
+			for (int b = 0; b < bins.size() && !placed; b++){
+				placed = bins.get(b).findPosition(w, h, allowRotation, heuristic, candidate);
+				if (placed) place(bins.get(b), b, candidate, p);
+			}
+			if (!placed && bins.size() < maxBins){
+				FreeSpace nuBin = new FreeSpace(binWidth - padding, binHeight - padding);
+				if (nuBin.findPosition(w, h, allowRotation, heuristic, candidate)){
+					bins.add(nuBin);
+					place(nuBin, bins.size() - 1, candidate, p);
+					placed = true;
+				}
+			}
+
+			if (placed){
+				p.x += padding;
+				p.y += padding;
+				p.width -= padding;
+				p.height -= padding;
+			} else {
+				p.bin = -1;
+				ret.unplacedCount++;
+			}
+		}
+
+		ret.binCount = bins.size();
+		ret.usedArea = new long[ret.binCount];
+		for (int i = 0; i < l; i++){
+			Placement p = ret.placements[i];
+			if (p.bin >= 0) ret.usedArea[p.bin] += (long)p.width * p.height;
+		}
+		return ret;
+	}
+
+	private void place(FreeSpace bin, int binIndex, Placement candidate, Placement p) {
+		p.bin = binIndex;
+		p.x = candidate.x;
+		p.y = candidate.y;
+		p.width = candidate.width;
+		p.height = candidate.height;
+		p.rotated = candidate.rotated;
+		bin.occupy(p.x, p.y, p.width, p.height);
+	}
+
+	private Integer[] sortedOrder(final int[] widths, final int[] heights) {
+		int l = widths.length;
+		Integer[] ret = new Integer[l];
+		for (int i = 0; i < l; i++) ret[i] = i;
+		if (sortOrder == SORT_NONE) return ret;
+
+		Arrays.sort(ret, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				long keyA = sortKey(widths[a], heights[a]);
+				long keyB = sortKey(widths[b], heights[b]);
+				// descending, stable for equal keys
+				return (keyA > keyB) ? -1 : ((keyA < keyB) ? 1 : 0);
+			}
+		});
+		return ret;
+	}
+
+	private long sortKey(int w, int h){
+		switch (sortOrder){
+		case SORT_AREA:
+			return (long)w * h;
+		case SORT_MAX_SIDE:
+			return Math.max(w, h);
+		case SORT_PERIMETER:
+			return w + h;
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * The free space of one bin, tracked as a list of maximal free rectangles (x, y, w, h).
+	 * May also be used directly for incremental allocation, see DynamicAtlas.
+	 */
+	public static class FreeSpace {
+		private final int width;
+		private final int height;
+		private final ArrayList<int[]> freeRects = new ArrayList<int[]>();
+		private final ArrayList<int[]> nuRects = new ArrayList<int[]>();
+
+		public FreeSpace(int width, int height){
+			this.width = width;
+			this.height = height;
+			clear();
+		}
+		
+		/**
+		 * Makes the whole area free again.
+		 */
+		public void clear(){
+			freeRects.clear();
+			if (width > 0 && height > 0) freeRects.add(new int[]{ 0, 0, width, height });
+		}
+
+		/**
+		 * Finds the best free position. Returns false when the rect fits nowhere.
+		 * Does not occupy anything.
+		 */
+		public boolean findPosition(int w, int h, boolean allowRotation, byte heuristic, Placement result){
+			long bestScore1 = Long.MAX_VALUE;
+			long bestScore2 = Long.MAX_VALUE;
+			boolean found = false;
+
+			int l = freeRects.size();
+			for (int i = 0; i < l; i++){
+				int[] f = freeRects.get(i);
+				for (int r = 0; r < (allowRotation ? 2 : 1); r++){
+					int pw = (r == 0) ? w : h;
+					int ph = (r == 0) ? h : w;
+					if (pw > f[2] || ph > f[3]) continue;
+
+					long score1;
+					long score2;
+					int leftoverX = f[2] - pw;
+					int leftoverY = f[3] - ph;
+					switch (heuristic){
+					case HEURISTIC_BEST_AREA_FIT:
+						score1 = (long)f[2] * f[3] - (long)pw * ph;
+						score2 = Math.min(leftoverX, leftoverY);
+						break;
+					case HEURISTIC_BOTTOM_LEFT:
+						score1 = f[1] + ph;
+						score2 = f[0];
+						break;
+					default:
+						score1 = Math.min(leftoverX, leftoverY);
+						score2 = Math.max(leftoverX, leftoverY);
+						break;
+					}
+
+					if (score1 < bestScore1 || (score1 == bestScore1 && score2 < bestScore2)){
+						bestScore1 = score1;
+						bestScore2 = score2;
+						result.x = f[0];
+						result.y = f[1];
+						result.width = pw;
+						result.height = ph;
+						result.rotated = (r == 1);
+						found = true;
+					}
+				}
+			}
+			return found;
+		}
+
+		/**
+		 * Splits all free rects that intersect with the placed rect.
+		 */
+		public void occupy(int x, int y, int w, int h){
+			nuRects.clear();
+			for (int i = freeRects.size() - 1; i >= 0; i--){
+				int[] f = freeRects.get(i);
+				if (x >= f[0] + f[2] || x + w <= f[0] || y >= f[1] + f[3] || y + h <= f[1]) continue;
+
+				freeRects.remove(i);
+				// left, right, top, bottom leftovers
+				if (x > f[0]) nuRects.add(new int[]{ f[0], f[1], x - f[0], f[3] });
+				if (x + w < f[0] + f[2]) nuRects.add(new int[]{ x + w, f[1], f[0] + f[2] - (x + w), f[3] });
+				if (y > f[1]) nuRects.add(new int[]{ f[0], f[1], f[2], y - f[1] });
+				if (y + h < f[1] + f[3]) nuRects.add(new int[]{ f[0], y + h, f[2], f[1] + f[3] - (y + h) });
+			}
+			freeRects.addAll(nuRects);
+			prune();
+		}
+
+		/**
+		 * Makes a previously occupied rect free again. Adjacent free rects are merged 
+		 * when they share a full edge, other fragmentation remains until <code>clear</code>.
+		 */
+		public void free(int x, int y, int w, int h){
+			int[] nu = new int[]{ x, y, w, h };
+			boolean merged = true;
+			while (merged){
+				merged = false;
+				for (int i = freeRects.size() - 1; i >= 0; i--){
+					int[] f = freeRects.get(i);
+					if (f[1] == nu[1] && f[3] == nu[3] && (f[0] + f[2] == nu[0] || nu[0] + nu[2] == f[0])){
+						nu[0] = Math.min(f[0], nu[0]);
+						nu[2] += f[2];
+					} else if (f[0] == nu[0] && f[2] == nu[2] && (f[1] + f[3] == nu[1] || nu[1] + nu[3] == f[1])){
+						nu[1] = Math.min(f[1], nu[1]);
+						nu[3] += f[3];
+					} else {
+						continue;
+					}
+					freeRects.remove(i);
+					merged = true;
+				}
+			}
+			freeRects.add(nu);
+			prune();
+		}
+		
+		public int getFreeRectCount(){
+			return freeRects.size();
+		}
+		
+		/**
+		 * The area of the biggest free rect in pixels.
+		 */
+		public int getLargestFreeArea(){
+			int ret = 0;
+			for (int[] f : freeRects) ret = Math.max(ret, f[2] * f[3]);
+			return ret;
+		}
+
+		/**
+		 * Removes free rects that are completely contained in others.
+		 */
+		private void prune(){
+			for (int i = 0; i < freeRects.size(); i++){
+				int[] a = freeRects.get(i);
+				for (int j = i + 1; j < freeRects.size(); j++){
+					int[] b = freeRects.get(j);
+					if (contains(b, a)){
+						freeRects.remove(i);
+						i--;
+						break;
+					}
+					if (contains(a, b)){
+						freeRects.remove(j);
+						j--;
+					}
+				}
+			}
+		}
+
+		private static boolean contains(int[] outer, int[] inner){
+			return inner[0] >= outer[0] && inner[1] >= outer[1]
+					&& inner[0] + inner[2] <= outer[0] + outer[2]
+					&& inner[1] + inner[3] <= outer[1] + outer[3];
+		}
+	}
+
+	/**
+	 * Where one rectangle was put. <code>width</code> and <code>height</code> are
+	 * the dimensions as placed, i.e., swapped when rotated.
+	 */
+	public static class Placement {
+		/**
+		 * The index of the rectangle in the input arrays.
+		 */
+		public int index;
+		/**
+		 * The bin the rectangle was put in, or -1 when it did not fit.
+		 */
+		public int bin = -1;
+		public int x;
+		public int y;
+		public int width;
+		public int height;
+		/**
+		 * true when the rect was placed rotated by 90 degrees (clockwise).
+		 */
+		public boolean rotated;
+
+		public boolean isPlaced(){
+			return bin >= 0;
+		}
+
+		@Override
+		public String toString() {
+			return "Placement " + index + ": bin " + bin + " (" + x + "," + y + " "
+					+ width + "x" + height + (rotated ? ", rotated)" : ")");
+		}
+	}
+
+	public static class Result {
+		private final int binWidth;
+		private final int binHeight;
+		/**
+		 * In the order of the input rectangles.
+		 */
+		public final Placement[] placements;
+		private int binCount;
+		private int unplacedCount;
+		private long[] usedArea;
+
+		private Result(int binWidth, int binHeight, int count){
+			this.binWidth = binWidth;
+			this.binHeight = binHeight;
+			this.placements = new Placement[count];
+		}
+
+		public int getBinCount() {
+			return binCount;
+		}
+
+		/**
+		 * Rects that were too big for a bin, or did not fit into <code>maxBins</code> bins.
+		 */
+		public int getUnplacedCount() {
+			return unplacedCount;
+		}
+
+		/**
+		 * The fraction of the bin covered by rectangles, padding excluded.
+		 */
+		public float getOccupancy(int bin){
+			return (float)usedArea[bin] / ((float)binWidth * binHeight);
+		}
+
+		/**
+		 * The fraction of all used bins covered by rectangles.
+		 */
+		public float getOccupancy(){
+			if (binCount == 0) return 0;
+			long used = 0;
+			for (int i = 0; i < binCount; i++) used += usedArea[i];
+			return (float)used / ((float)binWidth * binHeight * binCount);
+		}
+
+		/**
+		 * The smallest width and height that contain all rectangles of the bin,
+		 * plus padding. Returned as { width, height }.
+		 */
+		public int[] getUsedSize(int bin, int padding){
+			int[] ret = new int[2];
+			for (Placement p : placements){
+				if (p.bin != bin) continue;
+				ret[0] = Math.max(ret[0], p.x + p.width + padding);
+				ret[1] = Math.max(ret[1], p.y + p.height + padding);
+			}
+			return ret;
+		}
+
+		@Override
+		public String toString() {
+			return "RectPacker.Result: " + placements.length + " rects in " + binCount + " bins of "
+					+ binWidth + "x" + binHeight + ", occupancy " + getOccupancy()
+					+ (unplacedCount > 0 ? (", " + unplacedCount + " NOT placed") : "");
+		}
+	}
+}
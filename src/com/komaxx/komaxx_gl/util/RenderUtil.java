@@ -49,6 +49,35 @@ public class RenderUtil {
         return errorFound;
     }
     
+    /**
+     * Checks whether the GL supports the given extension (e.g., "GL_OES_element_index_uint").
+     * Must be called in the GL thread.
+     */
+    public static boolean isExtensionSupported(String extension){
+    	String extensions = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+    	if (extensions == null) return false;
+    	for (String e : extensions.split(" ")){
+    		if (e.equals(extension)) return true;
+    	}
+    	return false;
+    }
+    
+    /**
+     * Checks whether the GL accepts the given compressed texture format in
+     * glCompressedTexImage2D (e.g., ETC1 is 0x8D64). Must be called in the GL thread.
+     */
+    public static boolean isCompressedFormatSupported(int glInternalFormat){
+    	int[] tmp = new int[1];
+    	GLES20.glGetIntegerv(GLES20.GL_NUM_COMPRESSED_TEXTURE_FORMATS, tmp, 0);
+    	if (tmp[0] <= 0) return false;
+    	int[] formats = new int[tmp[0]];
+    	GLES20.glGetIntegerv(GLES20.GL_COMPRESSED_TEXTURE_FORMATS, formats, 0);
+    	for (int f : formats){
+    		if (f == glInternalFormat) return true;
+    	}
+    	return false;
+    }
+    
     /**
      * Computes a smooth transition from an arbitrary input space into [0|1]
      */
@@ -0,0 +1,98 @@
+package com.komaxx.komaxx_gl.texturing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Plain JUnit, runs on the JVM: MipChainBuilder has no Android dependencies.
+ *
+ * @author Matthias Schicker
+ */
+public class MipChainBuilderTest {
+	@Test
+	public void countsLevelsDownToOnePixel() {
+		assertEquals(1, MipChainBuilder.getLevelCount(1, 1));
+		assertEquals(4, MipChainBuilder.getLevelCount(8, 8));
+		// 8x2, 4x1, 2x1, 1x1
+		assertEquals(4, MipChainBuilder.getLevelCount(8, 2));
+	}
+
+	@Test
+	public void boxFilterAveragesOpaquePixels() {
+		int[] src = new int[]{ 0xFF000000, 0xFFFFFFFF, 0xFF000000, 0xFFFFFFFF };
+		int[] ret = MipChainBuilder.downsample(src, 2, 2);
+		assertEquals(1, ret.length);
+		assertEquals(0xFF7F7F7F, ret[0]);
+	}
+
+	@Test
+	public void transparentPixelsDoNotDarken() {
+		int[] src = new int[]{ 0xFFFF0000, 0, 0, 0 };
+		assertEquals(0x40FF0000, MipChainBuilder.downsample(src, 2, 2)[0]);
+		assertEquals(0, MipChainBuilder.downsample(new int[4], 2, 2)[0]);
+	}
+
+	@Test
+	public void oddAndSingleSizes() {
+		// 3x1: the last column is dropped, the single row is kept
+		int[] ret = MipChainBuilder.downsample(new int[]{ 0xFF000000, 0xFF020202, 0xFFFFFFFF }, 3, 1);
+		assertEquals(1, ret.length);
+		assertEquals(0xFF010101, ret[0]);
+
+		// 1x2
+		ret = MipChainBuilder.downsample(new int[]{ 0xFF000000, 0xFF020202 }, 1, 2);
+		assertEquals(1, ret.length);
+		assertEquals(0xFF010101, ret[0]);
+	}
+
+	@Test
+	public void buildsLimitedChains() {
+		int[] level0 = new int[16];
+		int[][] chain = MipChainBuilder.build(level0, 4, 4, Integer.MAX_VALUE);
+		assertEquals(3, chain.length);
+		assertSame(level0, chain[0]);
+		assertEquals(4, chain[1].length);
+		assertEquals(1, chain[2].length);
+
+		assertEquals(2, MipChainBuilder.build(level0, 4, 4, 2).length);
+	}
+
+	@Test
+	public void premultipliesInPlace() {
+		int[] argb = new int[]{ 0x80FF8000, 0xFF123456, 0x00FFFFFF };
+		MipChainBuilder.premultiply(argb);
+		assertArrayEquals(new int[]{ 0x80804000, 0xFF123456, 0 }, argb);
+	}
+
+	@Test
+	public void rotatesClockwise() {
+		// A B      C A
+		// C D  ->  D B
+		int[] ret = MipChainBuilder.rotateClockwise(new int[]{ 1, 2, 3, 4 }, 2, 2);
+		assertArrayEquals(new int[]{ 3, 1, 4, 2 }, ret);
+
+		// 3x1 becomes 1x3
+		ret = MipChainBuilder.rotateClockwise(new int[]{ 1, 2, 3 }, 3, 1);
+		assertArrayEquals(new int[]{ 1, 2, 3 }, ret);
+	}
+
+	@Test
+	public void packsAllFormats() {
+		int[] argb = new int[]{ 0x80FF7F00 };
+
+		ByteBuffer b = MipChainBuilder.packRgba8888(argb);
+		assertEquals(0xFF, b.get(0) & 0xFF);
+		assertEquals(0x7F, b.get(1) & 0xFF);
+		assertEquals(0x00, b.get(2) & 0xFF);
+		assertEquals(0x80, b.get(3) & 0xFF);
+
+		assertEquals(0xF708, MipChainBuilder.packRgba4444(argb).getShort(0) & 0xFFFF);
+		assertEquals((31 << 11) | (15 << 6) | 1, MipChainBuilder.packRgba5551(argb).getShort(0) & 0xFFFF);
+		assertEquals((31 << 11) | (31 << 5), MipChainBuilder.packRgb565(argb).getShort(0) & 0xFFFF);
+	}
+}
@@ -0,0 +1,97 @@
+package com.komaxx.komaxx_gl.texturing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Compares the PixelConverter upload path with the Bitmap copy path it replaced, on
+ * the JVM (run <code>main</code>, no arguments).</br>
+ * The converter path converts into a pooled staging buffer, as <code>Texture.uploadConverted</code>
+ * does. Bitmaps do not exist on the JVM, so the copy path is modeled by what it costs:
+ * <code>Bitmap.copy</code> allocates a new bitmap of the full size and converts into it,
+ * then GLUtils copies the pixels into a new native buffer for the upload.
+ *
+ * @author Matthias Schicker
+ */
+public class PixelConverterBenchmark {
+	private static final int[] SIZES = new int[]{ 128, 512, 1024 };
+	private static final int WARMUP_RUNS = 20;
+	private static final int RUNS = 50;
+
+	private static final StagingBufferPool pool = new StagingBufferPool(16 * 1024 * 1024);
+
+	private static int sink = 0;
+
+
+	public static void main(String[] args) {
+		for (int size : SIZES){
+			ByteBuffer src = createGradient(size);
+			for (byte format : new byte[]{ PixelConverter.FORMAT_RGB_565, PixelConverter.FORMAT_RGBA_4444 }){
+				float copyMs = measureBitmapCopyPath(src, size, format);
+				float convertMs = measureConverter(src, size, format, false);
+				float ditherMs = measureConverter(src, size, format, true);
+				// the copy path allocates the bitmap and the native upload buffer per update,
+				// the converter path reuses its pooled staging buffer
+				int copyKb = 2 * size * size * PixelConverter.getBytesPerPixel(format) / 1024;
+				System.out.println(size + "x" + size + " " + PixelConverter.getFormatName(format)
+						+ ": bitmap copy " + copyMs + " ms (allocates " + copyKb + " kB), converter " 
+						+ convertMs + " ms, dithered " + ditherMs + " ms (allocate nothing)");
+			}
+		}
+		// keeps the JIT from dropping the copy path
+		if (sink == 42) System.out.println();
+	}
+
+	private static float measureConverter(ByteBuffer src, int size, byte format, boolean dither){
+		for (int i = 0; i < WARMUP_RUNS; i++) convertPooled(src, size, format, dither);
+		long start = System.nanoTime();
+		for (int i = 0; i < RUNS; i++) convertPooled(src, size, format, dither);
+		return (System.nanoTime() - start) / RUNS / 1000000f;
+	}
+
+	private static void convertPooled(ByteBuffer src, int size, byte format, boolean dither) {
+		ByteBuffer dst = pool.obtain(size * size * PixelConverter.getBytesPerPixel(format));
+		src.position(0);
+		PixelConverter.convert(src, size, size, dst, format, dither, PixelConverter.ALPHA_KEEP);
+		pool.release(dst);
+	}
+
+	private static float measureBitmapCopyPath(ByteBuffer src, int size, byte format){
+		for (int i = 0; i < WARMUP_RUNS; i++) bitmapCopy(src, size, format);
+		long start = System.nanoTime();
+		for (int i = 0; i < RUNS; i++) bitmapCopy(src, size, format);
+		return (System.nanoTime() - start) / RUNS / 1000000f;
+	}
+
+	/**
+	 * Bitmap.copy: a new bitmap, converted pixel by pixel. GLUtils: a new native buffer.
+	 */
+	private static void bitmapCopy(ByteBuffer src, int size, byte format){
+		short[] copy = new short[size * size];
+		src.position(0);
+		for (int i = 0; i < copy.length; i++){
+			int r = src.get() & 0xFF;
+			int g = src.get() & 0xFF;
+			int b = src.get() & 0xFF;
+			int a = src.get() & 0xFF;
+			copy[i] = (format == PixelConverter.FORMAT_RGB_565)
+					? (short)(((r >> 3) << 11) | ((g >> 2) << 5) | (b >> 3))
+					: (short)(((r >> 4) << 12) | ((g >> 4) << 8) | ((b >> 4) << 4) | (a >> 4));
+		}
+		ByteBuffer upload = ByteBuffer.allocateDirect(copy.length * 2).order(ByteOrder.nativeOrder());
+		upload.asShortBuffer().put(copy);
+		sink += upload.get(0);
+	}
+
+	private static ByteBuffer createGradient(int size){
+		ByteBuffer ret = ByteBuffer.allocateDirect(size * size * 4);
+		for (int y = 0; y < size; y++){
+			for (int x = 0; x < size; x++){
+				ret.put((byte)(x * 255 / size)).put((byte)(y * 255 / size))
+					.put((byte)((x + y) * 127 / size)).put((byte)255);
+			}
+		}
+		ret.position(0);
+		return ret;
+	}
+}
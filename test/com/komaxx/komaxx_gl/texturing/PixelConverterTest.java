@@ -0,0 +1,120 @@
+package com.komaxx.komaxx_gl.texturing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+/**
+ * Plain JUnit, runs on the JVM: PixelConverter has no Android dependencies.
+ *
+ * @author Matthias Schicker
+ */
+public class PixelConverterTest {
+	@Test
+	public void rgb565RoundsToNearest() {
+		assertEquals(0xFFFF, convertOne(255, 255, 255, 255, PixelConverter.FORMAT_RGB_565));
+		assertEquals(0x0000, convertOne(3, 1, 3, 255, PixelConverter.FORMAT_RGB_565));
+		// 4 is half of a 5 bit step, 2 half of a 6 bit step: rounded up
+		assertEquals((1 << 11) | (1 << 5) | 1, convertOne(4, 2, 4, 255, PixelConverter.FORMAT_RGB_565));
+		// no overflow into the neighboring channel
+		assertEquals(31 << 11, convertOne(254, 0, 0, 255, PixelConverter.FORMAT_RGB_565));
+	}
+
+	@Test
+	public void rgb565DropsAlpha() {
+		assertEquals(convertOne(200, 100, 50, 255, PixelConverter.FORMAT_RGB_565),
+				convertOne(200, 100, 50, 0, PixelConverter.FORMAT_RGB_565));
+	}
+
+	@Test
+	public void rgba4444RoundsToNearest() {
+		// one 4 bit step is 17 in 8 bit, 8 is below half of it, 9 above
+		assertEquals(0x0000, convertOne(8, 8, 8, 8, PixelConverter.FORMAT_RGBA_4444));
+		assertEquals(0x1111, convertOne(9, 9, 9, 9, PixelConverter.FORMAT_RGBA_4444));
+		assertEquals(0xFFFF, convertOne(255, 255, 255, 255, PixelConverter.FORMAT_RGBA_4444));
+	}
+
+	@Test
+	public void rgba4444KeepsAlpha() {
+		assertEquals(0xF008, convertOne(255, 0, 0, 136, PixelConverter.FORMAT_RGBA_4444));
+	}
+
+	@Test
+	public void rgba5551ThresholdsAlpha() {
+		assertEquals(0xFFFE, convertOne(255, 255, 255, 127, PixelConverter.FORMAT_RGBA_5551));
+		assertEquals(0xFFFF, convertOne(255, 255, 255, 128, PixelConverter.FORMAT_RGBA_5551));
+		assertEquals((1 << 11) | (1 << 6) | (1 << 1) | 1, convertOne(4, 4, 4, 255, PixelConverter.FORMAT_RGBA_5551));
+	}
+
+	@Test
+	public void rgba8888IsCopied() {
+		ByteBuffer dst = convert(new int[]{ 1, 2, 3, 4 }, 1, 1, PixelConverter.FORMAT_RGBA_8888,
+				false, PixelConverter.ALPHA_KEEP);
+		assertEquals(1, dst.get(0));
+		assertEquals(2, dst.get(1));
+		assertEquals(3, dst.get(2));
+		assertEquals(4, dst.get(3));
+	}
+
+	@Test
+	public void premultipliesAndUnpremultiplies() {
+		ByteBuffer dst = convert(new int[]{ 255, 128, 0, 128 }, 1, 1, PixelConverter.FORMAT_RGBA_8888,
+				false, PixelConverter.ALPHA_PREMULTIPLY);
+		assertEquals(128, dst.get(0) & 0xFF);
+		assertEquals(64, dst.get(1) & 0xFF);
+		assertEquals(0, dst.get(2) & 0xFF);
+		assertEquals(128, dst.get(3) & 0xFF);
+
+		dst = convert(new int[]{ 64, 128, 0, 128 }, 1, 1, PixelConverter.FORMAT_RGBA_8888,
+				false, PixelConverter.ALPHA_UNPREMULTIPLY);
+		assertEquals(128, dst.get(0) & 0xFF);
+		assertEquals(255, dst.get(1) & 0xFF);
+		assertEquals(0, dst.get(2) & 0xFF);
+	}
+
+	@Test
+	public void ditheringKeepsTheAverage() {
+		// 4 is exactly between two 5 bit steps: half of a 4x4 block rounds up
+		int[] rgba = new int[16 * 4];
+		for (int i = 0; i < 16; i++){
+			rgba[i * 4] = 4;
+			rgba[i * 4 + 3] = 255;
+		}
+		ByteBuffer dst = convert(rgba, 4, 4, PixelConverter.FORMAT_RGB_565, true, PixelConverter.ALPHA_KEEP);
+		int ones = 0;
+		for (int i = 0; i < 16; i++) ones += (dst.getShort(i * 2) & 0xFFFF) >> 11;
+		assertEquals(8, ones);
+	}
+
+	@Test
+	public void advancesBothPositions() {
+		ByteBuffer src = bytes(new int[]{ 1, 2, 3, 4, 5, 6, 7, 8 });
+		ByteBuffer dst = ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder());
+		PixelConverter.convert(src, 2, 1, dst, PixelConverter.FORMAT_RGB_565, false, PixelConverter.ALPHA_KEEP);
+		assertEquals(8, src.position());
+		assertEquals(4, dst.position());
+	}
+
+	private static int convertOne(int r, int g, int b, int a, byte format){
+		ByteBuffer dst = convert(new int[]{ r, g, b, a }, 1, 1, format, false, PixelConverter.ALPHA_KEEP);
+		return dst.getShort(0) & 0xFFFF;
+	}
+
+	private static ByteBuffer convert(int[] rgba, int width, int height, byte format,
+			boolean dither, byte alphaMode){
+		ByteBuffer dst = ByteBuffer.allocateDirect(width * height * PixelConverter.getBytesPerPixel(format))
+				.order(ByteOrder.nativeOrder());
+		PixelConverter.convert(bytes(rgba), width, height, dst, format, dither, alphaMode);
+		return dst;
+	}
+
+	private static ByteBuffer bytes(int[] values){
+		ByteBuffer ret = ByteBuffer.allocate(values.length);
+		for (int v : values) ret.put((byte) v);
+		ret.position(0);
+		return ret;
+	}
+}
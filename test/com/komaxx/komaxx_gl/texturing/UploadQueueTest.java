@@ -0,0 +1,103 @@
+package com.komaxx.komaxx_gl.texturing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import com.komaxx.komaxx_gl.texturing.UploadQueue.Entry;
+
+/**
+ * Tests the merging of staged updates. Runs on the JVM with android.jar on the class
+ * path: UploadQueue references Bitmap and GLES20, merging does not call them.
+ *
+ * @author Matthias Schicker
+ */
+public class UploadQueueTest {
+	@Test
+	public void mergesARowOfNeighbors() {
+		ArrayList<Entry> entries = entries(
+				64, 0, 32, 32,
+				0, 0, 32, 32,
+				32, 0, 32, 32);
+		UploadQueue.merge(entries, new ArrayList<Entry>());
+
+		assertEquals(1, entries.size());
+		assertRect(entries.get(0), 0, 0, 96, 32);
+		assertEquals(3, countLeaves(entries.get(0)));
+	}
+
+	@Test
+	public void stacksRowsOfTheSameWidth() {
+		ArrayList<Entry> entries = entries(
+				0, 32, 32, 32,
+				32, 0, 32, 32,
+				0, 0, 32, 32,
+				32, 32, 32, 32);
+		UploadQueue.merge(entries, new ArrayList<Entry>());
+
+		assertEquals(1, entries.size());
+		assertRect(entries.get(0), 0, 0, 64, 64);
+		assertEquals(4, countLeaves(entries.get(0)));
+	}
+
+	@Test
+	public void keepsWhatDoesNotFormARectangle() {
+		ArrayList<Entry> entries = entries(
+				// gap in between
+				0, 0, 32, 32,
+				64, 0, 32, 32,
+				// touching, but of different height
+				0, 64, 32, 32,
+				32, 64, 32, 16);
+		UploadQueue.merge(entries, new ArrayList<Entry>());
+
+		assertEquals(4, entries.size());
+		for (Entry e : entries) assertTrue(e.parts.isEmpty());
+	}
+
+	@Test
+	public void takesMergedEntriesFromThePool() {
+		ArrayList<Entry> pool = new ArrayList<Entry>();
+		Entry pooled = new Entry();
+		pool.add(pooled);
+
+		ArrayList<Entry> entries = entries(
+				0, 0, 32, 32,
+				32, 0, 32, 32);
+		UploadQueue.merge(entries, pool);
+
+		assertSame(pooled, entries.get(0));
+		assertEquals(0, pool.size());
+	}
+
+	private static ArrayList<Entry> entries(int... rects){
+		ArrayList<Entry> ret = new ArrayList<Entry>();
+		for (int i = 0; i < rects.length; i += 4){
+			Entry e = new Entry();
+			e.x = rects[i];
+			e.y = rects[i + 1];
+			e.width = rects[i + 2];
+			e.height = rects[i + 3];
+			ret.add(e);
+		}
+		return ret;
+	}
+
+	private static void assertRect(Entry e, int x, int y, int width, int height){
+		assertEquals(x, e.x);
+		assertEquals(y, e.y);
+		assertEquals(width, e.width);
+		assertEquals(height, e.height);
+	}
+
+	private static int countLeaves(Entry e){
+		if (e.parts.isEmpty()) return 1;
+		int ret = 0;
+		for (Entry part : e.parts) ret += countLeaves(part);
+		return ret;
+	}
+}
@@ -0,0 +1,223 @@
+package com.komaxx.komaxx_gl.threading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the JobFuture state machine and the cancellation paths of the JobSystem. The
+ * system runs without workers, the tests drive the state transitions themselves.
+ * Runs on the JVM with android.jar on the class path: JobSystem references Process and
+ * KoLog, the paths tested here do not call them.
+ *
+ * @author Matthias Schicker
+ */
+public class JobSystemTest {
+	private JobSystem system;
+
+	@Before
+	public void setUp() {
+		system = new JobSystem(0);
+	}
+
+	@After
+	public void tearDown() {
+		system.onDestroy();
+	}
+
+	@Test
+	public void cancelsQueuedJobs() {
+		TestJob job = new TestJob(true);
+		JobFuture<String> f = system.submit(job, JobSystem.PRIORITY_DEFAULT);
+		assertEquals(1, system.getQueuedCount());
+		assertFalse(f.isDone());
+
+		assertTrue(f.cancel(false));
+		assertTrue(f.isCancelled());
+		assertTrue(f.isDone());
+		assertTrue(f.getToken().isCancelled());
+		assertEquals(0, system.getQueuedCount());
+		assertEquals(1, system.getCancelledCount());
+		assertEquals(1, job.discarded.size());
+		assertNull(job.discarded.get(0));
+
+		// only once
+		assertFalse(f.cancel(false));
+		assertEquals(1, job.discarded.size());
+	}
+
+	@Test
+	public void runsThroughAllStates() throws Exception {
+		JobFuture<String> f = system.submit(new TestJob(true), JobSystem.PRIORITY_DEFAULT);
+		assertTrue(f.start());
+		assertFalse(f.start());
+		assertFalse(f.isDone());
+
+		assertTrue(f.computed("result"));
+		assertTrue(f.isDone());
+		assertFalse(f.isCommitted());
+		assertEquals("result", f.getResult());
+		assertEquals("result", f.get());
+
+		assertTrue(f.committing());
+		assertTrue(f.isCommitted());
+		assertFalse(f.cancel(false));
+	}
+
+	@Test
+	public void jobsWithoutCommitAreDoneWhenComputed() {
+		JobFuture<String> f = system.submit(new TestJob(false), JobSystem.PRIORITY_DEFAULT);
+		f.start();
+		f.computed("result");
+		assertTrue(f.isCommitted());
+		assertFalse(f.committing());
+	}
+
+	@Test
+	public void dropsResultsOfJobsCancelledWhileRunning() throws Exception {
+		JobFuture<String> f = system.submit(new TestJob(true), JobSystem.PRIORITY_DEFAULT);
+		f.start();
+		assertTrue(f.cancel(false));
+		assertTrue(f.getToken().isCancelled());
+
+		assertFalse(f.computed("late"));
+		assertNull(f.getResult());
+		try {
+			f.get();
+			fail("delivered the result of a cancelled job");
+		} catch (CancellationException e){
+			// expected
+		}
+	}
+
+	@Test
+	public void discardsComputedResultsOnCancel() {
+		TestJob job = new TestJob(true);
+		JobFuture<String> f = system.submit(job, JobSystem.PRIORITY_DEFAULT);
+		f.start();
+		f.computed("result");
+
+		assertTrue(f.cancel(false));
+		assertFalse(f.committing());
+		assertEquals(1, job.discarded.size());
+		assertEquals("result", job.discarded.get(0));
+	}
+
+	@Test
+	public void reportsFailures() throws Exception {
+		JobFuture<String> f = system.submit(new TestJob(true), JobSystem.PRIORITY_DEFAULT);
+		f.start();
+		f.failed(new IllegalStateException());
+		assertTrue(f.isFailed());
+		assertTrue(f.isDone());
+		assertFalse(f.cancel(false));
+		try {
+			f.get();
+			fail("delivered the result of a failed job");
+		} catch (ExecutionException e){
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	@Test(expected = TimeoutException.class)
+	public void getTimesOut() throws Exception {
+		JobFuture<String> f = system.submit(new TestJob(true), JobSystem.PRIORITY_DEFAULT);
+		f.get(1, TimeUnit.MILLISECONDS);
+	}
+
+	@Test
+	public void groupTokensCancelTheirJobs() {
+		CancellationToken group = new CancellationToken();
+		JobFuture<String> a = system.submit(new TestJob(true), JobSystem.PRIORITY_DEFAULT, group);
+		JobFuture<String> b = system.submit(new TestJob(true), JobSystem.PRIORITY_DEFAULT, group);
+		JobFuture<String> other = system.submit(new TestJob(true), JobSystem.PRIORITY_DEFAULT);
+
+		group.cancel();
+		assertTrue(a.getToken().isCancelled());
+		assertTrue(b.getToken().isCancelled());
+		assertFalse(other.getToken().isCancelled());
+		// not started by a worker
+		assertFalse(a.start());
+		assertTrue(other.start());
+	}
+
+	@Test
+	public void newerJobsSupersedeTheirOwnersPreviousOne() {
+		Object owner = "segment 7";
+		TestJob first = new TestJob(true);
+		JobFuture<String> f1 = system.submit(owner, first, JobSystem.PRIORITY_VISIBLE);
+		JobFuture<String> f2 = system.submit(owner, new TestJob(true), JobSystem.PRIORITY_VISIBLE);
+
+		assertTrue(f1.isCancelled());
+		assertFalse(f2.isCancelled());
+		assertEquals(1, first.discarded.size());
+		assertEquals(1, system.getSupersededCount());
+		assertEquals(1, system.getSupersededQueuedCount());
+		assertEquals(1, system.getQueuedCount());
+
+		// a running job is superseded, too
+		f2.start();
+		JobFuture<String> f3 = system.submit(owner, new TestJob(true), JobSystem.PRIORITY_VISIBLE);
+		assertTrue(f2.isCancelled());
+		assertEquals(1, system.getSupersededRunningCount());
+
+		assertTrue(system.cancelOwner(owner));
+		assertTrue(f3.isCancelled());
+		assertFalse(system.cancelOwner(owner));
+	}
+
+	@Test
+	public void movesQueuedJobsToOtherLanes() {
+		JobFuture<String> f = system.submit(new TestJob(true), JobSystem.PRIORITY_PREFETCH);
+		system.setPriority(f, JobSystem.PRIORITY_VISIBLE);
+		assertEquals(JobSystem.PRIORITY_VISIBLE, f.getPriority());
+		assertEquals(1, system.getQueuedCount());
+	}
+
+	@Test
+	public void destroyCancelsEverything() {
+		JobFuture<String> queued = system.submit(new TestJob(true), JobSystem.PRIORITY_DEFAULT);
+		system.onDestroy();
+		assertTrue(queued.isCancelled());
+		assertEquals(0, system.getQueuedCount());
+
+		JobFuture<String> late = system.submit(new TestJob(true), JobSystem.PRIORITY_DEFAULT);
+		assertTrue(late.isCancelled());
+	}
+
+	private static class TestJob extends Job<String> {
+		private final boolean hasCommit;
+		private final ArrayList<String> discarded = new ArrayList<String>();
+
+		public TestJob(boolean hasCommit){
+			this.hasCommit = hasCommit;
+		}
+
+		@Override
+		protected String compute(CancellationToken token) {
+			return "computed";
+		}
+
+		@Override
+		protected void discard(String result) {
+			discarded.add(result);
+		}
+
+		@Override
+		protected boolean hasCommit() {
+			return hasCommit;
+		}
+	}
+}
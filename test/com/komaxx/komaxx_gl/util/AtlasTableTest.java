@@ -0,0 +1,86 @@
+package com.komaxx.komaxx_gl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Plain JUnit, runs on the JVM: AtlasTable has no Android dependencies.
+ *
+ * @author Matthias Schicker
+ */
+public class AtlasTableTest {
+	@Test
+	public void roundTrip() throws IOException {
+		AtlasTable table = new AtlasTable(2048, 40000, 2);
+		table.names[0] = "button_pressed";
+		table.x[0] = 0;
+		table.y[0] = 39000;
+		table.width[0] = 64;
+		table.height[0] = 32;
+		table.names[1] = "\u00fcmlaut";
+		table.x[1] = 65535;
+		table.y[1] = 7;
+		table.width[1] = 1;
+		table.height[1] = 1000;
+		table.rotated[1] = true;
+
+		AtlasTable read = AtlasTable.read(new ByteArrayInputStream(write(table)));
+
+		assertEquals(2048, read.atlasWidth);
+		assertEquals(40000, read.atlasHeight);
+		assertEquals(2, read.getEntryCount());
+		for (int i = 0; i < 2; i++){
+			assertEquals(table.names[i], read.names[i]);
+			assertEquals(table.x[i], read.x[i]);
+			assertEquals(table.y[i], read.y[i]);
+			assertEquals(table.width[i], read.width[i]);
+			assertEquals(table.height[i], read.height[i]);
+			assertEquals(table.rotated[i], read.rotated[i]);
+		}
+		assertEquals(1, read.indexOf("\u00fcmlaut"));
+		assertEquals(-1, read.indexOf("missing"));
+	}
+
+	@Test
+	public void emptyTable() throws IOException {
+		AtlasTable read = AtlasTable.read(new ByteArrayInputStream(write(new AtlasTable(16, 16, 0))));
+		assertEquals(0, read.getEntryCount());
+	}
+
+	@Test
+	public void rejectsOtherData() throws IOException {
+		byte[] data = write(new AtlasTable(16, 16, 0));
+		data[0] = 'X';
+		try {
+			AtlasTable.read(new ByteArrayInputStream(data));
+			fail("read a table with a wrong magic");
+		} catch (IOException e){
+			// expected
+		}
+	}
+
+	@Test
+	public void rejectsOtherVersions() throws IOException {
+		byte[] data = write(new AtlasTable(16, 16, 0));
+		// the version follows the 4 bytes magic
+		data[5]++;
+		try {
+			AtlasTable.read(new ByteArrayInputStream(data));
+			fail("read a table of an unknown version");
+		} catch (IOException e){
+			// expected
+		}
+	}
+
+	private static byte[] write(AtlasTable table) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		table.write(os);
+		return os.toByteArray();
+	}
+}
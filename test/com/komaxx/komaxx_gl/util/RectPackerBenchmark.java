@@ -0,0 +1,167 @@
+package com.komaxx.komaxx_gl.util;
+
+import java.util.Random;
+
+/**
+ * Compares the RectPacker with the shelf layout AtlasPainter used before, on the JVM
+ * (run <code>main</code>, no arguments).</br>
+ * The shelf layout is ported from the old <code>AtlasPainter.positionHorizontally</code>
+ * and <code>positionVertically</code>: rows (or columns) are filled in the given order,
+ * the one with the smaller bounding box wins. Everything below the bin was truncated.
+ * The packer places the same rects into bins of the same size, sorted by area, with
+ * the default and the bottom left heuristic.
+ *
+ * @author Matthias Schicker
+ */
+public class RectPackerBenchmark {
+	private static final int BIN_SIZE = 1024;
+	private static final int PADDING = 1;
+	private static final int[] COUNTS = new int[]{ 50, 200, 1000 };
+	private static final int WARMUP_RUNS = 10;
+	private static final int RUNS = 20;
+
+	private static int sink = 0;
+
+
+	public static void main(String[] args) {
+		for (int count : COUNTS){
+			for (int maxSide : new int[]{ 64, 160 }){
+				int[][] rects = randomRects(count, 8, maxSide, count);
+				long area = 0;
+				for (int i = 0; i < count; i++) area += (long)rects[0][i] * rects[1][i];
+
+				// shelf: one bounding box, rects below the bin are lost
+				int[] x = new int[count];
+				int[] y = new int[count];
+				float shelfMs = measureShelf(rects, x, y);
+				int[] bounds = shelfLayout(rects[0], rects[1], x, y);
+				int truncated = 0;
+				for (int i = 0; i < count; i++){
+					if (x[i] + rects[0][i] > BIN_SIZE || y[i] + rects[1][i] > BIN_SIZE) truncated++;
+				}
+				float shelfOccupancy = (float)area / ((float)bounds[0] * bounds[1]);
+
+				System.out.println(count + " rects of 8.." + maxSide + "px: shelf " + shelfMs + " ms, "
+						+ bounds[0] + "x" + bounds[1] + ", occupancy " + shelfOccupancy
+						+ ", " + truncated + " truncated in a " + BIN_SIZE + " bin");
+				System.out.println("    packer, best short side: " 
+						+ describePacker(RectPacker.HEURISTIC_BEST_SHORT_SIDE_FIT, rects, area));
+				System.out.println("    packer, bottom left: " 
+						+ describePacker(RectPacker.HEURISTIC_BOTTOM_LEFT, rects, area));
+			}
+		}
+		// keeps the JIT from dropping the layouts
+		if (sink == 42) System.out.println();
+	}
+
+	/**
+	 * Occupancy counts the full bins plus the used part of the last one, like the shelf's
+	 * bounding box.
+	 */
+	private static String describePacker(byte heuristic, int[][] rects, long area){
+		RectPacker packer = new RectPacker(BIN_SIZE, BIN_SIZE).setPadding(PADDING).setHeuristic(heuristic);
+		float ms = measurePacker(packer, rects);
+		RectPacker.Result result = packer.pack(rects[0], rects[1]);
+		int[] usedSize = result.getUsedSize(result.getBinCount() - 1, PADDING);
+		long packedArea = (long)BIN_SIZE * BIN_SIZE * (result.getBinCount() - 1)
+				+ (long)usedSize[0] * usedSize[1];
+		return ms + " ms, " + result.getBinCount() + " bins, occupancy " + ((float)area / packedArea)
+				+ ", " + result.getUnplacedCount() + " unplaced";
+	}
+
+	private static float measureShelf(int[][] rects, int[] x, int[] y){
+		for (int i = 0; i < WARMUP_RUNS; i++) sink += shelfLayout(rects[0], rects[1], x, y)[1];
+		long start = System.nanoTime();
+		for (int i = 0; i < RUNS; i++) sink += shelfLayout(rects[0], rects[1], x, y)[1];
+		return (System.nanoTime() - start) / RUNS / 1000000f;
+	}
+
+	private static float measurePacker(RectPacker packer, int[][] rects){
+		for (int i = 0; i < WARMUP_RUNS; i++) sink += packer.pack(rects[0], rects[1]).getBinCount();
+		long start = System.nanoTime();
+		for (int i = 0; i < RUNS; i++) sink += packer.pack(rects[0], rects[1]).getBinCount();
+		return (System.nanoTime() - start) / RUNS / 1000000f;
+	}
+
+	/**
+	 * The old AtlasPainter choice: lays out horizontally and vertically, keeps the
+	 * smaller bounding box. Returns it as { width, height }.
+	 */
+	private static int[] shelfLayout(int[] widths, int[] heights, int[] x, int[] y){
+		positionHorizontally(widths, heights, x, y, BIN_SIZE, PADDING);
+		int[] horizontal = boundingSize(widths, heights, x, y);
+		positionVertically(widths, heights, x, y, BIN_SIZE, PADDING);
+		int[] vertical = boundingSize(widths, heights, x, y);
+		if ((long)horizontal[0] * horizontal[1] <= (long)vertical[0] * vertical[1]){
+			positionHorizontally(widths, heights, x, y, BIN_SIZE, PADDING);
+			return horizontal;
+		}
+		return vertical;
+	}
+
+	private static void positionVertically(int[] widths, int[] heights, int[] xs, int[] ys,
+			int maxHeight, int padding) {
+		int lineWidth = 0;
+
+		int x = padding;
+		int y = padding;
+		for (int i = 0; i < widths.length; i++){
+			if (y + heights[i] > maxHeight){
+				y = padding;
+				x += lineWidth + padding;
+
+				lineWidth = widths[i] + padding;
+			}
+
+			xs[i] = x;
+			ys[i] = y;
+			y += heights[i] + padding;
+
+			lineWidth = Math.max(lineWidth, widths[i]);
+		}
+	}
+
+	private static void positionHorizontally(int[] widths, int[] heights, int[] xs, int[] ys,
+			int maxWidth, int padding) {
+		int lineHeight = 0;
+
+		int x = padding;
+		int y = padding;
+		for (int i = 0; i < widths.length; i++){
+			if (x + widths[i] > maxWidth){
+				x = padding;
+				y += lineHeight + padding;
+
+				lineHeight = heights[i] + padding;
+			}
+
+			xs[i] = x;
+			ys[i] = y;
+			x += widths[i] + padding;
+
+			lineHeight = Math.max(lineHeight, heights[i]);
+		}
+	}
+
+	private static int[] boundingSize(int[] widths, int[] heights, int[] x, int[] y){
+		int[] ret = new int[2];
+		for (int i = 0; i < widths.length; i++){
+			ret[0] = Math.max(ret[0], x[i] + widths[i]);
+			ret[1] = Math.max(ret[1], y[i] + heights[i]);
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns { widths, heights }.
+	 */
+	private static int[][] randomRects(int count, int minSide, int maxSide, long seed){
+		Random random = new Random(seed);
+		int[][] ret = new int[2][count];
+		for (int i = 0; i < count; i++){
+			ret[0][i] = minSide + random.nextInt(maxSide - minSide + 1);
+			ret[1][i] = minSide + random.nextInt(maxSide - minSide + 1);
+		}
+		return ret;
+	}
+}
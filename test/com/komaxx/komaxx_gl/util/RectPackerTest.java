@@ -0,0 +1,185 @@
+package com.komaxx.komaxx_gl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.komaxx.komaxx_gl.util.RectPacker.FreeSpace;
+import com.komaxx.komaxx_gl.util.RectPacker.Placement;
+import com.komaxx.komaxx_gl.util.RectPacker.Result;
+
+/**
+ * Plain JUnit, runs on the JVM: RectPacker has no Android dependencies.
+ *
+ * @author Matthias Schicker
+ */
+public class RectPackerTest {
+	private static final byte[] HEURISTICS = new byte[]{ RectPacker.HEURISTIC_BEST_SHORT_SIDE_FIT,
+		RectPacker.HEURISTIC_BEST_AREA_FIT, RectPacker.HEURISTIC_BOTTOM_LEFT };
+
+	@Test
+	public void placesWithoutOverlaps() {
+		int[][] rects = randomRects(300, 4, 120, 1);
+		for (byte heuristic : HEURISTICS){
+			Result result = new RectPacker(256, 256).setHeuristic(heuristic).setAllowRotation(true)
+					.pack(rects[0], rects[1]);
+			assertEquals(0, result.getUnplacedCount());
+			assertTrue(result.getBinCount() > 1);
+			assertPacked(result, rects, 256, 256, 0);
+		}
+	}
+
+	@Test
+	public void keepsPaddingAtTheEdgesAndBetweenRects() {
+		int[][] rects = randomRects(200, 1, 60, 2);
+		for (byte heuristic : HEURISTICS){
+			Result result = new RectPacker(256, 128).setPadding(3).setHeuristic(heuristic)
+					.pack(rects[0], rects[1]);
+			assertEquals(0, result.getUnplacedCount());
+			assertPacked(result, rects, 256, 128, 3);
+		}
+	}
+
+	@Test
+	public void paddingCountsOnBothBinEdges() {
+		RectPacker packer = new RectPacker(64, 64).setPadding(2);
+		Result result = packer.pack(new int[]{ 60 }, new int[]{ 60 });
+		assertEquals(0, result.getUnplacedCount());
+		assertEquals(2, result.placements[0].x);
+		assertEquals(2, result.placements[0].y);
+
+		result = packer.pack(new int[]{ 61 }, new int[]{ 60 });
+		assertEquals(1, result.getUnplacedCount());
+		assertEquals(0, result.getBinCount());
+	}
+
+	@Test
+	public void rotatesWhenAllowed() {
+		int[] widths = new int[]{ 40 };
+		int[] heights = new int[]{ 90 };
+
+		Result result = new RectPacker(100, 50).setAllowRotation(true).pack(widths, heights);
+		Placement p = result.placements[0];
+		assertTrue(p.isPlaced());
+		assertTrue(p.rotated);
+		assertEquals(90, p.width);
+		assertEquals(40, p.height);
+
+		result = new RectPacker(100, 50).pack(widths, heights);
+		assertFalse(result.placements[0].isPlaced());
+		assertEquals(1, result.getUnplacedCount());
+	}
+
+	@Test
+	public void spillsOntoMoreBins() {
+		int[] sides = new int[]{ 32, 32, 32, 32, 32 };
+		Result result = new RectPacker(64, 64).pack(sides, sides);
+
+		assertEquals(2, result.getBinCount());
+		assertEquals(0, result.getUnplacedCount());
+		assertEquals(1f, result.getOccupancy(0), 0.0001f);
+		assertEquals(0.25f, result.getOccupancy(1), 0.0001f);
+		int[] usedSize = result.getUsedSize(1, 0);
+		assertEquals(32, usedSize[0]);
+		assertEquals(32, usedSize[1]);
+	}
+
+	@Test
+	public void leavesWhatExceedsMaxBinsUnplaced() {
+		int[] widths = new int[]{ 32, 32, 32, 32, 32, 100 };
+		int[] heights = new int[]{ 32, 32, 32, 32, 32, 10 };
+		Result result = new RectPacker(64, 64).setMaxBins(1).pack(widths, heights);
+
+		assertEquals(1, result.getBinCount());
+		// one square does not fit into the single bin, the wide rect into no bin at all
+		assertEquals(2, result.getUnplacedCount());
+		assertEquals(-1, result.placements[5].bin);
+		int placed = 0;
+		for (Placement p : result.placements) if (p.isPlaced()) placed++;
+		assertEquals(4, placed);
+	}
+
+	@Test
+	public void mergesFreedNeighbors() {
+		FreeSpace space = new FreeSpace(64, 64);
+		space.occupy(0, 0, 32, 64);
+		space.occupy(32, 0, 32, 64);
+		assertEquals(0, space.getFreeRectCount());
+
+		space.free(32, 0, 32, 64);
+		space.free(0, 0, 32, 64);
+		assertEquals(1, space.getFreeRectCount());
+		assertEquals(64 * 64, space.getLargestFreeArea());
+
+		space.occupy(0, 0, 64, 32);
+		space.occupy(0, 32, 64, 32);
+		space.free(0, 0, 64, 32);
+		space.free(0, 32, 64, 32);
+		assertEquals(1, space.getFreeRectCount());
+		assertEquals(64 * 64, space.getLargestFreeArea());
+	}
+
+	@Test
+	public void keepsFreedRectsApartWithoutASharedEdge() {
+		FreeSpace space = new FreeSpace(64, 64);
+		space.occupy(0, 0, 32, 32);
+		space.occupy(32, 0, 32, 32);
+		space.occupy(0, 32, 32, 32);
+		space.occupy(32, 32, 32, 32);
+		assertEquals(0, space.getFreeRectCount());
+
+		// diagonal neighbors only touch in a corner
+		space.free(0, 0, 32, 32);
+		space.free(32, 32, 32, 32);
+		assertEquals(2, space.getFreeRectCount());
+		assertEquals(32 * 32, space.getLargestFreeArea());
+
+		Placement p = new Placement();
+		assertFalse(space.findPosition(64, 32, false, RectPacker.HEURISTIC_BEST_SHORT_SIDE_FIT, p));
+		assertTrue(space.findPosition(32, 32, false, RectPacker.HEURISTIC_BEST_SHORT_SIDE_FIT, p));
+	}
+
+	/**
+	 * Checks that all rects are placed with their (possibly rotated) size, inside the bin
+	 * minus padding, and at least <code>padding</code> apart from each other.
+	 */
+	private static void assertPacked(Result result, int[][] rects, int binWidth, int binHeight, int padding){
+		Placement[] ps = result.placements;
+		for (int i = 0; i < ps.length; i++){
+			Placement a = ps[i];
+			assertEquals(i, a.index);
+			int w = a.rotated ? rects[1][i] : rects[0][i];
+			int h = a.rotated ? rects[0][i] : rects[1][i];
+			assertEquals(w, a.width);
+			assertEquals(h, a.height);
+			assertTrue(a.toString(), a.x >= padding && a.y >= padding);
+			assertTrue(a.toString(), a.x + a.width <= binWidth - padding);
+			assertTrue(a.toString(), a.y + a.height <= binHeight - padding);
+
+			for (int j = i + 1; j < ps.length; j++){
+				Placement b = ps[j];
+				if (a.bin != b.bin) continue;
+				boolean apart = a.x + a.width + padding <= b.x || b.x + b.width + padding <= a.x
+						|| a.y + a.height + padding <= b.y || b.y + b.height + padding <= a.y;
+				assertTrue(a + " and " + b, apart);
+			}
+		}
+	}
+
+	/**
+	 * Returns { widths, heights }.
+	 */
+	private static int[][] randomRects(int count, int minSide, int maxSide, long seed){
+		Random random = new Random(seed);
+		int[][] ret = new int[2][count];
+		for (int i = 0; i < count; i++){
+			ret[0][i] = minSide + random.nextInt(maxSide - minSide + 1);
+			ret[1][i] = minSide + random.nextInt(maxSide - minSide + 1);
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,157 @@
+package com.komaxx.komaxx_gl.tools;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+import javax.imageio.ImageIO;
+
+import com.komaxx.komaxx_gl.util.AtlasTable;
+import com.komaxx.komaxx_gl.util.RectPacker;
+
+/**
+ * Command line tool (desktop JVM, not part of the Android build) that packs a set of images
+ * into one atlas image and writes it together with an AtlasTable. Put both into res/raw and
+ * load them with BakedAtlas.</br>
+ * The atlas gets the smallest power-of-two size that holds all images. The padding between
+ * two images is split between them, each repeats its edge pixels into its half. So linear
+ * filtering does not bleed in the neighbors.</br>
+ * Usage (with the compiled <code>src</code> on the class path):
+ * <pre>
+ * java com.komaxx.komaxx_gl.tools.AtlasBaker [-max 2048] [-padding 1] [-rotate]
+ *     atlas.png atlas.katl image1.png image2.png ...
+ * </pre>
+ * Entries are named after the image files without extension and are stored in the order
+ * the images were given.
+ *
+ * @author Matthias Schicker
+ */
+public class AtlasBaker {
+	private static final int MIN_SIZE = 32;
+
+	private int maxSize = 2048;
+	private int padding = 1;
+	private boolean allowRotation = false;
+
+
+	public static void main(String[] args) {
+		AtlasBaker baker = new AtlasBaker();
+		ArrayList<String> files = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++){
+			if ("-max".equals(args[i])) baker.maxSize = Integer.parseInt(args[++i]);
+			else if ("-padding".equals(args[i])) baker.padding = Integer.parseInt(args[++i]);
+			else if ("-rotate".equals(args[i])) baker.allowRotation = true;
+			else files.add(args[i]);
+		}
+		if (files.size() < 3){
+			System.err.println("Usage: AtlasBaker [-max 2048] [-padding 1] [-rotate] "
+					+ "atlas.png atlas.katl image1.png [image2.png ...]");
+			System.exit(1);
+		}
+
+		try {
+			File[] inputs = new File[files.size() - 2];
+			for (int i = 0; i < inputs.length; i++) inputs[i] = new File(files.get(i + 2));
+			AtlasTable table = baker.bake(inputs, new File(files.get(0)), new File(files.get(1)));
+			System.out.println("Baked " + table);
+		} catch (Exception e){
+			System.err.println("Baking failed: " + e.getMessage());
+			System.exit(2);
+		}
+	}
+
+	/**
+	 * Packs and paints the images, writes the atlas as PNG and the table.
+	 */
+	public AtlasTable bake(File[] inputs, File atlasFile, File tableFile) throws IOException {
+		int l = inputs.length;
+		BufferedImage[] images = new BufferedImage[l];
+		int[] widths = new int[l];
+		int[] heights = new int[l];
+		for (int i = 0; i < l; i++){
+			images[i] = ImageIO.read(inputs[i]);
+			if (images[i] == null) throw new IOException("Not an image: " + inputs[i]);
+			widths[i] = images[i].getWidth();
+			heights[i] = images[i].getHeight();
+		}
+
+		RectPacker.Result packing = null;
+		int atlasWidth = 0;
+		int atlasHeight = 0;
+		// smallest area first, within an area from square (or 2:1) to ever wider
+		for (int area = MIN_SIZE * MIN_SIZE; area <= maxSize * maxSize && packing == null; area *= 2){
+			int squarest = MIN_SIZE;
+			while (squarest * squarest < area) squarest *= 2;
+			for (int w = squarest; w <= maxSize && packing == null; w *= 2){
+				int h = area / w;
+				if (h < MIN_SIZE) break;
+				RectPacker.Result r = new RectPacker(w, h).setPadding(padding)
+						.setAllowRotation(allowRotation).setMaxBins(1).pack(widths, heights);
+				if (r.getUnplacedCount() == 0){
+					packing = r;
+					atlasWidth = w;
+					atlasHeight = h;
+				}
+			}
+		}
+		if (packing == null) throw new IOException("The images do not fit into one " + maxSize + "x" + maxSize + " atlas");
+
+		BufferedImage atlas = new BufferedImage(atlasWidth, atlasHeight, BufferedImage.TYPE_INT_ARGB);
+		AtlasTable table = new AtlasTable(atlasWidth, atlasHeight, l);
+		for (int i = 0; i < l; i++){
+			RectPacker.Placement p = packing.placements[i];
+			paint(images[i], atlas, p);
+			table.names[i] = stripExtension(inputs[i].getName());
+			table.x[i] = p.x;
+			table.y[i] = p.y;
+			table.width[i] = p.width;
+			table.height[i] = p.height;
+			table.rotated[i] = p.rotated;
+		}
+
+		ImageIO.write(atlas, "png", atlasFile);
+		OutputStream os = new FileOutputStream(tableFile);
+		try {
+			table.write(os);
+		} finally {
+			os.close();
+		}
+		return table;
+	}
+
+	/**
+	 * Copies the image to its place, rotated by 90 degrees clockwise when so placed (as
+	 * AtlasPainter does), and extrudes its edges into its half of the padding.
+	 */
+	private void paint(BufferedImage image, BufferedImage atlas, RectPacker.Placement p) {
+		int before = padding / 2;
+		int after = padding - before;
+		int left = Math.max(0, p.x - before);
+		int top = Math.max(0, p.y - before);
+		int right = Math.min(atlas.getWidth(), p.x + p.width + after);
+		int bottom = Math.min(atlas.getHeight(), p.y + p.height + after);
+
+		for (int y = top; y < bottom; y++){
+			int py = clamp(y - p.y, p.height);
+			for (int x = left; x < right; x++){
+				int px = clamp(x - p.x, p.width);
+				int argb = p.rotated
+						? image.getRGB(py, p.width - 1 - px)
+						: image.getRGB(px, py);
+				atlas.setRGB(x, y, argb);
+			}
+		}
+	}
+
+	private static int clamp(int v, int size){
+		return (v < 0) ? 0 : ((v >= size) ? size - 1 : v);
+	}
+
+	private static String stripExtension(String name){
+		int dot = name.lastIndexOf('.');
+		return (dot > 0) ? name.substring(0, dot) : name;
+	}
+}